@@ -1,5 +1,8 @@
 using System;
 using System.Collections.Generic;
+using System.Diagnostics;
+using System.Globalization;
+using System.IO;
 using System.Linq;
 using System.Text;
 using System.Text.RegularExpressions;
@@ -26,9 +29,10 @@ public class regtest
      * 
      */
 
+    // same patterns as Corpus.RE in java/regexbench/Corpus.java, keep them in sync
     private static readonly String[] _re = {"^(([^:]+)://)?([^:/]+)(:([0-9]+))?(/.*)", // URL match
         "(([^:]+)://)?([^:/]+)(:([0-9]+))?(/.*)", // URL match without starting ^
-        "usd [+-]?[0-9]+.[0-9,0-9]", // Canonical US dollar amount
+        "usd [+-]?[0-9]+.[0-9][0-9]", // Canonical US dollar amount
         "\\b(\\w+)(\\s+\\1)+\\b", // Duplicate words
         "\\{(\\d+):(([^}](?!-} ))*)", // this is meant to match against the "some more text and ..." but it causes ORO Matcher
     								  // to fail, so we won't include this by default... it is also WAY too slow to test
@@ -127,6 +131,9 @@ public class regtest
 
     private readonly static int ITERATIONS = 10000;
 
+    // results in the schema of java/regexbench/UnifiedReport.java, for "regtest unified"; args[0] overrides the file name
+    private const string RESULTS_FILE = "results-dotnet.json";
+
     public static void Main(string[] args)
     {
         long total = 0;
@@ -136,9 +143,17 @@ public class regtest
             if (debug) Console.WriteLine("Testing .NET regexp...");
             long[, ,] timeTaken = new long[_re.Length, ITERATIONS, _str.Length];
             bool[,] matches = new bool[_re.Length, _str.Length];
+            // what IsMatch returned and every sample in nanoseconds, for the results file
+            bool[,] matched = new bool[_re.Length, _str.Length];
+            List<long>[,] samples = new List<long>[_re.Length, _str.Length];
+            string[] status = new string[_re.Length];
             var startTime = DateTime.UtcNow;
             for (int regnum = 0; regnum < _re.Length; regnum++)
             {
+                for (int strnum = 0; strnum < _str.Length; strnum++)
+                {
+                    samples[regnum, strnum] = new List<long>();
+                }
                 if (debug)
                 {
                     Console.Write("New regnum " + regnum + "...\n");
@@ -168,8 +183,12 @@ public class regtest
                             }
 
                             var iterStarTime = DateTime.UtcNow;
+                            long ticks = Stopwatch.GetTimestamp();
                             bool b = regexpr.IsMatch(_str[strnum]);
+                            ticks = Stopwatch.GetTimestamp() - ticks;
                             matches[regnum, strnum] = (b == expectedMatch[regnum, strnum]);
+                            matched[regnum, strnum] = b;
+                            samples[regnum, strnum].Add((long) (ticks * (1e9 / Stopwatch.Frequency)));
                             timeTaken[regnum, itter, strnum] = (long)(DateTime.UtcNow - iterStarTime).TotalMilliseconds;
                             total += timeTaken[regnum, itter, strnum];
                             // count how many times we test against the large string on this regex
@@ -192,6 +211,7 @@ public class regtest
                 }
                 catch (Exception e)
                 {
+                    status[regnum] = "failed: " + e.GetType().FullName;
                     if (debug)
                     {
                         Console.WriteLine(_re[regnum] + "  failed badly");
@@ -202,6 +222,8 @@ public class regtest
             printResult(".NET regexp", timeTaken, (long)(endTime - startTime).TotalMilliseconds, matches, html);
 
             Console.WriteLine("<b>"+ total + "</b>");
+            writeResults(args.Length > 0 ? args[0] : RESULTS_FILE, "System.Text.RegularExpressions.Regex", samples, matched,
+                matches, status);
 
 
             //// org.apache.regexp.* test
@@ -1190,6 +1212,70 @@ public class regtest
         //}
     }
 
+    // writes one cell per pattern and input with summary statistics of its samples, times in nanoseconds
+    private static void writeResults(string file, string engine, List<long>[,] samples, bool[,] matched, bool[,] matches,
+        string[] status)
+    {
+        CultureInfo c = CultureInfo.InvariantCulture;
+        StringBuilder json = new StringBuilder();
+        json.Append("{\n  \"format\": 1,\n  \"runtime\": \"dotnet\",\n  \"mode\": \"default\",\n");
+        json.Append("  \"started\": \"" + DateTime.UtcNow.ToString("yyyy-MM-dd'T'HH:mm:ss'Z'", c) + "\",\n");
+        json.Append("  \"environment\": {\"clr.version\": \"" + Environment.Version + "\", \"os.version\": \""
+            + Environment.OSVersion + "\", \"processors\": " + Environment.ProcessorCount + ", \"is64BitProcess\": "
+            + (IntPtr.Size == 8 ? "true" : "false") + "},\n");
+        json.Append("  \"cells\": [");
+        for (int re = 0; re < _re.Length; re++)
+        {
+            for (int str = 0; str < _str.Length; str++)
+            {
+                List<long> times = samples[re, str];
+                times.Sort();
+                json.Append(re + str > 0 ? ",\n    {" : "\n    {");
+                json.Append("\"engine\": \"" + escape(engine) + "\", \"re\": " + re + ", \"str\": " + str + ", \"pattern\": \""
+                    + escape(_re[re]) + "\", \"status\": \"" + escape(status[re] ?? "ok") + "\", \"matched\": "
+                    + (matched[re, str] ? "true" : "false") + ", \"matchOk\": " + (matches[re, str] ? "true" : "false"));
+                if (status[re] == null && times.Count > 0)
+                {
+                    double mean = times.Average();
+                    json.Append(", \"wall\": {\"count\": " + times.Count + ", \"min\": " + times[0] + ", \"max\": "
+                        + times[times.Count - 1] + ", \"mean\": " + mean.ToString("R", c) + ", \"p50\": " + percentile(times, 50)
+                        + ", \"p90\": " + percentile(times, 90) + ", \"p99\": " + percentile(times, 99) + "}");
+                }
+                json.Append("}");
+            }
+        }
+        json.Append("\n  ]\n}\n");
+        File.WriteAllText(file, json.ToString(), new UTF8Encoding(false));
+    }
+
+    // nearest-rank percentile of sorted samples
+    private static long percentile(List<long> sorted, double percent)
+    {
+        int rank = (int) Math.Ceiling(percent / 100 * sorted.Count);
+        return sorted[Math.Max(rank, 1) - 1];
+    }
+
+    private static string escape(string s)
+    {
+        StringBuilder escaped = new StringBuilder();
+        foreach (char ch in s)
+        {
+            if (ch == '"' || ch == '\\')
+            {
+                escaped.Append('\\').Append(ch);
+            }
+            else if (ch < ' ')
+            {
+                escaped.Append("\\u" + ((int) ch).ToString("x4"));
+            }
+            else
+            {
+                escaped.Append(ch);
+            }
+        }
+        return escaped.ToString();
+    }
+
     private static void printResult(string regexName, long[,,] matrix, long totalTime, bool[,] matches, bool html)
     {
         // timeTaken[regnum,itter,strnum]
@@ -1,5 +1,60 @@
 @echo off
-set JAVA_HOME="C:\Program Files\Java\jdk1.7.0"
+set JAVA_HOME="C:\Program Files\Java\jdk1.8.0"
 
-%JAVA_HOME%\bin\javac -classpath jrexx-1.1.1.jar;automaton.jar;jregex1.2_01.jar;gnu-regexp-1.1.4.jar;patbinfree153.jar;jakarta-regexp-1.5.jar;jakarta-oro-2.0.8.jar;jint.jar;icu4j-4_8_1_1.jar;monq-1.1.1.jar regtest.java
+%JAVA_HOME%\bin\javac -sourcepath . -classpath jrexx-1.1.1.jar;automaton.jar;jregex1.2_01.jar;gnu-regexp-1.1.4.jar;patbinfree153.jar;jakarta-regexp-1.5.jar;jakarta-oro-2.0.8.jar;jint.jar;icu4j-4_8_1_1.jar;monq-1.1.1.jar regtest.java regexbench\engines\*.java
 %JAVA_HOME%\bin\java -classpath .;jrexx-1.1.1.jar;automaton.jar;jregex1.2_01.jar;gnu-regexp-1.1.4.jar;patbinfree153.jar;jakarta-regexp-1.5.jar;jakarta-oro-2.0.8.jar;jint.jar;icu4j-4_8_1_1.jar;monq-1.1.1.jar regtest > res.html
+
+rem Other modes, same classpath as above:
+rem   regtest scaling   throughput vs. thread count (-Dregtest.threads=N)
+rem   regtest reuse     adds a run with reused matchers per engine
+rem   regtest compile   compile cost and break-even vs. -Dregtest.baseline
+rem   regtest preg      Corpus.PREG translated into each engine's own dialect
+rem   regtest scan [file...]  parallel grep over memory-mapped files, GB/s per engine and pattern
+rem   regtest set       all Corpus.PREG patterns in one pass (RegexSet) vs. one pattern at a time
+rem   regtest prefilter required-literal prefilter (BMH / Aho-Corasick) in front of every engine, after a check
+rem                     of the prefilters against PCRE's answers; exit status 1 on any wrong one
+rem   regtest functions preg_match with groups, preg_match_all, preg_replace, preg_split, checked against
+rem                     -Dregtest.functions.reference (default java.util.regex.Pattern)
+rem   regtest translate preg patterns translated into each dialect and checked against PCRE's answers; exit status 1
+rem                     on any wrong one
+rem   regtest hybrid    regexbench.hybrid checked against java.util.regex on its backtracking corner cases; exit status 1
+rem                     on any wrong one
+rem   regtest compare old.json[;old2.json...] new.json[;...]  bootstrap comparison of runs from the history directory,
+rem                     SLOWER/FASTER per engine, pattern and input; exit status 1 on any slowdown
+rem   regtest unified run.json ..\dotnet\results-dotnet.json ..\php\results-php.json  Java, .NET and PHP side by side,
+rem                     relative to the fastest correct engine per pattern and input
+rem   regtest bytes     UTF-8 byte[] inputs searched in place (zero-copy Latin-1 view, ASCII fast path) vs.
+rem                     decoded into a String first, the decode time saved per engine and input
+rem   regtest sweep     search time on inputs from 1 KB to -Dregtest.sweep.maxBytes (default 128 MB, needs -Xmx1g),
+rem                     classified as constant, linear, n log n, quadratic, cubic or exponential
+rem   regtest fuzz [preg pattern...]  worst-case input search per engine (Corpus.PREG by default), keeps super-linear
+rem                     inputs in redos-corpus.json (-Dregtest.fuzz.corpus); exit status 1 on any
+rem   regtest gc        the matrix in a forked JVM per collector (-Dregtest.gc.collectors, default G1, Parallel, ZGC,
+rem                     Epsilon) and heap size (-Dregtest.gc.heaps): throughput, tail latency, allocation rate, and
+rem                     under Epsilon which engines match without allocating at all; hung children
+rem                     (-Dregtest.gc.timeoutMillis) are killed and reported
+rem   regtest isolated  the default matrix with a fresh JVM per engine (-Dregtest.isolate.unit=engine, pattern or cell),
+rem                     extra child options in -Dregtest.isolate.jvmArgs; crashed or hung children
+rem                     (-Dregtest.isolate.timeoutMillis) are reported, not fatal
+rem   regtest load      simulated PHP requests (compile and match calls) at doubling arrival rates, on virtual threads
+rem                     where the JDK has them: response-time percentiles corrected for coordinated omission, and
+rem                     the rate at which each engine saturates (-Dregtest.load.sloMillis, default 100)
+rem   regtest cache     compile through no cache, a synchronized LRU map and the lock-free W-TinyLFU PatternCache,
+rem                     Zipf-skewed over -Dregtest.cache.patterns on 1 and -Dregtest.threads threads
+rem Plain, reuse and preg runs also write history\run-<time>-<mode>.json and .csv (-Dregtest.history=dir or none).
+rem Vector API class-run kernels (regexbench.classrun [vector]) need JDK 17+, the mvn build and
+rem   java --add-modules jdk.incubator.vector ...; without them only regexbench.classrun [scalar] runs.
+rem regexbench.hybrid (lazy DFA, backtracking only for backreferences and lookaround) caches at most
+rem   -Dregtest.hybrid.maxStates DFA states per piece (default 4096) before flushing them, and gives up a match
+rem   whose backtracking stack grows past -Dregtest.hybrid.maxStack entries (default 4000000).
+rem Every cell warms up until the JIT settles (-Dregtest.steady.warmupMillis caps it), then samples until the 95%
+rem   confidence interval is -Dregtest.steady.ciWidth (default 0.05) of the median, -Dregtest.iterations matches
+rem   or -Dregtest.cellMillis; warm-up matches, JIT and GC time are reported per cell.
+rem Quercus' preg_match (regexbench.engines.QuercusEngine, patterns in their PHP form, through Quercus' own pattern cache)
+rem   is measured once a quercus.jar built from quercus-4.0.18-src.jar and the Java EE API jars it needs are added
+rem   to the classpath; otherwise it is skipped.
+rem Every match gets a budget (-Dregtest.budget.millis, -Dregtest.budget.steps); cells over it are reported, not timed.
+rem %JAVA_HOME%\bin\java -classpath ... regtest scaling > scaling.html
+
+rem Steady-state numbers: forked, warmed-up JMH run of the same matrix (needs Maven).
+rem mvn -B package && %JAVA_HOME%\bin\java -jar target\benchmarks.jar
@@ -0,0 +1,21 @@
+package regexbench;
+
+/**
+ * Optionally implemented by CompiledRegex objects of automaton based engines, so
+ * the compile-cost report can show where compile time goes and how much the
+ * automaton grows when it is made deterministic.
+ */
+public interface AutomatonStatistics
+{
+    /** Nanoseconds compile() spent building and tabulating the automaton. */
+    long getConstructionNanos();
+
+    /** States of the automaton as built from the pattern, before determinization, or -1 if unknown. */
+    int getNfaStateCount();
+
+    /** States after subset construction, before minimization, or -1 if unknown. */
+    int getDeterminizedStateCount();
+
+    /** States of the automaton that is actually run. */
+    int getStateCount();
+}
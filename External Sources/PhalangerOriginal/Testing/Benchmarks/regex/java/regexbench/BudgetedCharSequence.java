@@ -0,0 +1,95 @@
+package regexbench;
+
+/**
+ * Wraps the input of a match and aborts the match with a
+ * MatchBudgetExceededException once the engine has read more than maxSteps
+ * characters or the deadline has passed. Backtracking shows up as the same
+ * characters being read again and again, so the number of charAt() calls is a
+ * good measure of the work an engine does, independent of machine speed.
+ *
+ * This only works for engines that read the CharSequence. Engines that call
+ * toString() get a String the budget cannot see; isCopied() tells whether that
+ * happened, and MatchBudget guards such matches from a separate thread instead.
+ * SubSequences share the budget of their parent.
+ */
+public final class BudgetedCharSequence implements CharSequence
+{
+    private static final int DEADLINE_CHECK_MASK = 0x3FF;
+
+    private final CharSequence input;
+    private final Meter meter;
+
+    public BudgetedCharSequence(CharSequence input, long maxSteps, long maxNanos)
+    {
+        this(input, new Meter(maxSteps, maxNanos));
+    }
+
+    private BudgetedCharSequence(CharSequence input, Meter meter)
+    {
+        this.input = input;
+        this.meter = meter;
+    }
+
+    public int length()
+    {
+        return input.length();
+    }
+
+    public char charAt(int index)
+    {
+        Meter m = meter;
+        long steps = ++m.steps;
+        if (steps > m.maxSteps)
+        {
+            throw m.exceeded("more than " + m.maxSteps + " characters read");
+        }
+        if ((steps & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() > m.deadline)
+        {
+            throw m.exceeded("deadline passed");
+        }
+        return input.charAt(index);
+    }
+
+    public CharSequence subSequence(int start, int end)
+    {
+        return new BudgetedCharSequence(input.subSequence(start, end), meter);
+    }
+
+    public String toString()
+    {
+        meter.copied = true;
+        return input.toString();
+    }
+
+    /** Characters read so far. */
+    public long getSteps()
+    {
+        return meter.steps;
+    }
+
+    /** Whether the engine asked for a String, which the budget cannot meter. */
+    public boolean isCopied()
+    {
+        return meter.copied;
+    }
+
+    private static final class Meter
+    {
+        final long maxSteps;
+        final long start = System.nanoTime();
+        final long deadline;
+        long steps;
+        boolean copied;
+
+        Meter(long maxSteps, long maxNanos)
+        {
+            this.maxSteps = maxSteps;
+            this.deadline = start + maxNanos;
+        }
+
+        MatchBudgetExceededException exceeded(String reason)
+        {
+            return new MatchBudgetExceededException(reason, steps, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package regexbench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A CharSequence over a range of a ByteBuffer, one char per byte (ISO-8859-1),
+ * without copying the bytes. Together with a mapped file this lets engines that
+ * accept a CharSequence read the file in place.
+ *
+ * Engines that only take Strings call toString(), which has to copy; when a
+ * counter is given, every such copy adds its length to it, so a scan can report
+ * how much of the input ended up on the heap after all. Over a heap buffer the
+ * copy is a single ISO-8859-1 String construction, which the JDK does as an
+ * array copy.
+ *
+ * For UTF-8 text the view only reads right where the bytes are ASCII; isAscii()
+ * checks that eight bytes at a time, so callers can take the view for the
+ * common case and decode only the rest.
+ *
+ * Reads use absolute ByteBuffer gets, so views of one buffer may be used from
+ * several threads as long as nobody writes to it.
+ */
+public final class ByteCharSequence implements CharSequence
+{
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    private final LongAdder copiedChars;
+
+    public ByteCharSequence(ByteBuffer buffer, int offset, int length)
+    {
+        this(buffer, offset, length, null);
+    }
+
+    public ByteCharSequence(ByteBuffer buffer, int offset, int length, LongAdder copiedChars)
+    {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit())
+        {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", limit " + buffer.limit());
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.copiedChars = copiedChars;
+    }
+
+    /** Whether length bytes of bytes from offset are all below 0x80, i.e. read the same as ISO-8859-1 and UTF-8. */
+    public static boolean isAscii(byte[] bytes, int offset, int length)
+    {
+        ByteBuffer words = ByteBuffer.wrap(bytes);
+        int i = offset;
+        int end = offset + length;
+        for (; i + 8 <= end; i += 8)
+        {
+            if ((words.getLong(i) & 0x8080808080808080L) != 0)
+            {
+                return false;
+            }
+        }
+        for (; i < end; i++)
+        {
+            if (bytes[i] < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int length()
+    {
+        return length;
+    }
+
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= length)
+        {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    public CharSequence subSequence(int start, int end)
+    {
+        if (start < 0 || end > length || start > end)
+        {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new ByteCharSequence(buffer, offset + start, end - start, copiedChars);
+    }
+
+    public String toString()
+    {
+        if (copiedChars != null)
+        {
+            copiedChars.add(length);
+        }
+        if (buffer.hasArray())
+        {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.ISO_8859_1);
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+        {
+            chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+}
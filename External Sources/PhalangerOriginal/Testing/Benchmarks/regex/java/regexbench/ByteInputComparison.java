@@ -0,0 +1,195 @@
+package regexbench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Bytes mode ("regtest bytes"): what a JVM PHP runtime saves by handing the
+ * engines a PHP string's bytes instead of a decoded java.lang.String. Every
+ * Corpus.PREG pattern, translated into the engine's dialect, searches every
+ * Corpus.STR input as UTF-8 bytes, two ways:
+ * <ul>
+ * <li>STRING: new String(bytes, UTF_8) and find(), the decode and copy a
+ * runtime pays on every preg call today;</li>
+ * <li>BYTES: CompiledRegex.find(byte[], int, int), which engines that can run
+ * on bytes override and the rest get as a zero-copy ByteCharSequence view. The
+ * view is one char per byte, as preg sees a string without the u modifier;
+ * under u it is only the same text for pure ASCII, so BYTES checks that first
+ * (ByteCharSequence.isAscii, eight bytes at a time) and decodes otherwise.</li>
+ * </ul>
+ * DECODE is the decode alone, SAVED the difference between the two paths per
+ * call. COPIES says whether the engine still copied the view with toString(),
+ * in which case only the UTF-8 decode was saved, not the copy.
+ *
+ * Inputs over the MatchBudget are left out. The three paths are measured in
+ * turns, a warmup round and then three rounds of which each path keeps its
+ * fastest. System property: regtest.bytes.millis (time per measurement,
+ * default 200).
+ */
+public final class ByteInputComparison
+{
+    private static final int DECODE = 0;
+    private static final int STRING = 1;
+    private static final int BYTES = 2;
+
+    private static final int ROUNDS = 3;
+
+    private final long millis = Long.getLong("regtest.bytes.millis", 200).longValue();
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    private static volatile int blackhole;
+
+    private final Report report;
+
+    public ByteInputComparison(Report report)
+    {
+        this.report = report;
+    }
+
+    public void run(List<RegexEngine> engines)
+    {
+        byte[][] inputs = new byte[Corpus.STR.length][];
+        for (int str = 0; str < inputs.length; str++)
+        {
+            inputs[str] = Corpus.STR[str].getBytes(StandardCharsets.UTF_8);
+        }
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Matching bytes with " + engine.getName() + "...");
+            report.begin("UTF-8 bytes vs. decoded Strings for regular expression library", engine.getName(), 10);
+            report.caption(millis + " ms per measurement, fastest of " + ROUNDS + " rounds");
+            report.header("RE", "INPUT", "BYTES", "DECODE US", "STRING US", "BYTES US", "SAVED US", "SAVED", "COPIES", "STATUS");
+            for (int re = 0; re < Corpus.PREG.length; re++)
+            {
+                run(engine, Corpus.PREG[re], inputs);
+            }
+            report.end("Times in microseconds per call. SAVED: STRING - BYTES, as a share of STRING. COPIES: whether the engine"
+                + " called toString() on the zero-copy view.");
+        }
+    }
+
+    private void run(RegexEngine engine, String preg, byte[][] inputs)
+    {
+        PregTranslation t = PregTranslator.translate(preg, engine.getDialect());
+        CompiledRegex regex;
+        try
+        {
+            if (!t.isSupported())
+            {
+                report.row(preg, "-", "-", "-", "-", "-", "-", "-", "-", t.toString());
+                return;
+            }
+            regex = engine.compile(t.getPattern());
+        }
+        catch (Throwable e)
+        {
+            report.row(preg, "-", "-", "-", "-", "-", "-", "-", "-", "compile failed: " + e.getClass().getName());
+            return;
+        }
+        for (int str = 0; str < inputs.length; str++)
+        {
+            byte[] bytes = inputs[str];
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            MatchBudget.Outcome outcome = budget.probeFind(engine, regex, text);
+            if (!outcome.isCompleted())
+            {
+                report.row(preg, describe(text), Integer.toString(bytes.length), "-", "-", "-", "-", "-", "-", outcome.describe());
+                continue;
+            }
+            String status = "ok";
+            String copies;
+            try
+            {
+                LongAdder copied = new LongAdder();
+                regex.find(new ByteCharSequence(ByteBuffer.wrap(bytes), 0, bytes.length, copied));
+                copies = copied.sum() > 0 ? "yes" : "no";
+                if (find(regex, bytes) != outcome.getResult())
+                {
+                    status = "WRONG: bytes answered " + !outcome.getResult();
+                }
+            }
+            catch (RuntimeException | StackOverflowError e)
+            {
+                report.row(preg, describe(text), Integer.toString(bytes.length), "-", "-", "-", "-", "-", "-", "failed on bytes: "
+                    + e.getClass().getName());
+                continue;
+            }
+            // the paths take turns, each keeping its fastest round, so that drift in the machine hits all three alike
+            double[] times = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+            for (int round = 0; round <= ROUNDS; round++)
+            {
+                for (int path = DECODE; path <= BYTES; path++)
+                {
+                    double nanos = measure(regex, bytes, path);
+                    if (round > 0)
+                    {
+                        // round 0 is the warmup
+                        times[path] = Math.min(times[path], nanos);
+                    }
+                }
+            }
+            double decode = times[DECODE];
+            double string = times[STRING];
+            double direct = times[BYTES];
+            report.row(preg, describe(text), Integer.toString(bytes.length), micros(decode), micros(string), micros(direct),
+                micros(string - direct), Report.format(100 * (string - direct) / string) + "%", copies, status);
+        }
+    }
+
+    /** The BYTES path: the bytes themselves where they read the same as UTF-8, decoded otherwise. */
+    private static boolean find(CompiledRegex regex, byte[] bytes)
+    {
+        if (ByteCharSequence.isAscii(bytes, 0, bytes.length))
+        {
+            return regex.find(bytes, 0, bytes.length);
+        }
+        return regex.find(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /** Mean nanoseconds per call of the path over one measurement. */
+    private double measure(CompiledRegex regex, byte[] bytes, int path)
+    {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long start = System.nanoTime();
+        long n = 0;
+        int sink = 0;
+        do
+        {
+            for (int i = 0; i < 16; i++)
+            {
+                switch (path)
+                {
+                    case DECODE:
+                        sink += new String(bytes, StandardCharsets.UTF_8).length();
+                        break;
+                    case STRING:
+                        sink += regex.find(new String(bytes, StandardCharsets.UTF_8)) ? 1 : 0;
+                        break;
+                    default:
+                        sink += find(regex, bytes) ? 1 : 0;
+                        break;
+                }
+            }
+            n += 16;
+        }
+        while (System.nanoTime() < deadline);
+        blackhole = sink;
+        return (System.nanoTime() - start) / (double) n;
+    }
+
+    private static String micros(double nanos)
+    {
+        return Report.format(nanos / 1e3);
+    }
+
+    private static String describe(String input)
+    {
+        String line = input.replace("\n", "\\n");
+        return line.length() <= 30 ? line : line.substring(0, 27) + "...";
+    }
+}
@@ -0,0 +1,50 @@
+package regexbench;
+
+/**
+ * Any engine behind a PatternCache: compile() returns the cached pattern for
+ * text compiled before, as a PHP runtime reuses its compiled preg patterns.
+ * The engines take their options inside the pattern, as preg modifiers or
+ * inline flags, so the cache key's flags are always 0 here.
+ *
+ * Compiled patterns are shared by every caller; wrap only engines whose
+ * compiled patterns are thread-safe if several threads compile through it.
+ */
+public final class CachingEngine implements RegexEngine
+{
+    private final RegexEngine engine;
+    private final PatternCache<CompiledRegex> cache;
+    private final PatternCache.Loader<CompiledRegex> loader;
+
+    public CachingEngine(final RegexEngine engine, PatternCache<CompiledRegex> cache)
+    {
+        this.engine = engine;
+        this.cache = cache;
+        this.loader = new PatternCache.Loader<CompiledRegex>()
+        {
+            public CompiledRegex load(String pattern, int flags) throws Exception
+            {
+                return engine.compile(pattern);
+            }
+        };
+    }
+
+    public String getName()
+    {
+        return engine.getName() + " [cached]";
+    }
+
+    public RegexDialect getDialect()
+    {
+        return engine.getDialect();
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return cache.get(pattern, 0, loader);
+    }
+
+    public PatternCache<CompiledRegex> getCache()
+    {
+        return cache;
+    }
+}
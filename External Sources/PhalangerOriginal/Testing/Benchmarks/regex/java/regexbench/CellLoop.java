@@ -0,0 +1,197 @@
+package regexbench;
+
+import java.io.IOException;
+
+/**
+ * The default run's measurement of an engine's Corpus.STR matrix, shared by
+ * regtest and the children of GcMatrix and IsolationRunner so that every mode
+ * times a cell the same way. Every cell is first run once within the
+ * MatchBudget; the pattern is then compiled once, and each cell that finished
+ * within the budget is timed with SteadyState, warm-up first. Every answer is
+ * checked against Corpus.EXPECTED_MATCH, and one wrong answer makes the cell
+ * wrong for good.
+ *
+ * Cells go to a Sink as soon as they are done, so that a child JVM that dies
+ * halfway has passed on what it measured.
+ */
+public final class CellLoop
+{
+    /** Gets every cell once it is done, pattern by pattern and input by input. */
+    public interface Sink
+    {
+        void cell(Cell cell) throws IOException;
+    }
+
+    /** One pattern and input. */
+    public static final class Cell
+    {
+        private final int re;
+        private final int str;
+        private final LatencyRecorder recorder = new LatencyRecorder();
+        private SteadyState steady;
+        private String failure;
+        private long answers;
+        private boolean wrong;
+        private boolean lastAnswer;
+
+        Cell(int re, int str)
+        {
+            this.re = re;
+            this.str = str;
+        }
+
+        public int getRe()
+        {
+            return re;
+        }
+
+        public int getStr()
+        {
+            return str;
+        }
+
+        /** The measured matches; empty if the cell was not timed. */
+        public LatencyRecorder getRecorder()
+        {
+            return recorder;
+        }
+
+        /** How the cell was sampled, or null if it was not timed. */
+        public SteadyState getSteady()
+        {
+            return steady;
+        }
+
+        /** Why the cell was not timed or stopped early, e.g. "unsupported" or a MatchBudget outcome; null if neither. */
+        public String getFailure()
+        {
+            return failure;
+        }
+
+        /** Whether the engine answered at least once and every answer was the expected one. */
+        public boolean isCorrect()
+        {
+            return answers > 0 && !wrong;
+        }
+
+        /** The engine's last answer, for debugging output. */
+        public boolean getLastAnswer()
+        {
+            return lastAnswer;
+        }
+
+        /** The failure, otherwise "WRONG" or "ok". */
+        public String getStatus()
+        {
+            if (failure != null)
+            {
+                return failure;
+            }
+            return wrong ? "WRONG" : "ok";
+        }
+
+        private void measure(CompiledRegex regex, ReusableMatcher matcher, String input, boolean expected)
+        {
+            // warm-up until the JIT settles, then measured matches until the mean is known well enough
+            steady = new SteadyState(recorder);
+            while (steady.next())
+            {
+                boolean b;
+                try
+                {
+                    steady.start();
+                    b = matcher != null ? matcher.match(input) : regex.match(input);
+                    steady.stop();
+                }
+                catch (Throwable e)
+                {
+                    failure = "failed: " + e.getClass().getName();
+                    steady.abort("failed");
+                    break;
+                }
+                answers++;
+                wrong |= b != expected;
+                lastAnswer = b;
+            }
+        }
+    }
+
+    private CellLoop()
+    {
+    }
+
+    /**
+     * Measures engine's cells: those of every pattern, or of pattern onlyRe
+     * (onlyRe >= 0), on every input, or on input onlyStr (onlyStr >= 0). A null
+     * pattern is one the engine's dialect cannot express. With reuse the cells
+     * are timed through one CompiledRegex.reusableMatcher() per pattern.
+     */
+    public static void run(RegexEngine engine, String[] patterns, boolean reuse, int onlyRe, int onlyStr, Sink sink)
+        throws IOException
+    {
+        MatchBudget budget = MatchBudget.fromProperties();
+        for (int re = 0; re < patterns.length; re++)
+        {
+            if (onlyRe >= 0 && re != onlyRe)
+            {
+                continue;
+            }
+            Cell[] row = new Cell[Corpus.STR.length];
+            boolean anyTimed = false;
+            for (int str = 0; str < Corpus.STR.length; str++)
+            {
+                if (onlyStr >= 0 && str != onlyStr)
+                {
+                    continue;
+                }
+                row[str] = new Cell(re, str);
+                if (patterns[re] == null)
+                {
+                    row[str].failure = "unsupported";
+                    continue;
+                }
+                // only cells that finish within the budget are timed
+                MatchBudget.Outcome outcome = budget.probe(engine, patterns[re], Corpus.STR[str]);
+                if (!outcome.isCompleted())
+                {
+                    row[str].failure = outcome.describe();
+                }
+                anyTimed |= outcome.isCompleted();
+            }
+
+            CompiledRegex regex = null;
+            ReusableMatcher matcher = null;
+            if (anyTimed)
+            {
+                try
+                {
+                    regex = engine.compile(patterns[re]);
+                    matcher = reuse ? regex.reusableMatcher() : null;
+                }
+                catch (Throwable e)
+                {
+                    for (Cell cell : row)
+                    {
+                        // a cell the probe already failed keeps that reason, e.g. a budget overrun
+                        if (cell != null && cell.failure == null)
+                        {
+                            cell.failure = "compile failed: " + e.getClass().getName();
+                        }
+                    }
+                }
+            }
+            for (Cell cell : row)
+            {
+                if (cell == null)
+                {
+                    continue;
+                }
+                if (cell.failure == null)
+                {
+                    cell.measure(regex, matcher, Corpus.STR[cell.str], Corpus.EXPECTED_MATCH[re][cell.str]);
+                }
+                sink.cell(cell);
+            }
+        }
+    }
+}
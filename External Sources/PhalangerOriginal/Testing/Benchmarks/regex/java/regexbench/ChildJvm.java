@@ -0,0 +1,67 @@
+package regexbench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command lines for the JVMs that GcMatrix and IsolationRunner fork: this
+ * JVM's java binary, options and class path, running regtest with the given
+ * arguments. Options the caller passes come after the inherited ones and so
+ * override them; a collector among them replaces the inherited collector, which
+ * the JVM would otherwise reject as a second one. A debugger agent is never
+ * inherited, it would try to listen on the parent's port.
+ */
+final class ChildJvm
+{
+    private static final String COLLECTOR = "-XX:[+-]Use\\w*GC";
+
+    private ChildJvm()
+    {
+    }
+
+    static List<String> command(List<String> options, String... args)
+    {
+        boolean collector = false;
+        for (String option : options)
+        {
+            collector |= option.matches(COLLECTOR);
+        }
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments())
+        {
+            if (!arg.startsWith("-agentlib:jdwp") && !(collector && arg.matches(COLLECTOR)))
+            {
+                command.add(arg);
+            }
+        }
+        command.addAll(options);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("regtest");
+        for (String arg : args)
+        {
+            command.add(arg);
+        }
+        return command;
+    }
+
+    /** Whitespace separated options, e.g. from a system property; none for null. */
+    static List<String> split(String options)
+    {
+        List<String> list = new ArrayList<String>();
+        if (options != null)
+        {
+            for (String option : options.trim().split("\\s+"))
+            {
+                if (!option.isEmpty())
+                {
+                    list.add(option);
+                }
+            }
+        }
+        return list;
+    }
+}
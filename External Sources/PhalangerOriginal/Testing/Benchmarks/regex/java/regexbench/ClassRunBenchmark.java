@@ -0,0 +1,89 @@
+package regexbench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import regexbench.classrun.CharClass;
+import regexbench.classrun.ClassScanner;
+import regexbench.classrun.ClassScanners;
+
+/**
+ * The class-run kernel alone: the end of a run of length chars of one of the
+ * Corpus.RE classes, found by the scalar and the Vector API ClassScanner. The
+ * engines built on it, regexbench.classrun [vector] and [scalar], are measured
+ * against the others by regtest on Corpus.STR and by "regtest scan" on large
+ * corpora.
+ *
+ * The vector kernel needs the jdk.incubator.vector module: run
+ * "java --add-modules jdk.incubator.vector -jar target/benchmarks.jar ClassRun",
+ * the forks inherit it. Without it the vector cells fail in setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Benchmark)
+public class ClassRunBenchmark
+{
+    @Param({"vector", "scalar"})
+    public String kernel;
+
+    /** [^:] as in the URL patterns, [0-9] as in the dollar pattern, [^:/] with two excluded chars. */
+    @Param({"[^:]", "[0-9]", "[^:/]"})
+    public String cls;
+
+    @Param({"16", "256", "65536"})
+    public int length;
+
+    private ClassScanner scanner;
+    private char[] chars;
+
+    @Setup
+    public void setUp()
+    {
+        CharClass c;
+        char member;
+        if (cls.equals("[0-9]"))
+        {
+            c = new CharClass.Builder().add('0', '9').build(false);
+            member = '7';
+        }
+        else if (cls.equals("[^:]"))
+        {
+            c = new CharClass.Builder().add(':').build(true);
+            member = 'a';
+        }
+        else
+        {
+            c = new CharClass.Builder().add(':').add('/').build(true);
+            member = 'a';
+        }
+        if (kernel.equals("vector") && !ClassScanners.isVectorAvailable())
+        {
+            throw new IllegalStateException("Vector API not available, see the class comment");
+        }
+        scanner = kernel.equals("vector") ? ClassScanners.create(c) : ClassScanners.scalar(c);
+        chars = new char[length + 1];
+        Arrays.fill(chars, member);
+        chars[length] = ':';
+    }
+
+    @Benchmark
+    public int skip()
+    {
+        return scanner.skip(chars, 0, chars.length);
+    }
+}
@@ -0,0 +1,64 @@
+package regexbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH compile throughput of every engine and pattern, the steady-state counterpart
+ * of "regtest compile". Engines are looked up through the RegexEngine SPI, so
+ * "-p engine=..." also accepts engines that are not bundled here. The engines
+ * are those of RegexBenchmark, so the two join per engine; one fork by default,
+ * add "-f 3" for figures to publish.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompileBenchmark
+{
+    // the engines in META-INF/services/regexbench.RegexEngine order, less Quercus, which is not bundled; keep this list
+    // the same in RegexBenchmark and CompileBenchmark so that their results join per engine
+    @Param({"org.apache.regexp.RE", "com.stevesoft.pat.Regex", "kmy.regex.util.Regex", "java.util.regex.Pattern",
+        "jregex.Pattern", "org.apache.oro.text.regex.Perl5Matcher", "dk.brics.automaton.RegExp",
+        "com.karneim.util.collection.regex.Pattern", "monq.jfa.Regexp", "com.ibm.icu.text.UnicodeSet", "gnu.regexp.RE",
+        "regexbench.classrun [vector]", "regexbench.classrun [scalar]", "regexbench.hybrid"})
+    public String engine;
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int re;
+
+    private RegexEngine regexEngine;
+    private String pattern;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        regexEngine = RegexEngines.find(engine);
+        if (regexEngine == null)
+        {
+            throw new IllegalArgumentException("No regex engine called " + engine);
+        }
+        pattern = Corpus.patternsFor(regexEngine)[re];
+        // fail in setup rather than in every invocation for unsupported patterns
+        regexEngine.compile(pattern);
+    }
+
+    @Benchmark
+    public CompiledRegex compile() throws Exception
+    {
+        return regexEngine.compile(pattern);
+    }
+}
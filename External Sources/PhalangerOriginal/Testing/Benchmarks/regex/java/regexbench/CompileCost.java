@@ -0,0 +1,190 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compile-cost mode ("regtest compile"). regtest compiles every pattern once
+ * outside the timed region, which hides what a PHP runtime pays when preg patterns
+ * are compiled per request. This mode measures, per engine and pattern:
+ * <ul>
+ * <li>the distribution of compile() times,</li>
+ * <li>the mean match() time over the Corpus.STR inputs, for comparison,</li>
+ * <li>for engines implementing AutomatonStatistics, automaton construction time and
+ * the NFA / determinized / minimal state counts (determinization blow-up),</li>
+ * <li>the break-even number of matches against a baseline engine: after how many
+ * matches a pattern that costs more to compile but matches faster has paid back.</li>
+ * </ul>
+ *
+ * System properties: regtest.compile.iterations (compilations per pattern, default
+ * 1000), regtest.compile.matchMillis (time budget for the match estimate per cell,
+ * default 200) and regtest.baseline (default java.util.regex.Pattern).
+ */
+public final class CompileCost
+{
+    private final int iterations = Integer.getInteger("regtest.compile.iterations", 1000).intValue();
+    private final long matchMillis = Long.getLong("regtest.compile.matchMillis", 200).longValue();
+    private final String baselineName = System.getProperty("regtest.baseline", "java.util.regex.Pattern");
+
+    private final Report report;
+
+    public CompileCost(Report report)
+    {
+        this.report = report;
+    }
+
+    public void run(List<RegexEngine> engines)
+    {
+        List<Result[]> results = new ArrayList<Result[]>();
+        Result[] baseline = null;
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Compiling with " + engine.getName() + "...");
+            String[] patterns = Corpus.patternsFor(engine);
+            Result[] perPattern = new Result[patterns.length];
+            for (int re = 0; re < patterns.length; re++)
+            {
+                perPattern[re] = measure(engine, patterns[re]);
+            }
+            results.add(perPattern);
+            if (engine.getName().equals(baselineName))
+            {
+                baseline = perPattern;
+            }
+        }
+
+        for (int e = 0; e < engines.size(); e++)
+        {
+            report.begin("Compile cost of regular expression library", engines.get(e).getName(), 12);
+            report.header("RE", "COMPILE AVG", "COMPILE P50", "COMPILE P99", "MATCH AVG", "COMPILE/MATCH", "BUILD", "NFA", "DFA",
+                "MIN DFA", "BREAK-EVEN");
+            String[] patterns = Corpus.patternsFor(engines.get(e));
+            Result[] perPattern = results.get(e);
+            for (int re = 0; re < patterns.length; re++)
+            {
+                Result r = perPattern[re];
+                if (r.failure != null)
+                {
+                    report.row(patterns[re], "failed: " + r.failure);
+                    continue;
+                }
+                LatencyHistogram compile = r.compile;
+                report.row(patterns[re], micros(compile.getMean()), micros(compile.getValueAtPercentile(50)),
+                    micros(compile.getValueAtPercentile(99)), micros(r.matchNanos),
+                    r.matchNanos > 0 ? Report.format(compile.getMean() / r.matchNanos) : "-",
+                    r.constructionNanos >= 0 ? micros(r.constructionNanos) : "-", count(r.nfaStates), count(r.determinizedStates),
+                    count(r.states), breakEven(r, baseline == null ? null : baseline[re]));
+            }
+            report.end("Times in microseconds. BREAK-EVEN: number of matches after which compiling and matching with this"
+                + " engine is cheaper than with " + baselineName + " (\"until N\": cheaper only for the first N).");
+        }
+    }
+
+    private Result measure(RegexEngine engine, String pattern)
+    {
+        Result result = new Result();
+        try
+        {
+            CompiledRegex compiled = null;
+            // warm up the compiler before timing it
+            for (int i = 0; i < Math.max(1, iterations / 10); i++)
+            {
+                compiled = engine.compile(pattern);
+            }
+            for (int i = 0; i < iterations; i++)
+            {
+                long start = System.nanoTime();
+                compiled = engine.compile(pattern);
+                result.compile.recordValue(System.nanoTime() - start);
+            }
+            if (compiled instanceof AutomatonStatistics)
+            {
+                AutomatonStatistics stats = (AutomatonStatistics) compiled;
+                result.constructionNanos = stats.getConstructionNanos();
+                result.nfaStates = stats.getNfaStateCount();
+                result.determinizedStates = stats.getDeterminizedStateCount();
+                result.states = stats.getStateCount();
+            }
+            result.matchNanos = meanMatchNanos(compiled);
+        }
+        catch (Throwable e)
+        {
+            result.failure = e.getClass().getName();
+        }
+        return result;
+    }
+
+    /**
+     * Mean match() time over all inputs the pattern can be run against, each input
+     * weighted equally and measured for at most matchMillis.
+     */
+    private double meanMatchNanos(CompiledRegex compiled)
+    {
+        double sum = 0;
+        int inputs = 0;
+        for (int str = 0; str < Corpus.STR.length; str++)
+        {
+            try
+            {
+                long budgetEnd = System.nanoTime() + matchMillis * 1000000L;
+                long start = System.nanoTime();
+                long count = 0;
+                long now = start;
+                while (now < budgetEnd)
+                {
+                    compiled.match(Corpus.STR[str]);
+                    count++;
+                    now = System.nanoTime();
+                }
+                sum += (double) (now - start) / count;
+                inputs++;
+            }
+            catch (Throwable e)
+            {
+                // input not supported by the engine, not part of the estimate
+            }
+        }
+        return inputs == 0 ? 0 : sum / inputs;
+    }
+
+    private String breakEven(Result r, Result base)
+    {
+        if (base == null || base.failure != null || base == r)
+        {
+            return "-";
+        }
+        double extraCompile = r.compile.getMean() - base.compile.getMean();
+        double savedPerMatch = base.matchNanos - r.matchNanos;
+        if (extraCompile <= 0)
+        {
+            // cheaper to compile: ahead from the start, possibly only for a while
+            return savedPerMatch >= 0 ? "always" : "until " + (long) Math.floor(extraCompile / savedPerMatch);
+        }
+        if (savedPerMatch <= 0)
+        {
+            return "never";
+        }
+        return Long.toString((long) Math.ceil(extraCompile / savedPerMatch));
+    }
+
+    private static String micros(double nanos)
+    {
+        return Report.format(nanos / 1000.0);
+    }
+
+    private static String count(int states)
+    {
+        return states < 0 ? "-" : Integer.toString(states);
+    }
+
+    private static final class Result
+    {
+        final LatencyHistogram compile = new LatencyHistogram();
+        double matchNanos;
+        long constructionNanos = -1;
+        int nfaStates = -1;
+        int determinizedStates = -1;
+        int states = -1;
+        String failure;
+    }
+}
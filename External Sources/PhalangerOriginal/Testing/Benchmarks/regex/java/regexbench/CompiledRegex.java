@@ -0,0 +1,81 @@
+package regexbench;
+
+/**
+ * A pattern compiled by a RegexEngine.
+ *
+ * Unless an engine documents otherwise, instances are not safe for use by
+ * several threads at once; many engines keep match state in the pattern object.
+ */
+public interface CompiledRegex
+{
+    /**
+     * The engine's own yes/no test, i.e. the call regtest has always timed for it.
+     * Depending on the engine that is an anchored match of the whole input or a
+     * search, which is what Corpus.EXPECTED_MATCH is checked against.
+     */
+    boolean match(CharSequence input);
+
+    /**
+     * Searches for the pattern anywhere in input.
+     *
+     * @throws UnsupportedOperationException if the engine can only test whole inputs
+     */
+    boolean find(CharSequence input);
+
+    /**
+     * Searches like find() in length bytes of input from offset, one char per
+     * byte (ISO-8859-1), which is how preg sees a PHP string without the u
+     * modifier. The default searches a ByteCharSequence view of the bytes, so
+     * engines that read their input through charAt() never copy it; engines that
+     * can run on bytes themselves override this.
+     *
+     * @throws UnsupportedOperationException if the engine can only test whole inputs
+     */
+    default boolean find(byte[] input, int offset, int length)
+    {
+        return find(new ByteCharSequence(java.nio.ByteBuffer.wrap(input), offset, length));
+    }
+
+    /**
+     * Searches like find() and returns the offsets of the first match as
+     * {start0, end0, start1, end1, ...}, -1 for groups that did not participate,
+     * or null if there is no match.
+     *
+     * @throws UnsupportedOperationException if the engine does not report groups
+     */
+    int[] groups(CharSequence input);
+
+    /**
+     * Like groups(input), but the search starts at offset from, the way
+     * preg_match_all() and preg_replace() continue after a match: the text before
+     * from is still there for ^, \b and lookbehind to see, and the offsets are
+     * relative to the whole input. The default can only start at 0.
+     *
+     * @throws UnsupportedOperationException if the engine cannot start a search
+     *         at an offset or does not report groups
+     */
+    default int[] groups(CharSequence input, int from)
+    {
+        if (from != 0)
+        {
+            throw new UnsupportedOperationException("cannot search from an offset");
+        }
+        return groups(input);
+    }
+
+    /**
+     * Returns a matcher that reuses its state between calls. Engines that keep no
+     * per-match objects beyond the compiled pattern need not override this; the
+     * default simply delegates to match().
+     */
+    default ReusableMatcher reusableMatcher()
+    {
+        return new ReusableMatcher()
+        {
+            public boolean match(CharSequence input)
+            {
+                return CompiledRegex.this.match(input);
+            }
+        };
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2005, Damien Mascord <tusker@tusker.org> All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following
+ * conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with the distribution. Neither the name of the <ORGANIZATION>
+ * nor the names of its contributors may be used to endorse or promote products derived from this software without specific
+ * prior written permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF
+ * ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ */
+
+package regexbench;
+
+import java.util.Arrays;
+
+import regexbench.preg.PregPattern;
+import regexbench.preg.PregTranslator;
+
+/**
+ * The pattern and input matrix shared by regtest and the JMH benchmarks, so that
+ * every runner measures exactly the same cells.
+ */
+public final class Corpus
+{
+    /**
+     * The patterns as PHP code passes them to preg_match(), the same strings as in
+     * php/index.php. RE is translated from these, so the Java and PHP runs always
+     * measure the same expressions.
+     */
+    public static final String[] PREG = {"#^(([^:]+)://)?([^:/]+)(:([0-9]+))?(/.*)#", // URL match
+        "#(([^:]+)://)?([^:/]+)(:([0-9]+))?(/.*)#", // URL match without starting ^
+        "#usd [+-]?[0-9]+.[0-9][0-9]#", // Canonical US dollar amount
+        "#\\b(\\w+)(\\s+\\1)+\\b#", // Duplicate words
+        "#\\{(\\d+):(([^}](?!-} ))*)#", // this is meant to match against the "some more text and ..." but it causes ORO Matcher
+    								  // to fail, so we won't include this by default... it is also WAY too slow to test
+                                      // we will test large string 10 times
+    };
+
+    /** The preg_replace() replacement for each PREG pattern, see PregFunctionComparison. */
+    public static final String[] PREG_REPLACEMENT = {"$3$6", // host and path of the URL
+        "$3$6", // the same without ^
+        "[$0]", // the dollar amount, bracketed
+        "$1", // one of the duplicate words
+        "{${1}}", // the number alone
+    };
+
+    /**
+     * PREG in the Perl 5 syntax every engine takes, what regtest has always
+     * compiled: the bodies of the PREG patterns as they are. That is exact for
+     * java.util.regex too without the (?d) PregTranslator adds, since the patterns
+     * have no modifiers or escapes to translate and STR has no line terminator
+     * but \n.
+     */
+    public static final String[] RE = bodies();
+
+    public static final String[] STR = {
+        "http://www.linux.com/",
+        "http://www.thelinuxshow.com/main.php3",
+        "usd 1234.00",
+        "he said she said he said no",
+        "same same same",
+        "{1:\n" + "this is some more text - and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more\n"
+            + "this is some more text and some more and some more and even more at the end\n" + "-}\n", // very large bit of text...
+
+    };
+
+    public static final boolean[][] EXPECTED_MATCH = new boolean[RE.length][STR.length];
+
+    static
+    {
+        EXPECTED_MATCH[0][0] = true;
+        EXPECTED_MATCH[0][1] = true;
+        EXPECTED_MATCH[0][2] = false;
+        EXPECTED_MATCH[0][3] = false;
+        EXPECTED_MATCH[0][4] = false;
+        EXPECTED_MATCH[0][5] = false;
+        EXPECTED_MATCH[1][0] = true;
+        EXPECTED_MATCH[1][1] = true;
+        EXPECTED_MATCH[1][2] = false;
+        EXPECTED_MATCH[1][3] = false;
+        EXPECTED_MATCH[1][4] = false;
+        EXPECTED_MATCH[1][5] = false;
+        EXPECTED_MATCH[2][0] = false;
+        EXPECTED_MATCH[2][1] = false;
+        EXPECTED_MATCH[2][2] = true;
+        EXPECTED_MATCH[2][3] = false;
+        EXPECTED_MATCH[2][4] = false;
+        EXPECTED_MATCH[2][5] = false;
+        EXPECTED_MATCH[3][0] = false;
+        EXPECTED_MATCH[3][1] = false;
+        EXPECTED_MATCH[3][2] = false;
+        EXPECTED_MATCH[3][3] = false;
+        EXPECTED_MATCH[3][4] = true;
+        EXPECTED_MATCH[3][5] = false;
+        EXPECTED_MATCH[4][0] = false;
+        EXPECTED_MATCH[4][1] = false;
+        EXPECTED_MATCH[4][2] = false;
+        EXPECTED_MATCH[4][3] = false;
+        EXPECTED_MATCH[4][4] = false;
+        EXPECTED_MATCH[4][5] = false;
+    }
+
+    /**
+     * The patterns engine is measured with: PREG itself for engines that take preg
+     * patterns (RegexDialect.PREG), RE for the rest. Every mode that runs the
+     * matrix gets its patterns here.
+     */
+    public static String[] patternsFor(RegexEngine engine)
+    {
+        return engine.getDialect() == RegexDialect.PREG ? PREG : RE;
+    }
+
+    /**
+     * PREG translated for the given dialect through PregTranslator. Patterns the
+     * dialect cannot express are null.
+     */
+    public static String[] translate(RegexDialect dialect)
+    {
+        String[] patterns = new String[PREG.length];
+        for (int re = 0; re < PREG.length; re++)
+        {
+            patterns[re] = PregTranslator.translate(PREG[re], dialect).getPattern();
+        }
+        return patterns;
+    }
+
+    private static String[] bodies()
+    {
+        String[] patterns = new String[PREG.length];
+        for (int re = 0; re < PREG.length; re++)
+        {
+            PregPattern pattern = PregPattern.parse(PREG[re]);
+            if (pattern.getFlags() != 0)
+            {
+                throw new IllegalStateException(PREG[re] + " has modifiers, RE would have to be translated");
+            }
+            patterns[re] = pattern.getBody();
+        }
+        return patterns;
+    }
+
+    /**
+     * STR followed by the lines of the large input: mostly text none of the
+     * patterns matches, the common case in real traffic.
+     */
+    public static String[] traffic()
+    {
+        String[] lines = STR[STR.length - 1].split("\n");
+        String[] traffic = Arrays.copyOf(STR, STR.length + lines.length);
+        System.arraycopy(lines, 0, traffic, STR.length, lines.length);
+        return traffic;
+    }
+
+    private Corpus()
+    {
+    }
+}
@@ -0,0 +1,253 @@
+package regexbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulk scanning mode ("regtest scan [file...]"): every engine and Corpus.RE pattern
+ * runs as a parallel grep over memory-mapped files. The files are cut into
+ * line-aligned chunks (see MappedCorpus) that a fork/join pool spreads over all
+ * cores; every line is searched with the engine's find(), as grep does, as a
+ * ByteCharSequence over the mapping, so the input is never copied unless the
+ * engine asks for a String. Engines that can only test whole inputs fail the
+ * probe with an UnsupportedOperationException and are not scanned.
+ *
+ * Reported per engine and pattern: throughput in GB/s, lines and matching lines,
+ * and COPIED, the share of the scanned bytes the engine turned into Strings. The
+ * matching lines are checked against the reference engine's
+ * (regtest.scan.reference, default java.util.regex.Pattern) wherever both scans
+ * covered the whole corpus, so a fast but wrong engine shows up as WRONG. A
+ * pattern compiles once per worker thread, since most engines' compiled patterns
+ * are not thread-safe (see "regtest scaling").
+ *
+ * Without file arguments a temporary file of regtest.scan.size MB (default 64)
+ * is generated from Corpus.STR. Other system properties: regtest.threads (pool
+ * size, default: available processors), regtest.scan.chunk (KB per chunk,
+ * default 1024) and regtest.scan.maxMillis (default 10000): a scan that takes
+ * longer stops and reports the throughput of what it scanned. Patterns that fail
+ * or exceed the MatchBudget on any Corpus.STR input are not scanned. A first pass
+ * over the corpus, cut off after regtest.warmup ms, warms up the engine and the
+ * page cache.
+ */
+public final class CorpusScan
+{
+    private final int threads = Integer.getInteger("regtest.threads", Runtime.getRuntime().availableProcessors()).intValue();
+    private final long sizeMegabytes = Long.getLong("regtest.scan.size", 64).longValue();
+    private final int chunkKilobytes = Integer.getInteger("regtest.scan.chunk", 1024).intValue();
+    private final long maxMillis = Long.getLong("regtest.scan.maxMillis", 10000).longValue();
+    private final long warmupMillis = Long.getLong("regtest.warmup", 500).longValue();
+    private final String referenceName = System.getProperty("regtest.scan.reference", "java.util.regex.Pattern");
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    private final Report report;
+
+    public CorpusScan(Report report)
+    {
+        this.report = report;
+    }
+
+    public void run(List<RegexEngine> engines, List<File> files) throws IOException
+    {
+        if (files.isEmpty())
+        {
+            System.err.println("Generating a " + sizeMegabytes + " MB corpus...");
+            files = java.util.Collections.singletonList(MappedCorpus.generate(sizeMegabytes * 1024 * 1024));
+        }
+        MappedCorpus corpus = MappedCorpus.map(files, chunkKilobytes * 1024);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+        {
+            RegexEngine reference = RegexEngines.find(referenceName);
+            if (reference == null)
+            {
+                throw new IllegalStateException("reference engine " + referenceName + " not found");
+            }
+            // matching lines per pattern, -1 where the reference did not scan the whole corpus
+            long[] expected = new long[Corpus.RE.length];
+            System.err.println("Scanning with the reference, " + referenceName + "...");
+            for (int re = 0; re < Corpus.RE.length; re++)
+            {
+                Result r = scan(reference, Corpus.patternsFor(reference)[re], corpus, pool, maxMillis);
+                expected[re] = r.complete && r.firstFailure.get() == null ? r.matched.sum() : -1;
+            }
+            for (RegexEngine engine : engines)
+            {
+                System.err.println("Scanning with " + engine.getName() + "...");
+                run(engine, corpus, files, pool, expected);
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    private void run(RegexEngine engine, MappedCorpus corpus, List<File> files, ForkJoinPool pool, long[] expected)
+    {
+        report.begin("Corpus scan with regular expression library", engine.getName(), 8);
+        report.caption(files.size() + " file(s), " + Report.format(corpus.getBytes() / 1e6) + " MB in " + corpus.getChunks().size()
+            + " chunks, " + threads + " threads");
+        report.header("RE", "GB/S", "MB SCANNED", "LINES", "MATCHED", "COPIED", "STATUS");
+        String[] patterns = Corpus.patternsFor(engine);
+        for (int re = 0; re < patterns.length; re++)
+        {
+            String pattern = patterns[re];
+            // a pattern that fails or runs away on Corpus.STR would do the same to the pool's workers
+            MatchBudget.Outcome outcome = null;
+            for (int str = 0; str < Corpus.STR.length && (outcome == null || outcome.isCompleted()); str++)
+            {
+                outcome = budget.probeFind(engine, pattern, Corpus.STR[str]);
+            }
+            if (!outcome.isCompleted())
+            {
+                report.row(pattern, "-", "-", "-", "-", "-", outcome.describe());
+                continue;
+            }
+            scan(engine, pattern, corpus, pool, warmupMillis);
+            Result r = scan(engine, pattern, corpus, pool, maxMillis);
+            String status = r.complete ? "ok" : "stopped after " + maxMillis + " ms";
+            if (r.firstFailure.get() != null)
+            {
+                status += ", " + r.failures.sum() + " lines failed (" + r.firstFailure.get().getClass().getName() + ")";
+            }
+            else if (r.complete && expected[re] >= 0 && r.matched.sum() != expected[re])
+            {
+                status = "WRONG: " + expected[re] + " lines matched by " + referenceName;
+            }
+            else if (r.complete && expected[re] < 0)
+            {
+                status += ", not checked: " + referenceName + " did not scan the whole corpus";
+            }
+            long scanned = r.scannedBytes.sum();
+            report.row(pattern, Report.format(r.nanos > 0 ? (double) scanned / r.nanos : 0), Report.format(scanned / 1e6),
+                Long.valueOf(r.lines.sum()), Long.valueOf(r.matched.sum()),
+                scanned > 0 ? Report.format(100.0 * r.copiedChars.sum() / scanned) + "%" : "-", status);
+        }
+        report.end("GB/S: scanned bytes per second of wall time (10^9 bytes). COPIED: bytes the engine copied into Strings"
+            + " to match them, as a share of the bytes scanned.");
+    }
+
+    private Result scan(final RegexEngine engine, final String pattern, MappedCorpus corpus, ForkJoinPool pool, long millis)
+    {
+        final Result result = new Result();
+        ThreadLocal<CompiledRegex> regexes = new ThreadLocal<CompiledRegex>()
+        {
+            protected CompiledRegex initialValue()
+            {
+                try
+                {
+                    return engine.compile(pattern);
+                }
+                catch (Exception e)
+                {
+                    throw new IllegalStateException("compiled once, but not in " + Thread.currentThread().getName(), e);
+                }
+            }
+        };
+        long start = System.nanoTime();
+        long deadline = start + millis * 1000000L;
+        pool.invoke(new ScanTask(corpus.getChunks(), 0, corpus.getChunks().size(), regexes, deadline, result));
+        result.nanos = System.nanoTime() - start;
+        result.complete = result.scannedBytes.sum() == corpus.getBytes();
+        return result;
+    }
+
+    /** Scans chunks [from, to), splitting the range until single chunks remain. */
+    private static final class ScanTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<MappedCorpus.Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final ThreadLocal<CompiledRegex> regexes;
+        private final long deadline;
+        private final Result result;
+
+        ScanTask(List<MappedCorpus.Chunk> chunks, int from, int to, ThreadLocal<CompiledRegex> regexes, long deadline,
+            Result result)
+        {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.regexes = regexes;
+            this.deadline = deadline;
+            this.result = result;
+        }
+
+        protected void compute()
+        {
+            if (to - from > 1)
+            {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ScanTask(chunks, from, middle, regexes, deadline, result), new ScanTask(chunks, middle, to,
+                    regexes, deadline, result));
+                return;
+            }
+            if (from == to || System.nanoTime() > deadline)
+            {
+                return;
+            }
+            scan(chunks.get(from));
+        }
+
+        private void scan(MappedCorpus.Chunk chunk)
+        {
+            CompiledRegex regex = regexes.get();
+            ByteBuffer buffer = chunk.buffer;
+            long lines = 0;
+            long matched = 0;
+            long failures = 0;
+            int pos = chunk.start;
+            while (pos < chunk.end)
+            {
+                if ((lines & 0xFF) == 0 && System.nanoTime() > deadline)
+                {
+                    break;
+                }
+                int eol = pos;
+                while (eol < chunk.end && buffer.get(eol) != '\n')
+                {
+                    eol++;
+                }
+                int lineEnd = eol > pos && buffer.get(eol - 1) == '\r' ? eol - 1 : eol;
+                try
+                {
+                    if (regex.find(new ByteCharSequence(buffer, pos, lineEnd - pos, result.copiedChars)))
+                    {
+                        matched++;
+                    }
+                }
+                catch (Throwable e)
+                {
+                    failures++;
+                    result.firstFailure.compareAndSet(null, e);
+                }
+                lines++;
+                pos = eol + 1;
+            }
+            result.lines.add(lines);
+            result.matched.add(matched);
+            result.failures.add(failures);
+            result.scannedBytes.add(Math.min(pos, chunk.end) - chunk.start);
+        }
+    }
+
+    private static final class Result
+    {
+        final LongAdder scannedBytes = new LongAdder();
+        final LongAdder lines = new LongAdder();
+        final LongAdder matched = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder copiedChars = new LongAdder();
+        final AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+        long nanos;
+        boolean complete;
+    }
+}
@@ -0,0 +1,409 @@
+package regexbench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collector mode ("regtest gc"): every engine's Corpus.RE x Corpus.STR matrix
+ * once per garbage collector and heap size, each in a JVM of its own, so that
+ * an engine that allocates on every match is ranked under the collector it will
+ * run with in production rather than under whatever the default happens to be.
+ *
+ * Collectors are regtest.gc.collectors, name=JVM flags entries separated by ;
+ * (default G1, Parallel, ZGC and Epsilon), heap sizes regtest.gc.heaps, comma
+ * separated -Xmx values (default 512m, also used as -Xms). Every combination
+ * runs every engine in a forked JVM with the parent's own JVM options, minus its
+ * heap and collector flags. The child measures each cell with the default run's
+ * CellLoop, but shorter: regtest.gc.warmupMillis and
+ * regtest.gc.cellMillis (defaults 200 each) become its regtest.steady.warmupMillis
+ * and regtest.cellMillis. It writes one line per cell as soon as the cell is
+ * done, so a child that dies halfway still reports what it measured; one that
+ * runs longer than regtest.gc.timeoutMillis (default 600000) is killed and
+ * reported as timed out with the cells it finished.
+ *
+ * Epsilon never collects: an engine that allocates while matching fills the
+ * heap and dies with an OutOfMemoryError, and one that gets through its whole
+ * matrix, with no bytes allocated per match, is allocation-free beyond doubt.
+ * A collector the JVM does not have is reported, not fatal.
+ *
+ * Throughput and latency percentiles are geometric means over the cells an
+ * engine could time, so that the large input does not drown out the rest.
+ * "regtest gc name" runs just the child part for the engine called name, in
+ * the current JVM, and writes its cells to stdout.
+ */
+public final class GcMatrix
+{
+    private static final String DEFAULT_COLLECTORS = "G1=-XX:+UseG1GC;Parallel=-XX:+UseParallelGC;ZGC=-XX:+UseZGC;"
+        + "Epsilon=-XX:+UnlockExperimentalVMOptions -XX:+UseEpsilonGC";
+
+    private final String collectors = System.getProperty("regtest.gc.collectors", DEFAULT_COLLECTORS);
+    private final String heaps = System.getProperty("regtest.gc.heaps", "512m");
+    private final long warmupMillis = Long.getLong("regtest.gc.warmupMillis", 200).longValue();
+    private final long cellMillis = Long.getLong("regtest.gc.cellMillis", 200).longValue();
+    private final long timeoutMillis = Long.getLong("regtest.gc.timeoutMillis", 600000).longValue();
+
+    private final Report report;
+
+    public GcMatrix(Report report)
+    {
+        this.report = report;
+    }
+
+    /** One collector and heap size: the JVM flags of a child. */
+    private static final class Setting
+    {
+        final String collector;
+        final String heap;
+        final List<String> flags;
+
+        Setting(String collector, String heap, List<String> flags)
+        {
+            this.collector = collector;
+            this.heap = heap;
+            this.flags = flags;
+        }
+    }
+
+    /** What one child reported: its cells, and how it ended. */
+    private static final class Run
+    {
+        final List<String[]> cells = new ArrayList<String[]>();
+        long heapGrowth = -1;
+        long collections = -1;
+        int exitCode;
+        boolean exhausted;
+        boolean timedOut;
+        String lastLine;
+
+        double rate = Double.NaN;
+    }
+
+    // the columns of a cell line
+    private static final int STATUS = 2;
+    private static final int MATCHES = 3;
+    private static final int NANOS = 4;
+    private static final int P50 = 5;
+    private static final int P99 = 6;
+    private static final int P999 = 7;
+    private static final int BYTES = 8;
+    private static final int GC_MILLIS = 9;
+    private static final int GC_COUNT = 10;
+
+    public void run(List<RegexEngine> engines) throws IOException, InterruptedException
+    {
+        List<Setting> settings = settings();
+        Run[][] runs = new Run[engines.size()][settings.size()];
+        for (int e = 0; e < engines.size(); e++)
+        {
+            RegexEngine engine = engines.get(e);
+            report.begin("Garbage collectors for regular expression library", engine.getName(), 15);
+            report.caption("Forked JVM per collector and heap, " + warmupMillis + " ms warm-up and " + cellMillis
+                + " ms per cell at most");
+            report.header("COLLECTOR", "HEAP", "CELLS", "MATCHES/S", "VS FIRST", "P50 US", "P99 US", "P99.9 US", "ALLOC MB/S",
+                "B/MATCH", "GC PAUSES", "GC MS", "HEAP MB", "ALLOC-FREE", "STATUS");
+            for (int s = 0; s < settings.size(); s++)
+            {
+                Setting setting = settings.get(s);
+                System.err.println("Running " + engine.getName() + " under " + setting.collector + ", " + setting.heap + "...");
+                runs[e][s] = fork(engine, setting);
+                row(setting, runs[e][s], runs[e][0]);
+            }
+            report.end("MATCHES/S, P50, P99 and P99.9 are geometric means over the timed cells; VS FIRST is MATCHES/S relative to"
+                + " the first row. ALLOC MB/S and B/MATCH count measured matches only, GC PAUSES and GC MS whole cells, warm-up"
+                + " included. HEAP MB is the growth of the heap over the whole child, shown when nothing was collected (always"
+                + " under Epsilon), where it is everything the child allocated. ALLOC-FREE: no byte allocated by any measured match, and under"
+                + " Epsilon the whole matrix run without running out of heap.");
+        }
+        ranking(engines, settings, runs);
+    }
+
+    private void row(Setting setting, Run run, Run first)
+    {
+        List<String[]> timed = new ArrayList<String[]>();
+        int wrong = 0;
+        for (String[] cell : run.cells)
+        {
+            if (Long.parseLong(cell[MATCHES]) > 0)
+            {
+                timed.add(cell);
+            }
+            if (cell[STATUS].equals("WRONG"))
+            {
+                wrong++;
+            }
+        }
+        if (timed.isEmpty())
+        {
+            report.row(setting.collector, setting.heap, "0", "-", "-", "-", "-", "-", "-", "-", "-", "-", "-", "-", status(run,
+                wrong));
+            return;
+        }
+        long matches = 0;
+        long nanos = 0;
+        long bytes = 0;
+        long gcCount = 0;
+        long gcMillis = 0;
+        double[] logs = new double[4];
+        for (String[] cell : timed)
+        {
+            long n = Long.parseLong(cell[MATCHES]);
+            long total = Long.parseLong(cell[NANOS]);
+            matches += n;
+            nanos += total;
+            long allocated = Long.parseLong(cell[BYTES]);
+            bytes = bytes < 0 || allocated < 0 ? -1 : bytes + allocated;
+            gcCount += Long.parseLong(cell[GC_COUNT]);
+            gcMillis += Long.parseLong(cell[GC_MILLIS]);
+            logs[0] += Math.log(n * 1e9 / Math.max(1, total));
+            logs[1] += Math.log(Math.max(1, Long.parseLong(cell[P50])));
+            logs[2] += Math.log(Math.max(1, Long.parseLong(cell[P99])));
+            logs[3] += Math.log(Math.max(1, Long.parseLong(cell[P999])));
+        }
+        run.rate = Math.exp(logs[0] / timed.size());
+        String allocationFree;
+        if (bytes < 0)
+        {
+            allocationFree = "?";
+        }
+        else if (bytes > 0)
+        {
+            // a lazily built DFA state or a deoptimization shows up as a few bytes in total, far from 0.000 per match
+            allocationFree = "no, " + bytes + " bytes";
+        }
+        else
+        {
+            allocationFree = !run.exhausted && !run.timedOut && run.exitCode == 0 ? "yes" : "no";
+        }
+        report.row(setting.collector, setting.heap, Integer.toString(timed.size()), Report.format(run.rate), Double.isNaN(first.rate)
+            ? "-" : Report.format(run.rate / first.rate), micros(Math.exp(logs[1] / timed.size())), micros(Math.exp(logs[2]
+            / timed.size())), micros(Math.exp(logs[3] / timed.size())), bytes < 0 ? "-" : Report.format(bytes / 1048576.0
+            / (nanos / 1e9)), bytes < 0 ? "-" : Report.format((double) bytes / matches), Long.toString(gcCount), Long.toString(
+            gcMillis), run.collections == 0 ? Report.format(run.heapGrowth / 1048576.0) : "-", allocationFree, status(run, wrong));
+    }
+
+    private String status(Run run, int wrong)
+    {
+        String status = wrong == 0 ? "ok" : wrong + " wrong";
+        if (run.timedOut)
+        {
+            return status + ", timed out after " + timeoutMillis + " ms and " + run.cells.size() + " cells";
+        }
+        if (run.exhausted)
+        {
+            return status + ", heap exhausted after " + run.cells.size() + " cells";
+        }
+        if (run.exitCode != 0)
+        {
+            // typically a collector this JVM does not have: "Unrecognized VM option 'UseZGC'"
+            return "exit code " + run.exitCode + (run.lastLine == null ? "" : ": " + run.lastLine);
+        }
+        return status;
+    }
+
+    /** Every engine's place under every setting, by MATCHES/S. */
+    private void ranking(List<RegexEngine> engines, List<Setting> settings, Run[][] runs)
+    {
+        String[] header = new String[settings.size() + 1];
+        header[0] = "ENGINE";
+        for (int s = 0; s < settings.size(); s++)
+        {
+            header[s + 1] = settings.get(s).collector + " " + settings.get(s).heap;
+        }
+        report.begin("Garbage collectors", "engine ranking", header.length);
+        report.header(header);
+        for (int e = 0; e < engines.size(); e++)
+        {
+            Object[] row = new Object[header.length];
+            row[0] = engines.get(e).getName();
+            for (int s = 0; s < settings.size(); s++)
+            {
+                double rate = runs[e][s].rate;
+                if (Double.isNaN(rate))
+                {
+                    row[s + 1] = "-";
+                    continue;
+                }
+                int place = 1;
+                for (int other = 0; other < engines.size(); other++)
+                {
+                    if (runs[other][s].rate > rate)
+                    {
+                        place++;
+                    }
+                }
+                row[s + 1] = "#" + place + " (" + Report.format(rate) + "/s)";
+            }
+            report.row(row);
+        }
+        report.end("Place by geometric mean MATCHES/S over each engine's own timed cells.");
+    }
+
+    private List<Setting> settings()
+    {
+        List<Setting> settings = new ArrayList<Setting>();
+        for (String entry : collectors.split(";"))
+        {
+            int eq = entry.indexOf('=');
+            if (eq < 0)
+            {
+                throw new IllegalArgumentException("regtest.gc.collectors: expected name=flags, got " + entry);
+            }
+            List<String> flags = ChildJvm.split(entry.substring(eq + 1));
+            for (String heap : heaps.split(","))
+            {
+                settings.add(new Setting(entry.substring(0, eq).trim(), heap.trim(), flags));
+            }
+        }
+        return settings;
+    }
+
+    private Run fork(RegexEngine engine, Setting setting) throws IOException, InterruptedException
+    {
+        File out = File.createTempFile("regtest-gc", ".tsv");
+        try
+        {
+            // the parent's options, but the setting's heap and collector
+            List<String> options = new ArrayList<String>(setting.flags);
+            options.add("-Xms" + setting.heap);
+            options.add("-Xmx" + setting.heap);
+            options.add("-Dregtest.steady.warmupMillis=" + warmupMillis);
+            options.add("-Dregtest.cellMillis=" + cellMillis);
+            options.add("-Dregtest.gc.out=" + out.getPath());
+            List<String> command = ChildJvm.command(options, "gc", engine.getName());
+
+            final Run run = new Run();
+            final Process child = new ProcessBuilder(command).redirectErrorStream(true).start();
+            child.getOutputStream().close();
+            // the output is read on a thread of its own, so that this one can kill a child that hangs
+            Thread reader = new Thread("gc child reader")
+            {
+                public void run()
+                {
+                    echo(child.getInputStream(), run);
+                }
+            };
+            reader.start();
+            run.timedOut = !child.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (run.timedOut)
+            {
+                child.destroyForcibly().waitFor();
+            }
+            reader.join();
+            run.exitCode = child.exitValue();
+            for (String line : Files.readAllLines(out.toPath(), StandardCharsets.UTF_8))
+            {
+                String[] fields = line.split("\t");
+                if (fields[0].equals("heap"))
+                {
+                    run.heapGrowth = Long.parseLong(fields[1]);
+                    run.collections = Long.parseLong(fields[2]);
+                }
+                else
+                {
+                    run.cells.add(fields);
+                }
+            }
+            return run;
+        }
+        finally
+        {
+            out.delete();
+        }
+    }
+
+    /** Copies a child's output to stderr, noting whether it ran out of heap and its last line. */
+    private static void echo(InputStream stream, Run run)
+    {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                System.err.println("  " + line);
+                run.exhausted |= line.contains("OutOfMemoryError");
+                if (!line.trim().isEmpty())
+                {
+                    run.lastLine = line.trim();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // the child was killed, or closed its output; its exit code tells the rest
+        }
+    }
+
+    /**
+     * The child side: measures engine's matrix in this JVM and writes a line
+     * per cell to regtest.gc.out, or to stdout without it: pattern and input
+     * index, status, measured matches, their summed, median, 99th and 99.9th
+     * percentile nanoseconds, bytes allocated (-1 if unknown), GC milliseconds
+     * and pauses. A last line has the heap growth and number of collections.
+     */
+    public void runChild(RegexEngine engine) throws IOException
+    {
+        String path = System.getProperty("regtest.gc.out");
+        OutputStream stream = path == null ? System.out : new FileOutputStream(path);
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        try
+        {
+            long heapStart = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            long collectionsStart = collections();
+            CellLoop.run(engine, Corpus.patternsFor(engine), false, -1, -1, new CellLoop.Sink()
+            {
+                public void cell(CellLoop.Cell cell)
+                {
+                    LatencyHistogram wall = cell.getRecorder().getWall();
+                    SteadyState steady = cell.getSteady();
+                    out.println(cell.getRe() + "\t" + cell.getStr() + "\t" + cell.getStatus().replace('\t', ' ') + "\t"
+                        + wall.getTotalCount() + "\t" + (long) wall.getTotal() + "\t" + wall.getValueAtPercentile(50) + "\t"
+                        + wall.getValueAtPercentile(99) + "\t" + wall.getValueAtPercentile(99.9) + "\t" + (LatencyRecorder
+                        .isAllocationSupported() ? cell.getRecorder().getAllocatedBytes() : -1) + "\t" + (steady == null ? 0
+                        : steady.getGcMillis()) + "\t" + (steady == null ? 0 : steady.getGcCount()));
+                    // a later cell may run out of heap, under Epsilon for good
+                    out.flush();
+                }
+            });
+            out.println("heap\t" + (ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() - heapStart) + "\t"
+                + (collections() - collectionsStart));
+        }
+        finally
+        {
+            out.flush();
+            if (path != null)
+            {
+                out.close();
+            }
+        }
+    }
+
+    /** Collections of every kind, concurrent cycles included, unlike SteadyState's pauses. */
+    private static long collections()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static String micros(double nanos)
+    {
+        return Report.format(nanos / 1e3);
+    }
+}
@@ -0,0 +1,89 @@
+package regexbench;
+
+import regexbench.hybrid.HybridPattern;
+
+/**
+ * Hybrid check mode ("regtest hybrid"): a table of java.util.regex patterns and
+ * inputs on which regexbench.hybrid once went wrong, each searched by both and
+ * the answers compared. It covers the backtracking path: backreferences inside
+ * their own group, groups reached again through a backreference while being
+ * relaxed, and lookaround captures read by a later backreference.
+ *
+ * Both engines search within the MatchBudget. A pattern regexbench.hybrid
+ * rejects is reported as unsupported and a match it gives up on as failed;
+ * neither counts as wrong.
+ */
+public final class HybridCheck
+{
+    /** Pattern and input. */
+    private static final String[][] CASES = {
+        // a backreference inside its own group sees the previous capture; this one ran out of memory
+        {"(?:[^:/]*?(\\B\\1|$)*?)+x", ".bxx1b .x.\n"},
+        {"(?:[^:/]*?(\\B\\1|$)*?)+x", "x\n"},
+        {"(a|b\\1)+c", "abac"},
+        {"(a|b\\1)+c", "abbc"},
+        {"(a\\1?){3}", "aaaaaa"},
+        // the relaxed form of a group that refers to itself through another one
+        {"((\\1\\2?))\\2", "aa"},
+        // lazy quantifiers are matched as greedy ones, which only a lookaround capture could tell
+        {"^(?=(a+?)+b)\\1ab", "aab"},
+        {"(?=(a+?)+)\\1a+", "aab"},
+        {"(?!(a+?)x)\\1", "aa"},
+        {"(?=(a+?)\\1)", "aa"},
+        {"(a+?)\\1b", "aaaab"},
+        {"\\b(\\w+)(\\s+\\1)+\\b", "the the cat"},
+    };
+
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    private final Report report;
+
+    public HybridCheck(Report report)
+    {
+        this.report = report;
+    }
+
+    /** Runs the table; returns the number of wrong answers. */
+    public int run()
+    {
+        RegexEngine java = RegexEngines.find("java.util.regex.Pattern");
+        RegexEngine hybrid = RegexEngines.find("regexbench.hybrid");
+        report.begin("regexbench.hybrid checked against", java.getName(), 6);
+        report.header("PATTERN", "INPUT", "JAVA", "HYBRID", "MATCHED BY", "STATUS");
+        int wrong = 0;
+        for (String[] c : CASES)
+        {
+            MatchBudget.Outcome expected = budget.probeFind(java, c[0], c[1]);
+            String how = "-";
+            String actual = "-";
+            String status;
+            try
+            {
+                how = HybridPattern.compile(c[0]).toString();
+                MatchBudget.Outcome outcome = budget.probeFind(hybrid, c[0], c[1]);
+                if (!outcome.isCompleted())
+                {
+                    status = outcome.describe();
+                }
+                else
+                {
+                    actual = Boolean.toString(outcome.getResult());
+                    status = !expected.isCompleted() ? "java.util.regex " + expected.describe()
+                        : outcome.getResult() == expected.getResult() ? "ok" : "WRONG";
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                status = "unsupported: " + e.getMessage();
+            }
+            if (status.equals("WRONG"))
+            {
+                wrong++;
+            }
+            report.row(c[0], c[1].replace("\n", "\\n"), expected.isCompleted() ? Boolean.toString(expected.getResult()) : "-",
+                actual, how, status);
+        }
+        report.end(wrong + " wrong of " + CASES.length + ".");
+        return wrong;
+    }
+}
@@ -0,0 +1,387 @@
+package regexbench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Isolated mode ("regtest isolated"): the default matrix, but with every engine
+ * in a JVM of its own, so that no engine runs with call sites made megamorphic
+ * or a heap filled by the engines before it. regtest.isolate.unit chooses how
+ * much one child JVM runs: engine (default), pattern (one engine, one pattern,
+ * all inputs) or cell (a single pattern and input). Children get this JVM's
+ * options followed by regtest.isolate.jvmArgs, whitespace separated.
+ *
+ * A child measures its cells with the default run's CellLoop (SteadyState and
+ * the MatchBudget) and streams each cell back as soon as it is done over its
+ * stdout pipe, in a compact binary record (see Cell); whatever the engine
+ * prints goes to stderr instead. A child that crashes or runs longer than
+ * regtest.isolate.timeoutMillis (default 600000, then it is killed) keeps the
+ * cells it sent; the rest of its cells are reported with the crash or timeout
+ * rather than ending the run.
+ *
+ * "regtest isolated name [re [str]]" is the child side, for the engine called
+ * name and optionally one pattern or cell; it writes the binary records to
+ * stdout.
+ */
+public final class IsolationRunner
+{
+    /** "RGX" and a protocol version, first on every child's stdout. */
+    private static final int MAGIC = 0x52475801;
+    private static final int CELL = 1;
+    private static final int END = 0;
+
+    private final String unit = System.getProperty("regtest.isolate.unit", "engine");
+    private final List<String> jvmArgs = ChildJvm.split(System.getProperty("regtest.isolate.jvmArgs"));
+    private final long timeoutMillis = Long.getLong("regtest.isolate.timeoutMillis", 600000).longValue();
+
+    private final Report report;
+
+    public IsolationRunner(Report report)
+    {
+        this.report = report;
+    }
+
+    /** One measured cell, as a child sends it. */
+    static final class Cell
+    {
+        int re;
+        int str;
+        String status;
+        boolean correct;
+        long count;
+        long totalNanos;
+        long min;
+        long max;
+        long p50;
+        long p99;
+        long p999;
+        long allocatedBytes;
+        long warmupMatches;
+        long jitMillis;
+        long gcMillis;
+        double ciWidth;
+        String sampling;
+
+        void write(DataOutputStream out) throws IOException
+        {
+            out.writeByte(CELL);
+            out.writeShort(re);
+            out.writeShort(str);
+            out.writeUTF(status);
+            out.writeBoolean(correct);
+            out.writeLong(count);
+            out.writeLong(totalNanos);
+            out.writeLong(min);
+            out.writeLong(max);
+            out.writeLong(p50);
+            out.writeLong(p99);
+            out.writeLong(p999);
+            out.writeLong(allocatedBytes);
+            out.writeLong(warmupMatches);
+            out.writeLong(jitMillis);
+            out.writeLong(gcMillis);
+            out.writeDouble(ciWidth);
+            out.writeUTF(sampling);
+        }
+
+        /** Reads the fields after the CELL tag. */
+        static Cell read(DataInputStream in) throws IOException
+        {
+            Cell cell = new Cell();
+            cell.re = in.readShort();
+            cell.str = in.readShort();
+            cell.status = in.readUTF();
+            cell.correct = in.readBoolean();
+            cell.count = in.readLong();
+            cell.totalNanos = in.readLong();
+            cell.min = in.readLong();
+            cell.max = in.readLong();
+            cell.p50 = in.readLong();
+            cell.p99 = in.readLong();
+            cell.p999 = in.readLong();
+            cell.allocatedBytes = in.readLong();
+            cell.warmupMatches = in.readLong();
+            cell.jitMillis = in.readLong();
+            cell.gcMillis = in.readLong();
+            cell.ciWidth = in.readDouble();
+            cell.sampling = in.readUTF();
+            return cell;
+        }
+    }
+
+    public void run(List<RegexEngine> engines) throws IOException, InterruptedException
+    {
+        if (!unit.equals("engine") && !unit.equals("pattern") && !unit.equals("cell"))
+        {
+            throw new IllegalArgumentException("regtest.isolate.unit must be engine, pattern or cell, not " + unit);
+        }
+        List<Object[]> summary = new ArrayList<Object[]>();
+        for (RegexEngine engine : engines)
+        {
+            String[] patterns = Corpus.patternsFor(engine);
+            Cell[][] cells = new Cell[patterns.length][Corpus.STR.length];
+            String[][] failures = new String[patterns.length][Corpus.STR.length];
+            int children = 0;
+            int crashed = 0;
+            int timedOut = 0;
+            for (int[] part : parts(patterns.length))
+            {
+                List<String> args = new ArrayList<String>(Arrays.asList("isolated", engine.getName()));
+                for (int index : part)
+                {
+                    args.add(Integer.toString(index));
+                }
+                System.err.println("Testing " + engine.getName() + (part.length > 0 ? " on RE " + part[0] : "") + (part.length > 1
+                    ? ", input " + part[1] : "") + " in a JVM of its own...");
+                String failure = runChild(args, cells);
+                children++;
+                if (failure != null)
+                {
+                    if (failure.startsWith("timed out"))
+                    {
+                        timedOut++;
+                    }
+                    else
+                    {
+                        crashed++;
+                    }
+                    for (int re = 0; re < patterns.length; re++)
+                    {
+                        for (int str = 0; str < Corpus.STR.length; str++)
+                        {
+                            boolean inPart = (part.length < 1 || part[0] == re) && (part.length < 2 || part[1] == str);
+                            if (inPart && cells[re][str] == null)
+                            {
+                                failures[re][str] = failure;
+                            }
+                        }
+                    }
+                }
+            }
+            summary.add(print(engine, patterns, cells, failures, children, crashed, timedOut));
+        }
+        report.begin("Isolated JVMs", "summary", 8);
+        report.header("ENGINE", "CHILDREN", "CRASHED", "TIMED OUT", "CELLS", "WRONG", "MATCHES/S", "LOST CELLS");
+        for (Object[] row : summary)
+        {
+            report.row(row);
+        }
+        report.end("One child JVM per " + unit + ". MATCHES/S is the geometric mean over the timed cells; LOST CELLS are those"
+            + " a crashed or killed child never sent.");
+    }
+
+    /** The pattern and input indexes each child gets: none for a whole engine, re, or re and str. */
+    private List<int[]> parts(int patterns)
+    {
+        List<int[]> parts = new ArrayList<int[]>();
+        if (unit.equals("engine"))
+        {
+            parts.add(new int[0]);
+            return parts;
+        }
+        for (int re = 0; re < patterns; re++)
+        {
+            if (unit.equals("pattern"))
+            {
+                parts.add(new int[] {re});
+                continue;
+            }
+            for (int str = 0; str < Corpus.STR.length; str++)
+            {
+                parts.add(new int[] {re, str});
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Runs one child and files the cells it sends; returns null if it ended
+     * normally, otherwise how it failed.
+     */
+    private String runChild(List<String> args, final Cell[][] cells) throws IOException, InterruptedException
+    {
+        ProcessBuilder builder = new ProcessBuilder(ChildJvm.command(jvmArgs, args.toArray(new String[args.size()])));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        final Process child = builder.start();
+        child.getOutputStream().close();
+        final String[] ending = new String[1];
+        // the pipe is read on a thread of its own, so that this one can kill a child that hangs
+        Thread reader = new Thread("isolated child reader")
+        {
+            public void run()
+            {
+                ending[0] = read(child.getInputStream(), cells);
+            }
+        };
+        reader.start();
+        boolean timedOut = !child.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (timedOut)
+        {
+            child.destroyForcibly().waitFor();
+        }
+        reader.join();
+        if (timedOut)
+        {
+            return "timed out after " + timeoutMillis + " ms";
+        }
+        if (child.exitValue() != 0)
+        {
+            return "crashed: exit code " + child.exitValue();
+        }
+        return ending[0];
+    }
+
+    /** Reads a child's records into cells; returns null after an END record, otherwise what went wrong. */
+    private static String read(InputStream stream, Cell[][] cells)
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(stream)))
+        {
+            if (in.readInt() != MAGIC)
+            {
+                return "crashed: not a regtest isolated child";
+            }
+            while (true)
+            {
+                int tag = in.readByte();
+                if (tag == END)
+                {
+                    return null;
+                }
+                if (tag != CELL)
+                {
+                    return "crashed: bad record " + tag;
+                }
+                Cell cell = Cell.read(in);
+                cells[cell.re][cell.str] = cell;
+            }
+        }
+        catch (EOFException e)
+        {
+            return "crashed: output ended early";
+        }
+        catch (IOException e)
+        {
+            return "crashed: " + e;
+        }
+    }
+
+    private Object[] print(RegexEngine engine, String[] patterns, Cell[][] cells, String[][] failures, int children, int crashed,
+        int timedOut)
+    {
+        report.begin("Regular expression library in isolated JVMs", engine.getName(), 16);
+        report.caption("One JVM per " + unit + (jvmArgs.isEmpty() ? "" : ", " + String.join(" ", jvmArgs)));
+        report.header("RE", "INPUT", "N", "AVG US", "MIN US", "P50 US", "P99 US", "P99.9 US", "MAX US", "B/MATCH", "WARMUP",
+            "JIT MS", "GC MS", "CI %", "SAMPLING", "STATUS");
+        int timed = 0;
+        int wrong = 0;
+        int lost = 0;
+        double logs = 0;
+        for (int re = 0; re < patterns.length; re++)
+        {
+            for (int str = 0; str < Corpus.STR.length; str++)
+            {
+                Cell cell = cells[re][str];
+                String label = patterns[re] == null ? "-" : patterns[re];
+                if (cell == null)
+                {
+                    lost++;
+                    report.row(label, describe(Corpus.STR[str]), "-", "-", "-", "-", "-", "-", "-", "-", "-", "-", "-", "-", "-",
+                        failures[re][str] == null ? "not run" : failures[re][str]);
+                    continue;
+                }
+                if (cell.count == 0)
+                {
+                    report.row(label, describe(Corpus.STR[str]), "0", "-", "-", "-", "-", "-", "-", "-", "-", "-", "-", "-", "-",
+                        cell.status);
+                    continue;
+                }
+                timed++;
+                wrong += cell.correct ? 0 : 1;
+                logs += Math.log(cell.count * 1e9 / Math.max(1, cell.totalNanos));
+                report.row(label, describe(Corpus.STR[str]), Long.toString(cell.count), micros((double) cell.totalNanos / cell.count),
+                    micros(cell.min), micros(cell.p50), micros(cell.p99), micros(cell.p999), micros(cell.max),
+                    cell.allocatedBytes < 0 ? "-" : Report.format((double) cell.allocatedBytes / cell.count), Long.toString(
+                    cell.warmupMatches), cell.jitMillis < 0 ? "-" : Long.toString(cell.jitMillis), Long.toString(cell.gcMillis),
+                    Double.isNaN(cell.ciWidth) ? "-" : Report.format(100 * cell.ciWidth), cell.sampling, cell.correct
+                    ? cell.status : "WRONG");
+            }
+        }
+        report.end("Times in microseconds. WARMUP matches are not in the figures; JIT MS and GC MS include them. CI %: relative"
+            + " width of the 95% confidence interval of the median, see regexbench.SteadyState.");
+        return new Object[] {engine.getName(), Integer.toString(children), Integer.toString(crashed), Integer.toString(timedOut),
+            Integer.toString(timed), Integer.toString(wrong), timed == 0 ? "-" : Report.format(Math.exp(logs / timed)), Integer
+            .toString(lost)};
+    }
+
+    /**
+     * The child side: measures engine's cells, all of them or those of
+     * pattern re (re >= 0) or the single cell re, str (str >= 0), and sends
+     * them to stdout as binary records.
+     */
+    public void runChild(RegexEngine engine, int onlyRe, int onlyStr) throws IOException
+    {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        // stdout carries the records from here on, anything the engines print goes to stderr
+        System.setOut(System.err);
+        out.writeInt(MAGIC);
+        CellLoop.run(engine, Corpus.patternsFor(engine), false, onlyRe, onlyStr, new CellLoop.Sink()
+        {
+            public void cell(CellLoop.Cell cell) throws IOException
+            {
+                record(cell).write(out);
+                out.flush();
+            }
+        });
+        out.writeByte(END);
+        out.flush();
+    }
+
+    /** The record of a cell measured by CellLoop. */
+    private static Cell record(CellLoop.Cell measured)
+    {
+        LatencyRecorder recorder = measured.getRecorder();
+        SteadyState steady = measured.getSteady();
+        Cell cell = new Cell();
+        cell.re = measured.getRe();
+        cell.str = measured.getStr();
+        cell.status = measured.getFailure() == null ? "ok" : measured.getFailure();
+        cell.correct = measured.isCorrect();
+        LatencyHistogram wall = recorder.getWall();
+        cell.count = wall.getTotalCount();
+        cell.totalNanos = (long) wall.getTotal();
+        cell.min = cell.count == 0 ? 0 : wall.getMin();
+        cell.max = cell.count == 0 ? 0 : wall.getMax();
+        cell.p50 = wall.getValueAtPercentile(50);
+        cell.p99 = wall.getValueAtPercentile(99);
+        cell.p999 = wall.getValueAtPercentile(99.9);
+        cell.allocatedBytes = LatencyRecorder.isAllocationSupported() ? recorder.getAllocatedBytes() : -1;
+        cell.warmupMatches = steady == null ? 0 : steady.getWarmupMatches();
+        cell.jitMillis = steady == null ? -1 : steady.getJitMillis();
+        cell.gcMillis = steady == null ? 0 : steady.getGcMillis();
+        cell.ciWidth = steady == null ? Double.NaN : steady.getRelativeWidth();
+        cell.sampling = steady == null ? "-" : steady.describe();
+        return cell;
+    }
+
+    private static String micros(double nanos)
+    {
+        return Report.format(nanos / 1e3);
+    }
+
+    private static String describe(String input)
+    {
+        String line = input.replace("\n", "\\n");
+        return line.length() <= 30 ? line : line.substring(0, 27) + "...";
+    }
+}
@@ -0,0 +1,345 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the run history: write() takes Maps, Lists, Strings,
+ * Numbers, Booleans and null; parse() returns the same, with every number a
+ * Double. Numbers that are not finite are written as null.
+ */
+final class Json
+{
+    private Json()
+    {
+    }
+
+    static String write(Object value)
+    {
+        StringBuilder out = new StringBuilder();
+        write(value, out, "");
+        return out.append('\n').toString();
+    }
+
+    static Object parse(String text)
+    {
+        Parser p = new Parser(text);
+        Object value = p.value();
+        p.skipBlanks();
+        if (p.pos != text.length())
+        {
+            throw p.error("trailing characters");
+        }
+        return value;
+    }
+
+    /** Writes value; maps and lists of maps go one entry per line, everything else on one line. */
+    private static void write(Object value, StringBuilder out, String indent)
+    {
+        if (value instanceof Map)
+        {
+            Map<?, ?> map = (Map<?, ?>) value;
+            if (map.isEmpty())
+            {
+                out.append("{}");
+                return;
+            }
+            String inner = indent + "  ";
+            out.append("{\n");
+            boolean first = true;
+            for (Map.Entry<?, ?> e : map.entrySet())
+            {
+                if (!first)
+                {
+                    out.append(",\n");
+                }
+                first = false;
+                out.append(inner);
+                string(String.valueOf(e.getKey()), out);
+                out.append(": ");
+                write(e.getValue(), out, inner);
+            }
+            out.append('\n').append(indent).append('}');
+        }
+        else if (value instanceof List)
+        {
+            List<?> list = (List<?>) value;
+            boolean multiline = !list.isEmpty() && list.get(0) instanceof Map;
+            String inner = indent + "  ";
+            out.append('[');
+            for (int i = 0; i < list.size(); i++)
+            {
+                if (i > 0)
+                {
+                    out.append(multiline ? "," : ", ");
+                }
+                if (multiline)
+                {
+                    out.append('\n').append(inner);
+                }
+                write(list.get(i), out, inner);
+            }
+            if (multiline)
+            {
+                out.append('\n').append(indent);
+            }
+            out.append(']');
+        }
+        else if (value instanceof String)
+        {
+            string((String) value, out);
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            double d = ((Number) value).doubleValue();
+            out.append(Double.isNaN(d) || Double.isInfinite(d) ? "null" : Double.toString(d));
+        }
+        else
+        {
+            // Integer, Long, Boolean, null
+            out.append(value);
+        }
+    }
+
+    private static void string(String s, StringBuilder out)
+    {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            switch (c)
+            {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                    {
+                        out.append(String.format("\\u%04x", Integer.valueOf(c)));
+                    }
+                    else
+                    {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static final class Parser
+    {
+        private final String text;
+        int pos;
+
+        Parser(String text)
+        {
+            this.text = text;
+        }
+
+        Object value()
+        {
+            skipBlanks();
+            if (pos == text.length())
+            {
+                throw error("unexpected end");
+            }
+            char c = text.charAt(pos);
+            switch (c)
+            {
+                case '{':
+                    return object();
+                case '[':
+                    return array();
+                case '"':
+                    return string();
+                case 't':
+                    return literal("true", Boolean.TRUE);
+                case 'f':
+                    return literal("false", Boolean.FALSE);
+                case 'n':
+                    return literal("null", null);
+                default:
+                    return number();
+            }
+        }
+
+        private Map<String, Object> object()
+        {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            pos++;
+            skipBlanks();
+            if (accept('}'))
+            {
+                return map;
+            }
+            do
+            {
+                skipBlanks();
+                if (pos >= text.length() || text.charAt(pos) != '"')
+                {
+                    throw error("expected a member name");
+                }
+                String key = string();
+                skipBlanks();
+                expect(':');
+                map.put(key, value());
+                skipBlanks();
+            }
+            while (accept(','));
+            expect('}');
+            return map;
+        }
+
+        private List<Object> array()
+        {
+            List<Object> list = new ArrayList<Object>();
+            pos++;
+            skipBlanks();
+            if (accept(']'))
+            {
+                return list;
+            }
+            do
+            {
+                list.add(value());
+                skipBlanks();
+            }
+            while (accept(','));
+            expect(']');
+            return list;
+        }
+
+        private String string()
+        {
+            StringBuilder s = new StringBuilder();
+            pos++;
+            while (true)
+            {
+                if (pos >= text.length())
+                {
+                    throw error("unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"')
+                {
+                    return s.toString();
+                }
+                if (c != '\\')
+                {
+                    s.append(c);
+                    continue;
+                }
+                if (pos >= text.length())
+                {
+                    throw error("unterminated string");
+                }
+                char e = text.charAt(pos++);
+                switch (e)
+                {
+                    case 'n':
+                        s.append('\n');
+                        break;
+                    case 'r':
+                        s.append('\r');
+                        break;
+                    case 't':
+                        s.append('\t');
+                        break;
+                    case 'b':
+                        s.append('\b');
+                        break;
+                    case 'f':
+                        s.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length())
+                        {
+                            throw error("bad \\u escape");
+                        }
+                        s.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        s.append(e);
+                }
+            }
+        }
+
+        private Object literal(String word, Object value)
+        {
+            if (!text.startsWith(word, pos))
+            {
+                throw error("unexpected character");
+            }
+            pos += word.length();
+            return value;
+        }
+
+        private Double number()
+        {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+            {
+                pos++;
+            }
+            if (start == pos)
+            {
+                throw error("unexpected character");
+            }
+            try
+            {
+                return Double.valueOf(text.substring(start, pos));
+            }
+            catch (NumberFormatException e)
+            {
+                throw error("bad number");
+            }
+        }
+
+        void skipBlanks()
+        {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+            {
+                pos++;
+            }
+        }
+
+        /** Consumes c if it comes next. */
+        private boolean accept(char c)
+        {
+            if (pos < text.length() && text.charAt(pos) == c)
+            {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c)
+        {
+            if (!accept(c))
+            {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        IllegalArgumentException error(String message)
+        {
+            return new IllegalArgumentException("JSON: " + message + " at offset " + pos);
+        }
+    }
+}
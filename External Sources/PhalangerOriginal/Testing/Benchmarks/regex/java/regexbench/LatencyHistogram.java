@@ -0,0 +1,191 @@
+package regexbench;
+
+/**
+ * Fixed-size, log-bucketed histogram of nanosecond values, laid out like
+ * HdrHistogram: every power-of-two bucket is split into 128 linear sub-buckets,
+ * which keeps the relative error of every recorded value below 1%.
+ *
+ * The footprint only depends on the highest trackable value, never on the number
+ * of samples, so a cell can be measured for millions of iterations. Exact min, max,
+ * mean and standard deviation are kept alongside the buckets.
+ */
+public final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 7;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+    private static final long SUB_BUCKET_MASK = (SUB_BUCKET_HALF_COUNT << 1) - 1;
+    private static final int LEADING_ZERO_COUNT_BASE = 64 - SUB_BUCKET_HALF_COUNT_MAGNITUDE - 1;
+
+    /** One hour; longer samples are clamped into the last bucket (max stays exact). */
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 3600L * 1000 * 1000 * 1000;
+
+    private final long highestTrackableValue;
+    private final long[] counts;
+
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private double sum;
+    private double sumOfSquares;
+
+    public LatencyHistogram()
+    {
+        this(DEFAULT_HIGHEST_TRACKABLE_VALUE);
+    }
+
+    public LatencyHistogram(long highestTrackableValue)
+    {
+        if (highestTrackableValue < 2 * SUB_BUCKET_HALF_COUNT)
+        {
+            throw new IllegalArgumentException("highestTrackableValue must be >= " + (2 * SUB_BUCKET_HALF_COUNT));
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new long[countsIndex(highestTrackableValue) + 1];
+    }
+
+    public void recordValue(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+        counts[countsIndex(Math.min(value, highestTrackableValue))]++;
+        totalCount++;
+        if (value < min)
+        {
+            min = value;
+        }
+        if (value > max)
+        {
+            max = value;
+        }
+        sum += value;
+        sumOfSquares += (double) value * value;
+    }
+
+    /**
+     * Adds all samples of other, which must have the same highest trackable value.
+     */
+    public void add(LatencyHistogram other)
+    {
+        if (other.counts.length != counts.length)
+        {
+            throw new IllegalArgumentException("histograms have different ranges");
+        }
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+    }
+
+    public void reset()
+    {
+        java.util.Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+        sum = 0;
+        sumOfSquares = 0;
+    }
+
+    public long getTotalCount()
+    {
+        return totalCount;
+    }
+
+    public long getMin()
+    {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax()
+    {
+        return totalCount == 0 ? 0 : max;
+    }
+
+    public double getTotal()
+    {
+        return sum;
+    }
+
+    public double getMean()
+    {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    public double getStdDeviation()
+    {
+        if (totalCount < 2)
+        {
+            return 0;
+        }
+        double variance = (sumOfSquares - (sum * sum) / totalCount) / (totalCount - 1);
+        return variance <= 0 ? 0 : Math.sqrt(variance);
+    }
+
+    /**
+     * Returns the value at the given percentile (0..100), reported as the highest
+     * value equivalent to the bucket it falls into, but never above the exact max.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (totalCount == 0)
+        {
+            return 0;
+        }
+        double p = Math.min(Math.max(percentile, 0), 100);
+        long countAtPercentile = Math.max(1, (long) Math.ceil(p / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= countAtPercentile)
+            {
+                return Math.max(getMin(), Math.min(highestEquivalentValue(i), max));
+            }
+        }
+        return max;
+    }
+
+    /** Number of buckets, for callers that want to export the raw distribution. */
+    public int getBucketCount()
+    {
+        return counts.length;
+    }
+
+    public long getCountAtIndex(int index)
+    {
+        return counts[index];
+    }
+
+    /** Lowest value that is recorded into the bucket at index. */
+    public static long valueFromIndex(int index)
+    {
+        int bucketIndex = (index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+        int subBucketIndex = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        if (bucketIndex < 0)
+        {
+            subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex) << bucketIndex;
+    }
+
+    private static long highestEquivalentValue(int index)
+    {
+        int bucketIndex = Math.max((index >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1, 0);
+        return valueFromIndex(index) + (1L << bucketIndex) - 1;
+    }
+
+    private static int countsIndex(long value)
+    {
+        int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE) + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+    }
+}
@@ -0,0 +1,195 @@
+package regexbench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Times one benchmark cell: wall-clock time from System.nanoTime() and, where the
+ * JVM supports it, CPU time of the current thread. Both go into constant-size
+ * histograms, so the number of iterations is no longer bounded by memory.
+ *
+ * Where the JVM provides com.sun.management.ThreadMXBean, the bytes allocated by
+ * the current thread during each match are summed as well. Reading the counter
+ * costs a few allocated bytes itself; that overhead is measured once and
+ * subtracted. Allocation and CPU counters are read outside the wall-clock window.
+ *
+ * A recorder is meant to be used by one thread: start(), run the match, stop().
+ */
+public final class LatencyRecorder
+{
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = initCpuTime();
+    private static final com.sun.management.ThreadMXBean ALLOCATION = initAllocation();
+    private static final long ALLOCATION_OVERHEAD = calibrateAllocation();
+
+    private final LatencyHistogram wall = new LatencyHistogram();
+    private final LatencyHistogram cpu = new LatencyHistogram();
+
+    private long wallStart;
+    private long cpuStart;
+    private long allocationStart;
+    private long lastWall;
+    private long allocatedBytes;
+    private long allocationSamples;
+
+    public static LatencyRecorder[][] newMatrix(int patterns, int inputs)
+    {
+        LatencyRecorder[][] matrix = new LatencyRecorder[patterns][inputs];
+        for (int re = 0; re < patterns; re++)
+        {
+            for (int str = 0; str < inputs; str++)
+            {
+                matrix[re][str] = new LatencyRecorder();
+            }
+        }
+        return matrix;
+    }
+
+    public static boolean isCpuTimeSupported()
+    {
+        return CPU_TIME;
+    }
+
+    public static boolean isAllocationSupported()
+    {
+        return ALLOCATION != null;
+    }
+
+    public void start()
+    {
+        if (ALLOCATION != null)
+        {
+            allocationStart = ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        if (CPU_TIME)
+        {
+            cpuStart = THREADS.getCurrentThreadCpuTime();
+        }
+        wallStart = System.nanoTime();
+    }
+
+    public void stop()
+    {
+        long wallEnd = System.nanoTime();
+        lastWall = wallEnd - wallStart;
+        wall.recordValue(lastWall);
+        if (CPU_TIME)
+        {
+            cpu.recordValue(THREADS.getCurrentThreadCpuTime() - cpuStart);
+        }
+        if (ALLOCATION != null)
+        {
+            long bytes = ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocationStart;
+            allocatedBytes += Math.max(0, bytes - ALLOCATION_OVERHEAD);
+            allocationSamples++;
+        }
+    }
+
+    /** Wall-clock time of the last start()/stop() pair, in nanoseconds. */
+    public long lastWallNanos()
+    {
+        return lastWall;
+    }
+
+    public LatencyHistogram getWall()
+    {
+        return wall;
+    }
+
+    /** Per-thread CPU time; empty when the JVM cannot measure it. */
+    public LatencyHistogram getCpu()
+    {
+        return cpu;
+    }
+
+    /** Mean bytes allocated per match, or -1 when the JVM cannot measure it. */
+    public double getAllocatedBytesPerOp()
+    {
+        if (ALLOCATION == null)
+        {
+            return -1;
+        }
+        return allocationSamples == 0 ? 0 : (double) allocatedBytes / allocationSamples;
+    }
+
+    public long getAllocatedBytes()
+    {
+        return allocatedBytes;
+    }
+
+    private static boolean initCpuTime()
+    {
+        try
+        {
+            if (!THREADS.isCurrentThreadCpuTimeSupported())
+            {
+                return false;
+            }
+            if (!THREADS.isThreadCpuTimeEnabled())
+            {
+                THREADS.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        }
+        catch (UnsupportedOperationException e)
+        {
+            return false;
+        }
+        catch (SecurityException e)
+        {
+            return false;
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean initAllocation()
+    {
+        try
+        {
+            if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+            {
+                return null;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (!threads.isThreadAllocatedMemorySupported())
+            {
+                return null;
+            }
+            if (!threads.isThreadAllocatedMemoryEnabled())
+            {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+            return threads;
+        }
+        catch (LinkageError e)
+        {
+            // not a HotSpot-derived JVM
+            return null;
+        }
+        catch (UnsupportedOperationException e)
+        {
+            return null;
+        }
+        catch (SecurityException e)
+        {
+            return null;
+        }
+    }
+
+    /** Smallest allocation observed between two back-to-back counter reads. */
+    private static long calibrateAllocation()
+    {
+        if (ALLOCATION == null)
+        {
+            return 0;
+        }
+        long id = Thread.currentThread().getId();
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++)
+        {
+            long before = ALLOCATION.getThreadAllocatedBytes(id);
+            long after = ALLOCATION.getThreadAllocatedBytes(id);
+            overhead = Math.min(overhead, after - before);
+        }
+        return overhead;
+    }
+}
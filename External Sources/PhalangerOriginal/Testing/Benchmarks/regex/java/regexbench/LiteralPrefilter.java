@@ -0,0 +1,282 @@
+package regexbench;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import regexbench.preg.RequiredLiterals;
+
+/**
+ * Rejects inputs that lack a literal every match of a pattern must contain (see
+ * RequiredLiterals), so that the engine only runs on inputs that can match.
+ * mayMatch() returning false is a definite no; true means the engine has to decide.
+ *
+ * One factor is searched with Boyer-Moore-Horspool. Several factors are searched
+ * in a single pass with an Aho-Corasick automaton that stops as soon as all of
+ * them have been seen. Both read the CharSequence directly and allocate nothing
+ * per call; instances are immutable and thread-safe.
+ */
+public abstract class LiteralPrefilter
+{
+    /** At most this many factors are used, the longest ones; one bit each in a long. */
+    private static final int MAX_FACTORS = 64;
+
+    /** The prefilter for a preg pattern, or null if it has no required literal. */
+    public static LiteralPrefilter forPattern(String preg)
+    {
+        return of(RequiredLiterals.of(preg));
+    }
+
+    /** A prefilter requiring all of factors, or null if factors is empty. */
+    public static LiteralPrefilter of(List<String> factors)
+    {
+        String[] f = factors.toArray(new String[factors.size()]);
+        if (f.length > MAX_FACTORS)
+        {
+            Arrays.sort(f, new java.util.Comparator<String>()
+            {
+                public int compare(String a, String b)
+                {
+                    return b.length() - a.length();
+                }
+            });
+            f = Arrays.copyOf(f, MAX_FACTORS);
+        }
+        switch (f.length)
+        {
+            case 0:
+                return null;
+            case 1:
+                return new Horspool(f[0]);
+            default:
+                return new AhoCorasick(f);
+        }
+    }
+
+    /** Whether input contains every required literal. */
+    public abstract boolean mayMatch(CharSequence input);
+
+    /** Short description for reports, e.g. BMH "usd ". */
+    public abstract String describe();
+
+    static String quote(String factor)
+    {
+        return "\"" + factor.replace("\n", "\\n") + "\"";
+    }
+
+    /**
+     * Boyer-Moore-Horspool over a 256-entry shift table indexed by the low byte of
+     * the character. Characters sharing a low byte share the smallest of their
+     * shifts, which is safe, and Latin-1 text gets exact shifts.
+     */
+    static final class Horspool extends LiteralPrefilter
+    {
+        private final String factor;
+        private final char[] chars;
+        private final int[] shift = new int[256];
+
+        Horspool(String factor)
+        {
+            this.factor = factor;
+            this.chars = factor.toCharArray();
+            int m = chars.length;
+            Arrays.fill(shift, m);
+            for (int i = 0; i < m - 1; i++)
+            {
+                int slot = chars[i] & 0xFF;
+                shift[slot] = Math.min(shift[slot], m - 1 - i);
+            }
+        }
+
+        public boolean mayMatch(CharSequence input)
+        {
+            char[] p = chars;
+            int last = p.length - 1;
+            int n = input.length();
+            int i = 0;
+            while (i + last < n)
+            {
+                char c = input.charAt(i + last);
+                if (c == p[last])
+                {
+                    int j = last - 1;
+                    while (j >= 0 && input.charAt(i + j) == p[j])
+                    {
+                        j--;
+                    }
+                    if (j < 0)
+                    {
+                        return true;
+                    }
+                }
+                i += shift[c & 0xFF];
+            }
+            return false;
+        }
+
+        public String describe()
+        {
+            return "BMH " + quote(factor);
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton over the factors, as a dense transition table over
+     * the characters the factors use (every other character is class 0). States
+     * are identified by the offset of their row; each has the bit mask of the
+     * factors that end there.
+     */
+    static final class AhoCorasick extends LiteralPrefilter
+    {
+        private final String[] factors;
+        private final int[] classOf;
+        private final int classes;
+        private final int[] next;
+        private final long[] found;
+        private final long all;
+
+        AhoCorasick(String[] factors)
+        {
+            this.factors = factors.clone();
+            int maxChar = 0;
+            for (String f : factors)
+            {
+                for (int i = 0; i < f.length(); i++)
+                {
+                    maxChar = Math.max(maxChar, f.charAt(i));
+                }
+            }
+            classOf = new int[maxChar + 1];
+            Arrays.fill(classOf, -1);
+            int c = 0;
+            for (String f : factors)
+            {
+                for (int i = 0; i < f.length(); i++)
+                {
+                    if (classOf[f.charAt(i)] < 0)
+                    {
+                        classOf[f.charAt(i)] = ++c;
+                    }
+                }
+            }
+            for (int ch = 0; ch <= maxChar; ch++)
+            {
+                classOf[ch] = Math.max(classOf[ch], 0);
+            }
+            classes = c + 1;
+
+            // trie
+            Map<Long, Integer> edges = new HashMap<Long, Integer>();
+            int states = 1;
+            long[] ends = new long[1 + total(factors)];
+            for (int k = 0; k < factors.length; k++)
+            {
+                int s = 0;
+                for (int i = 0; i < factors[k].length(); i++)
+                {
+                    Long edge = Long.valueOf((long) s * classes + classOf[factors[k].charAt(i)]);
+                    Integer t = edges.get(edge);
+                    if (t == null)
+                    {
+                        t = Integer.valueOf(states++);
+                        edges.put(edge, t);
+                    }
+                    s = t.intValue();
+                }
+                ends[s] |= 1L << k;
+            }
+
+            // breadth-first failure links, folded into a full transition table
+            int[] next = new int[states * classes];
+            long[] found = new long[states];
+            int[] fail = new int[states];
+            int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int cls = 0; cls < classes; cls++)
+            {
+                Integer t = edges.get(Long.valueOf(cls));
+                next[cls] = t == null ? 0 : t.intValue();
+                if (t != null)
+                {
+                    queue[tail++] = t.intValue();
+                }
+            }
+            while (head < tail)
+            {
+                int s = queue[head++];
+                found[s] = ends[s] | found[fail[s]];
+                for (int cls = 0; cls < classes; cls++)
+                {
+                    Integer t = edges.get(Long.valueOf((long) s * classes + cls));
+                    if (t == null)
+                    {
+                        next[s * classes + cls] = next[fail[s] * classes + cls];
+                    }
+                    else
+                    {
+                        fail[t.intValue()] = next[fail[s] * classes + cls];
+                        next[s * classes + cls] = t.intValue();
+                        queue[tail++] = t.intValue();
+                    }
+                }
+            }
+            // premultiply the targets by the row length, so that a step is one add and one load
+            long[] foundAtRow = new long[states * classes];
+            for (int i = 0; i < next.length; i++)
+            {
+                next[i] *= classes;
+            }
+            for (int st = 0; st < states; st++)
+            {
+                foundAtRow[st * classes] = found[st];
+            }
+            this.next = next;
+            this.found = foundAtRow;
+            this.all = factors.length == 64 ? -1L : (1L << factors.length) - 1;
+        }
+
+        private static int total(String[] factors)
+        {
+            int n = 0;
+            for (String f : factors)
+            {
+                n += f.length();
+            }
+            return n;
+        }
+
+        public boolean mayMatch(CharSequence input)
+        {
+            int[] classOf = this.classOf;
+            int[] next = this.next;
+            long[] found = this.found;
+            int limit = classOf.length;
+            long seen = 0;
+            int s = 0;
+            int n = input.length();
+            for (int i = 0; i < n; i++)
+            {
+                char c = input.charAt(i);
+                s = next[s + (c < limit ? classOf[c] : 0)];
+                seen |= found[s];
+                if (seen == all)
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String describe()
+        {
+            StringBuilder sb = new StringBuilder("Aho-Corasick");
+            for (String f : factors)
+            {
+                sb.append(' ').append(quote(f));
+            }
+            return sb.toString();
+        }
+    }
+}
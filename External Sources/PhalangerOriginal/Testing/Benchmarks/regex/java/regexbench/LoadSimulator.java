@@ -0,0 +1,385 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load mode ("regtest load"): an open-loop load generator that sends simulated
+ * PHP requests to each engine at a fixed arrival rate, and raises the rate
+ * until the engine falls over. A request is regtest.load.matches (default 4)
+ * match calls of one pattern against inputs drawn at random from the engine's
+ * Corpus cells, with the pattern compiled first in regtest.load.compileShare
+ * (default 0.1) of the requests, the rest taking it from a compiled set kept
+ * per concurrent request, as PHP workers keep their preg cache.
+ *
+ * Requests are started on schedule whether or not the earlier ones have
+ * finished, each on a virtual thread where the JVM has them (JDK 21, found
+ * reflectively) and otherwise queued for a pool of regtest.load.threads
+ * platform threads (default 4 per processor). Response time is measured from
+ * when the request was due, not from when it got to run, so time spent waiting
+ * behind a slow engine counts; this corrects for coordinated omission. SERVICE
+ * P99 is the uncorrected figure, from when the request started running.
+ *
+ * Rates start at regtest.load.minRate (default 1000 requests per second) and
+ * double up to regtest.load.maxRate (default 1000000), each measured for
+ * regtest.load.millis (default 2000) after a warm-up of
+ * regtest.load.warmupMillis (default 1000) at the first rate. A rate is
+ * saturated when fewer than 95% of its requests complete within the window,
+ * when requests have to be dropped because regtest.load.maxOutstanding (default
+ * 100000) are already waiting, or when the 99th percentile exceeds
+ * regtest.load.sloMillis (default 100); the sweep of that engine ends there.
+ * Cells slower than regtest.load.maxCellMillis (default 10) for a single match,
+ * or over the MatchBudget, are left out of the request mix.
+ */
+public final class LoadSimulator
+{
+    private static final boolean VIRTUAL = virtualThreads();
+
+    private final int matches = Integer.getInteger("regtest.load.matches", 4).intValue();
+    private final double compileShare = Double.parseDouble(System.getProperty("regtest.load.compileShare", "0.1"));
+    private final int threads = Integer.getInteger("regtest.load.threads", 4 * Runtime.getRuntime().availableProcessors())
+        .intValue();
+    private final double minRate = Double.parseDouble(System.getProperty("regtest.load.minRate", "1000"));
+    private final double maxRate = Double.parseDouble(System.getProperty("regtest.load.maxRate", "1000000"));
+    private final long millis = Long.getLong("regtest.load.millis", 2000).longValue();
+    private final long warmupMillis = Long.getLong("regtest.load.warmupMillis", 1000).longValue();
+    private final int maxOutstanding = Integer.getInteger("regtest.load.maxOutstanding", 100000).intValue();
+    private final long sloMillis = Long.getLong("regtest.load.sloMillis", 100).longValue();
+    private final long maxCellMillis = Long.getLong("regtest.load.maxCellMillis", 10).longValue();
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    private final Report report;
+
+    public LoadSimulator(Report report)
+    {
+        this.report = report;
+    }
+
+    /** One pattern and the inputs a request may match it against, with the answers expected. */
+    private static final class Workload
+    {
+        final String pattern;
+        final int re;
+        final List<String> inputs = new ArrayList<String>();
+        final List<Boolean> expected = new ArrayList<Boolean>();
+
+        Workload(int re, String pattern)
+        {
+            this.re = re;
+            this.pattern = pattern;
+        }
+    }
+
+    /** The figures of one rate. */
+    private static final class Step
+    {
+        double achieved;
+        final LatencyHistogram response = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        long wrong;
+        long errors;
+        long dropped;
+        long incomplete;
+        long maxLagNanos;
+        String saturation;
+    }
+
+    public void run(List<RegexEngine> engines)
+    {
+        List<Object[]> summary = new ArrayList<Object[]>();
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Loading " + engine.getName() + "...");
+            summary.add(run(engine));
+        }
+        report.begin("Request load", "summary", 3);
+        report.header("ENGINE", "SUSTAINED REQ/S", "FALLS OVER AT REQ/S");
+        for (Object[] row : summary)
+        {
+            report.row(row);
+        }
+        report.end("SUSTAINED: the highest rate measured without saturation; FALLS OVER AT: the first rate saturated.");
+    }
+
+    private Object[] run(RegexEngine engine)
+    {
+        List<Workload> workloads = workloads(engine);
+        report.begin("Request load on regular expression library", engine.getName(), 12);
+        if (workloads.isEmpty())
+        {
+            report.end("No pattern could be compiled and matched.");
+            return new Object[] {engine.getName(), "-", "-"};
+        }
+        report.caption(workloads.size() + " patterns, " + matches + " matches per request, " + Report.format(100 * compileShare)
+            + "% of requests compiling, " + (VIRTUAL ? "a virtual thread per request" : threads + " platform threads") + ", "
+            + millis + " ms per rate");
+        report.header("TARGET REQ/S", "ACHIEVED REQ/S", "P50 MS", "P90 MS", "P99 MS", "P99.9 MS", "MAX MS", "SERVICE P99 MS",
+            "WRONG/ERRORS", "DROPPED", "LAG MS", "STATUS");
+        ConcurrentLinkedQueue<CompiledRegex[]> caches = new ConcurrentLinkedQueue<CompiledRegex[]>();
+        measure(engine, workloads, caches, minRate, warmupMillis);
+        String sustained = "-";
+        String fallsOver = "-";
+        for (double rate = minRate; rate <= maxRate; rate *= 2)
+        {
+            Step step = measure(engine, workloads, caches, rate, millis);
+            report.row(Report.format(rate), Report.format(step.achieved), millis(step.response.getValueAtPercentile(50)), millis(
+                step.response.getValueAtPercentile(90)), millis(step.response.getValueAtPercentile(99)), millis(step.response
+                .getValueAtPercentile(99.9)), millis(step.response.getTotalCount() == 0 ? 0 : step.response.getMax()), millis(
+                step.service.getValueAtPercentile(99)), step.wrong + "/" + step.errors, Long.toString(step.dropped + step.incomplete),
+                millis(step.maxLagNanos), step.saturation == null ? "ok" : "SATURATED: " + step.saturation);
+            if (step.saturation != null)
+            {
+                fallsOver = Report.format(rate);
+                break;
+            }
+            sustained = Report.format(rate);
+        }
+        report.end("Response times in milliseconds from when a request was due (corrected for coordinated omission); SERVICE P99"
+            + " from when it started running. DROPPED: requests not sent because " + maxOutstanding + " were outstanding, or"
+            + " unfinished when the rate ended. LAG: how late the generator itself sent a request at worst.");
+        return new Object[] {engine.getName(), sustained, fallsOver};
+    }
+
+    /** The request mix: every pattern with the inputs it matches quickly enough, as one request may pick them. */
+    private List<Workload> workloads(RegexEngine engine)
+    {
+        String[] patterns = Corpus.patternsFor(engine);
+        List<Workload> workloads = new ArrayList<Workload>();
+        for (int re = 0; re < patterns.length; re++)
+        {
+            if (patterns[re] == null)
+            {
+                continue;
+            }
+            Workload workload = new Workload(re, patterns[re]);
+            for (int str = 0; str < Corpus.STR.length; str++)
+            {
+                MatchBudget.Outcome outcome = budget.probe(engine, patterns[re], Corpus.STR[str]);
+                if (outcome.isCompleted() && outcome.getNanos() <= maxCellMillis * 1000000L)
+                {
+                    workload.inputs.add(Corpus.STR[str]);
+                    workload.expected.add(Boolean.valueOf(outcome.getResult()));
+                }
+            }
+            if (!workload.inputs.isEmpty())
+            {
+                workloads.add(workload);
+            }
+        }
+        return workloads;
+    }
+
+    /** Sends requests at rate for the given time, then waits as long again for the stragglers. */
+    private Step measure(final RegexEngine engine, final List<Workload> workloads, final ConcurrentLinkedQueue<CompiledRegex[]> caches,
+        double rate, long windowMillis)
+    {
+        final Step step = new Step();
+        final LongAdder inWindow = new LongAdder();
+        final LongAdder wrong = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        // recording goes to one of several histograms, so that concurrent requests rarely wait for each other
+        final LatencyHistogram[][] stripes = new LatencyHistogram[2 * Runtime.getRuntime().availableProcessors()][];
+        for (int i = 0; i < stripes.length; i++)
+        {
+            stripes[i] = new LatencyHistogram[] {new LatencyHistogram(), new LatencyHistogram()};
+        }
+        ExecutorService executor = newExecutor(threads);
+
+        double interval = 1e9 / rate;
+        final long start = System.nanoTime() + 1000000L;
+        final long end = start + windowMillis * 1000000L;
+        long dropped = 0;
+        long maxLag = 0;
+        for (long i = 0;; i++)
+        {
+            final long due = start + (long) (i * interval);
+            if (due >= end)
+            {
+                break;
+            }
+            long now = System.nanoTime();
+            while (now < due)
+            {
+                if (due - now > 100000)
+                {
+                    LockSupport.parkNanos(due - now - 50000);
+                }
+                now = System.nanoTime();
+            }
+            maxLag = Math.max(maxLag, now - due);
+            if (outstanding.get() >= maxOutstanding)
+            {
+                dropped++;
+                continue;
+            }
+            outstanding.incrementAndGet();
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        if (cancelled.get())
+                        {
+                            return;
+                        }
+                        long begin = System.nanoTime();
+                        request(engine, workloads, caches, wrong, errors);
+                        long finish = System.nanoTime();
+                        LatencyHistogram[] stripe = stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+                        synchronized (stripe)
+                        {
+                            stripe[0].recordValue(finish - due);
+                            stripe[1].recordValue(finish - begin);
+                        }
+                        if (finish <= end)
+                        {
+                            inWindow.increment();
+                        }
+                    }
+                    finally
+                    {
+                        outstanding.decrementAndGet();
+                    }
+                }
+            });
+        }
+
+        long drainUntil = System.nanoTime() + windowMillis * 1000000L;
+        while (outstanding.get() > 0 && System.nanoTime() < drainUntil)
+        {
+            LockSupport.parkNanos(1000000L);
+        }
+        step.incomplete = outstanding.get();
+        // requests still queued return at once; the few running are bounded by maxCellMillis per match
+        cancelled.set(true);
+        executor.shutdown();
+        try
+        {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        for (LatencyHistogram[] stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                step.response.add(stripe[0]);
+                step.service.add(stripe[1]);
+            }
+        }
+        step.achieved = inWindow.sum() / (windowMillis / 1000.0);
+        step.wrong = wrong.sum();
+        step.errors = errors.sum();
+        step.dropped = dropped;
+        step.maxLagNanos = maxLag;
+        if (step.dropped + step.incomplete > 0)
+        {
+            step.saturation = (step.dropped + step.incomplete) + " requests dropped";
+        }
+        else if (step.achieved < 0.95 * rate)
+        {
+            step.saturation = "throughput below 95% of the target";
+        }
+        else if (step.response.getValueAtPercentile(99) > sloMillis * 1000000L)
+        {
+            step.saturation = "P99 over " + sloMillis + " ms";
+        }
+        return step;
+    }
+
+    /** One simulated request: a pattern, compiled or taken from a worker's cache, matched against a few inputs. */
+    private void request(RegexEngine engine, List<Workload> workloads, ConcurrentLinkedQueue<CompiledRegex[]> caches,
+        LongAdder wrong, LongAdder errors)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Workload workload = workloads.get(random.nextInt(workloads.size()));
+        // a compiled set is used by one request at a time, as engines need not be thread-safe
+        CompiledRegex[] cache = caches.poll();
+        if (cache == null)
+        {
+            cache = new CompiledRegex[Corpus.PREG.length];
+        }
+        try
+        {
+            CompiledRegex regex = cache[workload.re];
+            if (regex == null || random.nextDouble() < compileShare)
+            {
+                regex = engine.compile(workload.pattern);
+                cache[workload.re] = regex;
+            }
+            for (int m = 0; m < matches; m++)
+            {
+                int input = random.nextInt(workload.inputs.size());
+                if (regex.match(workload.inputs.get(input)) != workload.expected.get(input).booleanValue())
+                {
+                    wrong.increment();
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            errors.increment();
+        }
+        finally
+        {
+            caches.add(cache);
+        }
+    }
+
+    /** A virtual thread per task on JDK 21 and later, otherwise a fixed pool of daemon platform threads. */
+    private static ExecutorService newExecutor(int threads)
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable task)
+                {
+                    Thread thread = new Thread(task, "load-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    private static boolean virtualThreads()
+    {
+        try
+        {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+    }
+
+    private static String millis(long nanos)
+    {
+        return Report.format(nanos / 1e6);
+    }
+}
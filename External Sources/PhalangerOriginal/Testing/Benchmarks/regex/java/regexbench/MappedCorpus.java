@@ -0,0 +1,167 @@
+package regexbench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Input files mapped read-only with FileChannel.map and cut into line-aligned
+ * chunks of roughly chunkBytes, so the chunks can be scanned independently and
+ * no line is split between two of them.
+ *
+ * A single mapping is limited to 2 GB, so larger files are mapped as several
+ * regions, each ending at a line break. Mappings are released by the garbage
+ * collector once the corpus is no longer referenced.
+ */
+public final class MappedCorpus
+{
+    private static final int REGION_BYTES = 1 << 30;
+
+    private final List<Chunk> chunks;
+    private final long bytes;
+
+    private MappedCorpus(List<Chunk> chunks, long bytes)
+    {
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.bytes = bytes;
+    }
+
+    public static MappedCorpus map(List<File> files, int chunkBytes) throws IOException
+    {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        long total = 0;
+        for (File file : files)
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                FileChannel channel = raf.getChannel();
+                long size = channel.size();
+                long position = 0;
+                while (position < size)
+                {
+                    long remaining = size - position;
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(remaining,
+                        REGION_BYTES));
+                    int limit = region.limit();
+                    if (remaining > REGION_BYTES)
+                    {
+                        // end the region after its last line break, the next one starts there
+                        int lastBreak = lastLineBreak(region);
+                        if (lastBreak >= 0)
+                        {
+                            limit = lastBreak + 1;
+                        }
+                    }
+                    split(region, limit, chunkBytes, chunks);
+                    position += limit;
+                }
+                total += size;
+            }
+            finally
+            {
+                // the mappings stay valid after the channel is closed
+                raf.close();
+            }
+        }
+        return new MappedCorpus(chunks, total);
+    }
+
+    /**
+     * Writes a temporary file of at least bytes bytes made of Corpus.STR, one
+     * input per line, for runs without a corpus of their own.
+     */
+    public static File generate(long bytes) throws IOException
+    {
+        File file = File.createTempFile("regexbench-corpus", ".txt");
+        file.deleteOnExit();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try
+        {
+            long written = 0;
+            while (written < bytes)
+            {
+                for (String str : Corpus.STR)
+                {
+                    byte[] line = (str + "\n").getBytes("ISO-8859-1");
+                    out.write(line);
+                    written += line.length;
+                }
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+        return file;
+    }
+
+    private static int lastLineBreak(ByteBuffer region)
+    {
+        for (int i = region.limit() - 1; i >= 0; i--)
+        {
+            if (region.get(i) == '\n')
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void split(ByteBuffer region, int limit, int chunkBytes, List<Chunk> chunks)
+    {
+        int start = 0;
+        while (start < limit)
+        {
+            int end = (int) Math.min((long) start + chunkBytes, limit);
+            while (end < limit && region.get(end - 1) != '\n')
+            {
+                end++;
+            }
+            chunks.add(new Chunk(region, start, end));
+            start = end;
+        }
+    }
+
+    public List<Chunk> getChunks()
+    {
+        return chunks;
+    }
+
+    /** Total size of the mapped files. */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * A line-aligned byte range of one mapped region.
+     */
+    public static final class Chunk
+    {
+        final ByteBuffer buffer;
+        final int start;
+        final int end;
+
+        Chunk(ByteBuffer buffer, int start, int end)
+        {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int length()
+        {
+            return end - start;
+        }
+    }
+}
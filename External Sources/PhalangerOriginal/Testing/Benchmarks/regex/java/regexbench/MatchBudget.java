@@ -0,0 +1,281 @@
+package regexbench;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Step and time budget for a single match, so that one pathological cell such as
+ * a backtracking engine on Corpus.RE[4] and the large input cannot hang a run.
+ *
+ * probe() compiles and matches once on a disposable daemon thread, with the input
+ * wrapped in a BudgetedCharSequence. Engines that read the CharSequence are
+ * stopped by the wrapper after maxSteps characters or maxMillis; engines that
+ * copy the input to a String cannot be metered, so the calling thread only waits
+ * maxMillis and then stops the probe thread with Thread.stop. Either way the
+ * caller gets its answer within the budget; runners probe every cell first and
+ * time only the cells that finish within it.
+ *
+ * Since JDK 20 Thread.stop throws, and a probe thread that ignores the budget
+ * cannot be stopped at all: it is left running at minimum priority. So that such
+ * threads do not pile up and take the CPU from the cells that follow, an engine
+ * that has left one behind is not probed again in this JVM; its later probes come
+ * back as exceeded at once, saying why. Run the mode in a child JVM per engine
+ * ("regtest isolated") to measure such an engine regardless.
+ *
+ * Compilation gets a budget of its own, maxMillis as well.
+ *
+ * System properties for fromProperties(): regtest.budget.steps (default
+ * 100000000 characters read) and regtest.budget.millis (default 1000).
+ */
+public final class MatchBudget
+{
+    /** Engines with a probe thread that could not be stopped, by name, with the pattern it was left running. */
+    private static final ConcurrentMap<String, String> ABANDONED = new ConcurrentHashMap<String, String>();
+
+    private final long maxSteps;
+    private final long maxMillis;
+
+    public MatchBudget(long maxSteps, long maxMillis)
+    {
+        this.maxSteps = maxSteps;
+        this.maxMillis = maxMillis;
+    }
+
+    public static MatchBudget fromProperties()
+    {
+        return new MatchBudget(Long.getLong("regtest.budget.steps", 100000000L).longValue(), Long.getLong("regtest.budget.millis",
+            1000).longValue());
+    }
+
+    public long getMaxSteps()
+    {
+        return maxSteps;
+    }
+
+    public long getMaxMillis()
+    {
+        return maxMillis;
+    }
+
+    /** Wraps input for a cooperative budgeted match on the calling thread. */
+    public BudgetedCharSequence wrap(CharSequence input)
+    {
+        return new BudgetedCharSequence(input, maxSteps, TimeUnit.MILLISECONDS.toNanos(maxMillis));
+    }
+
+    /**
+     * Compiles pattern and matches input once, on a separate thread, within the budget.
+     */
+    public Outcome probe(RegexEngine engine, String pattern, CharSequence input)
+    {
+        return probe(engine, pattern, input, false);
+    }
+
+    /** Like probe(), but searches with find() instead of calling match(). */
+    public Outcome probeFind(RegexEngine engine, String pattern, CharSequence input)
+    {
+        return probe(engine, pattern, input, true);
+    }
+
+    /**
+     * Like probeFind(), with a regex compiled beforehand by engine, for callers
+     * that probe one pattern many times.
+     */
+    public Outcome probeFind(RegexEngine engine, CompiledRegex regex, CharSequence input)
+    {
+        return probe(engine, null, regex, input, true);
+    }
+
+    /** Whether a probe of engine has left a thread running that could not be stopped. */
+    public static boolean isAbandoned(RegexEngine engine)
+    {
+        return ABANDONED.containsKey(engine.getName());
+    }
+
+    private Outcome probe(RegexEngine engine, String pattern, CharSequence input, boolean find)
+    {
+        return probe(engine, pattern, null, input, find);
+    }
+
+    private Outcome probe(final RegexEngine engine, final String pattern, final CompiledRegex precompiled, final CharSequence input,
+        final boolean find)
+    {
+        String abandoned = ABANDONED.get(engine.getName());
+        if (abandoned != null)
+        {
+            return Outcome.exceeded(0, -1, "not probed: the probe thread for " + abandoned + " could not be stopped and still runs");
+        }
+        final Outcome[] result = new Outcome[1];
+        final CountDownLatch compiled = new CountDownLatch(1);
+        final long[] matchStart = new long[1];
+        Thread guard = new Thread("regex-budget-probe")
+        {
+            public void run()
+            {
+                CompiledRegex regex;
+                try
+                {
+                    regex = precompiled != null ? precompiled : engine.compile(pattern);
+                }
+                catch (Throwable e)
+                {
+                    result[0] = Outcome.failed(e, true);
+                    compiled.countDown();
+                    return;
+                }
+                BudgetedCharSequence budgeted = wrap(input);
+                matchStart[0] = System.nanoTime();
+                compiled.countDown();
+                try
+                {
+                    boolean matched = find ? regex.find(budgeted) : regex.match(budgeted);
+                    result[0] = Outcome.matched(matched, System.nanoTime() - matchStart[0], budgeted.isCopied() ? -1
+                        : budgeted.getSteps());
+                }
+                catch (MatchBudgetExceededException e)
+                {
+                    result[0] = Outcome.exceeded(e.getNanos(), e.getSteps(), e.getMessage());
+                }
+                catch (ThreadDeath e)
+                {
+                    // stopped by probe() below, which has reported the cell already
+                }
+                catch (Throwable e)
+                {
+                    result[0] = Outcome.failed(e, false);
+                }
+            }
+        };
+        guard.setDaemon(true);
+        guard.start();
+        try
+        {
+            if (!compiled.await(maxMillis, TimeUnit.MILLISECONDS))
+            {
+                return Outcome.exceeded(TimeUnit.MILLISECONDS.toNanos(maxMillis), -1, "compilation took longer than " + maxMillis
+                    + " ms" + stop(guard, engine, pattern));
+            }
+            guard.join(maxMillis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return Outcome.failed(e, false);
+        }
+        if (guard.isAlive())
+        {
+            return Outcome.exceeded(System.nanoTime() - matchStart[0], -1, "no answer within " + maxMillis + " ms" + stop(guard, engine, pattern));
+        }
+        return result[0];
+    }
+
+    /**
+     * Stops a thread of engine's that ran over a budget; where Thread.stop throws
+     * it is left running at minimum priority and engine is not probed again.
+     * Returns what to add to the report, "" if the thread was stopped.
+     */
+    @SuppressWarnings("deprecation")
+    static String stop(Thread guard, RegexEngine engine, String pattern)
+    {
+        try
+        {
+            guard.stop();
+            return "";
+        }
+        catch (UnsupportedOperationException e)
+        {
+            guard.setPriority(Thread.MIN_PRIORITY);
+            ABANDONED.putIfAbsent(engine.getName(), pattern != null ? pattern : "a precompiled pattern");
+            System.err.println("Probe thread for " + engine.getName() + " could not be stopped; not probing it again.");
+            return ", probe thread abandoned, engine not probed again";
+        }
+    }
+
+    /**
+     * What happened to a probed match.
+     */
+    public static final class Outcome
+    {
+        public enum Kind
+        {
+            COMPLETED, BUDGET_EXCEEDED, COMPILE_FAILED, FAILED
+        }
+
+        private final Kind kind;
+        private final boolean matched;
+        private final long nanos;
+        private final long steps;
+        private final String detail;
+
+        private Outcome(Kind kind, boolean matched, long nanos, long steps, String detail)
+        {
+            this.kind = kind;
+            this.matched = matched;
+            this.nanos = nanos;
+            this.steps = steps;
+            this.detail = detail;
+        }
+
+        static Outcome matched(boolean matched, long nanos, long steps)
+        {
+            return new Outcome(Kind.COMPLETED, matched, nanos, steps, null);
+        }
+
+        static Outcome exceeded(long nanos, long steps, String reason)
+        {
+            return new Outcome(Kind.BUDGET_EXCEEDED, false, nanos, steps, reason);
+        }
+
+        static Outcome failed(Throwable e, boolean compiling)
+        {
+            return new Outcome(compiling ? Kind.COMPILE_FAILED : Kind.FAILED, false, 0, -1, e.getClass().getName());
+        }
+
+        public Kind getKind()
+        {
+            return kind;
+        }
+
+        public boolean isCompleted()
+        {
+            return kind == Kind.COMPLETED;
+        }
+
+        /** The engine's answer; only meaningful when isCompleted(). */
+        public boolean getResult()
+        {
+            return matched;
+        }
+
+        /** Time spent in the match, or until it was given up. */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        /** Characters read, or -1 when the engine copied the input and could not be metered. */
+        public long getSteps()
+        {
+            return steps;
+        }
+
+        /** Short description for reports, e.g. "budget exceeded after 1000.000 ms (deadline passed)". */
+        public String describe()
+        {
+            switch (kind)
+            {
+                case COMPLETED:
+                    return "ok";
+                case BUDGET_EXCEEDED:
+                    return "budget exceeded after " + Report.format(nanos / 1e6) + " ms"
+                        + (steps >= 0 ? ", " + steps + " steps" : "") + " (" + detail + ")";
+                case COMPILE_FAILED:
+                    return "compile failed: " + detail;
+                default:
+                    return "failed: " + detail;
+            }
+        }
+    }
+}
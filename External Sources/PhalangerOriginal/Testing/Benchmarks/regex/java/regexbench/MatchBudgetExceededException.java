@@ -0,0 +1,38 @@
+package regexbench;
+
+/**
+ * Thrown by BudgetedCharSequence when a match has read more characters or run
+ * longer than its MatchBudget allows. Used for control flow, so no stack trace
+ * is captured.
+ */
+public class MatchBudgetExceededException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final long steps;
+    private final long nanos;
+
+    public MatchBudgetExceededException(String message, long steps, long nanos)
+    {
+        super(message);
+        this.steps = steps;
+        this.nanos = nanos;
+    }
+
+    /** Characters read before the match was aborted. */
+    public long getSteps()
+    {
+        return steps;
+    }
+
+    /** Time spent in the match before it was aborted. */
+    public long getNanos()
+    {
+        return nanos;
+    }
+
+    public synchronized Throwable fillInStackTrace()
+    {
+        return this;
+    }
+}
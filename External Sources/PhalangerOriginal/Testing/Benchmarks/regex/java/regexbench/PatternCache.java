@@ -0,0 +1,434 @@
+package regexbench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache of compiled patterns, keyed by pattern text and flags, for
+ * many threads at once. A hit takes no lock and builds no key object: one
+ * ConcurrentHashMap.get() on the caller's own string, whose entry holds the
+ * value for each set of flags the text was compiled with. Only misses take a
+ * lock, after compiling outside it, to insert and evict.
+ *
+ * Eviction follows W-TinyLFU: a new entry goes into a small window (1% of the
+ * entries, first in first out), and an entry leaving the window is admitted
+ * into the main region only if it has been asked for more often than the entry
+ * it would replace, the least frequent of a few sampled at random. How often a
+ * pattern is asked for, hits and misses alike, is estimated by a Count-Min
+ * sketch of 4-bit counters that are halved every 10 x maxEntries requests, so
+ * the cache follows a workload that changes; one-off patterns that PHP code
+ * builds dynamically then pass through the window without pushing out the ones
+ * every request uses. Sketch updates are single compare-and-set attempts that
+ * may be lost under contention, which only makes the estimate coarser.
+ *
+ * The cache holds at most maxEntries entries and maxBytes of weight. An
+ * entry's weight is what the loading thread allocated while loading it, an
+ * upper bound of what the compiled pattern retains, or twice the pattern's
+ * length where the JVM does not count allocation.
+ *
+ * Two threads missing on the same key may both load it; the first one stored
+ * wins. Loader failures are not cached. Values are shared by every thread that
+ * asks for them, so engines whose compiled patterns are not thread-safe (see
+ * "regtest scaling") must not be cached across threads.
+ */
+public final class PatternCache<V>
+{
+    /** Compiles a pattern on a miss. */
+    public interface Loader<V>
+    {
+        V load(String pattern, int flags) throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION = initAllocation();
+
+    // main entries sampled for the eviction victim
+    private static final int SAMPLE = 8;
+    // fixed bytes per entry: node, map entry and array
+    private static final long OVERHEAD = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final int windowSize;
+
+    private final ConcurrentHashMap<String, Node<V>[]> map = new ConcurrentHashMap<String, Node<V>[]>();
+    private final FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // the policy, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Node<V>> window = new ArrayDeque<Node<V>>();
+    private final List<Node<V>> main = new ArrayList<Node<V>>();
+    private volatile int size;
+    private volatile long weight;
+
+    private static final class Node<V>
+    {
+        final String pattern;
+        final int flags;
+        final V value;
+        final long weight;
+        // position in main, -1 while in the window
+        int index = -1;
+
+        Node(String pattern, int flags, V value, long weight)
+        {
+            this.pattern = pattern;
+            this.flags = flags;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    public PatternCache(int maxEntries, long maxBytes)
+    {
+        if (maxEntries < 1 || maxBytes < 1)
+        {
+            throw new IllegalArgumentException("maxEntries and maxBytes must be positive: " + maxEntries + ", " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.windowSize = Math.max(1, maxEntries / 100);
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    /** The value for pattern and flags, loaded with loader on a miss. */
+    public V get(String pattern, int flags, Loader<V> loader) throws Exception
+    {
+        int hash = pattern.hashCode() * 31 + flags;
+        sketch.increment(hash);
+        Node<V> node = find(pattern, flags);
+        if (node != null)
+        {
+            hits.increment();
+            return node.value;
+        }
+        misses.increment();
+        long before = allocated();
+        V value = loader.load(pattern, flags);
+        long after = allocated();
+        node = new Node<V>(pattern, flags, value, OVERHEAD + (after < 0 ? 2L * pattern.length() : Math.max(0, after - before)));
+
+        lock.lock();
+        try
+        {
+            Node<V> existing = find(pattern, flags);
+            if (existing != null)
+            {
+                return existing.value;
+            }
+            link(node);
+            window.addLast(node);
+            while (window.size() > windowSize)
+            {
+                admit(window.pollFirst());
+            }
+            while ((weight > maxBytes || size > maxEntries) && size > 0)
+            {
+                // over the byte bound with a full window, or a window entry heavier than the rest together
+                unlink(main.isEmpty() ? window.pollFirst() : removeMain(victim()));
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        return value;
+    }
+
+    private Node<V> find(String pattern, int flags)
+    {
+        Node<V>[] nodes = map.get(pattern);
+        if (nodes != null)
+        {
+            for (Node<V> node : nodes)
+            {
+                if (node.flags == flags)
+                {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Moves candidate from the window into main, if there is room or it is asked for more often than the victim. */
+    private void admit(Node<V> candidate)
+    {
+        if (main.size() + windowSize < maxEntries && weight <= maxBytes)
+        {
+            addMain(candidate);
+            return;
+        }
+        if (main.isEmpty())
+        {
+            unlink(candidate);
+            return;
+        }
+        Node<V> victim = victim();
+        if (sketch.frequency(hash(candidate)) > sketch.frequency(hash(victim)))
+        {
+            unlink(removeMain(victim));
+            addMain(candidate);
+        }
+        else
+        {
+            unlink(candidate);
+        }
+    }
+
+    /** The least frequently asked for of a few main entries chosen at random. */
+    private Node<V> victim()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Node<V> victim = null;
+        int lowest = Integer.MAX_VALUE;
+        for (int i = 0; i < Math.min(SAMPLE, main.size()); i++)
+        {
+            Node<V> node = main.get(random.nextInt(main.size()));
+            int frequency = sketch.frequency(hash(node));
+            if (frequency < lowest)
+            {
+                lowest = frequency;
+                victim = node;
+            }
+        }
+        return victim;
+    }
+
+    private void addMain(Node<V> node)
+    {
+        node.index = main.size();
+        main.add(node);
+    }
+
+    private Node<V> removeMain(Node<V> node)
+    {
+        // swap with the last, so removal does not shift the list
+        Node<V> last = main.remove(main.size() - 1);
+        if (last != node)
+        {
+            main.set(node.index, last);
+            last.index = node.index;
+        }
+        node.index = -1;
+        return node;
+    }
+
+    private void link(Node<V> node)
+    {
+        Node<V>[] nodes = map.get(node.pattern);
+        Node<V>[] linked;
+        if (nodes == null)
+        {
+            @SuppressWarnings("unchecked")
+            Node<V>[] single = (Node<V>[]) new Node<?>[] {node};
+            linked = single;
+        }
+        else
+        {
+            linked = java.util.Arrays.copyOf(nodes, nodes.length + 1);
+            linked[nodes.length] = node;
+        }
+        map.put(node.pattern, linked);
+        size++;
+        weight += node.weight;
+    }
+
+    private void unlink(Node<V> node)
+    {
+        Node<V>[] nodes = map.get(node.pattern);
+        if (nodes.length == 1)
+        {
+            map.remove(node.pattern);
+        }
+        else
+        {
+            List<Node<V>> rest = new ArrayList<Node<V>>();
+            for (Node<V> other : nodes)
+            {
+                if (other != node)
+                {
+                    rest.add(other);
+                }
+            }
+            @SuppressWarnings("unchecked")
+            Node<V>[] remaining = rest.toArray((Node<V>[]) new Node<?>[rest.size()]);
+            map.put(node.pattern, remaining);
+        }
+        size--;
+        weight -= node.weight;
+        evictions.increment();
+    }
+
+    private static int hash(Node<?> node)
+    {
+        return node.pattern.hashCode() * 31 + node.flags;
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /** Estimated bytes held, see the class comment. */
+    public long getWeight()
+    {
+        return weight;
+    }
+
+    public void clear()
+    {
+        lock.lock();
+        try
+        {
+            map.clear();
+            window.clear();
+            main.clear();
+            size = 0;
+            weight = 0;
+            sketch.clear();
+            hits.reset();
+            misses.reset();
+            evictions.reset();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private static long allocated()
+    {
+        return ALLOCATION == null ? -1 : ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean initAllocation()
+    {
+        try
+        {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean)
+            {
+                com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+                if (allocation.isThreadAllocatedMemorySupported() && allocation.isThreadAllocatedMemoryEnabled())
+                {
+                    return allocation;
+                }
+            }
+        }
+        catch (LinkageError e)
+        {
+            // not a HotSpot-derived JVM
+        }
+        return null;
+    }
+
+    /**
+     * Count-Min sketch with four rows of 4-bit counters, sixteen to a long; a
+     * key's frequency is the smallest of its four counters.
+     */
+    private static final class FrequencySketch
+    {
+        private static final int[] SEEDS = {0x97cb3127, 0xc3a5c85c, 0x9ae16a3b, 0x85ebca6b};
+
+        private final AtomicLongArray table;
+        private final int mask;
+        private final int sampleSize;
+        private final AtomicInteger additions = new AtomicInteger();
+
+        FrequencySketch(int maxEntries)
+        {
+            int length = Integer.highestOneBit(Math.max(16, maxEntries - 1)) << 1;
+            table = new AtomicLongArray(length);
+            mask = length - 1;
+            sampleSize = 10 * maxEntries;
+        }
+
+        void increment(int hash)
+        {
+            boolean added = false;
+            for (int row = 0; row < SEEDS.length; row++)
+            {
+                int h = spread(hash, row);
+                int index = h & mask;
+                int shift = ((h >>> 24) & 15) << 2;
+                long word = table.get(index);
+                if (((word >>> shift) & 15) < 15)
+                {
+                    // one attempt: a lost update only makes the estimate coarser
+                    added |= table.compareAndSet(index, word, word + (1L << shift));
+                }
+            }
+            if (added && additions.incrementAndGet() >= sampleSize)
+            {
+                age();
+            }
+        }
+
+        int frequency(int hash)
+        {
+            int frequency = 15;
+            for (int row = 0; row < SEEDS.length; row++)
+            {
+                int h = spread(hash, row);
+                frequency = Math.min(frequency, (int) ((table.get(h & mask) >>> (((h >>> 24) & 15) << 2)) & 15));
+            }
+            return frequency;
+        }
+
+        /** Halves every counter, so that old popularity fades. */
+        private void age()
+        {
+            additions.set(0);
+            for (int i = 0; i < table.length(); i++)
+            {
+                long word;
+                do
+                {
+                    word = table.get(i);
+                }
+                while (!table.compareAndSet(i, word, (word >>> 1) & 0x7777777777777777L));
+            }
+        }
+
+        void clear()
+        {
+            for (int i = 0; i < table.length(); i++)
+            {
+                table.set(i, 0);
+            }
+            additions.set(0);
+        }
+
+        private static int spread(int hash, int row)
+        {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
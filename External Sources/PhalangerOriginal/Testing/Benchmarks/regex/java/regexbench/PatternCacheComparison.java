@@ -0,0 +1,466 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import regexbench.preg.PregPattern;
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Cache mode ("regtest cache"): what a shared compiled-pattern cache saves a
+ * PHP runtime whose requests compile the same patterns over and over. Threads
+ * repeatedly compile a pattern and match it once, with the patterns drawn from
+ * regtest.cache.patterns (default 2000) distinct ones by a Zipf distribution of
+ * exponent regtest.cache.skew (default 1.0), as a few patterns make up most
+ * preg calls and a long tail is seldom seen. The patterns are the Corpus.PREG
+ * ones, translated into the engine's dialect, each with a numbered alternative
+ * that no input contains, so every one compiles separately and answers as its
+ * original does on the shortest input the engine matches quickly.
+ *
+ * Compiling goes three ways:
+ * <ul>
+ * <li>NONE: the engine compiles on every call;</li>
+ * <li>LOCKED: a LinkedHashMap in access order behind one lock, loading inside
+ * it, as a straightforward synchronized LRU cache would;</li>
+ * <li>CACHE: PatternCache, with lock-free hits and W-TinyLFU eviction.</li>
+ * </ul>
+ * Both caches hold regtest.cache.maxEntries (default 256) patterns,
+ * PatternCache also at most regtest.cache.maxMegabytes (default 64). Each is
+ * measured on one thread and on regtest.threads (default: available
+ * processors), for regtest.cache.millis (default 1000) after
+ * regtest.cache.warmupMillis (default 500); hit rates and evictions are those
+ * of the measured window. Results are checked, so an engine whose shared
+ * compiled patterns are not thread-safe shows wrong answers or exceptions
+ * under the caches.
+ */
+public final class PatternCacheComparison
+{
+    private static final String[] KINDS = {"NONE", "LOCKED", "CACHE"};
+
+    private final int patternCount = Integer.getInteger("regtest.cache.patterns", 2000).intValue();
+    private final double skew = Double.parseDouble(System.getProperty("regtest.cache.skew", "1.0"));
+    private final int maxEntries = Integer.getInteger("regtest.cache.maxEntries", 256).intValue();
+    private final long maxBytes = Long.getLong("regtest.cache.maxMegabytes", 64).longValue() << 20;
+    private final int maxThreads = Integer.getInteger("regtest.threads", Runtime.getRuntime().availableProcessors()).intValue();
+    private final long millis = Long.getLong("regtest.cache.millis", 1000).longValue();
+    private final long warmupMillis = Long.getLong("regtest.cache.warmupMillis", 500).longValue();
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    private final Report report;
+
+    public PatternCacheComparison(Report report)
+    {
+        this.report = report;
+    }
+
+    /** The patterns of the run and what each answers on its input. */
+    private static final class Workload
+    {
+        final List<String> patterns = new ArrayList<String>();
+        final List<String> inputs = new ArrayList<String>();
+        final List<Boolean> expected = new ArrayList<Boolean>();
+        int corpusPatterns;
+    }
+
+    /** One way of compiling, with its counters. */
+    private abstract static class Compiler
+    {
+        abstract CompiledRegex compile(String pattern) throws Exception;
+
+        long hits()
+        {
+            return 0;
+        }
+
+        long misses()
+        {
+            return 0;
+        }
+
+        long evictions()
+        {
+            return 0;
+        }
+
+        int size()
+        {
+            return 0;
+        }
+
+        long bytes()
+        {
+            return -1;
+        }
+    }
+
+    private static final class Result
+    {
+        double opsPerSecond;
+        long hits;
+        long misses;
+        long evictions;
+        long wrong;
+        long failures;
+        Throwable firstFailure;
+    }
+
+    public void run(List<RegexEngine> engines)
+    {
+        int[] draws = zipfDraws();
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Caching " + engine.getName() + "...");
+            Workload workload = workload(engine);
+            report.begin("Compiled-pattern caches for regular expression library", engine.getName(), 10);
+            if (workload.patterns.isEmpty())
+            {
+                report.end("No pattern could be compiled and matched.");
+                continue;
+            }
+            report.caption(workload.patterns.size() + " patterns from " + workload.corpusPatterns + " corpus patterns, Zipf skew "
+                + skew + ", " + maxEntries + " entries cached, " + warmupMillis + " ms warmup, " + millis + " ms per measurement");
+            report.header("COMPILE", "THREADS", "OPS/S", "VS NONE", "HIT %", "MISSES", "EVICTIONS", "ENTRIES", "KB", "STATUS");
+            for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? maxThreads : threads + 1)
+            {
+                double none = 0;
+                for (String kind : KINDS)
+                {
+                    Compiler compiler = compiler(kind, engine);
+                    Result result = measure(compiler, workload, draws, threads);
+                    if (kind.equals("NONE"))
+                    {
+                        none = result.opsPerSecond;
+                    }
+                    long lookups = result.hits + result.misses;
+                    report.row(kind, Integer.valueOf(threads), Report.format(result.opsPerSecond), none > 0 ? Report.format(
+                        result.opsPerSecond / none) : "-", lookups == 0 ? "-" : Report.format(100.0 * result.hits / lookups), Long
+                        .toString(result.misses), Long.toString(result.evictions), Integer.toString(compiler.size()), compiler
+                        .bytes() < 0 ? "-" : Long.toString(compiler.bytes() >> 10), status(result));
+                }
+            }
+            report.end("OPS/S: compile (or cache lookup) and one match. HIT %, MISSES and EVICTIONS over the measured window;"
+                + " KB: PatternCache's estimate of what it holds, see regexbench.PatternCache.");
+        }
+    }
+
+    private Compiler compiler(String kind, final RegexEngine engine)
+    {
+        if (kind.equals("NONE"))
+        {
+            return new Compiler()
+            {
+                CompiledRegex compile(String pattern) throws Exception
+                {
+                    return engine.compile(pattern);
+                }
+            };
+        }
+        if (kind.equals("LOCKED"))
+        {
+            return new Compiler()
+            {
+                private final LongAdder hits = new LongAdder();
+                private final LongAdder misses = new LongAdder();
+                private final LongAdder evictions = new LongAdder();
+                private final Map<String, CompiledRegex> lru = new LinkedHashMap<String, CompiledRegex>(16, 0.75f, true)
+                {
+                    private static final long serialVersionUID = 1L;
+
+                    protected boolean removeEldestEntry(Map.Entry<String, CompiledRegex> eldest)
+                    {
+                        boolean full = size() > maxEntries;
+                        if (full)
+                        {
+                            evictions.increment();
+                        }
+                        return full;
+                    }
+                };
+
+                CompiledRegex compile(String pattern) throws Exception
+                {
+                    synchronized (lru)
+                    {
+                        CompiledRegex regex = lru.get(pattern);
+                        if (regex != null)
+                        {
+                            hits.increment();
+                            return regex;
+                        }
+                        misses.increment();
+                        regex = engine.compile(pattern);
+                        lru.put(pattern, regex);
+                        return regex;
+                    }
+                }
+
+                long hits()
+                {
+                    return hits.sum();
+                }
+
+                long misses()
+                {
+                    return misses.sum();
+                }
+
+                long evictions()
+                {
+                    return evictions.sum();
+                }
+
+                int size()
+                {
+                    synchronized (lru)
+                    {
+                        return lru.size();
+                    }
+                }
+            };
+        }
+        final CachingEngine cached = new CachingEngine(engine, new PatternCache<CompiledRegex>(maxEntries, maxBytes));
+        return new Compiler()
+        {
+            CompiledRegex compile(String pattern) throws Exception
+            {
+                return cached.compile(pattern);
+            }
+
+            long hits()
+            {
+                return cached.getCache().getHits();
+            }
+
+            long misses()
+            {
+                return cached.getCache().getMisses();
+            }
+
+            long evictions()
+            {
+                return cached.getCache().getEvictions();
+            }
+
+            int size()
+            {
+                return cached.getCache().size();
+            }
+
+            long bytes()
+            {
+                return cached.getCache().getWeight();
+            }
+        };
+    }
+
+    /**
+     * patternCount variants of the Corpus.PREG patterns the engine can compile,
+     * each with its own alternative |qzNqz, paired with the input its original
+     * matches fastest.
+     */
+    private Workload workload(RegexEngine engine)
+    {
+        Workload workload = new Workload();
+        List<String[]> bases = new ArrayList<String[]>();
+        List<String> inputs = new ArrayList<String>();
+        List<Boolean> expected = new ArrayList<Boolean>();
+        for (String preg : Corpus.PREG)
+        {
+            PregTranslation t = PregTranslator.translate(preg, engine.getDialect());
+            if (!t.isSupported())
+            {
+                continue;
+            }
+            String fastest = null;
+            MatchBudget.Outcome best = null;
+            for (String input : Corpus.STR)
+            {
+                MatchBudget.Outcome outcome = budget.probe(engine, t.getPattern(), input);
+                if (outcome.isCompleted() && (best == null || outcome.getNanos() < best.getNanos()))
+                {
+                    best = outcome;
+                    fastest = input;
+                }
+            }
+            if (best != null)
+            {
+                PregPattern pattern = PregPattern.parse(preg);
+                String source = pattern.getSource();
+                // the delimiters and modifiers around the body, to put the numbered alternative inside them
+                int body = source.indexOf(pattern.getBody());
+                bases.add(new String[] {source.substring(0, body + pattern.getBody().length()), source.substring(body
+                    + pattern.getBody().length())});
+                inputs.add(fastest);
+                expected.add(Boolean.valueOf(best.getResult()));
+            }
+        }
+        workload.corpusPatterns = bases.size();
+        for (int k = 0; k < patternCount && !bases.isEmpty(); k++)
+        {
+            int base = k % bases.size();
+            PregTranslation t = PregTranslator.translate(bases.get(base)[0] + "|qz" + k + "qz" + bases.get(base)[1], engine
+                .getDialect());
+            if (t.isSupported())
+            {
+                workload.patterns.add(t.getPattern());
+                workload.inputs.add(inputs.get(base));
+                workload.expected.add(expected.get(base));
+            }
+        }
+        return workload;
+    }
+
+    /** Pattern ranks drawn by the Zipf distribution, 0 the most frequent, read in turn by the threads. */
+    private int[] zipfDraws()
+    {
+        double[] cumulative = new double[patternCount];
+        double sum = 0;
+        for (int k = 0; k < patternCount; k++)
+        {
+            sum += 1 / Math.pow(k + 1, skew);
+            cumulative[k] = sum;
+        }
+        Random random = new Random(1);
+        int[] draws = new int[1 << 16];
+        for (int i = 0; i < draws.length; i++)
+        {
+            int k = java.util.Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            draws[i] = Math.min(patternCount - 1, k < 0 ? -k - 1 : k);
+        }
+        return draws;
+    }
+
+    private Result measure(final Compiler compiler, final Workload workload, final int[] draws, int threads)
+    {
+        final LongAdder ops = new LongAdder();
+        final LongAdder wrong = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final Throwable[] firstFailure = new Throwable[1];
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        final long[] window = new long[2];
+        final long[][] counters = new long[2][];
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            final int offset = t * draws.length / threads;
+            workers[t] = new Thread("cache-" + t)
+            {
+                public void run()
+                {
+                    ready.countDown();
+                    try
+                    {
+                        go.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    long count = 0;
+                    long mismatches = 0;
+                    long errors = 0;
+                    int next = offset;
+                    while (true)
+                    {
+                        long now = System.nanoTime();
+                        if (now >= window[1])
+                        {
+                            break;
+                        }
+                        // a pattern outside the workload, one the dialect could not express, is skipped
+                        int k = draws[next];
+                        next = (next + 1) & (draws.length - 1);
+                        if (k >= workload.patterns.size())
+                        {
+                            continue;
+                        }
+                        try
+                        {
+                            CompiledRegex regex = compiler.compile(workload.patterns.get(k));
+                            if (regex.match(workload.inputs.get(k)) != workload.expected.get(k).booleanValue())
+                            {
+                                mismatches++;
+                            }
+                        }
+                        catch (Throwable e)
+                        {
+                            errors++;
+                            synchronized (firstFailure)
+                            {
+                                if (firstFailure[0] == null)
+                                {
+                                    firstFailure[0] = e;
+                                }
+                            }
+                        }
+                        if (now >= window[0])
+                        {
+                            count++;
+                        }
+                    }
+                    ops.add(count);
+                    wrong.add(mismatches);
+                    failures.add(errors);
+                }
+            };
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+
+        try
+        {
+            ready.await();
+            window[0] = System.nanoTime() + warmupMillis * 1000000L;
+            window[1] = window[0] + millis * 1000000L;
+            go.countDown();
+            // the counters at the start and end of the measured window
+            while (System.nanoTime() < window[0])
+            {
+                Thread.sleep(1);
+            }
+            counters[0] = new long[] {compiler.hits(), compiler.misses(), compiler.evictions()};
+            for (Thread worker : workers)
+            {
+                worker.join();
+            }
+            counters[1] = new long[] {compiler.hits(), compiler.misses(), compiler.evictions()};
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            counters[0] = counters[1] = new long[3];
+        }
+
+        Result result = new Result();
+        result.opsPerSecond = ops.sum() / (millis / 1000.0);
+        result.hits = counters[1][0] - counters[0][0];
+        result.misses = counters[1][1] - counters[0][1];
+        result.evictions = counters[1][2] - counters[0][2];
+        result.wrong = wrong.sum();
+        result.failures = failures.sum();
+        result.firstFailure = firstFailure[0];
+        return result;
+    }
+
+    private static String status(Result result)
+    {
+        if (result.wrong == 0 && result.failures == 0)
+        {
+            return "ok";
+        }
+        String text = result.wrong + " wrong, " + result.failures + " exceptions";
+        if (result.firstFailure != null)
+        {
+            text += " (" + result.firstFailure.getClass().getName() + ")";
+        }
+        return text;
+    }
+}
@@ -0,0 +1,97 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A pass of java.util.regex over the Corpus.traffic() inputs a pattern does not
+ * match, the common case, with and without a LiteralPrefilter in front, plus the
+ * prefilter alone. Patterns without required literals (Corpus.PREG[3]) measure
+ * the same in plain and prefiltered. Run "regtest prefilter" for the other
+ * engines and the reject rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Benchmark)
+public class PrefilterBenchmark
+{
+    @Param({"0", "1", "2", "3", "4"})
+    public int re;
+
+    private CompiledRegex plain;
+    private CompiledRegex prefiltered;
+    private LiteralPrefilter prefilter;
+    private String[] inputs;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        plain = RegexEngines.find("java.util.regex.Pattern").compile(Corpus.RE[re]);
+        prefiltered = PrefilteredRegex.wrap(plain, Corpus.PREG[re]);
+        prefilter = LiteralPrefilter.forPattern(Corpus.PREG[re]);
+        List<String> nonMatching = new ArrayList<String>();
+        for (String input : Corpus.traffic())
+        {
+            if (!plain.match(input))
+            {
+                nonMatching.add(input);
+            }
+        }
+        inputs = nonMatching.toArray(new String[nonMatching.size()]);
+    }
+
+    @Benchmark
+    public int plain()
+    {
+        return pass(plain);
+    }
+
+    @Benchmark
+    public int prefiltered()
+    {
+        return pass(prefiltered);
+    }
+
+    @Benchmark
+    public int prefilterOnly()
+    {
+        int passed = 0;
+        for (String input : inputs)
+        {
+            if (prefilter == null || prefilter.mayMatch(input))
+            {
+                passed++;
+            }
+        }
+        return passed;
+    }
+
+    private int pass(CompiledRegex regex)
+    {
+        int matched = 0;
+        for (String input : inputs)
+        {
+            if (regex.match(input))
+            {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,218 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Prefilter mode ("regtest prefilter"): every engine and Corpus.PREG pattern with
+ * and without a LiteralPrefilter in front, over Corpus.traffic(), i.e. the
+ * Corpus.STR inputs plus the lines of the large input, most of which match
+ * nothing.
+ *
+ * Reported per pattern: the required literals and how they are searched, the
+ * share of inputs the prefilter REJECTED, HITS, the share of the inputs it passed
+ * that the engine then matched, and the mean time per input without and with the
+ * prefilter, over all inputs and over the non-matching ones alone. Every answer
+ * with the prefilter is checked against the engine's own; a difference would be
+ * a prefilter rejecting an input that matches and is reported as WRONG.
+ *
+ * Each engine gets the patterns translated into its own dialect. Inputs that fail
+ * or exceed the MatchBudget are left out of that pattern's workload. Every
+ * measurement is preceded by a warmup of the same length. System property:
+ * regtest.prefilter.millis (time per measurement, default 200).
+ *
+ * The engine tables are preceded by a check of the prefilters alone: a table of
+ * preg patterns and inputs that preg_match() matches, which no prefilter may
+ * reject. It covers the PCRE syntax RequiredLiterals must not take for literals.
+ */
+public final class PrefilterComparison
+{
+    private final long millis = Long.getLong("regtest.prefilter.millis", 200).longValue();
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    /** Pattern and an input preg_match() finds it in. */
+    private static final String[][] CHECKS = {
+        {"/a(?R)?b/", "ab"},
+        {"/(a)(?1)?b/", "ab"},
+        {"/(*UTF8)abc/", "abc"},
+        {"/ab(*SKIP)cd/", "abcd"},
+        {"/ab(?C)cd/", "abcd"},
+        {"/ab(?C1)c?d/", "abd"},
+        {"/a(?U)b+?c/", "abbc"},
+        {"/a(?-i)b/", "ab"},
+        {"/(?x)usd [0-9]+/", "usd5"},
+        {"/(a(?x)b c)d e/", "abcd e"},
+    };
+
+    private static volatile int blackhole;
+
+    private final Report report;
+
+    public PrefilterComparison(Report report)
+    {
+        this.report = report;
+    }
+
+    /** Checks the prefilters, then runs every engine; returns the number of inputs a prefilter wrongly rejected. */
+    public int run(List<RegexEngine> engines)
+    {
+        int wrong = check();
+        String[] traffic = Corpus.traffic();
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Prefiltering " + engine.getName() + "...");
+            report.begin("Required-literal prefilter in front of regular expression library", engine.getName(), 11);
+            report.caption(traffic.length + " inputs (Corpus.STR and the lines of the large input), " + millis
+                + " ms per measurement");
+            report.header("RE", "PREFILTER", "REJECTED", "HITS", "ALL US", "FILTERED", "SPEEDUP", "NON-MATCHING US", "FILTERED",
+                "SPEEDUP", "STATUS");
+            for (int re = 0; re < Corpus.PREG.length; re++)
+            {
+                run(engine, Corpus.PREG[re], traffic);
+            }
+            report.end("Times in microseconds per input. REJECTED: inputs the prefilter answered without the engine. HITS:"
+                + " inputs passed by the prefilter that the engine matched.");
+        }
+        return wrong;
+    }
+
+    private int check()
+    {
+        report.begin("Required-literal prefilters checked against PCRE", "preg_match", 4);
+        report.header("RE", "INPUT", "PREFILTER", "STATUS");
+        int wrong = 0;
+        for (String[] c : CHECKS)
+        {
+            LiteralPrefilter prefilter = LiteralPrefilter.forPattern(c[0]);
+            boolean rejected = prefilter != null && !prefilter.mayMatch(c[1]);
+            wrong += rejected ? 1 : 0;
+            report.row(c[0], c[1], prefilter == null ? "none" : prefilter.describe(), rejected ? "WRONG: rejects a match" : "ok");
+        }
+        report.end(wrong == 0 ? "No prefilter rejected a matching input." : wrong + " matching inputs rejected.");
+        return wrong;
+    }
+
+    private void run(RegexEngine engine, String preg, String[] traffic)
+    {
+        LiteralPrefilter prefilter = LiteralPrefilter.forPattern(preg);
+        String description = prefilter == null ? "none" : prefilter.describe();
+        PregTranslation t = PregTranslator.translate(preg, engine.getDialect());
+        CompiledRegex plain;
+        try
+        {
+            if (!t.isSupported())
+            {
+                report.row(preg, description, "-", "-", "-", "-", "-", "-", "-", "-", t.toString());
+                return;
+            }
+            plain = engine.compile(t.getPattern());
+        }
+        catch (Throwable e)
+        {
+            report.row(preg, description, "-", "-", "-", "-", "-", "-", "-", "-", "compile failed: " + e.getClass().getName());
+            return;
+        }
+        CompiledRegex filtered = prefilter == null ? plain : new PrefilteredRegex(plain, prefilter);
+
+        List<String> all = new ArrayList<String>();
+        List<String> nonMatching = new ArrayList<String>();
+        int left = 0;
+        int rejected = 0;
+        int passed = 0;
+        int hits = 0;
+        int wrong = 0;
+        for (String input : traffic)
+        {
+            MatchBudget.Outcome outcome = budget.probe(engine, t.getPattern(), input);
+            if (!outcome.isCompleted())
+            {
+                left++;
+                continue;
+            }
+            boolean matched = outcome.getResult();
+            all.add(input);
+            if (!matched)
+            {
+                nonMatching.add(input);
+            }
+            boolean pass = prefilter == null || prefilter.mayMatch(input);
+            if (!pass)
+            {
+                rejected++;
+            }
+            else
+            {
+                passed++;
+                hits += matched ? 1 : 0;
+            }
+            if (filtered.match(input) != matched)
+            {
+                wrong++;
+            }
+        }
+
+        String status = wrong == 0 ? "ok" : "WRONG: " + wrong + " inputs answered differently";
+        if (left > 0)
+        {
+            status += ", " + left + " inputs over the budget left out";
+        }
+        double allPlain = time(plain, all);
+        double nonMatchingPlain = time(plain, nonMatching);
+        double allFiltered = prefilter == null ? 0 : time(filtered, all);
+        double nonMatchingFiltered = prefilter == null ? 0 : time(filtered, nonMatching);
+        report.row(preg, description, percent(rejected, all.size()), percent(hits, passed), micros(allPlain), micros(allFiltered),
+            speedup(allPlain, allFiltered), micros(nonMatchingPlain), micros(nonMatchingFiltered),
+            speedup(nonMatchingPlain, nonMatchingFiltered), status);
+    }
+
+    private static String percent(int part, int whole)
+    {
+        return whole > 0 ? Report.format(100.0 * part / whole) + "%" : "-";
+    }
+
+    private static String micros(double nanos)
+    {
+        return nanos > 0 ? Report.format(nanos / 1e3) : "-";
+    }
+
+    private static String speedup(double plain, double filtered)
+    {
+        return plain > 0 && filtered > 0 ? Report.format(plain / filtered) : "-";
+    }
+
+    /** Mean nanoseconds of regex.match() per input, after a warmup; 0 for no inputs. */
+    private double time(CompiledRegex regex, List<String> inputs)
+    {
+        if (inputs.isEmpty())
+        {
+            return 0;
+        }
+        measure(regex, inputs);
+        return measure(regex, inputs);
+    }
+
+    private double measure(CompiledRegex regex, List<String> inputs)
+    {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long start = System.nanoTime();
+        long n = 0;
+        int sink = 0;
+        do
+        {
+            for (int i = 0; i < inputs.size(); i++)
+            {
+                if (regex.match(inputs.get(i)))
+                {
+                    sink++;
+                }
+            }
+            n += inputs.size();
+        }
+        while (System.nanoTime() < deadline);
+        blackhole = sink;
+        return (System.nanoTime() - start) / (double) n;
+    }
+}
@@ -0,0 +1,63 @@
+package regexbench;
+
+/**
+ * A CompiledRegex of any engine behind a LiteralPrefilter: inputs the prefilter
+ * rejects are answered without calling the engine. This is exact for match(),
+ * find() and groups() alike, since a required literal is part of every match,
+ * whether the engine matches the whole input or searches it.
+ */
+public final class PrefilteredRegex implements CompiledRegex
+{
+    private final CompiledRegex regex;
+    private final LiteralPrefilter prefilter;
+
+    public PrefilteredRegex(CompiledRegex regex, LiteralPrefilter prefilter)
+    {
+        this.regex = regex;
+        this.prefilter = prefilter;
+    }
+
+    /** regex behind the prefilter for preg, or regex itself if preg has no required literal. */
+    public static CompiledRegex wrap(CompiledRegex regex, String preg)
+    {
+        LiteralPrefilter prefilter = LiteralPrefilter.forPattern(preg);
+        return prefilter == null ? regex : new PrefilteredRegex(regex, prefilter);
+    }
+
+    public LiteralPrefilter getPrefilter()
+    {
+        return prefilter;
+    }
+
+    public boolean match(CharSequence input)
+    {
+        return prefilter.mayMatch(input) && regex.match(input);
+    }
+
+    public boolean find(CharSequence input)
+    {
+        return prefilter.mayMatch(input) && regex.find(input);
+    }
+
+    public int[] groups(CharSequence input)
+    {
+        return prefilter.mayMatch(input) ? regex.groups(input) : null;
+    }
+
+    public int[] groups(CharSequence input, int from)
+    {
+        return prefilter.mayMatch(input) ? regex.groups(input, from) : null;
+    }
+
+    public ReusableMatcher reusableMatcher()
+    {
+        final ReusableMatcher matcher = regex.reusableMatcher();
+        return new ReusableMatcher()
+        {
+            public boolean match(CharSequence input)
+            {
+                return prefilter.mayMatch(input) && matcher.match(input);
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package regexbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import regexbench.preg.PregCache;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Cost of getting from a preg pattern string to the engine's dialect: translating
+ * on every call versus a hit in the shared PregCache, which is what a preg_match()
+ * with a constant pattern pays. The cache is filled with the corpus string and
+ * looked up with a copy of it, as when PHP code builds or reads the pattern, so
+ * hits compare the characters rather than short-circuit on identity.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Benchmark)
+public class PregCacheBenchmark
+{
+    @Param({"JAVA", "PERL5", "AUTOMATON"})
+    public RegexDialect dialect;
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int re;
+
+    private final PregCache cache = new PregCache();
+    private String preg;
+
+    @Setup
+    public void setUp()
+    {
+        cache.translate(Corpus.PREG[re], dialect);
+        preg = new String(Corpus.PREG[re].toCharArray());
+    }
+
+    @Benchmark
+    public Object uncached()
+    {
+        return PregTranslator.translate(preg, dialect);
+    }
+
+    @Benchmark
+    public Object cached()
+    {
+        return cache.translate(preg, dialect);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object cachedContended()
+    {
+        return cache.translate(preg, dialect);
+    }
+}
@@ -0,0 +1,117 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import regexbench.preg.PregFunctions;
+import regexbench.preg.PregTranslator;
+
+/**
+ * A pass of each preg function (see PregFunctions) over the Corpus.traffic()
+ * inputs bar the large one, whose lines are included, for the engines that report
+ * groups and can search from an offset. Run "regtest functions" for all engines,
+ * per input and checked against a reference engine.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Benchmark)
+public class PregFunctionBenchmark
+{
+    @Param({"java.util.regex.Pattern", "jregex.Pattern", "org.apache.oro.text.regex.Perl5Matcher"})
+    public String engine;
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int re;
+
+    private CompiledRegex regex;
+    private String[] inputs;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        RegexEngine e = RegexEngines.find(engine);
+        regex = e.compile(PregTranslator.translate(Corpus.PREG[re], e.getDialect()).getPattern());
+        String large = Corpus.STR[Corpus.STR.length - 1];
+        List<String> traffic = new ArrayList<String>();
+        for (String input : Corpus.traffic())
+        {
+            if (input != large)
+            {
+                traffic.add(input);
+            }
+        }
+        inputs = traffic.toArray(new String[traffic.size()]);
+    }
+
+    @Benchmark
+    public int match()
+    {
+        int matched = 0;
+        for (String input : inputs)
+        {
+            int[] offsets = PregFunctions.match(regex, input);
+            matched += offsets == null ? 0 : offsets.length;
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int matchAll()
+    {
+        int matches = 0;
+        for (String input : inputs)
+        {
+            matches += PregFunctions.matchAll(regex, input).size();
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int replace()
+    {
+        int length = 0;
+        for (String input : inputs)
+        {
+            length += PregFunctions.replace(regex, input, Corpus.PREG_REPLACEMENT[re]).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int replaceCallback()
+    {
+        int length = 0;
+        for (String input : inputs)
+        {
+            length += PregFunctions.replaceCallback(regex, input, PregFunctionComparison.CALLBACK).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int split()
+    {
+        int pieces = 0;
+        for (String input : inputs)
+        {
+            pieces += PregFunctions.split(regex, input).size();
+        }
+        return pieces;
+    }
+}
@@ -0,0 +1,296 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import regexbench.preg.PregFunctions;
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Preg function mode ("regtest functions"): every engine doing what PHP code asks
+ * of PCRE beyond a yes/no answer, i.e. preg_match() with the group offsets,
+ * preg_match_all(), preg_replace() with group references, preg_replace_callback()
+ * with CALLBACK and preg_split(), see PregFunctions. Reported is the mean time per call for every Corpus.PREG pattern,
+ * function and Corpus.STR input.
+ *
+ * Every result is first checked against the reference engine's, so a fast but
+ * wrong engine cannot win: cells that differ are reported as WRONG and not timed.
+ * Engines that report fewer groups than the pattern has, like the DFA engines
+ * that only know group 0, cannot do preg_match(), preg_match_all(),
+ * preg_replace() or preg_replace_callback() and are timed for preg_split()
+ * alone; so are engines that cannot continue a search from an offset
+ * (CompiledRegex.groups(input, from)), on the inputs that need it.
+ *
+ * Each engine gets the patterns translated into its own dialect. Cells that fail
+ * or exceed the MatchBudget are not timed. Every measurement is preceded by a
+ * warmup of the same length. System properties: regtest.functions.millis (time
+ * per measurement, default 50) and regtest.functions.reference (default
+ * java.util.regex.Pattern).
+ */
+public final class PregFunctionComparison
+{
+    private static final String[] FUNCTIONS = {"preg_match", "preg_match_all", "preg_replace", "preg_replace_callback",
+        "preg_split"};
+
+    private static final int MATCH = 0;
+    private static final int MATCH_ALL = 1;
+    private static final int REPLACE = 2;
+    private static final int REPLACE_CALLBACK = 3;
+    private static final int SPLIT = 4;
+
+    /**
+     * The preg_replace_callback() callback: the match's groups, group 0 included,
+     * joined by "|" in brackets, so every group offset is used. A group that did
+     * not participate is empty, as in PHP.
+     */
+    static final PregFunctions.Callback CALLBACK = new PregFunctions.Callback()
+    {
+        public String replace(CharSequence subject, int[] offsets)
+        {
+            StringBuilder groups = new StringBuilder("[");
+            for (int i = 0; i + 1 < offsets.length; i += 2)
+            {
+                if (i > 0)
+                {
+                    groups.append('|');
+                }
+                if (offsets[i] >= 0)
+                {
+                    groups.append(subject, offsets[i], offsets[i + 1]);
+                }
+            }
+            return groups.append(']').toString();
+        }
+    };
+
+    private final long millis = Long.getLong("regtest.functions.millis", 50).longValue();
+    private final String referenceName = System.getProperty("regtest.functions.reference", "java.util.regex.Pattern");
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    private static volatile int blackhole;
+
+    private final Report report;
+
+    public PregFunctionComparison(Report report)
+    {
+        this.report = report;
+    }
+
+    public void run(List<RegexEngine> engines) throws Exception
+    {
+        RegexEngine reference = RegexEngines.find(referenceName);
+        if (reference == null)
+        {
+            throw new IllegalStateException("reference engine " + referenceName + " not found");
+        }
+        Object[][][] expected = new Object[Corpus.PREG.length][FUNCTIONS.length][Corpus.STR.length];
+        for (int re = 0; re < Corpus.PREG.length; re++)
+        {
+            CompiledRegex regex = reference.compile(PregTranslator.translate(Corpus.PREG[re], reference.getDialect()).getPattern());
+            for (int f = 0; f < FUNCTIONS.length; f++)
+            {
+                for (int str = 0; str < Corpus.STR.length; str++)
+                {
+                    expected[re][f][str] = apply(f, regex, re, Corpus.STR[str]);
+                }
+            }
+        }
+
+        String[] header = new String[Corpus.STR.length + 3];
+        header[0] = "RE";
+        header[1] = "FUNCTION";
+        for (int str = 0; str < Corpus.STR.length; str++)
+        {
+            header[str + 2] = "STR " + str + " US";
+        }
+        header[header.length - 1] = "STATUS";
+
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Calling preg functions on " + engine.getName() + "...");
+            report.begin("Preg functions with capture groups for regular expression library", engine.getName(), header.length);
+            report.caption("Checked against " + referenceName + ", " + millis + " ms per measurement");
+            report.header(header);
+            for (int re = 0; re < Corpus.PREG.length; re++)
+            {
+                run(engine, re, expected[re]);
+            }
+            report.end("Times in microseconds per call; - for cells not timed, see STATUS. preg_replace() replacements: "
+                + Arrays.toString(Corpus.PREG_REPLACEMENT) + "; preg_replace_callback() replaces a match by its groups as [g0|g1|...].");
+        }
+    }
+
+    private void run(RegexEngine engine, int re, Object[][] expected)
+    {
+        String preg = Corpus.PREG[re];
+        PregTranslation t = PregTranslator.translate(preg, engine.getDialect());
+        CompiledRegex regex = null;
+        String problem = null;
+        try
+        {
+            if (!t.isSupported())
+            {
+                problem = t.toString();
+            }
+            else
+            {
+                regex = engine.compile(t.getPattern());
+            }
+        }
+        catch (Throwable e)
+        {
+            problem = "compile failed: " + e.getClass().getName();
+        }
+
+        // run every cell once within the match budget first
+        String[] skipped = new String[Corpus.STR.length];
+        for (int str = 0; regex != null && str < Corpus.STR.length; str++)
+        {
+            MatchBudget.Outcome outcome = budget.probeFind(engine, t.getPattern(), Corpus.STR[str]);
+            if (!outcome.isCompleted())
+            {
+                skipped[str] = outcome.describe();
+            }
+        }
+
+        boolean[] missingGroups = new boolean[Corpus.STR.length];
+        for (int f = 0; f < FUNCTIONS.length; f++)
+        {
+            Object[] cells = new Object[Corpus.STR.length + 3];
+            cells[0] = preg;
+            cells[1] = FUNCTIONS[f];
+            List<String> notes = new ArrayList<String>();
+            for (int str = 0; str < Corpus.STR.length; str++)
+            {
+                String note = problem != null ? problem : skipped[str];
+                if (note == null && (f == REPLACE || f == REPLACE_CALLBACK) && missingGroups[str])
+                {
+                    note = "groups missing";
+                }
+                if (note == null)
+                {
+                    note = check(f, regex, re, Corpus.STR[str], expected[f][str], missingGroups, str);
+                }
+                cells[str + 2] = note == null ? Report.format(time(f, regex, re, Corpus.STR[str]) / 1e3) : "-";
+                if (note != null && !notes.contains(note))
+                {
+                    notes.add(note);
+                }
+            }
+            cells[cells.length - 1] = notes.isEmpty() ? "ok" : join(notes);
+            report.row(cells);
+        }
+    }
+
+    /** Compares one call with the reference's result; null if they agree, otherwise why the cell is not timed. */
+    private static String check(int f, CompiledRegex regex, int re, String input, Object expected, boolean[] missingGroups,
+        int str)
+    {
+        Object actual;
+        try
+        {
+            actual = apply(f, regex, re, input);
+        }
+        catch (UnsupportedOperationException e)
+        {
+            return "unsupported: " + e.getMessage();
+        }
+        catch (Throwable e)
+        {
+            return "failed: " + e.getClass().getName();
+        }
+        if (f == MATCH || f == MATCH_ALL)
+        {
+            int[][] a = offsets(f, actual);
+            int[][] e = offsets(f, expected);
+            if (a.length == e.length)
+            {
+                for (int i = 0; i < a.length; i++)
+                {
+                    if (a[i].length < e[i].length)
+                    {
+                        missingGroups[str] = true;
+                        return "groups missing: " + a[i].length / 2 + " of " + e[i].length / 2 + " reported";
+                    }
+                }
+            }
+            return Arrays.deepEquals(a, e) ? null : "WRONG: " + describe(a) + " instead of " + describe(e);
+        }
+        return actual.equals(expected) ? null : "WRONG: " + FUNCTIONS[f] + " result differs";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int[][] offsets(int f, Object result)
+    {
+        if (f == MATCH)
+        {
+            return result == null ? new int[0][] : new int[][] {(int[]) result};
+        }
+        List<int[]> matches = (List<int[]>) result;
+        return matches.toArray(new int[matches.size()][]);
+    }
+
+    private static String describe(int[][] matches)
+    {
+        return matches.length == 0 ? "no match" : matches.length == 1 ? Arrays.toString(matches[0]) : matches.length + " matches";
+    }
+
+    private static Object apply(int f, CompiledRegex regex, int re, String input)
+    {
+        switch (f)
+        {
+            case MATCH:
+                return PregFunctions.match(regex, input);
+            case MATCH_ALL:
+                return PregFunctions.matchAll(regex, input);
+            case REPLACE:
+                return PregFunctions.replace(regex, input, Corpus.PREG_REPLACEMENT[re]);
+            case REPLACE_CALLBACK:
+                return PregFunctions.replaceCallback(regex, input, CALLBACK);
+            case SPLIT:
+                return PregFunctions.split(regex, input);
+            default:
+                throw new IllegalArgumentException("no function " + f);
+        }
+    }
+
+    /** Mean nanoseconds per call, after a warmup. */
+    private double time(int f, CompiledRegex regex, int re, String input)
+    {
+        measure(f, regex, re, input);
+        return measure(f, regex, re, input);
+    }
+
+    private double measure(int f, CompiledRegex regex, int re, String input)
+    {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long start = System.nanoTime();
+        long n = 0;
+        int sink = 0;
+        do
+        {
+            Object result = apply(f, regex, re, input);
+            sink += result == null ? 0 : result.hashCode();
+            n++;
+        }
+        while (System.nanoTime() < deadline);
+        blackhole = sink;
+        return (System.nanoTime() - start) / (double) n;
+    }
+
+    private static String join(List<String> notes)
+    {
+        StringBuilder text = new StringBuilder();
+        for (String note : notes)
+        {
+            if (text.length() > 0)
+            {
+                text.append("; ");
+            }
+            text.append(note);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package regexbench;
+
+import java.util.List;
+
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Translation check mode ("regtest translate"): a table of preg patterns, inputs
+ * and what PHP's preg_match() answers for them, run through PregTranslator and
+ * every engine. It covers the places where PCRE and the target dialects read the
+ * same text differently, line terminators and character escapes above all, so a
+ * translation that compiles but matches something else shows up as WRONG.
+ *
+ * The JAVA, PERL5 and PREG translations are searched for with find(). An
+ * AUTOMATON translation means a whole-input match, so those engines get the
+ * search form instead (PregTranslator.translateForSearch(), in brics' syntax)
+ * through match(), and are skipped if they cannot search at all. Rows a dialect
+ * or engine cannot express are reported as unsupported or failed, not counted
+ * as wrong.
+ */
+public final class PregTranslationCheck
+{
+    /** Pattern, input, and whether preg_match() finds the pattern in the input. */
+    private static final Object[][] CASES = {
+        // \n is PCRE's only line terminator
+        {"/a.b/", "a\rb", Boolean.TRUE},
+        {"/a.b/", "a\u0085b", Boolean.TRUE},
+        {"/a.b/", "a\nb", Boolean.FALSE},
+        {"/a.b/s", "a\nb", Boolean.TRUE},
+        {"/a.b/s", "a\rb", Boolean.TRUE},
+        {"/a(?s:.)b/", "a\nb", Boolean.TRUE},
+        {"/a(?s:x).b/", "a\nb", Boolean.FALSE},
+        {"/(?s)a.b/", "a\nb", Boolean.TRUE},
+        {"/a(?-s).b/s", "a\nb", Boolean.FALSE},
+        {"/ab$/", "ab\n", Boolean.TRUE},
+        {"/ab$/", "ab\ncd", Boolean.FALSE},
+        {"/ab$/", "ab\r", Boolean.FALSE},
+        {"/ab$/", "ab\u0085", Boolean.FALSE},
+        {"/ab$/D", "ab\n", Boolean.FALSE},
+        {"/^b/m", "a\nb", Boolean.TRUE},
+        {"/^b/m", "a\rb", Boolean.FALSE},
+        {"/a$/m", "a\rb", Boolean.FALSE},
+        // character escapes
+        {"/a\\x4/", "a\u0004", Boolean.TRUE},
+        {"/a\\x/", "a\u0000", Boolean.TRUE},
+        {"/a\\x41/", "aA", Boolean.TRUE},
+        {"/a\\x{41}/", "aA", Boolean.TRUE},
+        {"/caf\\xe9/", "caf\u00e9", Boolean.TRUE},
+        {"/a\\012/", "a\n", Boolean.TRUE},
+        {"/a\\0/", "a\u0000", Boolean.TRUE},
+        {"/\\cA/", "\u0001", Boolean.TRUE},
+        {"/a\\e/", "a\u001b", Boolean.TRUE},
+        {"/a\\tb/", "a\tb", Boolean.TRUE},
+        {"/[\\x4]/", "\u0004", Boolean.TRUE},
+        {"/a\\.b/", "axb", Boolean.FALSE},
+        // modifiers
+        {"/AB/i", "ab", Boolean.TRUE},
+        {"/[a-c]X/i", "Bx", Boolean.TRUE},
+        {"/(a)\\1/i", "aA", Boolean.TRUE},
+        {"/a(?i)b/", "aB", Boolean.TRUE},
+        {"/a b # comment\n/x", "ab", Boolean.TRUE},
+        {"/a+?/U", "aa", Boolean.TRUE},
+    };
+
+    private final Report report;
+
+    public PregTranslationCheck(Report report)
+    {
+        this.report = report;
+    }
+
+    /** Runs the table on every engine; returns the number of wrong answers. */
+    public int run(List<RegexEngine> engines)
+    {
+        int wrong = 0;
+        for (RegexEngine engine : engines)
+        {
+            if (engine.getDialect() == RegexDialect.NONE)
+            {
+                continue;
+            }
+            System.err.println("Checking translations for " + engine.getName() + "...");
+            report.begin("Preg translations checked against PCRE for regular expression library", engine.getName(), 6);
+            report.caption("Dialect " + engine.getDialect());
+            report.header("PREG", "INPUT", "PCRE", "TRANSLATION", "ENGINE", "STATUS");
+            int engineWrong = 0;
+            for (Object[] c : CASES)
+            {
+                String preg = (String) c[0];
+                String input = (String) c[1];
+                boolean expected = ((Boolean) c[2]).booleanValue();
+                PregTranslation t = PregTranslator.translate(preg, engine.getDialect());
+                String translation = t.isSupported() ? t.getPattern() : "-";
+                String actual = "-";
+                String status;
+                try
+                {
+                    if (!t.isSupported())
+                    {
+                        status = t.toString();
+                    }
+                    else
+                    {
+                        boolean found;
+                        if (engine.getDialect() == RegexDialect.AUTOMATON)
+                        {
+                            // fails for engines that cannot search at all
+                            engine.compile(t.getPattern()).find("");
+                            t = PregTranslator.translateForSearch(preg);
+                            translation = t.isSupported() ? t.getPattern() : "-";
+                            if (!t.isSupported())
+                            {
+                                throw new UnsupportedOperationException(t.toString());
+                            }
+                            found = engine.compile(t.getPattern()).match(input);
+                        }
+                        else
+                        {
+                            found = engine.compile(t.getPattern()).find(input);
+                        }
+                        actual = Boolean.toString(found);
+                        status = found == expected ? "ok" : "WRONG";
+                    }
+                }
+                catch (UnsupportedOperationException e)
+                {
+                    status = "unsupported: " + e.getMessage();
+                }
+                catch (Throwable e)
+                {
+                    status = "failed: " + e;
+                }
+                if (status.equals("WRONG"))
+                {
+                    engineWrong++;
+                }
+                report.row(escape(preg), escape(input), Boolean.toString(expected), escape(translation), actual, status);
+            }
+            wrong += engineWrong;
+            report.end(engineWrong + " wrong of " + CASES.length + "; control characters shown as \\uXXXX.");
+        }
+        return wrong;
+    }
+
+    private static String escape(String text)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (c < 0x20 || (c >= 0x7F && c <= 0x9F))
+            {
+                sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
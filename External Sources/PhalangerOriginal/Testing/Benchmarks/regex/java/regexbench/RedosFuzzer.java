@@ -0,0 +1,463 @@
+package regexbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Fuzz mode ("regtest fuzz [preg pattern...]"): a search for the inputs that
+ * make each engine slowest on a pattern, Corpus.PREG unless patterns are given,
+ * so that patterns can be checked for denial-of-service slowdowns before they
+ * are deployed.
+ *
+ * The search is an evolutionary one with the match cost as feedback: the number
+ * of characters the engine reads (BudgetedCharSequence), which grows with every
+ * backtrack and does not depend on machine noise, or the time of the match for
+ * engines that copy the input and cannot be metered, the fastest of a few runs.
+ * A population of the costliest inputs found so far is mutated by replacing,
+ * inserting and deleting characters, repeating a substring, which is what pumps
+ * the ambiguous part of a pattern, and splicing two inputs. Characters come from
+ * the pattern itself, the Corpus.STR inputs that seed the population and a few
+ * class representatives.
+ *
+ * The search runs at three maximum input lengths, each seeded with the previous
+ * one's survivors, and the growth exponent of the worst cost between them tells
+ * linear matching from super-linear blow-up: a cost that grows at least like
+ * n^1.5, or a match that exceeds the budget, is reported as SUPER-LINEAR and its
+ * input is kept in the adversarial corpus. That corpus, a JSON file, also seeds
+ * the next run, so findings accumulate and can be replayed against new engine
+ * versions. "regtest fuzz" exits with status 1 when it finds a super-linear
+ * cell.
+ *
+ * Every match runs under its own MatchBudget. System properties:
+ * regtest.fuzz.length (longest input, default 64), regtest.fuzz.iterations
+ * (mutations per length, default 1000), regtest.fuzz.population (default 16),
+ * regtest.fuzz.seed (default 1), regtest.fuzz.steps and regtest.fuzz.millis (the
+ * budget, default 10000000 characters and 200 ms), regtest.fuzz.exponent (growth
+ * that counts as super-linear, default 1.5) and regtest.fuzz.corpus (default
+ * redos-corpus.json, "none" to neither read nor write it).
+ */
+public final class RedosFuzzer
+{
+    private static final String REPRESENTATIVES = "aZ09_ \t\n-.:/{}";
+
+    /** Matches per input for engines that can only be timed, the fastest of which counts. */
+    private static final int TIMED_REPEATS = 5;
+
+    private final int maxLength = Integer.getInteger("regtest.fuzz.length", 64).intValue();
+    private final int iterations = Integer.getInteger("regtest.fuzz.iterations", 1000).intValue();
+    private final int populationSize = Integer.getInteger("regtest.fuzz.population", 16).intValue();
+    private final long seed = Long.getLong("regtest.fuzz.seed", 1).longValue();
+    private final double superLinear = Double.parseDouble(System.getProperty("regtest.fuzz.exponent", "1.5"));
+    private final String corpusName = System.getProperty("regtest.fuzz.corpus", "redos-corpus.json");
+    private final MatchBudget budget = new MatchBudget(Long.getLong("regtest.fuzz.steps", 10000000L).longValue(), Long.getLong(
+        "regtest.fuzz.millis", 200).longValue());
+
+    private final Report report;
+
+    public RedosFuzzer(Report report)
+    {
+        this.report = report;
+    }
+
+    /** Fuzzes every engine on every pattern; returns the number of super-linear cells. */
+    @SuppressWarnings("unchecked")
+    public int run(List<RegexEngine> engines, List<String> patterns) throws IOException
+    {
+        File corpusFile = corpusName.isEmpty() || corpusName.equals("none") ? null : new File(corpusName);
+        List<Object> corpus = new ArrayList<Object>();
+        if (corpusFile != null && corpusFile.isFile())
+        {
+            corpus = (List<Object>) Json.parse(new String(Files.readAllBytes(corpusFile.toPath()), StandardCharsets.UTF_8));
+        }
+
+        int found = 0;
+        List<Object> findings = new ArrayList<Object>();
+        Set<String> fuzzed = new LinkedHashSet<String>();
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Fuzzing " + engine.getName() + "...");
+            report.begin("Worst-case inputs for regular expression library", engine.getName(), 8);
+            report.caption("Costliest input found at each maximum length, in characters read (or microseconds, for engines"
+                + " that copy the input); " + iterations + " mutations per length, budget " + budget.getMaxSteps()
+                + " characters or " + budget.getMaxMillis() + " ms per match");
+            report.header("RE", "COST AT " + maxLength / 4, "AT " + maxLength / 2, "AT " + maxLength, "EXPONENT", "VERDICT",
+                "WORST INPUT", "STATUS");
+            for (String preg : patterns)
+            {
+                fuzzed.add(engine.getName() + "\u0000" + preg);
+                Map<String, Object> finding = fuzz(engine, preg, seeds(corpus, engine.getName(), preg));
+                if (finding != null)
+                {
+                    findings.add(finding);
+                    found++;
+                }
+            }
+            report.end("EXPONENT: growth of the worst cost with the input length, 1 for linear, 2 for quadratic; inf when the"
+                + " budget was exceeded.");
+        }
+
+        if (corpusFile != null)
+        {
+            // keep what earlier runs found for engines and patterns not fuzzed this time
+            for (Object entry : corpus)
+            {
+                Map<String, Object> e = (Map<String, Object>) entry;
+                if (!fuzzed.contains(e.get("engine") + "\u0000" + e.get("pattern")))
+                {
+                    findings.add(e);
+                }
+            }
+            try (Writer out = new OutputStreamWriter(Files.newOutputStream(corpusFile.toPath()), StandardCharsets.UTF_8))
+            {
+                out.write(Json.write(findings));
+            }
+            System.err.println("Adversarial corpus written to " + corpusFile);
+        }
+        return found;
+    }
+
+    /** Fuzzes one engine and pattern and reports it; returns the corpus entry if the engine blew up. */
+    private Map<String, Object> fuzz(RegexEngine engine, String preg, List<String> seeds)
+    {
+        PregTranslation t = PregTranslator.translate(preg, engine.getDialect());
+        CompiledRegex regex = null;
+        String problem = null;
+        try
+        {
+            if (!t.isSupported())
+            {
+                problem = t.toString();
+            }
+            else
+            {
+                regex = engine.compile(t.getPattern());
+            }
+        }
+        catch (Throwable e)
+        {
+            problem = "compile failed: " + e.getClass().getName();
+        }
+        if (regex == null)
+        {
+            report.row(preg, "-", "-", "-", "-", "-", "-", problem);
+            return null;
+        }
+
+        Random random = new Random(seed);
+        char[] alphabet = alphabet(preg);
+        List<Candidate> population = new ArrayList<Candidate>();
+        Candidate[] worst = new Candidate[3];
+        String status = "ok";
+        for (int stage = 0; stage < worst.length; stage++)
+        {
+            int length = maxLength >> (worst.length - 1 - stage);
+            for (String s : seeds)
+            {
+                population.add(evaluate(engine, regex, s.length() > length ? s.substring(0, length) : s));
+            }
+            select(population);
+            for (int i = 0; i < iterations && !exceeded(population); i++)
+            {
+                Candidate parent = population.get(random.nextInt(population.size()));
+                Candidate other = population.get(random.nextInt(population.size()));
+                String child = mutate(parent.input, other.input, alphabet, length, random);
+                population.add(evaluate(engine, regex, child));
+                select(population);
+            }
+            for (int i = 0; i < population.size() && population.get(0).outcome.getSteps() < 0; i++)
+            {
+                // times taken early on were taken before the JIT compiled the engine
+                population.set(i, evaluate(engine, regex, population.get(i).input));
+            }
+            select(population);
+            worst[stage] = population.get(0);
+            if (worst[stage].outcome.getKind() == MatchBudget.Outcome.Kind.FAILED)
+            {
+                status = worst[stage].outcome.describe();
+            }
+            if (exceeded(population))
+            {
+                status = worst[stage].outcome.describe();
+                break;
+            }
+        }
+
+        Candidate last = worst[0];
+        Object[] costs = new Object[3];
+        for (int stage = 0; stage < worst.length; stage++)
+        {
+            costs[stage] = worst[stage] == null ? "-" : worst[stage].describeCost();
+            last = worst[stage] == null ? last : worst[stage];
+        }
+        if (last.cost() < 0)
+        {
+            // not a single input matched without failing
+            report.row(preg, costs[0], costs[1], costs[2], "-", "-", "-", status);
+            return null;
+        }
+        double exponent = last.outcome.isCompleted() ? exponent(worst) : Double.POSITIVE_INFINITY;
+        boolean blowUp = exponent >= superLinear;
+        report.row(preg, costs[0], costs[1], costs[2], Double.isInfinite(exponent) ? "inf" : Report.format(exponent), blowUp
+            ? "SUPER-LINEAR" : "linear", escape(last.input), status);
+        if (!blowUp)
+        {
+            return null;
+        }
+        Map<String, Object> finding = new LinkedHashMap<String, Object>();
+        finding.put("engine", engine.getName());
+        finding.put("pattern", preg);
+        finding.put("input", last.input);
+        finding.put("length", Integer.valueOf(last.input.length()));
+        finding.put("steps", Long.valueOf(last.outcome.getSteps()));
+        finding.put("nanos", Long.valueOf((long) last.nanos));
+        finding.put("exponent", Double.valueOf(exponent));
+        finding.put("outcome", last.outcome.describe());
+        return finding;
+    }
+
+    /** The Corpus.STR inputs and what earlier runs found for this engine and pattern. */
+    @SuppressWarnings("unchecked")
+    private static List<String> seeds(List<Object> corpus, String engine, String preg)
+    {
+        List<String> seeds = new ArrayList<String>();
+        for (Object entry : corpus)
+        {
+            Map<String, Object> e = (Map<String, Object>) entry;
+            if (preg.equals(e.get("pattern")) && e.get("input") instanceof String)
+            {
+                // other engines' findings are worth trying too
+                seeds.add(engine.equals(e.get("engine")) ? 0 : seeds.size(), (String) e.get("input"));
+            }
+        }
+        Collections.addAll(seeds, Corpus.STR);
+        return seeds;
+    }
+
+    /** Characters of the pattern between its delimiters, and a representative of every common class. */
+    private static char[] alphabet(String preg)
+    {
+        Set<Character> chars = new LinkedHashSet<Character>();
+        int end = preg.lastIndexOf(preg.charAt(0));
+        for (int i = 1; i < end; i++)
+        {
+            chars.add(Character.valueOf(preg.charAt(i)));
+        }
+        for (int i = 0; i < REPRESENTATIVES.length(); i++)
+        {
+            chars.add(Character.valueOf(REPRESENTATIVES.charAt(i)));
+        }
+        char[] alphabet = new char[chars.size()];
+        int i = 0;
+        for (Character c : chars)
+        {
+            alphabet[i++] = c.charValue();
+        }
+        return alphabet;
+    }
+
+    private static String mutate(String input, String other, char[] alphabet, int length, Random random)
+    {
+        StringBuilder s = new StringBuilder(input);
+        int pos = s.length() == 0 ? 0 : random.nextInt(s.length());
+        int operation = random.nextInt(5);
+        if (operation == 0 && s.length() == 0)
+        {
+            // nothing to replace, insert instead
+            operation = 1;
+        }
+        switch (operation)
+        {
+            case 0:
+                s.setCharAt(pos, alphabet[random.nextInt(alphabet.length)]);
+                break;
+            case 1:
+                s.insert(pos, alphabet[random.nextInt(alphabet.length)]);
+                break;
+            case 2:
+                if (s.length() > 0)
+                {
+                    s.deleteCharAt(pos);
+                }
+                break;
+            case 3:
+                // repeat a short substring, the way a pumping input repeats the ambiguous part
+                int end = Math.min(s.length(), pos + 1 + random.nextInt(4));
+                String pump = s.substring(pos, end);
+                int times = 1 + random.nextInt(Math.max(1, length / Math.max(1, pump.length())));
+                for (int i = 0; i < times && s.length() < length; i++)
+                {
+                    s.insert(pos, pump);
+                }
+                break;
+            default:
+                // splice: a prefix of this input, a suffix of the other
+                int cut = other.isEmpty() ? 0 : random.nextInt(other.length());
+                s.setLength(pos);
+                s.append(other, cut, other.length());
+        }
+        if (s.length() > length)
+        {
+            s.setLength(length);
+        }
+        return s.toString();
+    }
+
+    private Candidate evaluate(RegexEngine engine, CompiledRegex regex, String input)
+    {
+        MatchBudget.Outcome outcome = budget.probeFind(engine, regex, input);
+        double nanos = outcome.getNanos();
+        for (int i = 0; i < TIMED_REPEATS && outcome.isCompleted() && outcome.getSteps() < 0; i++)
+        {
+            // a single time on the probe thread is mostly thread hand-off noise, which the search would chase; the
+            // probe has shown that the match ends within the budget, so it can be repeated here
+            long start = System.nanoTime();
+            try
+            {
+                regex.find(input);
+            }
+            catch (RuntimeException | StackOverflowError e)
+            {
+                break;
+            }
+            nanos = Math.min(nanos, System.nanoTime() - start);
+        }
+        return new Candidate(input, outcome, nanos);
+    }
+
+    /** Keeps the costliest distinct inputs, costliest first. */
+    private void select(List<Candidate> population)
+    {
+        Collections.sort(population, new Comparator<Candidate>()
+        {
+            public int compare(Candidate a, Candidate b)
+            {
+                return Double.compare(b.cost(), a.cost());
+            }
+        });
+        Set<String> seen = new LinkedHashSet<String>();
+        for (int i = 0; i < population.size();)
+        {
+            if (!seen.add(population.get(i).input) || seen.size() > populationSize)
+            {
+                population.remove(i);
+            }
+            else
+            {
+                i++;
+            }
+        }
+    }
+
+    private static boolean exceeded(List<Candidate> population)
+    {
+        return population.get(0).outcome.getKind() == MatchBudget.Outcome.Kind.BUDGET_EXCEEDED;
+    }
+
+    /** Least-squares slope of log cost over log length of the stages' worst inputs. */
+    private static double exponent(Candidate[] worst)
+    {
+        double n = 0;
+        double sx = 0;
+        double sy = 0;
+        double sxx = 0;
+        double sxy = 0;
+        for (Candidate c : worst)
+        {
+            if (c == null || c.input.isEmpty() || c.cost() <= 0)
+            {
+                continue;
+            }
+            double x = Math.log(c.input.length());
+            double y = Math.log(c.cost());
+            n++;
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+        double d = n * sxx - sx * sx;
+        // all of the same length: no growth to measure
+        return n < 2 || d < 1e-9 ? 0 : (n * sxy - sx * sy) / d;
+    }
+
+    /** Non-printable characters as escapes, long inputs shortened, for the report. */
+    private static String escape(String input)
+    {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < input.length() && s.length() < 80; i++)
+        {
+            char c = input.charAt(i);
+            if (c == '\n')
+            {
+                s.append("\\n");
+            }
+            else if (c == '\t')
+            {
+                s.append("\\t");
+            }
+            else if (c < ' ')
+            {
+                s.append(String.format("\\x%02x", Integer.valueOf(c)));
+            }
+            else
+            {
+                s.append(c);
+            }
+        }
+        return s.length() < 80 ? s.toString() : s + "...";
+    }
+
+    /** An input and what matching it cost. */
+    private static final class Candidate
+    {
+        final String input;
+        final MatchBudget.Outcome outcome;
+        final double nanos;
+
+        Candidate(String input, MatchBudget.Outcome outcome, double nanos)
+        {
+            this.input = input;
+            this.outcome = outcome;
+            this.nanos = nanos;
+        }
+
+        /** Characters read, or nanoseconds for engines that cannot be metered; exceeding the budget beats everything. */
+        double cost()
+        {
+            if (outcome.getKind() == MatchBudget.Outcome.Kind.BUDGET_EXCEEDED)
+            {
+                return Double.MAX_VALUE;
+            }
+            if (!outcome.isCompleted())
+            {
+                return -1;
+            }
+            return outcome.getSteps() >= 0 ? outcome.getSteps() : nanos;
+        }
+
+        String describeCost()
+        {
+            if (!outcome.isCompleted())
+            {
+                return outcome.getKind() == MatchBudget.Outcome.Kind.BUDGET_EXCEEDED ? "exceeded" : "failed";
+            }
+            return outcome.getSteps() >= 0 ? Long.toString(outcome.getSteps()) : Report.format(nanos / 1e3) + " us";
+        }
+    }
+}
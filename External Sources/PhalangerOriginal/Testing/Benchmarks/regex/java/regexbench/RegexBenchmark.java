@@ -0,0 +1,90 @@
+package regexbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH version of regtest. Every engine runs over the full Corpus.RE x Corpus.STR
+ * matrix in forked, warmed-up JVMs, so one engine can no longer inherit the JIT
+ * profile and heap of the previous one. Engines are looked up through the
+ * RegexEngine SPI and matched through CompiledRegex, exactly as regtest does.
+ *
+ * Build with "mvn package" and run with "java -jar target/benchmarks.jar". The
+ * usual JMH options apply, e.g. "-p re=0,1 -p str=5" to select cells or
+ * "-p engine=java.util.regex.Pattern" to select engines; the latter also accepts
+ * engines that are not bundled here. The whole matrix, 14 engines x 5 patterns
+ * x 6 inputs x 2 methods at 10 s a cell, takes over two hours even with the one
+ * fork it defaults to; for a quick comparison select a subset, e.g.
+ * "RegexBenchmark.match -p engine=java.util.regex.Pattern,jregex.Pattern -p str=0,5",
+ * and add "-f 3" for figures to publish. The [vector] engine needs
+ * "java --add-modules jdk.incubator.vector -jar ...", which the forks inherit;
+ * without it its cells fail in setup.
+ *
+ * Patterns an engine cannot compile make its setup throw; JMH reports those cells
+ * as failed and carries on, which replaces the silent "failed badly" of regtest.
+ *
+ * Add "-prof gc" for allocation rates; reuse is the CompiledRegex.reusableMatcher()
+ * counterpart of match, the same comparison as "regtest reuse".
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegexBenchmark
+{
+    // the engines in META-INF/services/regexbench.RegexEngine order, less Quercus, which is not bundled; keep this list
+    // the same in RegexBenchmark and CompileBenchmark so that their results join per engine
+    @Param({"org.apache.regexp.RE", "com.stevesoft.pat.Regex", "kmy.regex.util.Regex", "java.util.regex.Pattern",
+        "jregex.Pattern", "org.apache.oro.text.regex.Perl5Matcher", "dk.brics.automaton.RegExp",
+        "com.karneim.util.collection.regex.Pattern", "monq.jfa.Regexp", "com.ibm.icu.text.UnicodeSet", "gnu.regexp.RE",
+        "regexbench.classrun [vector]", "regexbench.classrun [scalar]", "regexbench.hybrid"})
+    public String engine;
+
+    @Param({"0", "1", "2", "3", "4"})
+    public int re;
+
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int str;
+
+    private String input;
+    private CompiledRegex regex;
+    private ReusableMatcher matcher;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        RegexEngine regexEngine = RegexEngines.find(engine);
+        if (regexEngine == null)
+        {
+            throw new IllegalArgumentException("No regex engine called " + engine);
+        }
+        input = Corpus.STR[str];
+        regex = regexEngine.compile(Corpus.patternsFor(regexEngine)[re]);
+        matcher = regex.reusableMatcher();
+    }
+
+    @Benchmark
+    public boolean match()
+    {
+        return regex.match(input);
+    }
+
+    @Benchmark
+    public boolean reuse()
+    {
+        return matcher.match(input);
+    }
+}
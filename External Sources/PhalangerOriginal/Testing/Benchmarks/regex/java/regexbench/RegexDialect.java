@@ -0,0 +1,34 @@
+package regexbench;
+
+/**
+ * Pattern syntax a RegexEngine accepts, used to translate PHP preg patterns
+ * (see regexbench.preg) into something the engine can compile.
+ */
+public enum RegexDialect
+{
+    /** java.util.regex: inline flags, named groups, \p{..} classes, possessive quantifiers. */
+    JAVA,
+
+    /**
+     * The Perl 5 subset shared by the older backtracking engines (ORO, jregex,
+     * jakarta-regexp, gnu.regexp, ...): inline (?ims), (?:..), lookahead, lazy
+     * quantifiers and backreferences, but no named groups or POSIX bracket names.
+     */
+    PERL5,
+
+    /**
+     * dk.brics.automaton style syntax for DFA engines: no flags, anchors, lookaround
+     * or backreferences, whole-input matching, a number of reserved characters.
+     * Flags and shorthand classes are expanded by the translator where possible.
+     */
+    AUTOMATON,
+
+    /**
+     * PHP preg patterns exactly as preg_match() takes them, delimiters and
+     * modifiers included, for engines that implement PHP's own semantics.
+     */
+    PREG,
+
+    /** The engine does not take regular expressions at all. */
+    NONE
+}
@@ -0,0 +1,27 @@
+package regexbench;
+
+/**
+ * A regular expression library as seen by the benchmarks. Implementations are
+ * discovered with java.util.ServiceLoader (see RegexEngines), so any engine on the
+ * classpath with a META-INF/services/regexbench.RegexEngine entry is measured by
+ * the same loop as the bundled ones.
+ */
+public interface RegexEngine
+{
+    /** Name used in reports, conventionally the engine's main class. */
+    String getName();
+
+    /**
+     * Compiles pattern. Whatever the engine throws for patterns it does not
+     * support is passed on unchanged.
+     */
+    CompiledRegex compile(String pattern) throws Exception;
+
+    /**
+     * Syntax the engine accepts; PERL5 unless the adapter says otherwise.
+     */
+    default RegexDialect getDialect()
+    {
+        return RegexDialect.PERL5;
+    }
+}
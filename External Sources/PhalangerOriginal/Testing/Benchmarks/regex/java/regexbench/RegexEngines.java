@@ -0,0 +1,63 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Discovers the RegexEngine implementations on the classpath.
+ */
+public final class RegexEngines
+{
+    private RegexEngines()
+    {
+    }
+
+    /**
+     * Returns all engines in META-INF/services order. Engines whose adapter cannot
+     * be loaded, typically because the library jar is not on the classpath, are
+     * reported on stderr and skipped.
+     */
+    public static List<RegexEngine> load()
+    {
+        List<RegexEngine> engines = new ArrayList<RegexEngine>();
+        Iterator<RegexEngine> it = ServiceLoader.load(RegexEngine.class).iterator();
+        while (true)
+        {
+            try
+            {
+                if (!it.hasNext())
+                {
+                    break;
+                }
+                engines.add(it.next());
+            }
+            catch (ServiceConfigurationError e)
+            {
+                System.err.println("Skipping regex engine: " + e.getMessage());
+            }
+            catch (LinkageError e)
+            {
+                System.err.println("Skipping regex engine: " + e);
+            }
+        }
+        return engines;
+    }
+
+    /**
+     * Returns the engine called name, or null.
+     */
+    public static RegexEngine find(String name)
+    {
+        for (RegexEngine engine : load())
+        {
+            if (engine.getName().equals(name))
+            {
+                return engine;
+            }
+        }
+        return null;
+    }
+}
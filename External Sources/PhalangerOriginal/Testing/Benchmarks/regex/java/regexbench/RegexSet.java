@@ -0,0 +1,357 @@
+package regexbench;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * A set of preg patterns matched against one input in a single pass, answering
+ * which of them preg_match() would find in it.
+ *
+ * Every pattern that PregTranslator.translateForSearch() can express is built
+ * into a dk.brics.automaton DFA, and the DFAs are combined into one product DFA
+ * whose states carry a bit mask of the patterns accepted there. The input is then
+ * read once, one table lookup per character, and the read stops as soon as the
+ * outcome of every pattern is decided (each component is dead or has reached its
+ * accept-everything state). Patterns the automaton cannot express, such as
+ * backreferences and lookaround, and patterns that would grow the product beyond
+ * maxStates fall back to a CompiledRegex of the fallback engine, tested with
+ * find() one after another.
+ *
+ * Only the first 64 patterns can be combined, and the fallback engine has to
+ * support find(). Instances are immutable and thread-safe as long as no pattern
+ * falls back; see CompiledRegex for those.
+ */
+public final class RegexSet
+{
+    /** Default limit for the product DFA, see regtest.set.maxStates. */
+    public static final int DEFAULT_MAX_STATES = Integer.getInteger("regtest.set.maxStates", 10000).intValue();
+
+    private static final int MAX_COMBINED = 64;
+
+    private final String[] patterns;
+    private final int[] classOf;
+    private final int classes;
+    private final int[] next;
+    private final long[] accepts;
+    private final boolean[] decided;
+    private final long combined;
+    private final int[] fallbackIndex;
+    private final CompiledRegex[] fallback;
+
+    private RegexSet(String[] patterns, Product product, long combined, List<Integer> fallbackIndex,
+        List<CompiledRegex> fallback)
+    {
+        this.patterns = patterns;
+        this.classOf = product.classOf;
+        this.classes = product.classes;
+        this.next = product.next;
+        this.accepts = product.accepts;
+        this.decided = product.decided;
+        this.combined = combined;
+        this.fallbackIndex = new int[fallbackIndex.size()];
+        for (int i = 0; i < this.fallbackIndex.length; i++)
+        {
+            this.fallbackIndex[i] = fallbackIndex.get(i).intValue();
+        }
+        this.fallback = fallback.toArray(new CompiledRegex[fallback.size()]);
+    }
+
+    public static RegexSet compile(String[] preg, RegexEngine fallbackEngine) throws Exception
+    {
+        return compile(preg, fallbackEngine, DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * Compiles the patterns, given as preg strings. Patterns are added to the
+     * product in order; a pattern is left to fallbackEngine when it is not
+     * expressible as an automaton or when adding it would take the product over
+     * maxStates states.
+     *
+     * @throws IllegalArgumentException if a pattern can be handled by neither
+     */
+    public static RegexSet compile(String[] preg, RegexEngine fallbackEngine, int maxStates) throws Exception
+    {
+        List<dk.brics.automaton.Automaton> automata = new ArrayList<dk.brics.automaton.Automaton>();
+        List<Integer> automatonIndex = new ArrayList<Integer>();
+        List<Integer> fallbackIndex = new ArrayList<Integer>();
+        Product product = Product.build(automata, maxStates);
+        for (int i = 0; i < preg.length; i++)
+        {
+            PregTranslation search = PregTranslator.translateForSearch(preg[i]);
+            if (search.isSupported() && i < MAX_COMBINED)
+            {
+                dk.brics.automaton.Automaton automaton = new dk.brics.automaton.RegExp(search.getPattern()).toAutomaton();
+                automaton.expandSingleton();
+                automata.add(automaton);
+                Product candidate = Product.build(automata, maxStates);
+                if (candidate != null)
+                {
+                    product = candidate;
+                    automatonIndex.add(Integer.valueOf(i));
+                    continue;
+                }
+                automata.remove(automata.size() - 1);
+            }
+            fallbackIndex.add(Integer.valueOf(i));
+        }
+
+        List<CompiledRegex> fallback = new ArrayList<CompiledRegex>();
+        for (Integer i : fallbackIndex)
+        {
+            PregTranslation t = PregTranslator.translate(preg[i.intValue()], fallbackEngine.getDialect());
+            if (!t.isSupported())
+            {
+                throw new IllegalArgumentException(preg[i.intValue()] + ": " + t.getFailure());
+            }
+            fallback.add(fallbackEngine.compile(t.getPattern()));
+        }
+
+        // product bit b stands for automatonIndex[b]; renumber the masks to pattern indexes
+        long combined = 0;
+        for (int b = 0; b < automatonIndex.size(); b++)
+        {
+            combined |= 1L << automatonIndex.get(b).intValue();
+        }
+        for (int s = 0; s < product.accepts.length; s++)
+        {
+            long mask = product.accepts[s];
+            long renumbered = 0;
+            for (int b = 0; mask != 0; b++, mask >>>= 1)
+            {
+                if ((mask & 1) != 0)
+                {
+                    renumbered |= 1L << automatonIndex.get(b).intValue();
+                }
+            }
+            product.accepts[s] = renumbered;
+        }
+        return new RegexSet(preg.clone(), product, combined, fallbackIndex, fallback);
+    }
+
+    /** Number of patterns in the set. */
+    public int size()
+    {
+        return patterns.length;
+    }
+
+    public String getPattern(int i)
+    {
+        return patterns[i];
+    }
+
+    /** Whether pattern i is part of the combined automaton rather than a fallback. */
+    public boolean isCombined(int i)
+    {
+        return i < MAX_COMBINED && (combined & (1L << i)) != 0;
+    }
+
+    /** States of the product DFA. */
+    public int getStateCount()
+    {
+        return accepts.length;
+    }
+
+    /** Indexes of the patterns found in input. */
+    public BitSet match(CharSequence input)
+    {
+        int[] classOf = this.classOf;
+        int[] next = this.next;
+        int classes = this.classes;
+        int state = 0;
+        int length = input.length();
+        for (int i = 0; i < length && !decided[state]; i++)
+        {
+            state = next[state * classes + classOf[input.charAt(i)]];
+        }
+        BitSet result = BitSet.valueOf(new long[] {accepts[state]});
+        for (int f = 0; f < fallback.length; f++)
+        {
+            if (fallback[f].find(input))
+            {
+                result.set(fallbackIndex[f]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The product of the component DFAs over a common partition of the alphabet.
+     * State 0 is the start state; component states are numbered in
+     * Automaton.getStates() order and -1 is a component's implicit dead state.
+     */
+    private static final class Product
+    {
+        int[] classOf;
+        int classes;
+        int[] next;
+        long[] accepts;
+        boolean[] decided;
+
+        /** Returns null if the product has more than maxStates states. */
+        static Product build(List<dk.brics.automaton.Automaton> automata, int maxStates)
+        {
+            Product p = new Product();
+            p.partition(automata);
+            int n = automata.size();
+            int[][] table = new int[n][];
+            int[] initial = new int[n];
+            boolean[][] accept = new boolean[n][];
+            boolean[][] universal = new boolean[n][];
+            for (int a = 0; a < n; a++)
+            {
+                dk.brics.automaton.Automaton automaton = automata.get(a);
+                List<dk.brics.automaton.State> states = new ArrayList<dk.brics.automaton.State>(automaton.getStates());
+                Map<dk.brics.automaton.State, Integer> number = new HashMap<dk.brics.automaton.State, Integer>();
+                for (dk.brics.automaton.State state : states)
+                {
+                    number.put(state, Integer.valueOf(number.size()));
+                }
+                initial[a] = number.get(automaton.getInitialState()).intValue();
+                table[a] = new int[states.size() * p.classes];
+                Arrays.fill(table[a], -1);
+                accept[a] = new boolean[states.size()];
+                universal[a] = new boolean[states.size()];
+                for (int s = 0; s < states.size(); s++)
+                {
+                    dk.brics.automaton.State state = states.get(s);
+                    accept[a][s] = state.isAccept();
+                    for (dk.brics.automaton.Transition t : state.getTransitions())
+                    {
+                        int dest = number.get(t.getDest()).intValue();
+                        for (int c = p.classOf[t.getMin()]; c <= p.classOf[t.getMax()]; c++)
+                        {
+                            table[a][s * p.classes + c] = dest;
+                        }
+                    }
+                    boolean loops = state.isAccept();
+                    for (int c = 0; c < p.classes && loops; c++)
+                    {
+                        loops = table[a][s * p.classes + c] == s;
+                    }
+                    universal[a][s] = loops;
+                }
+            }
+
+            Map<Key, Integer> seen = new HashMap<Key, Integer>();
+            List<int[]> tuples = new ArrayList<int[]>();
+            ArrayDeque<Integer> work = new ArrayDeque<Integer>();
+            seen.put(new Key(initial), Integer.valueOf(0));
+            tuples.add(initial);
+            work.add(Integer.valueOf(0));
+            int[] next = new int[p.classes * 16];
+            while (!work.isEmpty())
+            {
+                int s = work.poll().intValue();
+                int[] tuple = tuples.get(s);
+                for (int c = 0; c < p.classes; c++)
+                {
+                    int[] target = new int[n];
+                    for (int a = 0; a < n; a++)
+                    {
+                        target[a] = tuple[a] < 0 ? -1 : table[a][tuple[a] * p.classes + c];
+                    }
+                    Key key = new Key(target);
+                    Integer t = seen.get(key);
+                    if (t == null)
+                    {
+                        if (tuples.size() >= maxStates)
+                        {
+                            return null;
+                        }
+                        t = Integer.valueOf(tuples.size());
+                        seen.put(key, t);
+                        tuples.add(target);
+                        work.add(t);
+                    }
+                    if (next.length < (s + 1) * p.classes)
+                    {
+                        next = Arrays.copyOf(next, Math.max(next.length * 2, (s + 1) * p.classes));
+                    }
+                    next[s * p.classes + c] = t.intValue();
+                }
+            }
+
+            p.next = Arrays.copyOf(next, tuples.size() * p.classes);
+            p.accepts = new long[tuples.size()];
+            p.decided = new boolean[tuples.size()];
+            for (int s = 0; s < tuples.size(); s++)
+            {
+                int[] tuple = tuples.get(s);
+                boolean decided = true;
+                for (int a = 0; a < n; a++)
+                {
+                    if (tuple[a] >= 0 && accept[a][tuple[a]])
+                    {
+                        p.accepts[s] |= 1L << a;
+                    }
+                    decided &= tuple[a] < 0 || universal[a][tuple[a]];
+                }
+                p.decided[s] = decided;
+            }
+            return p;
+        }
+
+        /** Splits the char range into classes no transition of any automaton distinguishes. */
+        private void partition(List<dk.brics.automaton.Automaton> automata)
+        {
+            TreeSet<Integer> starts = new TreeSet<Integer>();
+            starts.add(Integer.valueOf(Character.MIN_VALUE));
+            for (dk.brics.automaton.Automaton automaton : automata)
+            {
+                for (dk.brics.automaton.State state : automaton.getStates())
+                {
+                    for (dk.brics.automaton.Transition t : state.getTransitions())
+                    {
+                        starts.add(Integer.valueOf(t.getMin()));
+                        if (t.getMax() < Character.MAX_VALUE)
+                        {
+                            starts.add(Integer.valueOf(t.getMax() + 1));
+                        }
+                    }
+                }
+            }
+            classOf = new int[Character.MAX_VALUE + 1];
+            int c = -1;
+            for (int ch = 0; ch <= Character.MAX_VALUE; ch++)
+            {
+                if (starts.contains(Integer.valueOf(ch)))
+                {
+                    c++;
+                }
+                classOf[ch] = c;
+            }
+            classes = c + 1;
+        }
+    }
+
+    private static final class Key
+    {
+        private final int[] states;
+        private final int hash;
+
+        Key(int[] states)
+        {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object o)
+        {
+            return o instanceof Key && Arrays.equals(states, ((Key) o).states);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package regexbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Which Corpus.PREG patterns occur in one Corpus.STR input: a RegexSet in one
+ * pass (patterns it cannot combine fall back to java.util.regex), against
+ * calling find() for one pattern after another with java.util.regex and with
+ * dk.brics.automaton where it can express the pattern.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+@State(Scope.Benchmark)
+public class RegexSetBenchmark
+{
+    @Param({"0", "1", "2", "3", "4", "5"})
+    public int str;
+
+    private RegexSet set;
+    private CompiledRegex[] javaUtil;
+    private CompiledRegex[] automata;
+    private String input;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        RegexEngine javaUtilEngine = RegexEngines.find("java.util.regex.Pattern");
+        set = RegexSet.compile(Corpus.PREG, javaUtilEngine);
+        javaUtil = compile(javaUtilEngine);
+        automata = compile(RegexEngines.find("dk.brics.automaton.RegExp"));
+        input = Corpus.STR[str];
+    }
+
+    private static CompiledRegex[] compile(RegexEngine engine) throws Exception
+    {
+        String[] patterns = Corpus.translate(engine.getDialect());
+        CompiledRegex[] compiled = new CompiledRegex[patterns.length];
+        for (int re = 0; re < patterns.length; re++)
+        {
+            compiled[re] = patterns[re] == null ? null : engine.compile(patterns[re]);
+        }
+        return compiled;
+    }
+
+    @Benchmark
+    public Object regexSet()
+    {
+        return set.match(input);
+    }
+
+    @Benchmark
+    public void loopJavaUtil(Blackhole bh)
+    {
+        for (CompiledRegex regex : javaUtil)
+        {
+            bh.consume(regex.find(input));
+        }
+    }
+
+    /** Only the patterns the automaton dialect supports, see PregTranslator. */
+    @Benchmark
+    public void loopAutomata(Blackhole bh)
+    {
+        for (CompiledRegex regex : automata)
+        {
+            if (regex != null)
+            {
+                bh.consume(regex.find(input));
+            }
+        }
+    }
+}
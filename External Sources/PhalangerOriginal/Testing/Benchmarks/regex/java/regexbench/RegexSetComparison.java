@@ -0,0 +1,180 @@
+package regexbench;
+
+import java.util.BitSet;
+import java.util.List;
+
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Pattern-set mode ("regtest set"): which of the Corpus.PREG patterns occur in an
+ * input, answered once by a RegexSet in a single pass and once per engine by
+ * calling find() for one pattern after another, as PHP code looping over
+ * preg_match() does.
+ *
+ * For every engine and Corpus.STR input the table shows the mean time of both,
+ * the speedup of the set and whether the answers agree. Each engine gets the
+ * patterns translated into its own dialect; patterns it cannot translate or
+ * compile, or that fail or exceed the MatchBudget on an input, are left out of
+ * its loop and of the comparison for that input, which the STATUS column notes.
+ *
+ * Every measurement is preceded by a warmup of the same length. System
+ * properties: regtest.set.millis (time per measurement, default 200),
+ * regtest.set.fallback (engine for the patterns the set cannot combine, default
+ * java.util.regex.Pattern) and regtest.set.maxStates (see RegexSet).
+ */
+public final class RegexSetComparison
+{
+    private final long millis = Long.getLong("regtest.set.millis", 200).longValue();
+    private final String fallbackName = System.getProperty("regtest.set.fallback", "java.util.regex.Pattern");
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    private static volatile int blackhole;
+
+    private final Report report;
+
+    public RegexSetComparison(Report report)
+    {
+        this.report = report;
+    }
+
+    public void run(List<RegexEngine> engines) throws Exception
+    {
+        RegexEngine fallback = RegexEngines.find(fallbackName);
+        if (fallback == null)
+        {
+            throw new IllegalStateException("fallback engine " + fallbackName + " not found");
+        }
+        RegexSet set = RegexSet.compile(Corpus.PREG, fallback);
+        BitSet fallingBack = new BitSet();
+        for (int i = 0; i < set.size(); i++)
+        {
+            fallingBack.set(i, !set.isCombined(i));
+        }
+
+        double[] setNanos = new double[Corpus.STR.length];
+        BitSet[] setResults = new BitSet[Corpus.STR.length];
+        for (int str = 0; str < Corpus.STR.length; str++)
+        {
+            setResults[str] = set.match(Corpus.STR[str]);
+            time(set, Corpus.STR[str]);
+            setNanos[str] = time(set, Corpus.STR[str]);
+        }
+
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Looping over patterns with " + engine.getName() + "...");
+            String[] patterns = new String[Corpus.PREG.length];
+            CompiledRegex[] compiled = new CompiledRegex[Corpus.PREG.length];
+            int usable = 0;
+            for (int re = 0; re < Corpus.PREG.length; re++)
+            {
+                PregTranslation t = PregTranslator.translate(Corpus.PREG[re], engine.getDialect());
+                try
+                {
+                    patterns[re] = t.getPattern();
+                    compiled[re] = t.isSupported() ? engine.compile(t.getPattern()) : null;
+                }
+                catch (Throwable e)
+                {
+                    compiled[re] = null;
+                }
+                usable += compiled[re] != null ? 1 : 0;
+            }
+
+            report.begin("Pattern set vs. one pattern at a time with regular expression library", engine.getName(), 7);
+            report.caption(set.size() + " patterns, " + set.getStateCount() + " product DFA states, " + fallingBack + " on "
+                + fallbackName + ", " + millis + " ms per measurement");
+            report.header("STR", "SET US", "LOOP US", "SPEEDUP", "FOUND", "STATUS");
+            for (int str = 0; str < Corpus.STR.length; str++)
+            {
+                String input = Corpus.STR[str];
+                boolean[] included = new boolean[Corpus.PREG.length];
+                BitSet found = new BitSet();
+                int left = 0;
+                for (int re = 0; re < Corpus.PREG.length; re++)
+                {
+                    if (compiled[re] != null)
+                    {
+                        // a runaway find() would hang the loop, so every pattern is probed once first
+                        MatchBudget.Outcome outcome = budget.probeFind(engine, patterns[re], input);
+                        included[re] = outcome.isCompleted();
+                        found.set(re, included[re] && outcome.getResult());
+                    }
+                    left += included[re] ? 0 : 1;
+                }
+                BitSet expected = (BitSet) setResults[str].clone();
+                for (int re = 0; re < Corpus.PREG.length; re++)
+                {
+                    expected.set(re, included[re] && expected.get(re));
+                }
+                double loopNanos = 0;
+                if (left < Corpus.PREG.length)
+                {
+                    time(compiled, included, input);
+                    loopNanos = time(compiled, included, input);
+                }
+                String status = found.equals(expected) ? "agrees" : "DIFFERS: loop " + found;
+                if (left > 0)
+                {
+                    status += ", " + left + " of " + Corpus.PREG.length + " patterns left out of the loop";
+                }
+                report.row(label(input), Report.format(setNanos[str] / 1e3), loopNanos > 0 ? Report.format(loopNanos / 1e3) : "-",
+                    loopNanos > 0 ? Report.format(loopNanos / setNanos[str]) : "-", setResults[str], status);
+            }
+            report.end(usable + " of " + Corpus.PREG.length + " patterns usable with this engine. Times in microseconds per"
+                + " input. FOUND: indexes of the Corpus.PREG patterns the set found in the input.");
+        }
+    }
+
+    private static String label(String input)
+    {
+        String line = input.replace("\n", "\\n");
+        return line.length() > 40 ? line.substring(0, 40) + "... (" + input.length() + " chars)" : line;
+    }
+
+    /** Mean nanoseconds of set.match(input). */
+    private double time(RegexSet set, String input)
+    {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long start = System.nanoTime();
+        long n = 0;
+        int sink = 0;
+        do
+        {
+            sink += set.match(input).cardinality();
+            n++;
+        }
+        while (System.nanoTime() < deadline);
+        return consume(sink, (System.nanoTime() - start) / (double) n);
+    }
+
+    /** Mean nanoseconds of calling find() on input for every included pattern. */
+    private double time(CompiledRegex[] compiled, boolean[] included, String input)
+    {
+        long deadline = System.nanoTime() + millis * 1000000L;
+        long start = System.nanoTime();
+        long n = 0;
+        int sink = 0;
+        do
+        {
+            for (int re = 0; re < compiled.length; re++)
+            {
+                if (included[re] && compiled[re].find(input))
+                {
+                    sink++;
+                }
+            }
+            n++;
+        }
+        while (System.nanoTime() < deadline);
+        return consume(sink, (System.nanoTime() - start) / (double) n);
+    }
+
+    /** Publishes sink so the timed loops cannot be optimized away. */
+    private static double consume(int sink, double nanos)
+    {
+        blackhole = sink;
+        return nanos;
+    }
+}
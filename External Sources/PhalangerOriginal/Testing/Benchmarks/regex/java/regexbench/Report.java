@@ -0,0 +1,140 @@
+package regexbench;
+
+import java.io.PrintStream;
+
+/**
+ * Writes result tables either as HTML (for res.html) or as tab separated text,
+ * in the same shape as regtest.printResult.
+ */
+public final class Report
+{
+    private final PrintStream out;
+    private final boolean html;
+
+    public Report(PrintStream out, boolean html)
+    {
+        this.out = out;
+        this.html = html;
+    }
+
+    public boolean isHtml()
+    {
+        return html;
+    }
+
+    /** Starts a table; columns is only used for the HTML colspan. */
+    public void begin(String title, String subject, int columns)
+    {
+        if (html)
+        {
+            out.println("<table>");
+            out.println("<tr><th colspan=\"3\"><h2>" + escape(title) + ":</h2></th><td colspan=\"" + Math.max(3, columns - 3)
+                + "\"><h2>" + escape(subject) + "</h2></td></tr>");
+        }
+        else
+        {
+            out.println("------------------------------------------");
+            out.println(title + ": " + subject + "\n");
+        }
+    }
+
+    public void caption(String text)
+    {
+        if (html)
+        {
+            out.println("<tr><th colspan=\"100\">" + escape(text) + "</th></tr>");
+        }
+        else
+        {
+            out.println(text);
+        }
+    }
+
+    public void header(String... columns)
+    {
+        if (html)
+        {
+            StringBuilder line = new StringBuilder("<tr>");
+            for (String column : columns)
+            {
+                line.append("<th>").append(escape(column)).append("</th>");
+            }
+            out.println(line.append("</tr>"));
+        }
+        else
+        {
+            out.println("  " + join(columns));
+        }
+    }
+
+    public void row(Object... cells)
+    {
+        if (html)
+        {
+            StringBuilder line = new StringBuilder("<tr>");
+            for (Object cell : cells)
+            {
+                line.append("<td>").append(escape(String.valueOf(cell))).append("</td>");
+            }
+            out.println(line.append("</tr>"));
+        }
+        else
+        {
+            String[] text = new String[cells.length];
+            for (int i = 0; i < cells.length; i++)
+            {
+                text[i] = String.valueOf(cells[i]);
+            }
+            out.println("  " + join(text));
+        }
+    }
+
+    public void end(String footer)
+    {
+        if (html)
+        {
+            if (footer != null)
+            {
+                out.println("<tr><th colspan=\"100\">" + escape(footer) + "</th></tr>");
+            }
+            out.println("</table>");
+        }
+        else
+        {
+            if (footer != null)
+            {
+                out.println(footer);
+            }
+            out.println("------------------------------------------");
+        }
+    }
+
+    /** Fixed-point formatting independent of the default locale. */
+    public static String format(double value)
+    {
+        return String.format(java.util.Locale.ROOT, "%.3f", value);
+    }
+
+    private static String join(String[] cells)
+    {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < cells.length; i++)
+        {
+            if (i > 0)
+            {
+                line.append('\t');
+            }
+            line.append(cells[i]);
+        }
+        return line.toString();
+    }
+
+    private String escape(String text)
+    {
+        if (!html)
+        {
+            return text;
+        }
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,12 @@
+package regexbench;
+
+/**
+ * Match state for one CompiledRegex that is kept and reset between inputs
+ * instead of being allocated per call, e.g. java.util.regex.Matcher.reset().
+ * Owned by a single thread.
+ */
+public interface ReusableMatcher
+{
+    /** Same test as CompiledRegex.match(), reusing this matcher's state. */
+    boolean match(CharSequence input);
+}
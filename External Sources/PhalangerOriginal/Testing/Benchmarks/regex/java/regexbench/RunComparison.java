@@ -0,0 +1,440 @@
+package regexbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compare mode ("regtest compare old.json new.json"): the cells two RunHistory
+ * runs have in common, i.e. the same engine, pattern number and input number,
+ * side by side, with the ratio of the new median wall time to the old one and
+ * a bootstrap confidence interval for it. Either side may be several runs,
+ * joined like a class path; its median is then the mean of the runs' medians.
+ * A cell is flagged SLOWER when the whole interval lies above 1 + threshold,
+ * FASTER when it lies below 1 / (1 + threshold), so that neither noise nor a
+ * significant but negligible change is flagged. Cells whose pattern changed
+ * between the runs, that were not timed in both, or that answered wrongly in
+ * any run are listed but not compared.
+ *
+ * The bootstrap is hierarchical: a resample of a side draws as many runs as it
+ * has, with replacement, and resamples each drawn run's distribution. With one
+ * run per side the interval only covers the noise within that run, while JIT
+ * and machine state also vary from one JVM to the next, so two runs of the
+ * same code can differ significantly; a few runs per side make the interval
+ * cover that variation as well. The median of a resample of n values drawn
+ * from the recorded ones is the value at rank ceil(U * n), where U is the m-th
+ * smallest of n uniforms with m = ceil(n / 2), i.e. Beta(m, n + 1 - m)
+ * distributed; so a resample costs one Beta draw and a binary search over the
+ * histogram buckets, not n draws.
+ *
+ * Environment entries that differ between the runs, such as a jar's SHA-256
+ * after an engine upgrade, are listed first. System properties:
+ * regtest.compare.resamples (default 2000), regtest.compare.confidence
+ * (default 0.99) and regtest.compare.threshold (default 0.05).
+ */
+public final class RunComparison
+{
+    private final int resamples = Integer.getInteger("regtest.compare.resamples", 2000).intValue();
+    private final double confidence = Double.parseDouble(System.getProperty("regtest.compare.confidence", "0.99"));
+    private final double threshold = Double.parseDouble(System.getProperty("regtest.compare.threshold", "0.05"));
+
+    /** Fewest samples a cell needs in both runs to be compared. */
+    private static final int MIN_SAMPLES = 10;
+
+    private final Random random = new Random(1);
+    private final Report report;
+
+    public RunComparison(Report report)
+    {
+        this.report = report;
+    }
+
+    /** Prints the comparison; returns the number of cells that got significantly slower. */
+    @SuppressWarnings("unchecked")
+    public int run(List<File> oldRuns, List<File> newRuns) throws IOException
+    {
+        List<Map<String, Map<String, Object>>> oldCells = new ArrayList<Map<String, Map<String, Object>>>();
+        List<Map<String, Map<String, Object>>> newCells = new ArrayList<Map<String, Map<String, Object>>>();
+        Map<String, Object> before = null;
+        Map<String, Object> after = null;
+        for (File file : oldRuns)
+        {
+            before = read(file);
+            oldCells.add(index((List<Object>) before.get("cells")));
+        }
+        for (File file : newRuns)
+        {
+            after = read(file);
+            newCells.add(index((List<Object>) after.get("cells")));
+        }
+
+        report.begin("Run comparison", names(oldRuns) + " -> " + names(newRuns), 3);
+        report.header("ENVIRONMENT", "OLD", "NEW");
+        if (!String.valueOf(before.get("mode")).equals(String.valueOf(after.get("mode"))))
+        {
+            report.row("mode", before.get("mode"), after.get("mode"));
+        }
+        Map<String, Object> oldEnv = flatten((Map<String, Object>) before.get("environment"));
+        Map<String, Object> newEnv = flatten((Map<String, Object>) after.get("environment"));
+        for (String key : union(oldEnv.keySet(), newEnv.keySet()))
+        {
+            Object o = oldEnv.get(key);
+            Object n = newEnv.get(key);
+            if (o == null ? n != null : !o.equals(n))
+            {
+                report.row(key, o == null ? "-" : o, n == null ? "-" : n);
+            }
+        }
+        report.end(null);
+
+        int slower = 0;
+        int faster = 0;
+        String engine = null;
+        for (String key : newCells.get(0).keySet())
+        {
+            List<Map<String, Object>> o = cells(oldCells, key);
+            List<Map<String, Object>> n = cells(newCells, key);
+            if (o.size() < oldCells.size() || n.size() < newCells.size())
+            {
+                // not in every run
+                continue;
+            }
+            String cellEngine = (String) n.get(0).get("engine");
+            if (!cellEngine.equals(engine))
+            {
+                if (engine != null)
+                {
+                    report.end(null);
+                }
+                engine = cellEngine;
+                report.begin("Run comparison for regular expression library", engine, 9);
+                report.caption(Report.format(100 * confidence) + "% bootstrap intervals of the ratio of medians, " + oldRuns.size()
+                    + " old and " + newRuns.size() + " new runs, " + resamples + " resamples, threshold "
+                    + Report.format(100 * threshold) + "%");
+                report.header("RE", "STR", "OLD P50 US", "NEW P50 US", "RATIO", "LOW", "HIGH", "VERDICT", "PATTERN");
+            }
+            String verdict = compare(o, n);
+            if (verdict.equals("SLOWER"))
+            {
+                slower++;
+            }
+            else if (verdict.equals("FASTER"))
+            {
+                faster++;
+            }
+        }
+        if (engine != null)
+        {
+            report.end(null);
+        }
+        report.begin("Run comparison", "summary", 3);
+        report.row("cells slower", Integer.toString(slower), "");
+        report.row("cells faster", Integer.toString(faster), "");
+        report.end(null);
+        return slower;
+    }
+
+    private String compare(List<Map<String, Object>> o, List<Map<String, Object>> n)
+    {
+        Object re = integer(n.get(0).get("re"));
+        Object str = integer(n.get(0).get("str"));
+        String pattern = (String) n.get(0).get("pattern");
+        Side before = new Side(o);
+        Side after = new Side(n);
+        String problem = null;
+        for (Map<String, Object> cell : o)
+        {
+            problem = problem != null ? problem : check(cell, pattern, "old");
+        }
+        for (Map<String, Object> cell : n)
+        {
+            problem = problem != null ? problem : check(cell, pattern, "new");
+        }
+        if (problem != null)
+        {
+            report.row(re, str, micros(before.median()), micros(after.median()), "-", "-", "-", problem, pattern);
+            return problem;
+        }
+
+        double ratio = after.median() / Math.max(before.median(), 1);
+        double[] ratios = new double[resamples];
+        for (int i = 0; i < resamples; i++)
+        {
+            ratios[i] = after.resampleMedian(random) / Math.max(before.resampleMedian(random), 1);
+        }
+        Arrays.sort(ratios);
+        double alpha = (1 - confidence) / 2;
+        double low = ratios[(int) Math.floor(alpha * (resamples - 1))];
+        double high = ratios[(int) Math.ceil((1 - alpha) * (resamples - 1))];
+        String verdict = low > 1 + threshold ? "SLOWER" : high < 1 / (1 + threshold) ? "FASTER" : "same";
+        report.row(re, str, micros(before.median()), micros(after.median()), Report.format(ratio), Report.format(low),
+            Report.format(high), verdict, pattern);
+        return verdict;
+    }
+
+    /** Why a cell of one run cannot be compared, or null. */
+    private static String check(Map<String, Object> cell, String pattern, String side)
+    {
+        if (!String.valueOf(cell.get("pattern")).equals(pattern))
+        {
+            return "pattern changed";
+        }
+        if (!"ok".equals(cell.get("status")))
+        {
+            return side + " status " + cell.get("status");
+        }
+        if (!Boolean.TRUE.equals(cell.get("matchOk")))
+        {
+            return "wrong answer in " + side + " run";
+        }
+        Object wall = cell.get("wall");
+        if (!(wall instanceof Map) || ((Number) ((Map<?, ?>) wall).get("count")).longValue() < MIN_SAMPLES)
+        {
+            return "too few samples";
+        }
+        if (!(((Map<?, ?>) wall).get("buckets") instanceof List))
+        {
+            // the .NET and PHP runners only record summary statistics
+            return "no histogram in " + side + " run";
+        }
+        return null;
+    }
+
+    /** One cell in every run of a side. */
+    private static final class Side
+    {
+        final Distribution[] runs;
+
+        @SuppressWarnings("unchecked")
+        Side(List<Map<String, Object>> cells)
+        {
+            runs = new Distribution[cells.size()];
+            for (int i = 0; i < runs.length; i++)
+            {
+                runs[i] = new Distribution((Map<String, Object>) cells.get(i).get("wall"));
+            }
+        }
+
+        double median()
+        {
+            double sum = 0;
+            for (Distribution run : runs)
+            {
+                sum += run.median();
+            }
+            return sum / runs.length;
+        }
+
+        double resampleMedian(Random random)
+        {
+            double sum = 0;
+            for (int i = 0; i < runs.length; i++)
+            {
+                sum += runs[random.nextInt(runs.length)].resampleMedian(random);
+            }
+            return sum / runs.length;
+        }
+    }
+
+    /** A wall time distribution as recorded by RunHistory: the non-empty buckets' values and cumulative counts. */
+    private static final class Distribution
+    {
+        final long[] values;
+        final long[] cumulative;
+        final long count;
+
+        Distribution(Map<String, Object> wall)
+        {
+            List<Object> buckets = wall == null ? new ArrayList<Object>() : asList(wall.get("buckets"));
+            values = new long[buckets.size() / 2];
+            cumulative = new long[values.length];
+            long seen = 0;
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = ((Number) buckets.get(2 * i)).longValue();
+                seen += ((Number) buckets.get(2 * i + 1)).longValue();
+                cumulative[i] = seen;
+            }
+            count = seen;
+        }
+
+        double median()
+        {
+            return count == 0 ? 0 : atRank((count + 1) / 2);
+        }
+
+        double resampleMedian(Random random)
+        {
+            long m = (count + 1) / 2;
+            double u = beta(m, count + 1 - m, random);
+            return atRank(Math.max(1, (long) Math.ceil(u * count)));
+        }
+
+        /** The value of the rank-th smallest sample, 1-based. */
+        private long atRank(long rank)
+        {
+            int i = Arrays.binarySearch(cumulative, rank);
+            return values[i >= 0 ? i : -i - 1];
+        }
+    }
+
+    /** A Beta(a, b) draw as X / (X + Y) of two Gamma draws. */
+    private static double beta(double a, double b, Random random)
+    {
+        double x = gamma(a, random);
+        double y = gamma(b, random);
+        return x / (x + y);
+    }
+
+    /** A Gamma(shape, 1) draw for shape >= 1, by Marsaglia and Tsang's method. */
+    private static double gamma(double shape, Random random)
+    {
+        double d = shape - 1.0 / 3;
+        double c = 1 / Math.sqrt(9 * d);
+        while (true)
+        {
+            double x;
+            double v;
+            do
+            {
+                x = random.nextGaussian();
+                v = 1 + c * x;
+            }
+            while (v <= 0);
+            v = v * v * v;
+            double u = random.nextDouble();
+            if (u < 1 - 0.0331 * x * x * x * x || Math.log(u) < 0.5 * x * x + d * (1 - v + Math.log(v)))
+            {
+                return d * v;
+            }
+        }
+    }
+
+    /** Reads a run history file, or one in the same schema from the .NET or PHP runner. */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> read(File file) throws IOException
+    {
+        Object run = Json.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        if (!(run instanceof Map) || !(((Map<String, Object>) run).get("cells") instanceof List))
+        {
+            throw new IOException(file + " is not a regtest run history file");
+        }
+        return (Map<String, Object>) run;
+    }
+
+    private static List<Map<String, Object>> cells(List<Map<String, Map<String, Object>>> runs, String key)
+    {
+        List<Map<String, Object>> cells = new ArrayList<Map<String, Object>>();
+        for (Map<String, Map<String, Object>> run : runs)
+        {
+            if (run.containsKey(key))
+            {
+                cells.add(run.get(key));
+            }
+        }
+        return cells;
+    }
+
+    private static String names(List<File> files)
+    {
+        StringBuilder names = new StringBuilder();
+        for (File file : files)
+        {
+            names.append(names.length() > 0 ? ", " : "").append(file.getName());
+        }
+        return names.toString();
+    }
+
+    /** Cells by engine, pattern number and input number, in the order of the run. */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Object>> index(List<Object> cells)
+    {
+        Map<String, Map<String, Object>> index = new LinkedHashMap<String, Map<String, Object>>();
+        for (Object cell : cells)
+        {
+            Map<String, Object> c = (Map<String, Object>) cell;
+            index.put(c.get("engine") + "\u0000" + integer(c.get("re")) + "\u0000" + integer(c.get("str")), c);
+        }
+        return index;
+    }
+
+    /** Nested maps as dotted keys, lists of maps by their "name" entry or index, for a line by line diff. */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> flatten(Map<String, Object> map)
+    {
+        Map<String, Object> flat = new LinkedHashMap<String, Object>();
+        if (map == null)
+        {
+            return flat;
+        }
+        for (Map.Entry<String, Object> e : map.entrySet())
+        {
+            Object value = e.getValue();
+            if (value instanceof Map)
+            {
+                for (Map.Entry<String, Object> inner : flatten((Map<String, Object>) value).entrySet())
+                {
+                    flat.put(e.getKey() + "." + inner.getKey(), inner.getValue());
+                }
+            }
+            else if (value instanceof List && !((List<Object>) value).isEmpty() && ((List<Object>) value).get(0) instanceof Map)
+            {
+                List<Object> list = (List<Object>) value;
+                for (int i = 0; i < list.size(); i++)
+                {
+                    Map<String, Object> item = (Map<String, Object>) list.get(i);
+                    Object name = item.containsKey("name") ? item.get("name") : Integer.valueOf(i);
+                    for (Map.Entry<String, Object> inner : flatten(item).entrySet())
+                    {
+                        if (!inner.getKey().equals("name") && !inner.getKey().equals("path"))
+                        {
+                            flat.put(e.getKey() + "." + name + "." + inner.getKey(), inner.getValue());
+                        }
+                    }
+                }
+            }
+            else
+            {
+                flat.put(e.getKey(), value);
+            }
+        }
+        return flat;
+    }
+
+    private static List<String> union(java.util.Set<String> a, java.util.Set<String> b)
+    {
+        List<String> keys = new ArrayList<String>(a);
+        for (String key : b)
+        {
+            if (!a.contains(key))
+            {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value)
+    {
+        return value instanceof List ? (List<Object>) value : new ArrayList<Object>();
+    }
+
+    /** JSON numbers come back as Doubles; pattern and input numbers read better as ints. */
+    private static Object integer(Object number)
+    {
+        return number instanceof Number ? Integer.valueOf(((Number) number).intValue()) : number;
+    }
+
+    private static String micros(double nanos)
+    {
+        return Report.format(nanos / 1e3);
+    }
+}
@@ -0,0 +1,356 @@
+package regexbench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Machine-readable results of a regtest run, written next to the HTML report into
+ * a history directory so that runs can be compared later (see RunComparison).
+ * Each run becomes two files named after its start time and mode:
+ * <ul>
+ * <li>run-yyyyMMdd-HHmmss-mode.json: the environment (JVM, its arguments and
+ * collectors, OS, CPU, the regtest.* properties, and every jar on the classpath
+ * with its size, SHA-256 and manifest version) and for every cell its status,
+ * the wall time distribution as the non-empty LatencyHistogram buckets and how
+ * it was sampled (warm-up, JIT and GC time, confidence interval, see
+ * SteadyState);</li>
+ * <li>run-yyyyMMdd-HHmmss-mode.csv: one line of summary statistics per cell, for
+ * spreadsheets.</li>
+ * </ul>
+ * The .NET and PHP runners write results in the same schema, see UnifiedReport.
+ * System property: regtest.history (directory, default "history"; "none" turns
+ * the history off).
+ */
+public final class RunHistory
+{
+    private static final int FORMAT = 1;
+
+    private final String mode;
+    private final Date started = new Date();
+    private final Map<String, Object> environment;
+    private final List<Map<String, Object>> cells = new ArrayList<Map<String, Object>>();
+    private final StringBuilder csv = new StringBuilder(
+        "mode,engine,re,str,pattern,status,match_ok,n,total_ms,min_us,mean_us,p50_us,p90_us,p99_us,p999_us,max_us,stddev_us,"
+            + "cpu_mean_us,bytes_per_match,warmup,jit_ms,gc_ms,ci_width,sampling\n");
+
+    public RunHistory(String mode)
+    {
+        this.mode = mode;
+        this.environment = environment();
+    }
+
+    /** The history directory, or null if the history is turned off. */
+    public static File directory()
+    {
+        String dir = System.getProperty("regtest.history", "history");
+        return dir.isEmpty() || dir.equals("none") ? null : new File(dir);
+    }
+
+    /**
+     * Adds one cell: what the engine compiled, whether it answered as expected, and its measurements; steady is
+     * null for cells that were never timed.
+     */
+    public void add(String engine, int re, int str, String pattern, String status, boolean matchOk, LatencyRecorder recorder,
+        SteadyState steady)
+    {
+        LatencyHistogram wall = recorder.getWall();
+        Map<String, Object> cell = new LinkedHashMap<String, Object>();
+        cell.put("engine", engine);
+        cell.put("re", Integer.valueOf(re));
+        cell.put("str", Integer.valueOf(str));
+        cell.put("pattern", pattern);
+        cell.put("status", status == null ? "ok" : status);
+        cell.put("matchOk", Boolean.valueOf(matchOk));
+        cell.put("wall", histogram(wall));
+        cell.put("cpuMean", Double.valueOf(recorder.getCpu().getMean()));
+        cell.put("bytesPerMatch", Double.valueOf(recorder.getAllocatedBytesPerOp()));
+        if (steady != null)
+        {
+            Map<String, Object> sampling = new LinkedHashMap<String, Object>();
+            sampling.put("stop", steady.getStopReason());
+            sampling.put("settled", Boolean.valueOf(steady.isSettled()));
+            sampling.put("warmupMatches", Long.valueOf(steady.getWarmupMatches()));
+            sampling.put("warmupMillis", Double.valueOf(steady.getWarmupMillis()));
+            sampling.put("jitMillis", Long.valueOf(steady.getJitMillis()));
+            sampling.put("gcMillis", Long.valueOf(steady.getGcMillis()));
+            sampling.put("gcCount", Long.valueOf(steady.getGcCount()));
+            if (!Double.isNaN(steady.getRelativeWidth()))
+            {
+                sampling.put("ciWidth", Double.valueOf(steady.getRelativeWidth()));
+            }
+            cell.put("sampling", sampling);
+        }
+        cells.add(cell);
+
+        String[] fields = {mode, engine, Integer.toString(re), Integer.toString(str), pattern, status == null ? "ok" : status,
+            Boolean.toString(matchOk), Long.toString(wall.getTotalCount()), Report.format(wall.getTotal() / 1e6),
+            micros(wall.getMin()), micros(wall.getMean()), micros(wall.getValueAtPercentile(50)),
+            micros(wall.getValueAtPercentile(90)), micros(wall.getValueAtPercentile(99)), micros(wall.getValueAtPercentile(99.9)),
+            micros(wall.getMax()), micros(wall.getStdDeviation()), micros(recorder.getCpu().getMean()),
+            Report.format(recorder.getAllocatedBytesPerOp()), steady == null ? "" : Long.toString(steady.getWarmupMatches()),
+            steady == null ? "" : Long.toString(steady.getJitMillis()), steady == null ? "" : Long.toString(steady.getGcMillis()),
+            steady == null || Double.isNaN(steady.getRelativeWidth()) ? "" : Report.format(steady.getRelativeWidth()),
+            steady == null ? "" : steady.describe()};
+        for (int i = 0; i < fields.length; i++)
+        {
+            if (i > 0)
+            {
+                csv.append(',');
+            }
+            csv.append(csvField(fields[i]));
+        }
+        csv.append('\n');
+    }
+
+    /** Writes the JSON and CSV files; returns the JSON file, or null if the history is turned off. */
+    public File write() throws IOException
+    {
+        File dir = directory();
+        if (dir == null)
+        {
+            return null;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs())
+        {
+            throw new IOException("cannot create " + dir);
+        }
+        SimpleDateFormat name = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT);
+        String base = "run-" + name.format(started) + "-" + mode.replaceAll("[^A-Za-z0-9]+", "_");
+
+        Map<String, Object> run = new LinkedHashMap<String, Object>();
+        run.put("format", Integer.valueOf(FORMAT));
+        run.put("runtime", "java");
+        run.put("mode", mode);
+        run.put("started", iso(started));
+        run.put("environment", environment);
+        run.put("cells", cells);
+        File json = new File(dir, base + ".json");
+        writeFile(json, Json.write(run));
+        writeFile(new File(dir, base + ".csv"), csv.toString());
+        return json;
+    }
+
+    private static Map<String, Object> histogram(LatencyHistogram h)
+    {
+        Map<String, Object> m = new LinkedHashMap<String, Object>();
+        m.put("count", Long.valueOf(h.getTotalCount()));
+        m.put("min", Long.valueOf(h.getMin()));
+        m.put("max", Long.valueOf(h.getMax()));
+        m.put("mean", Double.valueOf(h.getMean()));
+        m.put("stdDeviation", Double.valueOf(h.getStdDeviation()));
+        m.put("p50", Long.valueOf(h.getValueAtPercentile(50)));
+        m.put("p90", Long.valueOf(h.getValueAtPercentile(90)));
+        m.put("p99", Long.valueOf(h.getValueAtPercentile(99)));
+        m.put("p999", Long.valueOf(h.getValueAtPercentile(99.9)));
+        // flattened {lowest value of the bucket, count} pairs of the non-empty buckets
+        List<Object> buckets = new ArrayList<Object>();
+        for (int i = 0; i < h.getBucketCount(); i++)
+        {
+            long count = h.getCountAtIndex(i);
+            if (count > 0)
+            {
+                buckets.add(Long.valueOf(LatencyHistogram.valueFromIndex(i)));
+                buckets.add(Long.valueOf(count));
+            }
+        }
+        m.put("buckets", buckets);
+        return m;
+    }
+
+    static Map<String, Object> environment()
+    {
+        Map<String, Object> env = new LinkedHashMap<String, Object>();
+        for (String key : new String[] {"java.version", "java.vendor", "java.vm.name", "java.vm.version", "os.name", "os.arch",
+            "os.version"})
+        {
+            env.put(key, System.getProperty(key));
+        }
+        env.put("jvmArguments", new ArrayList<Object>(ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        List<Object> collectors = new ArrayList<Object>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            collectors.add(gc.getName());
+        }
+        env.put("collectors", collectors);
+        env.put("processors", Integer.valueOf(Runtime.getRuntime().availableProcessors()));
+        env.put("maxHeapBytes", Long.valueOf(Runtime.getRuntime().maxMemory()));
+        env.put("cpu", cpu());
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        for (String key : new java.util.TreeSet<String>(System.getProperties().stringPropertyNames()))
+        {
+            if (key.startsWith("regtest."))
+            {
+                properties.put(key, System.getProperty(key));
+            }
+        }
+        env.put("properties", properties);
+        env.put("cpuTimeSupported", Boolean.valueOf(LatencyRecorder.isCpuTimeSupported()));
+        env.put("allocationSupported", Boolean.valueOf(LatencyRecorder.isAllocationSupported()));
+        env.put("jars", jars());
+        return env;
+    }
+
+    /** The CPU model as the OS names it, or "unknown". */
+    private static String cpu()
+    {
+        String windows = System.getenv("PROCESSOR_IDENTIFIER");
+        if (windows != null)
+        {
+            return windows;
+        }
+        try
+        {
+            for (String line : Files.readAllLines(new File("/proc/cpuinfo").toPath(), StandardCharsets.UTF_8))
+            {
+                if (line.startsWith("model name") && line.indexOf(':') > 0)
+                {
+                    return line.substring(line.indexOf(':') + 1).trim();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // not Linux
+        }
+        return "unknown";
+    }
+
+    /** Every jar on the class path, and those their manifests' Class-Path adds, with what identifies its version. */
+    private static List<Object> jars()
+    {
+        List<Object> jars = new ArrayList<Object>();
+        List<File> files = new ArrayList<File>();
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator))
+        {
+            if (entry.endsWith(".jar"))
+            {
+                files.add(new File(entry));
+            }
+        }
+        for (int i = 0; i < files.size(); i++)
+        {
+            File file = files.get(i).getAbsoluteFile();
+            Map<String, Object> jar = new LinkedHashMap<String, Object>();
+            jar.put("name", file.getName());
+            jar.put("path", file.getPath());
+            if (!file.isFile())
+            {
+                jar.put("missing", Boolean.TRUE);
+                jars.add(jar);
+                continue;
+            }
+            jar.put("bytes", Long.valueOf(file.length()));
+            jar.put("sha256", sha256(file));
+            try (JarFile jf = new JarFile(file))
+            {
+                Manifest manifest = jf.getManifest();
+                if (manifest != null)
+                {
+                    String version = manifest.getMainAttributes().getValue("Implementation-Version");
+                    if (version == null)
+                    {
+                        version = manifest.getMainAttributes().getValue("Specification-Version");
+                    }
+                    if (version != null)
+                    {
+                        jar.put("version", version);
+                    }
+                    String classPath = manifest.getMainAttributes().getValue("Class-Path");
+                    if (classPath != null)
+                    {
+                        for (String ref : classPath.trim().split("\\s+"))
+                        {
+                            File referenced = new File(file.getParentFile(), ref);
+                            if (ref.endsWith(".jar") && !files.contains(referenced))
+                            {
+                                files.add(referenced);
+                            }
+                        }
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                jar.put("error", e.toString());
+            }
+            jars.add(jar);
+        }
+        return jars;
+    }
+
+    private static String sha256(File file)
+    {
+        try (InputStream in = new FileInputStream(file))
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[65536];
+            for (int n; (n = in.read(buffer)) > 0;)
+            {
+                digest.update(buffer, 0, n);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest())
+            {
+                hex.append(String.format("%02x", Integer.valueOf(b & 0xff)));
+            }
+            return hex.toString();
+        }
+        catch (IOException e)
+        {
+            return "unreadable: " + e;
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String iso(Date date)
+    {
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+        f.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return f.format(date);
+    }
+
+    private static String micros(double nanos)
+    {
+        return Report.format(nanos / 1e3);
+    }
+
+    private static String csvField(String value)
+    {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+        {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void writeFile(File file, String text) throws IOException
+    {
+        try (Writer out = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8))
+        {
+            out.write(text);
+        }
+    }
+}
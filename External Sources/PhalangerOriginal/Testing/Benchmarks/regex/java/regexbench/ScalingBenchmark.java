@@ -0,0 +1,326 @@
+package regexbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Multi-core scaling mode ("regtest scaling"): runs an engine's Corpus.RE x Corpus.STR
+ * workload on 1, 2, 4, ... up to N platform threads and reports throughput and
+ * speedup over one thread.
+ *
+ * Two variants are measured per thread count:
+ * <ul>
+ * <li>shared - every thread uses the same CompiledRegex objects,</li>
+ * <li>per-thread - every thread compiles its own copies before the run starts.</li>
+ * </ul>
+ * Threads count matches in a local variable and publish once at the end through
+ * LongAdders, so the counters never contend. Every result is checked against a
+ * single-threaded reference run; engines that return different answers or throw
+ * when shared are reported as not thread-safe instead of failing the run.
+ *
+ * System properties: regtest.threads (N, default: available processors),
+ * regtest.warmup and regtest.duration (milliseconds per measurement, defaults
+ * 500 and 2000) and regtest.scaling.maxCellMillis (default 50): cells whose single
+ * reference match takes longer, like a backtracking engine on Corpus.RE[4], would
+ * stall a thread for the whole window and are left out of the workload, as are
+ * cells over the MatchBudget.
+ *
+ * A thread still matching MatchBudget.getMaxMillis() after the window closes, or
+ * still compiling its copies after that long per pattern, has run over the budget:
+ * the row says so and the engine is not run on more threads.
+ */
+public final class ScalingBenchmark
+{
+    private final int maxThreads = Integer.getInteger("regtest.threads", Runtime.getRuntime().availableProcessors()).intValue();
+    private final long warmupMillis = Long.getLong("regtest.warmup", 500).longValue();
+    private final long durationMillis = Long.getLong("regtest.duration", 2000).longValue();
+    private final long maxCellMillis = Long.getLong("regtest.scaling.maxCellMillis", 50).longValue();
+    private final MatchBudget budget = MatchBudget.fromProperties();
+
+    private final Report report;
+
+    public ScalingBenchmark(Report report)
+    {
+        this.report = report;
+    }
+
+    public void run(List<RegexEngine> engines)
+    {
+        for (RegexEngine engine : engines)
+        {
+            System.err.println("Scaling " + engine.getName() + "...");
+            run(engine);
+        }
+    }
+
+    public void run(RegexEngine engine)
+    {
+        CompiledRegex[] reference = compileAll(engine);
+        Boolean[][] expected = new Boolean[Corpus.RE.length][Corpus.STR.length];
+        List<int[]> cells = new ArrayList<int[]>();
+        int slow = 0;
+        for (int re = 0; re < Corpus.RE.length; re++)
+        {
+            if (reference[re] == null)
+            {
+                continue;
+            }
+            for (int str = 0; str < Corpus.STR.length; str++)
+            {
+                // probed on a separate thread, so a runaway match cannot hang the reference run
+                MatchBudget.Outcome outcome = budget.probe(engine, Corpus.patternsFor(engine)[re], Corpus.STR[str]);
+                if (!outcome.isCompleted())
+                {
+                    // the cell fails or runs away even on one thread, leave it out of the workload
+                    continue;
+                }
+                if (outcome.getNanos() > maxCellMillis * 1000000L)
+                {
+                    slow++;
+                    continue;
+                }
+                expected[re][str] = Boolean.valueOf(outcome.getResult());
+                cells.add(new int[] {re, str});
+            }
+        }
+
+        report.begin("Scaling of regular expression library", engine.getName(), 8);
+        if (cells.isEmpty())
+        {
+            report.end("No pattern could be compiled and matched.");
+            return;
+        }
+        report.caption(cells.size() + " cells (" + slow + " slower than " + maxCellMillis + " ms left out), " + warmupMillis
+            + " ms warmup, " + durationMillis + " ms per measurement");
+        report.header("THREADS", "SHARED OPS/S", "SPEEDUP", "SHARED", "PER-THREAD OPS/S", "SPEEDUP", "PER-THREAD");
+
+        double sharedBase = 0;
+        double perThreadBase = 0;
+        boolean sharedSafe = true;
+        int timedOutAt = 0;
+        for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads))
+        {
+            Result shared = measure(engine, reference, cells, expected, threads);
+            // threads left running would take the CPU from the per-thread run
+            Result perThread = shared.timedOut == null ? measure(engine, null, cells, expected, threads) : null;
+            if (threads == 1)
+            {
+                sharedBase = shared.opsPerSecond;
+                perThreadBase = perThread != null ? perThread.opsPerSecond : 0;
+            }
+            sharedSafe &= shared.isThreadSafe();
+            report.row(Integer.valueOf(threads), Report.format(shared.opsPerSecond), speedup(shared.opsPerSecond, sharedBase),
+                shared.status(), perThread != null ? Report.format(perThread.opsPerSecond) : "-",
+                perThread != null ? speedup(perThread.opsPerSecond, perThreadBase) : "-",
+                perThread != null ? perThread.status() : "not run");
+            if (shared.timedOut != null || perThread.timedOut != null)
+            {
+                timedOutAt = threads;
+                break;
+            }
+        }
+        String safety = sharedSafe ? "Shared compiled patterns: no wrong results observed."
+            : "Shared compiled patterns: NOT THREAD-SAFE, compile per thread.";
+        report.end(timedOutAt > 0 ? safety + " Stopped at " + timedOutAt + " threads: a thread ran over the budget." : safety);
+    }
+
+    private int nextThreadCount(int threads)
+    {
+        if (threads < maxThreads && threads * 2 > maxThreads)
+        {
+            return maxThreads;
+        }
+        return threads * 2;
+    }
+
+    private static String speedup(double ops, double base)
+    {
+        return base > 0 ? Report.format(ops / base) : "-";
+    }
+
+    private static CompiledRegex[] compileAll(RegexEngine engine)
+    {
+        String[] patterns = Corpus.patternsFor(engine);
+        CompiledRegex[] compiled = new CompiledRegex[patterns.length];
+        for (int re = 0; re < patterns.length; re++)
+        {
+            try
+            {
+                compiled[re] = engine.compile(patterns[re]);
+            }
+            catch (Throwable e)
+            {
+                compiled[re] = null;
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Runs the workload on threads threads. With shared == null every thread
+     * compiles its own patterns.
+     */
+    private Result measure(final RegexEngine engine, final CompiledRegex[] shared, final List<int[]> cells,
+        final Boolean[][] expected, int threads)
+    {
+        final LongAdder ops = new LongAdder();
+        final LongAdder wrong = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        final long[] window = new long[2];
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            final int offset = t * cells.size() / threads;
+            workers[t] = new Thread("scaling-" + t)
+            {
+                public void run()
+                {
+                    CompiledRegex[] patterns = shared != null ? shared : compileAll(engine);
+                    ready.countDown();
+                    try
+                    {
+                        go.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    long measureFrom = window[0];
+                    long measureTo = window[1];
+                    long count = 0;
+                    long mismatches = 0;
+                    long errors = 0;
+                    int next = offset;
+                    while (true)
+                    {
+                        long now = System.nanoTime();
+                        if (now >= measureTo)
+                        {
+                            break;
+                        }
+                        int[] cell = cells.get(next);
+                        next = (next + 1) % cells.size();
+                        CompiledRegex p = patterns[cell[0]];
+                        try
+                        {
+                            boolean b = p == null ? false : p.match(Corpus.STR[cell[1]]);
+                            if (p == null || b != expected[cell[0]][cell[1]].booleanValue())
+                            {
+                                mismatches++;
+                            }
+                        }
+                        catch (Throwable e)
+                        {
+                            errors++;
+                            firstFailure.compareAndSet(null, e);
+                        }
+                        if (now >= measureFrom)
+                        {
+                            count++;
+                        }
+                    }
+                    ops.add(count);
+                    wrong.add(mismatches);
+                    failures.add(errors);
+                }
+            };
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+
+        String timedOut = null;
+        try
+        {
+            long compileMillis = (shared != null ? 1 : Corpus.RE.length) * budget.getMaxMillis();
+            if (ready.await(compileMillis, TimeUnit.MILLISECONDS))
+            {
+                window[0] = System.nanoTime() + warmupMillis * 1000000L;
+                window[1] = window[0] + durationMillis * 1000000L;
+            }
+            else
+            {
+                // an empty window, so that the threads which did compile return at once
+                timedOut = "compiling took longer than " + compileMillis + " ms";
+            }
+            go.countDown();
+            long deadline = System.nanoTime() + (warmupMillis + durationMillis + budget.getMaxMillis()) * 1000000L;
+            for (Thread worker : workers)
+            {
+                long left = deadline - System.nanoTime();
+                if (left > 0)
+                {
+                    TimeUnit.NANOSECONDS.timedJoin(worker, left);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        int stuck = 0;
+        String stopped = "";
+        for (Thread worker : workers)
+        {
+            if (worker.isAlive())
+            {
+                stuck++;
+                stopped = MatchBudget.stop(worker, engine, shared != null ? "the scaling workload" : "the scaling compile");
+            }
+        }
+        if (stuck > 0 && timedOut == null)
+        {
+            timedOut = "no answer within " + budget.getMaxMillis() + " ms of the window's end";
+        }
+
+        Result result = new Result();
+        if (timedOut != null)
+        {
+            result.timedOut = "budget exceeded: " + timedOut + (stuck > 0 ? ", " + stuck + " of " + threads + " threads" + stopped : "");
+        }
+        result.opsPerSecond = ops.sum() / (durationMillis / 1000.0);
+        result.wrong = wrong.sum();
+        result.failures = failures.sum();
+        result.firstFailure = firstFailure.get();
+        return result;
+    }
+
+    private static final class Result
+    {
+        double opsPerSecond;
+        long wrong;
+        long failures;
+        Throwable firstFailure;
+        String timedOut;
+
+        boolean isThreadSafe()
+        {
+            return wrong == 0 && failures == 0;
+        }
+
+        String status()
+        {
+            if (timedOut != null)
+            {
+                return timedOut;
+            }
+            if (isThreadSafe())
+            {
+                return "ok";
+            }
+            String text = "NOT THREAD-SAFE: " + wrong + " wrong, " + failures + " exceptions";
+            if (firstFailure != null)
+            {
+                text += " (" + firstFailure.getClass().getName() + ")";
+            }
+            return text;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package regexbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import regexbench.preg.PregTranslation;
+import regexbench.preg.PregTranslator;
+
+/**
+ * Size sweep mode ("regtest sweep"): how each engine's search time grows with
+ * the input, from 1 KB up to regtest.sweep.maxBytes (default 128 MB), for every
+ * Corpus.PREG pattern and input template. An input of a given size is its
+ * template repeated, so the same text that takes microseconds as a single
+ * Corpus.STR line is also measured as a request body of megabytes.
+ *
+ * Every size is measured with find(), preg_match() style, as the fastest of the
+ * searches that fit into regtest.sweep.cellMillis, after one search under a
+ * MatchBudget of regtest.sweep.millis. A search over the budget ends the sweep
+ * of that engine, pattern and template: the larger sizes would only take
+ * longer.
+ *
+ * The curve is then classified as constant, linear, n log n, quadratic or cubic
+ * by the model f(n) for which time / f(n) varies least over the sizes (a faster
+ * growing model has to halve the variance of the slower one to win), using
+ * only times above regtest.sweep.floorMicros (default 20) where there are at
+ * least three, so that per-call overhead does not pass for sub-linear growth.
+ * A sweep that exceeded the budget at a size the fitted model says it should
+ * have managed in half the budget grew faster than any of them and is
+ * classified as exponential. SLOPE is the least-squares slope of log time over
+ * log size, 1 for linear and 2 for quadratic.
+ *
+ * Templates default to the Corpus.STR inputs, each as one line; a file given as
+ * regtest.sweep.templates replaces them, one template per line with \n, \t and
+ * \\ escapes. Other system properties: regtest.sweep.minBytes (default 1024)
+ * and regtest.sweep.factor (size step, default 4).
+ */
+public final class SizeSweep
+{
+    private static final String[] MODELS = {"constant", "linear", "n log n", "quadratic", "cubic"};
+
+    // markers in the time matrix
+    private static final double NOT_RUN = Double.NaN;
+    private static final double EXCEEDED = -1;
+    private static final double FAILED = -2;
+
+    private final long minBytes = Long.getLong("regtest.sweep.minBytes", 1024).longValue();
+    private final long maxBytes = Long.getLong("regtest.sweep.maxBytes", 128L << 20).longValue();
+    private final int factor = Integer.getInteger("regtest.sweep.factor", 4).intValue();
+    private final long cellMillis = Long.getLong("regtest.sweep.cellMillis", 100).longValue();
+    private final double floorMicros = Double.parseDouble(System.getProperty("regtest.sweep.floorMicros", "20"));
+    private final MatchBudget budget = new MatchBudget(Long.MAX_VALUE, Long.getLong("regtest.sweep.millis", 2000).longValue());
+
+    private final Report report;
+
+    public SizeSweep(Report report)
+    {
+        this.report = report;
+    }
+
+    public void run(List<RegexEngine> engines) throws IOException
+    {
+        String[] templates = templates();
+        List<Long> sizeList = new ArrayList<Long>();
+        for (long size = minBytes; size < maxBytes; size *= factor)
+        {
+            sizeList.add(Long.valueOf(size));
+        }
+        sizeList.add(Long.valueOf(maxBytes));
+        long[] sizes = new long[sizeList.size()];
+        for (int i = 0; i < sizes.length; i++)
+        {
+            sizes[i] = sizeList.get(i).longValue();
+        }
+
+        int patterns = Corpus.PREG.length;
+        CompiledRegex[][] regexes = new CompiledRegex[engines.size()][patterns];
+        String[][][] status = new String[engines.size()][patterns][templates.length];
+        double[][][][] nanos = new double[engines.size()][patterns][templates.length][sizes.length];
+        for (int e = 0; e < engines.size(); e++)
+        {
+            for (int re = 0; re < patterns; re++)
+            {
+                String problem = null;
+                try
+                {
+                    PregTranslation t = PregTranslator.translate(Corpus.PREG[re], engines.get(e).getDialect());
+                    if (!t.isSupported())
+                    {
+                        problem = t.toString();
+                    }
+                    else
+                    {
+                        regexes[e][re] = engines.get(e).compile(t.getPattern());
+                    }
+                }
+                catch (Throwable x)
+                {
+                    problem = "compile failed: " + x.getClass().getName();
+                }
+                for (int t = 0; t < templates.length; t++)
+                {
+                    status[e][re][t] = problem;
+                    Arrays.fill(nanos[e][re][t], NOT_RUN);
+                }
+            }
+        }
+
+        // one input of each size at a time, for all engines, so that only one is on the heap
+        for (int t = 0; t < templates.length; t++)
+        {
+            for (int s = 0; s < sizes.length; s++)
+            {
+                System.err.println("Sweeping template " + t + " at " + bytes(sizes[s]) + "...");
+                String input = repeat(templates[t], sizes[s]);
+                for (int e = 0; e < engines.size(); e++)
+                {
+                    for (int re = 0; re < patterns; re++)
+                    {
+                        if (regexes[e][re] == null || (s > 0 && !(nanos[e][re][t][s - 1] >= 0)))
+                        {
+                            continue;
+                        }
+                        MatchBudget.Outcome outcome = budget.probeFind(engines.get(e), regexes[e][re], input);
+                        if (!outcome.isCompleted())
+                        {
+                            nanos[e][re][t][s] = outcome.getKind() == MatchBudget.Outcome.Kind.BUDGET_EXCEEDED ? EXCEEDED : FAILED;
+                            status[e][re][t] = "at " + bytes(sizes[s]) + ": " + outcome.describe();
+                            continue;
+                        }
+                        nanos[e][re][t][s] = time(regexes[e][re], input, outcome.getNanos());
+                    }
+                }
+            }
+        }
+
+        String[] header = new String[sizes.length + 5];
+        header[0] = "RE";
+        header[1] = "TEMPLATE";
+        for (int s = 0; s < sizes.length; s++)
+        {
+            header[s + 2] = bytes(sizes[s]);
+        }
+        header[header.length - 3] = "SLOPE";
+        header[header.length - 2] = "CLASS";
+        header[header.length - 1] = "STATUS";
+        for (int e = 0; e < engines.size(); e++)
+        {
+            report.begin("Input size sweep for regular expression library", engines.get(e).getName(), header.length);
+            report.caption("Milliseconds per search of an input of the given size, the template repeated; budget "
+                + budget.getMaxMillis() + " ms per search");
+            report.header(header);
+            for (int re = 0; re < patterns; re++)
+            {
+                for (int t = 0; t < templates.length; t++)
+                {
+                    double[] times = nanos[e][re][t];
+                    Object[] row = new Object[header.length];
+                    row[0] = Corpus.PREG[re];
+                    row[1] = describe(templates[t]);
+                    for (int s = 0; s < sizes.length; s++)
+                    {
+                        row[s + 2] = times[s] >= 0 ? Report.format(times[s] / 1e6) : times[s] == EXCEEDED ? "exceeded"
+                            : times[s] == FAILED ? "failed" : "-";
+                    }
+                    double slope = slope(sizes, times);
+                    row[row.length - 3] = Double.isNaN(slope) ? "-" : Report.format(slope);
+                    row[row.length - 2] = classify(sizes, times);
+                    row[row.length - 1] = status[e][re][t] == null ? "ok" : status[e][re][t];
+                    report.row(row);
+                }
+            }
+            report.end("CLASS: the model whose ratio to the measured times is most nearly constant; exponential when the"
+                + " budget ran out sooner than that model predicts.");
+        }
+    }
+
+    /** The fastest search of input within cellMillis, or first if that is faster, e.g. for a single long search. */
+    private double time(CompiledRegex regex, CharSequence input, double first)
+    {
+        double fastest = first;
+        long deadline = System.nanoTime() + cellMillis * 1000000L;
+        do
+        {
+            long start = System.nanoTime();
+            try
+            {
+                regex.find(input);
+            }
+            catch (RuntimeException | StackOverflowError e)
+            {
+                break;
+            }
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        while (System.nanoTime() < deadline);
+        return fastest;
+    }
+
+    /** The sizes and times to fit: those above the floor if there are three of them, otherwise all completed ones. */
+    private List<double[]> points(long[] sizes, double[] times)
+    {
+        List<double[]> all = new ArrayList<double[]>();
+        List<double[]> above = new ArrayList<double[]>();
+        for (int s = 0; s < sizes.length; s++)
+        {
+            if (times[s] > 0)
+            {
+                double[] point = {sizes[s], times[s]};
+                all.add(point);
+                if (times[s] >= floorMicros * 1e3)
+                {
+                    above.add(point);
+                }
+            }
+        }
+        return above.size() >= 3 ? above : all;
+    }
+
+    private double slope(long[] sizes, double[] times)
+    {
+        List<double[]> points = points(sizes, times);
+        if (points.size() < 2)
+        {
+            return Double.NaN;
+        }
+        double n = points.size();
+        double sx = 0;
+        double sy = 0;
+        double sxx = 0;
+        double sxy = 0;
+        for (double[] p : points)
+        {
+            double x = Math.log(p[0]);
+            double y = Math.log(p[1]);
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+        return (n * sxy - sx * sy) / (n * sxx - sx * sx);
+    }
+
+    private String classify(long[] sizes, double[] times)
+    {
+        List<double[]> points = points(sizes, times);
+        int exceededAt = -1;
+        for (int s = 0; s < sizes.length; s++)
+        {
+            if (times[s] == EXCEEDED)
+            {
+                exceededAt = s;
+            }
+        }
+        if (points.size() < 2)
+        {
+            return exceededAt >= 0 ? "exponential?" : "-";
+        }
+        int best = 0;
+        double bestVariance = Double.MAX_VALUE;
+        double bestLogScale = 0;
+        for (int m = 0; m < MODELS.length; m++)
+        {
+            // log(time / f(n)) is constant for the right model; its mean is log of the scale factor
+            double sum = 0;
+            double sumSquares = 0;
+            for (double[] p : points)
+            {
+                double r = Math.log(p[1]) - Math.log(model(m, p[0]));
+                sum += r;
+                sumSquares += r * r;
+            }
+            double mean = sum / points.size();
+            double variance = sumSquares / points.size() - mean * mean;
+            // a faster growing model has to fit clearly better, or timing noise decides between n and n log n
+            if (variance < bestVariance / 2)
+            {
+                best = m;
+                bestVariance = variance;
+                bestLogScale = mean;
+            }
+        }
+        if (exceededAt >= 0)
+        {
+            double predicted = Math.exp(bestLogScale) * model(best, sizes[exceededAt]);
+            if (predicted < budget.getMaxMillis() * 1e6 / 2)
+            {
+                return "exponential";
+            }
+        }
+        return MODELS[best];
+    }
+
+    private static double model(int m, double n)
+    {
+        switch (m)
+        {
+            case 0:
+                return 1;
+            case 1:
+                return n;
+            case 2:
+                return n * Math.log(n);
+            case 3:
+                return n * n;
+            default:
+                return n * n * n;
+        }
+    }
+
+    private static String[] templates() throws IOException
+    {
+        String file = System.getProperty("regtest.sweep.templates");
+        List<String> templates = new ArrayList<String>();
+        if (file == null)
+        {
+            for (String s : Corpus.STR)
+            {
+                templates.add(s.endsWith("\n") ? s : s + "\n");
+            }
+        }
+        else
+        {
+            for (String line : Files.readAllLines(new File(file).toPath(), StandardCharsets.UTF_8))
+            {
+                if (!line.isEmpty())
+                {
+                    templates.add(unescape(line));
+                }
+            }
+        }
+        return templates.toArray(new String[templates.size()]);
+    }
+
+    private static String unescape(String line)
+    {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length())
+            {
+                char e = line.charAt(++i);
+                s.append(e == 'n' ? '\n' : e == 't' ? '\t' : e);
+            }
+            else
+            {
+                s.append(c);
+            }
+        }
+        return s.toString();
+    }
+
+    private static String repeat(String template, long size)
+    {
+        if (size > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalArgumentException("inputs are Strings, at most 2 GB: " + size);
+        }
+        StringBuilder s = new StringBuilder((int) size);
+        while (s.length() < size)
+        {
+            s.append(template, 0, (int) Math.min(template.length(), size - s.length()));
+        }
+        return s.toString();
+    }
+
+    private static String describe(String template)
+    {
+        String line = template.replace("\n", "\\n");
+        return line.length() <= 30 ? line : line.substring(0, 27) + "...";
+    }
+
+    private static String bytes(long size)
+    {
+        return size >= 1L << 20 && size % (1L << 20) == 0 ? (size >> 20) + " MB" : size >= 1024 && size % 1024 == 0 ? (size >> 10)
+            + " KB" : size + " B";
+    }
+}
@@ -0,0 +1,340 @@
+package regexbench;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how many matches one benchmark cell gets, instead of a fixed iteration
+ * count: warm-up matches until the JIT has settled, which are not recorded, then
+ * measured matches into a LatencyRecorder until the confidence interval of the
+ * median is narrow enough.
+ *
+ * Matches are grouped into batches of about regtest.steady.batchMillis (default
+ * 10), at least one match each. Warm-up ends once the JIT's total compilation
+ * time (CompilationMXBean) has not moved for regtest.steady.quietBatches
+ * (default 5) batches in a row; on JVMs that do not monitor compilation time,
+ * once as many batch medians in a row lie within 10% of each other. Warm-up is
+ * cut off after regtest.steady.warmupMillis (default 2000), which is then
+ * reported.
+ *
+ * The measured phase takes the batch medians as nearly independent samples;
+ * medians rather than means, because a single preempted match can double the
+ * mean of a batch. After regtest.steady.minBatches (default 10) batches it stops
+ * as soon as their 95% confidence interval is at most regtest.steady.ciWidth
+ * (default 0.05) of their mean wide. It also stops after regtest.iterations
+ * measured matches (default 10000000) or regtest.cellMillis (default 1000),
+ * whichever comes first, so a slow cell such as the large input gets a few
+ * matches rather than minutes. Batches and limits are elapsed time, so the
+ * recorder's own overhead on very short matches counts as well.
+ *
+ * JIT compilation time and garbage collection pauses (of the collectors that
+ * report pauses, not the concurrent cycle beans of G1, ZGC and Shenandoah) are
+ * taken as deltas over the whole cell, warm-up included, and so are attributed
+ * to the engine whose matches ran at the time.
+ *
+ * Used like a LatencyRecorder: while (next()) { start(); match; stop(); }, from
+ * one thread.
+ */
+public final class SteadyState
+{
+    public static final String CONVERGED = "converged";
+    public static final String TIME = "time limit";
+    public static final String ITERATIONS = "iteration limit";
+
+    private static final CompilationMXBean COMPILATION = initCompilation();
+    private static final List<GarbageCollectorMXBean> PAUSES = initPauses();
+
+    private static final long BATCH_NANOS = Long.getLong("regtest.steady.batchMillis", 10).longValue() * 1000000L;
+    private static final int QUIET_BATCHES = Integer.getInteger("regtest.steady.quietBatches", 5).intValue();
+    private static final long WARMUP_NANOS = Long.getLong("regtest.steady.warmupMillis", 2000).longValue() * 1000000L;
+    private static final int MIN_BATCHES = Integer.getInteger("regtest.steady.minBatches", 10).intValue();
+    private static final double CI_WIDTH = Double.parseDouble(System.getProperty("regtest.steady.ciWidth", "0.05"));
+    // histograms have a fixed size, so this can be raised freely, e.g. -Dregtest.iterations=1000000000
+    private static final long MAX_MATCHES = Long.getLong("regtest.iterations", 10000000).longValue();
+    private static final long CELL_NANOS = Long.getLong("regtest.cellMillis", 1000).longValue() * 1000000L;
+
+    private final LatencyRecorder recorder;
+
+    private final long jitStart = jitMillis();
+    private final long gcStart = gcMillis();
+    private final long gcCountStart = gcCount();
+    private long jitEnd = -1;
+    private long gcEnd;
+    private long gcCountEnd;
+
+    private boolean warmingUp = true;
+    private boolean settled;
+    private long warmupMatches;
+    private long warmupStart = -1;
+    private long measureStart;
+    private long wallStart;
+
+    // the batch in progress
+    private final LatencyHistogram batch = new LatencyHistogram();
+    private long batchStart;
+    private long batchJit = jitMillis();
+
+    // warm-up: consecutive quiet batches and their medians
+    private int quiet;
+    private final List<Double> recent = new ArrayList<Double>();
+
+    // measured phase: the batch medians
+    private int batches;
+    private double sum;
+    private double sumOfSquares;
+    private double relativeWidth = Double.NaN;
+    private String stopReason;
+
+    public SteadyState(LatencyRecorder recorder)
+    {
+        this.recorder = recorder;
+    }
+
+    public static boolean isCompilationTimeSupported()
+    {
+        return COMPILATION != null;
+    }
+
+    /** Whether another match is wanted; false once the cell is measured well enough. */
+    public boolean next()
+    {
+        if (stopReason != null)
+        {
+            return false;
+        }
+        long measured = recorder.getWall().getTotalCount();
+        if (measured >= MAX_MATCHES)
+        {
+            finish(ITERATIONS);
+        }
+        else if (!warmingUp && System.nanoTime() - measureStart >= CELL_NANOS)
+        {
+            finish(TIME);
+        }
+        return stopReason == null;
+    }
+
+    public void start()
+    {
+        if (batch.getTotalCount() == 0)
+        {
+            batchStart = System.nanoTime();
+            if (warmupStart < 0)
+            {
+                warmupStart = batchStart;
+            }
+        }
+        if (warmingUp)
+        {
+            wallStart = System.nanoTime();
+        }
+        else
+        {
+            recorder.start();
+        }
+    }
+
+    public void stop()
+    {
+        long nanos;
+        if (warmingUp)
+        {
+            nanos = System.nanoTime() - wallStart;
+            warmupMatches++;
+        }
+        else
+        {
+            recorder.stop();
+            nanos = recorder.lastWallNanos();
+        }
+        batch.recordValue(nanos);
+        if (System.nanoTime() - batchStart >= BATCH_NANOS)
+        {
+            endBatch(batch.getValueAtPercentile(50));
+            batch.reset();
+        }
+    }
+
+    /** Stops the cell early, e.g. after a failed match; the figures so far stand. */
+    public void abort(String reason)
+    {
+        finish(reason);
+    }
+
+    private void endBatch(double median)
+    {
+        if (warmingUp)
+        {
+            long now = System.nanoTime();
+            long jit = jitMillis();
+            if (COMPILATION != null)
+            {
+                quiet = jit == batchJit ? quiet + 1 : 0;
+            }
+            else
+            {
+                recent.add(Double.valueOf(median));
+                if (recent.size() > QUIET_BATCHES)
+                {
+                    recent.remove(0);
+                }
+                quiet = recent.size() == QUIET_BATCHES && spread(recent) <= 1.1 ? QUIET_BATCHES : 0;
+            }
+            batchJit = jit;
+            settled = quiet >= QUIET_BATCHES;
+            if (settled || now - warmupStart >= WARMUP_NANOS)
+            {
+                warmingUp = false;
+                measureStart = now;
+            }
+            return;
+        }
+        batches++;
+        sum += median;
+        sumOfSquares += median * median;
+        if (batches >= 2)
+        {
+            double m = sum / batches;
+            double variance = Math.max(0, (sumOfSquares - batches * m * m) / (batches - 1));
+            relativeWidth = 2 * studentT95(batches - 1) * Math.sqrt(variance / batches) / m;
+            if (batches >= MIN_BATCHES && relativeWidth <= CI_WIDTH)
+            {
+                finish(CONVERGED);
+            }
+        }
+    }
+
+    private void finish(String reason)
+    {
+        if (stopReason == null)
+        {
+            stopReason = reason;
+            jitEnd = jitMillis();
+            gcEnd = gcMillis();
+            gcCountEnd = gcCount();
+        }
+    }
+
+    /** Whether the JIT settled before the warm-up time ran out. */
+    public boolean isSettled()
+    {
+        return settled;
+    }
+
+    /** Matches run to warm up, not recorded. */
+    public long getWarmupMatches()
+    {
+        return warmupMatches;
+    }
+
+    public double getWarmupMillis()
+    {
+        return warmupStart < 0 ? 0 : ((warmingUp ? System.nanoTime() : measureStart) - warmupStart) / 1e6;
+    }
+
+    /** JIT compilation time during the cell in milliseconds, or -1 when the JVM does not monitor it. */
+    public long getJitMillis()
+    {
+        return COMPILATION == null ? -1 : (stopReason == null ? jitMillis() : jitEnd) - jitStart;
+    }
+
+    /** Time spent in garbage collection pauses during the cell, in milliseconds. */
+    public long getGcMillis()
+    {
+        return (stopReason == null ? gcMillis() : gcEnd) - gcStart;
+    }
+
+    public long getGcCount()
+    {
+        return (stopReason == null ? gcCount() : gcCountEnd) - gcCountStart;
+    }
+
+    /**
+     * Width of the 95% confidence interval of the median relative to it, or
+     * NaN if the cell stopped before its second measured batch.
+     */
+    public double getRelativeWidth()
+    {
+        return relativeWidth;
+    }
+
+    /** CONVERGED, TIME, ITERATIONS, what abort() was given, or null while running. */
+    public String getStopReason()
+    {
+        return stopReason;
+    }
+
+    /** Short form for the report, e.g. "converged" or "time limit, unsettled". */
+    public String describe()
+    {
+        String reason = stopReason == null ? "running" : stopReason;
+        return settled ? reason : reason + ", unsettled";
+    }
+
+    /** Two-sided 95% quantile of Student's t, from the normal quantile with the first Cornish-Fisher term. */
+    private static double studentT95(int degrees)
+    {
+        double z = 1.959964;
+        return z + (z * z * z + z) / (4.0 * degrees);
+    }
+
+    private static double spread(List<Double> medians)
+    {
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (Double median : medians)
+        {
+            min = Math.min(min, median.doubleValue());
+            max = Math.max(max, median.doubleValue());
+        }
+        return min > 0 ? max / min : Double.POSITIVE_INFINITY;
+    }
+
+    private static long jitMillis()
+    {
+        return COMPILATION == null ? 0 : COMPILATION.getTotalCompilationTime();
+    }
+
+    private static long gcMillis()
+    {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : PAUSES)
+        {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long gcCount()
+    {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : PAUSES)
+        {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static CompilationMXBean initCompilation()
+    {
+        CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+        return compilation != null && compilation.isCompilationTimeMonitoringSupported() ? compilation : null;
+    }
+
+    private static List<GarbageCollectorMXBean> initPauses()
+    {
+        List<GarbageCollectorMXBean> pauses = new ArrayList<GarbageCollectorMXBean>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            // G1 Concurrent GC, ZGC Cycles, Shenandoah Cycles count concurrent work, their pauses have beans of their own
+            if (!gc.getName().contains("Concurrent") && !gc.getName().contains("Cycles"))
+            {
+                pauses.add(gc);
+            }
+        }
+        return pauses;
+    }
+}
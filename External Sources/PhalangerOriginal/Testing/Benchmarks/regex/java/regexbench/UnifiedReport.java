@@ -0,0 +1,220 @@
+package regexbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unified mode ("regtest unified run.json dotnet.json php.json ..."): the Java
+ * engines side by side with .NET Regex and PHP's PCRE, from the results files of
+ * the three runners, i.e. a RunHistory file of a default or "preg" run,
+ * dotnet/RETest.cs and php/index.php. All of them share one schema:
+ *
+ * <pre>
+ * {"format": 1, "runtime": "java" | "dotnet" | "php", "mode": ..., "started": ...,
+ *  "environment": {...},
+ *  "cells": [{"engine": ..., "re": 0, "str": 0, "pattern": ..., "status": "ok",
+ *             "matched": true, "matchOk": true,
+ *             "wall": {"count": ..., "min": ..., "max": ..., "mean": ..., "p50": ..., ...}}]}
+ * </pre>
+ *
+ * with times in nanoseconds and "re" and "str" indexes into Corpus.RE (or
+ * Corpus.PREG) and Corpus.STR, which the other runners keep in sync. RunHistory
+ * files add the histogram buckets, which RunComparison needs, and leave out
+ * "matched".
+ *
+ * For every pattern, each engine's median per input is reported relative to the
+ * fastest engine that answered correctly, with the median itself in parentheses.
+ * Correctness is judged against Corpus.EXPECTED_MATCH where a cell records what
+ * it matched, and taken from the runner's own matchOk otherwise; wrong cells are
+ * not ranked. A summary gives every engine's geometric mean of its relative
+ * times over the cells it answered correctly.
+ */
+public final class UnifiedReport
+{
+    private final Report report;
+
+    public UnifiedReport(Report report)
+    {
+        this.report = report;
+    }
+
+    public void run(List<File> files) throws IOException
+    {
+        // [engine][re][str], engines labelled with their runtime
+        Map<String, Map<String, Object>[][]> engines = new LinkedHashMap<String, Map<String, Object>[][]>();
+        List<String> sources = new ArrayList<String>();
+        for (File file : files)
+        {
+            Map<String, Object> run = RunComparison.read(file);
+            String runtime = run.containsKey("runtime") ? String.valueOf(run.get("runtime")) : "java";
+            sources.add(file.getName() + " (" + runtime + ")");
+            for (Object c : (List<?>) run.get("cells"))
+            {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> cell = (Map<String, Object>) c;
+                int re = ((Number) cell.get("re")).intValue();
+                int str = ((Number) cell.get("str")).intValue();
+                if (re < 0 || re >= Corpus.RE.length || str < 0 || str >= Corpus.STR.length)
+                {
+                    System.err.println(file + ": no pattern " + re + " or input " + str + " in the corpus, skipped");
+                    continue;
+                }
+                String engine = runtime + ": " + cell.get("engine");
+                Map<String, Object>[][] cells = engines.get(engine);
+                if (cells == null)
+                {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object>[][] fresh = (Map<String, Object>[][]) new Map<?, ?>[Corpus.RE.length][Corpus.STR.length];
+                    cells = fresh;
+                    engines.put(engine, cells);
+                }
+                cells[re][str] = cell;
+            }
+        }
+
+        // the fastest correct median of every pattern and input
+        double[][] best = new double[Corpus.RE.length][Corpus.STR.length];
+        for (Map<String, Object>[][] cells : engines.values())
+        {
+            for (int re = 0; re < Corpus.RE.length; re++)
+            {
+                for (int str = 0; str < Corpus.STR.length; str++)
+                {
+                    double median = median(cells[re][str], re, str);
+                    if (median > 0 && (best[re][str] == 0 || median < best[re][str]))
+                    {
+                        best[re][str] = median;
+                    }
+                }
+            }
+        }
+
+        String[] header = new String[Corpus.STR.length + 2];
+        header[0] = "ENGINE";
+        for (int str = 0; str < Corpus.STR.length; str++)
+        {
+            header[str + 1] = "STR " + str;
+        }
+        header[header.length - 1] = "CORRECT";
+        for (int re = 0; re < Corpus.RE.length; re++)
+        {
+            report.begin("Unified report, regular expression", Corpus.PREG[re], header.length);
+            report.caption("Median time relative to the fastest correct engine, median in microseconds in parentheses; from "
+                + join(sources));
+            report.header(header);
+            for (Map.Entry<String, Map<String, Object>[][]> entry : engines.entrySet())
+            {
+                Object[] row = new Object[header.length];
+                row[0] = entry.getKey();
+                int correct = 0;
+                int answered = 0;
+                for (int str = 0; str < Corpus.STR.length; str++)
+                {
+                    Map<String, Object> cell = entry.getValue()[re][str];
+                    Boolean ok = correct(cell, re, str);
+                    double median = median(cell, re, str);
+                    if (ok != null)
+                    {
+                        answered++;
+                        correct += ok.booleanValue() ? 1 : 0;
+                    }
+                    if (cell == null)
+                    {
+                        row[str + 1] = "-";
+                    }
+                    else if (!"ok".equals(cell.get("status")))
+                    {
+                        row[str + 1] = String.valueOf(cell.get("status"));
+                    }
+                    else if (ok != null && !ok.booleanValue())
+                    {
+                        row[str + 1] = "WRONG";
+                    }
+                    else
+                    {
+                        row[str + 1] = median > 0 ? Report.format(median / best[re][str]) + " (" + micros(median) + ")" : "-";
+                    }
+                }
+                row[row.length - 1] = correct + " of " + answered;
+                report.row(row);
+            }
+            report.end(null);
+        }
+
+        report.begin("Unified report", "summary", 4);
+        report.caption("Geometric mean over the correctly answered inputs of all patterns of the time relative to the fastest"
+            + " correct engine");
+        report.header("ENGINE", "RELATIVE", "CELLS", "WRONG");
+        for (Map.Entry<String, Map<String, Object>[][]> entry : engines.entrySet())
+        {
+            double logs = 0;
+            int ranked = 0;
+            int wrong = 0;
+            for (int re = 0; re < Corpus.RE.length; re++)
+            {
+                for (int str = 0; str < Corpus.STR.length; str++)
+                {
+                    Map<String, Object> cell = entry.getValue()[re][str];
+                    double median = median(cell, re, str);
+                    if (median > 0)
+                    {
+                        logs += Math.log(median / best[re][str]);
+                        ranked++;
+                    }
+                    if (Boolean.FALSE.equals(correct(cell, re, str)))
+                    {
+                        wrong++;
+                    }
+                }
+            }
+            report.row(entry.getKey(), ranked == 0 ? "-" : Report.format(Math.exp(logs / ranked)), Integer.toString(ranked),
+                Integer.toString(wrong));
+        }
+        report.end(null);
+    }
+
+    /** Whether the cell answered as Corpus.EXPECTED_MATCH says, or null if it did not answer. */
+    private static Boolean correct(Map<String, Object> cell, int re, int str)
+    {
+        if (cell == null || !"ok".equals(cell.get("status")))
+        {
+            return null;
+        }
+        Object matched = cell.get("matched");
+        if (matched instanceof Boolean)
+        {
+            return Boolean.valueOf(((Boolean) matched).booleanValue() == Corpus.EXPECTED_MATCH[re][str]);
+        }
+        return Boolean.valueOf(Boolean.TRUE.equals(cell.get("matchOk")));
+    }
+
+    /** The median wall time of a correct cell in nanoseconds, or 0 if it is not to be ranked. */
+    private static double median(Map<String, Object> cell, int re, int str)
+    {
+        if (!Boolean.TRUE.equals(correct(cell, re, str)) || !(cell.get("wall") instanceof Map))
+        {
+            return 0;
+        }
+        Object p50 = ((Map<?, ?>) cell.get("wall")).get("p50");
+        return p50 instanceof Number ? ((Number) p50).doubleValue() : 0;
+    }
+
+    private static String join(List<String> items)
+    {
+        StringBuilder text = new StringBuilder();
+        for (String item : items)
+        {
+            text.append(text.length() > 0 ? ", " : "").append(item);
+        }
+        return text.toString();
+    }
+
+    private static String micros(double nanos)
+    {
+        return Report.format(nanos / 1e3);
+    }
+}
@@ -0,0 +1,172 @@
+package regexbench.classrun;
+
+import java.util.Arrays;
+
+/**
+ * A set of chars as sorted, disjoint ranges, possibly negated: [^:/] is the two
+ * one-char ranges ':' and '/' with negated set, so the vector kernel needs two
+ * compares rather than three ranges. Membership of the 128 ASCII chars is also
+ * kept as a bitmap for the scalar path.
+ */
+public final class CharClass
+{
+    private final char[] ranges;
+    private final boolean negated;
+    private final long ascii0;
+    private final long ascii1;
+
+    private CharClass(char[] ranges, boolean negated)
+    {
+        this.ranges = ranges;
+        this.negated = negated;
+        long a0 = 0;
+        long a1 = 0;
+        for (int c = 0; c < 128; c++)
+        {
+            if (containsSlow((char) c))
+            {
+                if (c < 64)
+                {
+                    a0 |= 1L << c;
+                }
+                else
+                {
+                    a1 |= 1L << (c - 64);
+                }
+            }
+        }
+        this.ascii0 = a0;
+        this.ascii1 = a1;
+    }
+
+    public static CharClass of(char c)
+    {
+        return new CharClass(new char[] {c, c}, false);
+    }
+
+    public boolean contains(char c)
+    {
+        if (c < 64)
+        {
+            return (ascii0 >>> c & 1) != 0;
+        }
+        if (c < 128)
+        {
+            return (ascii1 >>> (c - 64) & 1) != 0;
+        }
+        return containsSlow(c);
+    }
+
+    private boolean containsSlow(char c)
+    {
+        for (int i = 0; i < ranges.length; i += 2)
+        {
+            if (c >= ranges[i] && c <= ranges[i + 1])
+            {
+                return !negated;
+            }
+        }
+        return negated;
+    }
+
+    public CharClass negate()
+    {
+        return new CharClass(ranges, !negated);
+    }
+
+    public boolean isNegated()
+    {
+        return negated;
+    }
+
+    public int getRangeCount()
+    {
+        return ranges.length / 2;
+    }
+
+    public char getLow(int range)
+    {
+        return ranges[2 * range];
+    }
+
+    public char getHigh(int range)
+    {
+        return ranges[2 * range + 1];
+    }
+
+    /** Whether all ranges lie in ASCII, as for every class in Corpus.RE. */
+    public boolean isAscii()
+    {
+        return ranges.length == 0 || ranges[ranges.length - 1] < 128;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(negated ? "[^" : "[");
+        for (int i = 0; i < ranges.length; i += 2)
+        {
+            sb.append(ranges[i] < ' ' ? String.format("\\x%02X", Integer.valueOf(ranges[i])) : String.valueOf(ranges[i]));
+            if (ranges[i + 1] != ranges[i])
+            {
+                sb.append('-').append(ranges[i + 1]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /** Collects ranges in any order; build() sorts and merges them. */
+    public static final class Builder
+    {
+        private char[] ranges = new char[8];
+        private int size;
+
+        public Builder add(char c)
+        {
+            return add(c, c);
+        }
+
+        public Builder add(char low, char high)
+        {
+            if (size == ranges.length)
+            {
+                ranges = Arrays.copyOf(ranges, size * 2);
+            }
+            ranges[size++] = low;
+            ranges[size++] = high;
+            return this;
+        }
+
+        public CharClass build(boolean negated)
+        {
+            Integer[] order = new Integer[size / 2];
+            for (int i = 0; i < order.length; i++)
+            {
+                order[i] = Integer.valueOf(i);
+            }
+            Arrays.sort(order, new java.util.Comparator<Integer>()
+            {
+                public int compare(Integer a, Integer b)
+                {
+                    return ranges[2 * a.intValue()] - ranges[2 * b.intValue()];
+                }
+            });
+            char[] merged = new char[size];
+            int n = 0;
+            for (Integer i : order)
+            {
+                char low = ranges[2 * i.intValue()];
+                char high = ranges[2 * i.intValue() + 1];
+                if (n > 0 && low <= merged[n - 1] + 1)
+                {
+                    merged[n - 1] = (char) Math.max(merged[n - 1], high);
+                }
+                else
+                {
+                    merged[n++] = low;
+                    merged[n++] = high;
+                }
+            }
+            return new CharClass(Arrays.copyOf(merged, n), negated);
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package regexbench.classrun;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A backtracking matcher for the Perl-syntax subset that class-run-dominated
+ * patterns such as the URL and dollar patterns of Corpus.RE are written in:
+ * literals, classes ([...], ., \d \w \s and their negations), greedy quantifiers
+ * on single atoms, groups that occur once or optionally, and ^ and $ at the ends
+ * of the pattern. Alternation, backreferences, lookaround, lazy or possessive
+ * quantifiers, repeated groups and inline flags are rejected with an
+ * IllegalArgumentException.
+ *
+ * Each quantified class, e.g. [^:/]+ or [0-9]+, is matched by running a
+ * ClassScanner to the end of the run and then backing off one char at a time,
+ * so the scanner does the bulk of the work. An unanchored search skips to the
+ * next possible first char with a scanner as well. Groups do not capture.
+ *
+ * The matcher works on a char[]; CharSequences are copied into one first (see
+ * ClassRunEngine). Instances are immutable and thread-safe.
+ */
+public final class ClassRunPattern
+{
+    private final String pattern;
+    private final boolean anchored;
+    private final Node head;
+    private final ClassScanner firstSkip;
+
+    private ClassRunPattern(String pattern, boolean anchored, Node head, ClassScanner firstSkip)
+    {
+        this.pattern = pattern;
+        this.anchored = anchored;
+        this.head = head;
+        this.firstSkip = firstSkip;
+    }
+
+    /** Compiles pattern with the fastest available scanners, see ClassScanners. */
+    public static ClassRunPattern compile(String pattern)
+    {
+        return compile(pattern, true);
+    }
+
+    /** Compiles pattern; with vector false every scanner is scalar. */
+    public static ClassRunPattern compile(String pattern, boolean vector)
+    {
+        Parser parser = new Parser(pattern, vector);
+        boolean anchored = parser.peek('^');
+        Node head = parser.top();
+        CharClass first = head.first();
+        ClassScanner firstSkip = first == null ? null : parser.scanner(first.negate());
+        return new ClassRunPattern(pattern, anchored, head, firstSkip);
+    }
+
+    public String pattern()
+    {
+        return pattern;
+    }
+
+    /** Whether the pattern occurs in chars[0, length). */
+    public boolean find(char[] chars, int length)
+    {
+        if (anchored)
+        {
+            return head.match(chars, 0, length) >= 0;
+        }
+        for (int start = 0; start <= length; start++)
+        {
+            if (firstSkip != null)
+            {
+                start = firstSkip.skip(chars, start, length);
+                if (start == length)
+                {
+                    // the first node needs a char
+                    return false;
+                }
+            }
+            if (head.match(chars, start, length) >= 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * One element of the pattern, linked to the rest of it. match() returns the end
+     * of a match of this node and everything after it, starting at pos, or -1.
+     */
+    private abstract static class Node
+    {
+        Node next;
+
+        abstract int match(char[] s, int pos, int end);
+
+        /** The chars a match of this node can start with, or null if it may be empty. */
+        CharClass first()
+        {
+            return null;
+        }
+    }
+
+    private static final class Accept extends Node
+    {
+        int match(char[] s, int pos, int end)
+        {
+            return pos;
+        }
+    }
+
+    /** $ without the m flag: the end, or before a final newline. */
+    private static final class End extends Node
+    {
+        int match(char[] s, int pos, int end)
+        {
+            return pos == end || (pos == end - 1 && s[pos] == '\n') ? next.match(s, pos, end) : -1;
+        }
+    }
+
+    private static final class Literal extends Node
+    {
+        private final char[] chars;
+
+        Literal(String chars)
+        {
+            this.chars = chars.toCharArray();
+        }
+
+        int match(char[] s, int pos, int end)
+        {
+            char[] c = chars;
+            if (end - pos < c.length)
+            {
+                return -1;
+            }
+            for (int i = 0; i < c.length; i++)
+            {
+                if (s[pos + i] != c[i])
+                {
+                    return -1;
+                }
+            }
+            return next.match(s, pos + c.length, end);
+        }
+
+        CharClass first()
+        {
+            return CharClass.of(chars[0]);
+        }
+    }
+
+    /** A class repeated min to max times, greedily. */
+    private static final class Run extends Node
+    {
+        private final CharClass cls;
+        private final ClassScanner scanner;
+        private final int min;
+        private final int max;
+
+        Run(CharClass cls, ClassScanner scanner, int min, int max)
+        {
+            this.cls = cls;
+            this.scanner = scanner;
+            this.min = min;
+            this.max = max;
+        }
+
+        int match(char[] s, int pos, int end)
+        {
+            int limit = max == Integer.MAX_VALUE || end - pos < max ? end : pos + max;
+            int runEnd = min == 1 && max == 1 ? (pos < end && cls.contains(s[pos]) ? pos + 1 : pos) : scanner.skip(s, pos,
+                limit);
+            for (int p = runEnd; p >= pos + min; p--)
+            {
+                int r = next.match(s, p, end);
+                if (r >= 0)
+                {
+                    return r;
+                }
+            }
+            return -1;
+        }
+
+        CharClass first()
+        {
+            return min > 0 ? cls : null;
+        }
+    }
+
+    /** (...)? : the body, whose last node links to next, or next alone. */
+    private static final class Optional extends Node
+    {
+        final List<Node> parts;
+        Node body;
+
+        Optional(List<Node> parts)
+        {
+            this.parts = parts;
+        }
+
+        int match(char[] s, int pos, int end)
+        {
+            int r = body.match(s, pos, end);
+            return r >= 0 ? r : next.match(s, pos, end);
+        }
+    }
+
+    private static final class Parser
+    {
+        private final String src;
+        private final boolean vector;
+        private int pos;
+
+        Parser(String src, boolean vector)
+        {
+            this.src = src;
+            this.vector = vector;
+        }
+
+        ClassScanner scanner(CharClass cls)
+        {
+            return vector ? ClassScanners.create(cls) : ClassScanners.scalar(cls);
+        }
+
+        boolean peek(char c)
+        {
+            return pos < src.length() && src.charAt(pos) == c;
+        }
+
+        Node top()
+        {
+            if (peek('^'))
+            {
+                pos++;
+            }
+            List<Node> nodes = sequence(true);
+            if (pos < src.length())
+            {
+                throw new IllegalArgumentException("unmatched ) at " + pos);
+            }
+            return link(nodes, new Accept());
+        }
+
+        /** Links nodes into a chain ending in after and returns its head. */
+        private static Node link(List<Node> nodes, Node after)
+        {
+            Node next = after;
+            for (int i = nodes.size() - 1; i >= 0; i--)
+            {
+                Node node = nodes.get(i);
+                if (node instanceof Optional)
+                {
+                    // the body continues with whatever follows the group
+                    ((Optional) node).body = link(((Optional) node).parts, next);
+                }
+                node.next = next;
+                next = node;
+            }
+            return next;
+        }
+
+        private List<Node> sequence(boolean top)
+        {
+            List<Node> nodes = new ArrayList<Node>();
+            StringBuilder literal = new StringBuilder();
+            while (pos < src.length() && !peek(')'))
+            {
+                char c = src.charAt(pos++);
+                CharClass cls = null;
+                switch (c)
+                {
+                    case '|':
+                        throw new IllegalArgumentException("alternation not supported");
+                    case '^':
+                        throw new IllegalArgumentException("^ is only supported at the start of the pattern");
+                    case '$':
+                        if (!top || pos != src.length())
+                        {
+                            throw new IllegalArgumentException("$ is only supported at the end of the pattern");
+                        }
+                        flush(literal, nodes);
+                        nodes.add(new End());
+                        continue;
+                    case '*':
+                    case '+':
+                    case '?':
+                        throw new IllegalArgumentException("nothing to repeat at " + (pos - 1));
+                    case '(':
+                        flush(literal, nodes);
+                        group(nodes);
+                        continue;
+                    case '[':
+                        cls = characterClass();
+                        break;
+                    case '.':
+                        cls = new CharClass.Builder().add('\n').build(true);
+                        break;
+                    case '\\':
+                        cls = escape();
+                        break;
+                    default:
+                        cls = CharClass.of(c);
+                        break;
+                }
+                int[] q = quantifier();
+                boolean single = cls.getRangeCount() == 1 && !cls.isNegated() && cls.getLow(0) == cls.getHigh(0);
+                if (q == null && single)
+                {
+                    literal.append(cls.getLow(0));
+                    continue;
+                }
+                flush(literal, nodes);
+                int min = q == null ? 1 : q[0];
+                int max = q == null ? 1 : q[1];
+                nodes.add(new Run(cls, scanner(cls), min, max));
+            }
+            flush(literal, nodes);
+            return nodes;
+        }
+
+        private static void flush(StringBuilder literal, List<Node> nodes)
+        {
+            if (literal.length() > 0)
+            {
+                nodes.add(new Literal(literal.toString()));
+                literal.setLength(0);
+            }
+        }
+
+        private void group(List<Node> nodes)
+        {
+            if (peek('?'))
+            {
+                if (!src.startsWith("?:", pos))
+                {
+                    throw new IllegalArgumentException("(" + src.substring(pos, Math.min(pos + 2, src.length()))
+                        + " not supported");
+                }
+                pos += 2;
+            }
+            List<Node> body = sequence(false);
+            if (!peek(')'))
+            {
+                throw new IllegalArgumentException("missing )");
+            }
+            pos++;
+            int[] q = quantifier();
+            if (q == null)
+            {
+                nodes.addAll(body);
+            }
+            else if (q[0] == 0 && q[1] == 1)
+            {
+                nodes.add(new Optional(body));
+            }
+            else
+            {
+                throw new IllegalArgumentException("repeated groups not supported");
+            }
+        }
+
+        /** {min, max} of a greedy quantifier, or null if there is none. */
+        private int[] quantifier()
+        {
+            if (pos >= src.length())
+            {
+                return null;
+            }
+            int[] q;
+            char c = src.charAt(pos);
+            if (c == '*' || c == '+' || c == '?')
+            {
+                pos++;
+                q = new int[] {c == '+' ? 1 : 0, c == '?' ? 1 : Integer.MAX_VALUE};
+            }
+            else if (c == '{' && repetitionEnd(pos + 1) >= 0)
+            {
+                int close = repetitionEnd(pos + 1) - 1;
+                String[] bounds = src.substring(pos + 1, close).split(",", -1);
+                int min = Integer.parseInt(bounds[0]);
+                int max = bounds.length == 1 ? min : bounds[1].isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(bounds[1]);
+                pos = close + 1;
+                q = new int[] {min, max};
+            }
+            else
+            {
+                return null;
+            }
+            if (peek('?') || peek('+'))
+            {
+                throw new IllegalArgumentException("lazy and possessive quantifiers not supported");
+            }
+            return q;
+        }
+
+        /** Index after the '}' of a {n}, {n,} or {n,m} starting at from, or -1 for a literal brace. */
+        private int repetitionEnd(int from)
+        {
+            int i = from;
+            while (i < src.length() && Character.isDigit(src.charAt(i)))
+            {
+                i++;
+            }
+            if (i == from || i >= src.length())
+            {
+                return -1;
+            }
+            if (src.charAt(i) == ',')
+            {
+                i++;
+                while (i < src.length() && Character.isDigit(src.charAt(i)))
+                {
+                    i++;
+                }
+            }
+            return i < src.length() && src.charAt(i) == '}' ? i + 1 : -1;
+        }
+
+        private CharClass characterClass()
+        {
+            boolean negated = peek('^');
+            if (negated)
+            {
+                pos++;
+            }
+            CharClass.Builder builder = new CharClass.Builder();
+            boolean first = true;
+            while (pos < src.length() && (first || !peek(']')))
+            {
+                first = false;
+                int low = classChar(builder);
+                if (low < 0)
+                {
+                    // a shorthand such as \d, already added
+                    continue;
+                }
+                if (peek('-') && pos + 1 < src.length() && src.charAt(pos + 1) != ']')
+                {
+                    pos++;
+                    int high = classChar(null);
+                    if (high < low)
+                    {
+                        throw new IllegalArgumentException("range out of order in character class");
+                    }
+                    builder.add((char) low, (char) high);
+                }
+                else
+                {
+                    builder.add((char) low);
+                }
+            }
+            if (!peek(']'))
+            {
+                throw new IllegalArgumentException("missing ]");
+            }
+            pos++;
+            return builder.build(negated);
+        }
+
+        /**
+         * Reads one class member. Shorthands such as \d are added to shorthands and
+         * return -1; they cannot be part of a range.
+         */
+        private int classChar(CharClass.Builder shorthands)
+        {
+            char c = src.charAt(pos++);
+            if (c == '[' && peek(':'))
+            {
+                throw new IllegalArgumentException("POSIX classes not supported");
+            }
+            if (c != '\\')
+            {
+                return c;
+            }
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("\\ at end of pattern");
+            }
+            char e = src.charAt(pos++);
+            switch (e)
+            {
+                case 'd':
+                case 'w':
+                case 's':
+                    if (shorthands == null)
+                    {
+                        throw new IllegalArgumentException("\\" + e + " cannot end a range");
+                    }
+                    addShorthand(shorthands, e);
+                    return -1;
+                default:
+                    return escapedChar(e);
+            }
+        }
+
+        private CharClass escape()
+        {
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("\\ at end of pattern");
+            }
+            char e = src.charAt(pos++);
+            switch (e)
+            {
+                case 'd':
+                case 'w':
+                case 's':
+                    return addShorthand(new CharClass.Builder(), e).build(false);
+                case 'D':
+                case 'W':
+                case 'S':
+                    return addShorthand(new CharClass.Builder(), Character.toLowerCase(e)).build(true);
+                default:
+                    return CharClass.of(escapedChar(e));
+            }
+        }
+
+        private static CharClass.Builder addShorthand(CharClass.Builder builder, char e)
+        {
+            switch (e)
+            {
+                case 'd':
+                    return builder.add('0', '9');
+                case 'w':
+                    return builder.add('a', 'z').add('A', 'Z').add('0', '9').add('_');
+                default:
+                    return builder.add(' ').add('\t', '\r');
+            }
+        }
+
+        private static char escapedChar(char e)
+        {
+            switch (e)
+            {
+                case 'n':
+                    return '\n';
+                case 't':
+                    return '\t';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                default:
+                    if (Character.isLetterOrDigit(e))
+                    {
+                        throw new IllegalArgumentException("\\" + e + " not supported");
+                    }
+                    return e;
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package regexbench.classrun;
+
+/**
+ * The kernel of the class-run matcher: finds the end of a run of chars that all
+ * belong to one CharClass. Implementations are immutable and thread-safe; get
+ * them from ClassScanners.
+ */
+public interface ClassScanner
+{
+    /** Index of the first char in chars[from, to) outside the class, or to if there is none. */
+    int skip(char[] chars, int from, int to);
+}
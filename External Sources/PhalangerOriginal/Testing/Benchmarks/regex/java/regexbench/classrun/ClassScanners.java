@@ -0,0 +1,99 @@
+package regexbench.classrun;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Creates ClassScanners, preferring the Vector API kernel (VectorClassScanner).
+ * That class is compiled by the "vector" Maven profile, which is active on JDK 17
+ * and later, and only loads when the JVM runs with --add-modules
+ * jdk.incubator.vector. Without either, and with -Dregtest.vector=false, every
+ * scanner is scalar.
+ */
+public final class ClassScanners
+{
+    private static final Constructor<?> VECTOR = loadVector();
+    private static final String VECTOR_DESCRIPTION = describeVector();
+
+    private ClassScanners()
+    {
+    }
+
+    private static Constructor<?> loadVector()
+    {
+        if (!Boolean.parseBoolean(System.getProperty("regtest.vector", "true")))
+        {
+            return null;
+        }
+        try
+        {
+            return Class.forName("regexbench.classrun.VectorClassScanner").getDeclaredConstructor(CharClass.class);
+        }
+        catch (ClassNotFoundException e)
+        {
+            return null;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return null;
+        }
+        catch (LinkageError e)
+        {
+            // the class is there, but jdk.incubator.vector was not added to the module graph
+            return null;
+        }
+    }
+
+    private static String describeVector()
+    {
+        if (VECTOR == null)
+        {
+            return null;
+        }
+        try
+        {
+            return (String) VECTOR.getDeclaringClass().getDeclaredMethod("describe").invoke(null);
+        }
+        catch (Exception e)
+        {
+            return "Vector API";
+        }
+    }
+
+    /** Whether scanners use the Vector API where the class allows it. */
+    public static boolean isVectorAvailable()
+    {
+        return VECTOR != null;
+    }
+
+    /** The kernel in use, e.g. "Vector API, 32 chars per step", or "scalar". */
+    public static String describe()
+    {
+        return VECTOR != null ? VECTOR_DESCRIPTION : "scalar";
+    }
+
+    /** The fastest scanner for cls: vector-wise if possible, otherwise scalar. */
+    public static ClassScanner create(CharClass cls)
+    {
+        if (VECTOR != null)
+        {
+            try
+            {
+                return (ClassScanner) VECTOR.newInstance(cls);
+            }
+            catch (java.lang.reflect.InvocationTargetException e)
+            {
+                // IllegalArgumentException: too many ranges for the vector compare chain
+            }
+            catch (ReflectiveOperationException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        return scalar(cls);
+    }
+
+    public static ClassScanner scalar(CharClass cls)
+    {
+        return new ScalarClassScanner(cls);
+    }
+}
@@ -0,0 +1,26 @@
+package regexbench.classrun;
+
+/**
+ * One char per step, through the ASCII bitmap of CharClass.contains(). Used when
+ * the Vector API is not available, for classes with too many ranges to compare
+ * vector-wise, and for the tail after the last full vector.
+ */
+final class ScalarClassScanner implements ClassScanner
+{
+    private final CharClass cls;
+
+    ScalarClassScanner(CharClass cls)
+    {
+        this.cls = cls;
+    }
+
+    public int skip(char[] chars, int from, int to)
+    {
+        int i = from;
+        while (i < to && cls.contains(chars[i]))
+        {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,60 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexEngine;
+
+/**
+ * Jakarta Regexp (org.apache.regexp.RE). RE.match() searches the input.
+ */
+public class ApacheRegexpEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "org.apache.regexp.RE";
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(new org.apache.regexp.RE(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final org.apache.regexp.RE regexpr;
+
+        Compiled(org.apache.regexp.RE regexpr)
+        {
+            this.regexpr = regexpr;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return regexpr.match(input.toString());
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return regexpr.match(input.toString());
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            return groups(input, 0);
+        }
+
+        public int[] groups(CharSequence input, int from)
+        {
+            if (!regexpr.match(input.toString(), from))
+            {
+                return null;
+            }
+            int[] offsets = new int[regexpr.getParenCount() * 2];
+            for (int i = 0; i < regexpr.getParenCount(); i++)
+            {
+                offsets[2 * i] = regexpr.getParenStart(i);
+                offsets[2 * i + 1] = regexpr.getParenEnd(i);
+            }
+            return offsets;
+        }
+    }
+}
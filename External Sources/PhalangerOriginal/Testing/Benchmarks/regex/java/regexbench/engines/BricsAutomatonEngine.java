@@ -0,0 +1,112 @@
+package regexbench.engines;
+
+import regexbench.AutomatonStatistics;
+import regexbench.CompiledRegex;
+import regexbench.RegexDialect;
+import regexbench.RegexEngine;
+
+/**
+ * dk.brics.automaton: the pattern is turned into a minimal DFA (RunAutomaton).
+ * RunAutomaton.run() matches the whole input. There are no capturing groups,
+ * only the span of the match is reported. Compiled automata are immutable.
+ *
+ * The NFA and determinized state counts of AutomatonStatistics are computed on
+ * request by building the automaton again without minimization, so they do not
+ * add to the measured compile time.
+ */
+public class BricsAutomatonEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "dk.brics.automaton.RegExp";
+    }
+
+    public RegexDialect getDialect()
+    {
+        return RegexDialect.AUTOMATON;
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        dk.brics.automaton.RegExp regexpr = new dk.brics.automaton.RegExp(pattern);
+        long start = System.nanoTime();
+        dk.brics.automaton.Automaton auto = regexpr.toAutomaton();
+        dk.brics.automaton.RunAutomaton runauto = new dk.brics.automaton.RunAutomaton(auto, true);
+        return new Compiled(regexpr, runauto, System.nanoTime() - start);
+    }
+
+    private static final class Compiled implements CompiledRegex, AutomatonStatistics
+    {
+        private final dk.brics.automaton.RegExp regexpr;
+        private final dk.brics.automaton.RunAutomaton runauto;
+        private final long constructionNanos;
+        private int nfaStates = -1;
+        private int determinizedStates = -1;
+
+        Compiled(dk.brics.automaton.RegExp regexpr, dk.brics.automaton.RunAutomaton runauto, long constructionNanos)
+        {
+            this.regexpr = regexpr;
+            this.runauto = runauto;
+            this.constructionNanos = constructionNanos;
+        }
+
+        public long getConstructionNanos()
+        {
+            return constructionNanos;
+        }
+
+        public int getNfaStateCount()
+        {
+            countStates();
+            return nfaStates;
+        }
+
+        public int getDeterminizedStateCount()
+        {
+            countStates();
+            return determinizedStates;
+        }
+
+        public int getStateCount()
+        {
+            return runauto.getSize();
+        }
+
+        private void countStates()
+        {
+            if (nfaStates < 0)
+            {
+                dk.brics.automaton.Automaton auto = regexpr.toAutomaton(false);
+                nfaStates = auto.getNumberOfStates();
+                auto.determinize();
+                determinizedStates = auto.getNumberOfStates();
+            }
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return runauto.run(input.toString());
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return runauto.newMatcher(input).find();
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            return groups(input, 0);
+        }
+
+        public int[] groups(CharSequence input, int from)
+        {
+            dk.brics.automaton.AutomatonMatcher m = runauto.newMatcher(input, from, input.length());
+            if (!m.find())
+            {
+                return null;
+            }
+            // the matcher's offsets are relative to the start of its region
+            return new int[] {from + m.start(), from + m.end()};
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.ReusableMatcher;
+import regexbench.classrun.ClassRunPattern;
+import regexbench.classrun.ClassScanners;
+
+/**
+ * regexbench.classrun: the class-run matcher with Vector API scanning kernels,
+ * an accelerated path for patterns dominated by runs such as [^:/]+ and [0-9]+.
+ * Patterns outside its subset (see ClassRunPattern) fail to compile. match() is
+ * a search like java.util.regex's find().
+ *
+ * The matcher works on a char[], so each input is first copied into a buffer
+ * kept per thread (String.getChars for Strings); bytes are widened straight into
+ * it, without a String in between. Compiled patterns may be shared
+ * between threads. When the Vector API is not available the engine cannot be
+ * created, so RegexEngines skips it like an engine whose library is missing and
+ * its results are never scalar ones under the vector name; ScalarClassRunEngine
+ * is the scalar counterpart.
+ */
+public class ClassRunEngine implements regexbench.RegexEngine
+{
+    private final boolean vector;
+
+    public ClassRunEngine()
+    {
+        this(true);
+        if (!ClassScanners.isVectorAvailable())
+        {
+            throw new UnsupportedOperationException("Vector API not available: build with JDK 17+ and run with"
+                + " --add-modules jdk.incubator.vector");
+        }
+    }
+
+    ClassRunEngine(boolean vector)
+    {
+        this.vector = vector;
+    }
+
+    public String getName()
+    {
+        return vector ? "regexbench.classrun [vector]" : "regexbench.classrun [scalar]";
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(ClassRunPattern.compile(pattern, vector));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private static final ThreadLocal<char[][]> BUFFER = new ThreadLocal<char[][]>()
+        {
+            protected char[][] initialValue()
+            {
+                return new char[][] {new char[256]};
+            }
+        };
+
+        private final ClassRunPattern pattern;
+
+        Compiled(ClassRunPattern pattern)
+        {
+            this.pattern = pattern;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return find(input);
+        }
+
+        public boolean find(CharSequence input)
+        {
+            char[][] holder = BUFFER.get();
+            return pattern.find(copy(input, holder), input.length());
+        }
+
+        public boolean find(byte[] input, int offset, int length)
+        {
+            char[][] holder = BUFFER.get();
+            char[] chars = holder[0];
+            if (chars.length < length)
+            {
+                chars = new char[Math.max(length, chars.length * 2)];
+                holder[0] = chars;
+            }
+            for (int i = 0; i < length; i++)
+            {
+                chars[i] = (char) (input[offset + i] & 0xFF);
+            }
+            return pattern.find(chars, length);
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            throw new UnsupportedOperationException("groups are not captured");
+        }
+
+        public ReusableMatcher reusableMatcher()
+        {
+            final char[][] holder = new char[][] {new char[256]};
+            return new ReusableMatcher()
+            {
+                public boolean match(CharSequence input)
+                {
+                    return pattern.find(copy(input, holder), input.length());
+                }
+            };
+        }
+
+        private static char[] copy(CharSequence input, char[][] holder)
+        {
+            int n = input.length();
+            char[] chars = holder[0];
+            if (chars.length < n)
+            {
+                chars = new char[Math.max(n, chars.length * 2)];
+                holder[0] = chars;
+            }
+            if (input instanceof String)
+            {
+                ((String) input).getChars(0, n, chars, 0);
+            }
+            else
+            {
+                for (int i = 0; i < n; i++)
+                {
+                    chars[i] = input.charAt(i);
+                }
+            }
+            return chars;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexEngine;
+
+/**
+ * gnu.regexp.RE. RE.isMatch() matches the whole input.
+ */
+public class GnuRegexpEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "gnu.regexp.RE";
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(new gnu.regexp.RE(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final gnu.regexp.RE regexpr;
+
+        Compiled(gnu.regexp.RE regexpr)
+        {
+            this.regexpr = regexpr;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return regexpr.isMatch(input.toString());
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return regexpr.getMatch(input.toString()) != null;
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            return groups(input, 0);
+        }
+
+        public int[] groups(CharSequence input, int from)
+        {
+            gnu.regexp.REMatch m = regexpr.getMatch(input.toString(), from);
+            if (m == null)
+            {
+                return null;
+            }
+            int count = regexpr.getNumSubs() + 1;
+            int[] offsets = new int[count * 2];
+            for (int i = 0; i < count; i++)
+            {
+                offsets[2 * i] = m.getStartIndex(i);
+                offsets[2 * i + 1] = m.getEndIndex(i);
+            }
+            return offsets;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexDialect;
+import regexbench.ReusableMatcher;
+import regexbench.hybrid.HybridMatcher;
+import regexbench.hybrid.HybridPattern;
+
+/**
+ * regexbench.hybrid: a lazy DFA for the regular parts of a pattern, with
+ * backtracking only around backreferences and lookaround (see HybridPattern).
+ * match() is a search like java.util.regex's find(). Compiled patterns may be
+ * shared between threads; each thread gets its own HybridMatcher, and the
+ * reusable matcher is one of its own.
+ */
+public class HybridEngine implements regexbench.RegexEngine
+{
+    public String getName()
+    {
+        return "regexbench.hybrid";
+    }
+
+    public RegexDialect getDialect()
+    {
+        return RegexDialect.JAVA;
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(HybridPattern.compile(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final HybridPattern pattern;
+        private final ThreadLocal<HybridMatcher> matchers = new ThreadLocal<HybridMatcher>()
+        {
+            protected HybridMatcher initialValue()
+            {
+                return pattern.matcher();
+            }
+        };
+
+        Compiled(HybridPattern pattern)
+        {
+            this.pattern = pattern;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return matchers.get().find(input);
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return matchers.get().find(input);
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            throw new UnsupportedOperationException("groups are not captured");
+        }
+
+        public ReusableMatcher reusableMatcher()
+        {
+            final HybridMatcher m = pattern.matcher();
+            return new ReusableMatcher()
+            {
+                public boolean match(CharSequence input)
+                {
+                    return m.find(input);
+                }
+            };
+        }
+    }
+}
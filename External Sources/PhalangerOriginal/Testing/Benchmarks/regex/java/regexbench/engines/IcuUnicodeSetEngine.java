@@ -0,0 +1,53 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexDialect;
+import regexbench.RegexEngine;
+
+/**
+ * com.ibm.icu.text.UnicodeSet. Not a regex engine: it parses a character set
+ * pattern and tests whether the input consists of (match) or contains (find)
+ * characters of that set. Kept because regtest has always reported it.
+ */
+public class IcuUnicodeSetEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "com.ibm.icu.text.UnicodeSet";
+    }
+
+    public RegexDialect getDialect()
+    {
+        return RegexDialect.NONE;
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(new com.ibm.icu.text.UnicodeSet(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final com.ibm.icu.text.UnicodeSet p;
+
+        Compiled(com.ibm.icu.text.UnicodeSet p)
+        {
+            this.p = p;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return p.containsAll(input.toString());
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return p.containsSome(input.toString());
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            throw new UnsupportedOperationException("UnicodeSet has no groups");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexDialect;
+import regexbench.RegexEngine;
+import regexbench.ReusableMatcher;
+
+/**
+ * java.util.regex.Pattern, the JDK engine. Compiled patterns are immutable and
+ * every call creates its own Matcher, so instances may be shared between threads.
+ * The reusable matcher keeps one Matcher and reset()s it for every input.
+ */
+public class JavaUtilRegexEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "java.util.regex.Pattern";
+    }
+
+    public RegexDialect getDialect()
+    {
+        return RegexDialect.JAVA;
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(java.util.regex.Pattern.compile(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final java.util.regex.Pattern regexpr;
+
+        Compiled(java.util.regex.Pattern regexpr)
+        {
+            this.regexpr = regexpr;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return regexpr.matcher(input).find();
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return regexpr.matcher(input).find();
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            return groups(input, 0);
+        }
+
+        public int[] groups(CharSequence input, int from)
+        {
+            java.util.regex.Matcher m = regexpr.matcher(input);
+            if (!m.find(from))
+            {
+                return null;
+            }
+            int[] offsets = new int[(m.groupCount() + 1) * 2];
+            for (int i = 0; i <= m.groupCount(); i++)
+            {
+                offsets[2 * i] = m.start(i);
+                offsets[2 * i + 1] = m.end(i);
+            }
+            return offsets;
+        }
+
+        public ReusableMatcher reusableMatcher()
+        {
+            final java.util.regex.Matcher m = regexpr.matcher("");
+            return new ReusableMatcher()
+            {
+                public boolean match(CharSequence input)
+                {
+                    return m.reset(input).find();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexEngine;
+import regexbench.ReusableMatcher;
+
+/**
+ * jregex.Pattern. Matcher.matches() matches the whole input. The reusable matcher
+ * keeps one Matcher and retargets it with setTarget().
+ */
+public class JregexEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "jregex.Pattern";
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(new jregex.Pattern(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final jregex.Pattern regexpr;
+
+        Compiled(jregex.Pattern regexpr)
+        {
+            this.regexpr = regexpr;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return regexpr.matcher(input.toString()).matches();
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return regexpr.matcher(input.toString()).find();
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            return groups(input, 0);
+        }
+
+        public int[] groups(CharSequence input, int from)
+        {
+            jregex.Matcher m = regexpr.matcher(input.toString());
+            m.setPosition(from);
+            if (!m.find())
+            {
+                return null;
+            }
+            int[] offsets = new int[m.groupCount() * 2];
+            for (int i = 0; i < m.groupCount(); i++)
+            {
+                offsets[2 * i] = m.isCaptured(i) ? m.start(i) : -1;
+                offsets[2 * i + 1] = m.isCaptured(i) ? m.end(i) : -1;
+            }
+            return offsets;
+        }
+
+        public ReusableMatcher reusableMatcher()
+        {
+            final jregex.Matcher m = regexpr.matcher();
+            return new ReusableMatcher()
+            {
+                public boolean match(CharSequence input)
+                {
+                    m.setTarget(input.toString());
+                    return m.matches();
+                }
+            };
+        }
+    }
+}
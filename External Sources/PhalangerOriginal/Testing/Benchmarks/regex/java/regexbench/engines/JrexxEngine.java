@@ -0,0 +1,53 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexDialect;
+import regexbench.RegexEngine;
+
+/**
+ * jrexx (com.karneim.util.collection.regex.Pattern), another automaton engine.
+ * Pattern.contains() tests whether the whole input is in the pattern's language;
+ * there is neither search nor groups.
+ */
+public class JrexxEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "com.karneim.util.collection.regex.Pattern";
+    }
+
+    public RegexDialect getDialect()
+    {
+        return RegexDialect.AUTOMATON;
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(new com.karneim.util.collection.regex.Pattern(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final com.karneim.util.collection.regex.Pattern p;
+
+        Compiled(com.karneim.util.collection.regex.Pattern p)
+        {
+            this.p = p;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return p.contains(input.toString());
+        }
+
+        public boolean find(CharSequence input)
+        {
+            throw new UnsupportedOperationException("jrexx cannot search");
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            throw new UnsupportedOperationException("jrexx has no groups");
+        }
+    }
+}
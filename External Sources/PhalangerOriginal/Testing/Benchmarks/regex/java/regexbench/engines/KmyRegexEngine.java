@@ -0,0 +1,52 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexEngine;
+
+/**
+ * kmy.regex.util.Regex from jint.jar. Regex.matches() matches at the start of the
+ * input. Groups are kept in named variables, so only group 0 is reported. A
+ * search over part of a char[] treats the part as the whole input, ^ included,
+ * so groups() cannot continue from an offset.
+ */
+public class KmyRegexEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "kmy.regex.util.Regex";
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(kmy.regex.util.Regex.createRegex(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final kmy.regex.util.Regex regexpr;
+
+        Compiled(kmy.regex.util.Regex regexpr)
+        {
+            this.regexpr = regexpr;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return regexpr.matches(input.toString());
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return regexpr.searchOnce(input.toString());
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            if (!regexpr.searchOnce(input.toString()))
+            {
+                return null;
+            }
+            return new int[] {regexpr.getMatchStart(), regexpr.getMatchEnd()};
+        }
+    }
+}
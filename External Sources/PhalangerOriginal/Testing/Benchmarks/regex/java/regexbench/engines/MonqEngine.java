@@ -0,0 +1,63 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexDialect;
+import regexbench.RegexEngine;
+
+/**
+ * monq.jfa.Regexp, a DFA engine. Regexp.matches() matches the whole input and
+ * Regexp.find() returns the start of the first match; the match length is kept
+ * in the Regexp, which therefore must not be shared between threads.
+ */
+public class MonqEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "monq.jfa.Regexp";
+    }
+
+    public RegexDialect getDialect()
+    {
+        return RegexDialect.AUTOMATON;
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(new monq.jfa.Regexp(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final monq.jfa.Regexp p;
+
+        Compiled(monq.jfa.Regexp p)
+        {
+            this.p = p;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return p.matches(input);
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return p.find(input) >= 0;
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            return groups(input, 0);
+        }
+
+        public int[] groups(CharSequence input, int from)
+        {
+            int start = p.find(input, from);
+            if (start < 0)
+            {
+                return null;
+            }
+            return new int[] {start, start + p.length()};
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexEngine;
+
+/**
+ * Jakarta ORO Perl5Compiler/Perl5Matcher. Perl5Matcher.matches() matches the whole
+ * input. The matcher keeps the last match, so one is created per compiled pattern.
+ */
+public class OroEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "org.apache.oro.text.regex.Perl5Matcher";
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        org.apache.oro.text.regex.Perl5Compiler perl5Compiler = new org.apache.oro.text.regex.Perl5Compiler();
+        return new Compiled(perl5Compiler.compile(pattern), new org.apache.oro.text.regex.Perl5Matcher());
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final org.apache.oro.text.regex.Pattern regexpr;
+        private final org.apache.oro.text.regex.Perl5Matcher perl5Matcher;
+
+        Compiled(org.apache.oro.text.regex.Pattern regexpr, org.apache.oro.text.regex.Perl5Matcher perl5Matcher)
+        {
+            this.regexpr = regexpr;
+            this.perl5Matcher = perl5Matcher;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return perl5Matcher.matches(input.toString(), regexpr);
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return perl5Matcher.contains(input.toString(), regexpr);
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            return groups(input, 0);
+        }
+
+        public int[] groups(CharSequence input, int from)
+        {
+            org.apache.oro.text.regex.PatternMatcherInput in = new org.apache.oro.text.regex.PatternMatcherInput(input.toString());
+            in.setCurrentOffset(from);
+            if (!perl5Matcher.contains(in, regexpr))
+            {
+                return null;
+            }
+            org.apache.oro.text.regex.MatchResult result = perl5Matcher.getMatch();
+            int[] offsets = new int[result.groups() * 2];
+            for (int i = 0; i < result.groups(); i++)
+            {
+                offsets[2 * i] = result.beginOffset(i);
+                offsets[2 * i + 1] = result.endOffset(i);
+            }
+            return offsets;
+        }
+    }
+}
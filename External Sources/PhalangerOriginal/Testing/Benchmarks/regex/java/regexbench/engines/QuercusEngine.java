@@ -0,0 +1,237 @@
+package regexbench.engines;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexDialect;
+import regexbench.RegexEngine;
+
+/**
+ * Quercus, Caucho's Java implementation of PHP: com.caucho.quercus.lib.regexp,
+ * the engine behind its preg functions, called the way a script's
+ * preg_match($pattern, $subject) calls it. Every match looks the pattern up in
+ * RegexpModule's own LRU pattern cache, as Quercus does on every call, and then
+ * runs RegexpModule.preg_match() in an Env of the calling thread. Patterns are
+ * in the PREG dialect, delimiters and modifiers included; match() and find()
+ * are both preg_match().
+ *
+ * Only the sources (quercus-4.0.18-src.jar) are in this directory, and they do
+ * not compile without the Java EE APIs, so the adapter binds to Quercus
+ * reflectively: with a compiled quercus.jar and the jars it needs on the
+ * classpath the engine is measured, without them it is skipped like any engine
+ * whose library is missing.
+ *
+ * A PHP runtime already holds its subjects as Quercus StringValues, so each
+ * input is converted once per input object, not once per match. Instances are
+ * not safe for use by several threads.
+ */
+public class QuercusEngine implements RegexEngine
+{
+    private static final String MODIFIERS = "imsxgADSUXue";
+
+    private final Bindings quercus = Bindings.load();
+
+    public String getName()
+    {
+        return "com.caucho.quercus.lib.regexp.Regexp";
+    }
+
+    public RegexDialect getDialect()
+    {
+        return RegexDialect.PREG;
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        if (!isDelimited(pattern))
+        {
+            // Quercus would take e.g. the ^ of ^(a|b) as the delimiter and compile something else
+            throw new IllegalArgumentException("not a delimited preg pattern: " + pattern);
+        }
+        Object raw = quercus.pattern(pattern);
+        if (quercus.regexp(raw) == null)
+        {
+            throw new IllegalArgumentException("Quercus rejected " + pattern);
+        }
+        return new Compiled(quercus, raw);
+    }
+
+    /** Whether pattern has an opening and closing delimiter with only modifiers after it, as preg requires. */
+    static boolean isDelimited(String pattern)
+    {
+        int head = 0;
+        while (head < pattern.length() && Character.isWhitespace(pattern.charAt(head)))
+        {
+            head++;
+        }
+        if (head >= pattern.length() - 1)
+        {
+            return false;
+        }
+        char open = pattern.charAt(head);
+        if (open == '\\' || Character.isLetterOrDigit(open))
+        {
+            return false;
+        }
+        char close = open == '{' ? '}' : open == '[' ? ']' : open == '(' ? ')' : open == '<' ? '>' : open;
+        int tail = pattern.lastIndexOf(close);
+        if (tail <= head)
+        {
+            return false;
+        }
+        for (int i = tail + 1; i < pattern.length(); i++)
+        {
+            if (MODIFIERS.indexOf(pattern.charAt(i)) < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final Bindings quercus;
+        private final Object raw;
+        private CharSequence lastInput;
+        private Object lastSubject;
+
+        Compiled(Bindings quercus, Object raw)
+        {
+            this.quercus = quercus;
+            this.raw = raw;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            if (input != lastInput)
+            {
+                lastSubject = quercus.subject(input.toString());
+                lastInput = input;
+            }
+            return quercus.pregMatch(raw, lastSubject);
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return match(input);
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            throw new UnsupportedOperationException("the match array of preg_match() is not read back");
+        }
+    }
+
+    /** Method handles for the Quercus classes, resolved once; one QuercusContext and an Env per thread. */
+    private static final class Bindings
+    {
+        private static Bindings instance;
+
+        private final MethodHandle constString;
+        private final MethodHandle builderString;
+        private final MethodHandle createRegexp;
+        private final MethodHandle pregMatch;
+        private final MethodHandle toLong;
+        private final Object noMatchArray;
+        private final Object zero = Integer.valueOf(0);
+        private final ThreadLocal<Object> envs;
+
+        private Bindings() throws ReflectiveOperationException
+        {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> context = Class.forName("com.caucho.quercus.QuercusContext");
+            Class<?> env = Class.forName("com.caucho.quercus.env.Env");
+            Class<?> value = Class.forName("com.caucho.quercus.env.Value");
+            Class<?> stringValue = Class.forName("com.caucho.quercus.env.StringValue");
+            Class<?> regexp = Class.forName("com.caucho.quercus.lib.regexp.Regexp");
+            Class<?> module = Class.forName("com.caucho.quercus.lib.regexp.RegexpModule");
+            constString = generic(lookup.findConstructor(Class.forName("com.caucho.quercus.env.ConstStringValue"), MethodType
+                .methodType(void.class, String.class)));
+            builderString = generic(lookup.findConstructor(Class.forName("com.caucho.quercus.env.StringBuilderValue"), MethodType
+                .methodType(void.class, String.class)));
+            createRegexp = generic(lookup.findStatic(module, "createRegexp", MethodType.methodType(regexp, env, stringValue)));
+            pregMatch = generic(lookup.findStatic(module, "preg_match", MethodType.methodType(value, env, regexp, stringValue, value,
+                int.class, int.class)));
+            toLong = generic(lookup.findVirtual(value, "toLong", MethodType.methodType(long.class)));
+            noMatchArray = Class.forName("com.caucho.quercus.env.DefaultValue").getField("DEFAULT").get(null);
+
+            final Object quercus = context.getConstructor().newInstance();
+            final MethodHandle newEnv = generic(lookup.findConstructor(env, MethodType.methodType(void.class, context)));
+            envs = new ThreadLocal<Object>()
+            {
+                protected Object initialValue()
+                {
+                    return call(newEnv, quercus);
+                }
+            };
+        }
+
+        static synchronized Bindings load()
+        {
+            if (instance == null)
+            {
+                try
+                {
+                    instance = new Bindings();
+                }
+                catch (ReflectiveOperationException e)
+                {
+                    // reported by RegexEngines like a missing library jar
+                    NoClassDefFoundError error = new NoClassDefFoundError("Quercus is not on the classpath: " + e);
+                    error.initCause(e);
+                    throw error;
+                }
+            }
+            return instance;
+        }
+
+        /** The pattern as a PHP string literal, a ConstStringValue. */
+        Object pattern(String pattern)
+        {
+            return call(constString, pattern);
+        }
+
+        Object subject(String input)
+        {
+            return call(builderString, input);
+        }
+
+        /** The compiled Regexp from RegexpModule's cache, or null if Quercus rejects the pattern. */
+        Object regexp(Object raw)
+        {
+            return call(createRegexp, envs.get(), raw);
+        }
+
+        boolean pregMatch(Object raw, Object subject)
+        {
+            Object env = envs.get();
+            Object regexp = call(createRegexp, env, raw);
+            Object result = call(pregMatch, env, regexp, subject, noMatchArray, zero, zero);
+            return ((Long) call(toLong, result)).longValue() > 0;
+        }
+
+        private static MethodHandle generic(MethodHandle handle)
+        {
+            return handle.asType(handle.type().generic()).asSpreader(Object[].class, handle.type().parameterCount());
+        }
+
+        private static Object call(MethodHandle handle, Object... args)
+        {
+            try
+            {
+                return handle.invokeExact(args);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package regexbench.engines;
+
+/**
+ * The class-run matcher of ClassRunEngine with scalar kernels only, one char per
+ * step, as the baseline for the Vector API kernels.
+ */
+public class ScalarClassRunEngine extends ClassRunEngine
+{
+    public ScalarClassRunEngine()
+    {
+        super(false);
+    }
+}
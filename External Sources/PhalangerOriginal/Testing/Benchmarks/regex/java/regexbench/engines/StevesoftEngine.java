@@ -0,0 +1,63 @@
+package regexbench.engines;
+
+import regexbench.CompiledRegex;
+import regexbench.RegexEngine;
+
+/**
+ * com.stevesoft.pat.Regex. Regex.search() searches the input.
+ */
+public class StevesoftEngine implements RegexEngine
+{
+    public String getName()
+    {
+        return "com.stevesoft.pat.Regex";
+    }
+
+    public CompiledRegex compile(String pattern) throws Exception
+    {
+        return new Compiled(new com.stevesoft.pat.Regex(pattern));
+    }
+
+    private static final class Compiled implements CompiledRegex
+    {
+        private final com.stevesoft.pat.Regex regexpr;
+
+        Compiled(com.stevesoft.pat.Regex regexpr)
+        {
+            this.regexpr = regexpr;
+        }
+
+        public boolean match(CharSequence input)
+        {
+            return regexpr.search(input.toString());
+        }
+
+        public boolean find(CharSequence input)
+        {
+            return regexpr.search(input.toString());
+        }
+
+        public int[] groups(CharSequence input)
+        {
+            return groups(input, 0);
+        }
+
+        public int[] groups(CharSequence input, int from)
+        {
+            if (!regexpr.searchFrom(input.toString(), from))
+            {
+                return null;
+            }
+            int count = regexpr.numSubs() + 1;
+            int[] offsets = new int[count * 2];
+            offsets[0] = regexpr.matchedFrom();
+            offsets[1] = regexpr.matchedTo();
+            for (int i = 1; i < count; i++)
+            {
+                offsets[2 * i] = regexpr.matchedFrom(i);
+                offsets[2 * i + 1] = regexpr.matchedTo(i);
+            }
+            return offsets;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package regexbench.hybrid;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of chars as sorted, disjoint, inclusive ranges. Negated
+ * classes are complemented when parsed, so every set is positive; that keeps
+ * union and the alphabet partition of Nfa simple.
+ */
+final class CharSet
+{
+    static final CharSet EMPTY = new CharSet(new int[0]);
+    static final CharSet ANY = range(0, Character.MAX_VALUE);
+
+    /** Java's . without DOTALL: everything but the line terminators. */
+    static final CharSet DOT = new Builder().add('\n').add('\r').add(0x85).add(0x2028, 0x2029).build().complement();
+
+    /** . under UNIX_LINES: everything but \n. */
+    static final CharSet UNIX_DOT = new Builder().add('\n').build().complement();
+
+    static final CharSet DIGIT = range('0', '9');
+    static final CharSet WORD = new Builder().add('a', 'z').add('A', 'Z').add('0', '9').add('_').build();
+    static final CharSet SPACE = new Builder().add(' ').add('\t', '\r').build();
+
+    private final int[] ranges;
+
+    private CharSet(int[] ranges)
+    {
+        this.ranges = ranges;
+    }
+
+    static CharSet of(int c)
+    {
+        return range(c, c);
+    }
+
+    static CharSet range(int low, int high)
+    {
+        return new CharSet(new int[] {low, high});
+    }
+
+    boolean contains(int c)
+    {
+        int[] r = ranges;
+        if (r.length <= 8)
+        {
+            for (int i = 0; i < r.length; i += 2)
+            {
+                if (c <= r[i + 1])
+                {
+                    return c >= r[i];
+                }
+            }
+            return false;
+        }
+        int lo = 0;
+        int hi = r.length / 2 - 1;
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (c < r[2 * mid])
+            {
+                hi = mid - 1;
+            }
+            else if (c > r[2 * mid + 1])
+            {
+                lo = mid + 1;
+            }
+            else
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty()
+    {
+        return ranges.length == 0;
+    }
+
+    int getRangeCount()
+    {
+        return ranges.length / 2;
+    }
+
+    int getLow(int range)
+    {
+        return ranges[2 * range];
+    }
+
+    int getHigh(int range)
+    {
+        return ranges[2 * range + 1];
+    }
+
+    CharSet union(CharSet other)
+    {
+        Builder builder = new Builder();
+        builder.addAll(this);
+        builder.addAll(other);
+        return builder.build();
+    }
+
+    CharSet complement()
+    {
+        int[] r = new int[ranges.length + 2];
+        int n = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2)
+        {
+            if (ranges[i] > next)
+            {
+                r[n++] = next;
+                r[n++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE)
+        {
+            r[n++] = next;
+            r[n++] = Character.MAX_VALUE;
+        }
+        return new CharSet(Arrays.copyOf(r, n));
+    }
+
+    public boolean equals(Object o)
+    {
+        return o instanceof CharSet && Arrays.equals(ranges, ((CharSet) o).ranges);
+    }
+
+    public int hashCode()
+    {
+        return Arrays.hashCode(ranges);
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < ranges.length; i += 2)
+        {
+            sb.append(String.format("\\u%04X", Integer.valueOf(ranges[i])));
+            if (ranges[i + 1] != ranges[i])
+            {
+                sb.append('-').append(String.format("\\u%04X", Integer.valueOf(ranges[i + 1])));
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /** Collects ranges in any order; build() sorts and merges them. */
+    static final class Builder
+    {
+        private int[] ranges = new int[8];
+        private int size;
+
+        Builder add(int c)
+        {
+            return add(c, c);
+        }
+
+        Builder add(int low, int high)
+        {
+            if (size == ranges.length)
+            {
+                ranges = Arrays.copyOf(ranges, size * 2);
+            }
+            ranges[size++] = low;
+            ranges[size++] = high;
+            return this;
+        }
+
+        Builder addAll(CharSet set)
+        {
+            for (int i = 0; i < set.ranges.length; i += 2)
+            {
+                add(set.ranges[i], set.ranges[i + 1]);
+            }
+            return this;
+        }
+
+        CharSet build()
+        {
+            // a range as one long, low in the high half, so that sorting the longs sorts by low
+            long[] packed = new long[size / 2];
+            for (int i = 0; i < packed.length; i++)
+            {
+                packed[i] = (long) ranges[2 * i] << 32 | ranges[2 * i + 1];
+            }
+            Arrays.sort(packed);
+            int[] merged = new int[size];
+            int n = 0;
+            for (long p : packed)
+            {
+                int low = (int) (p >>> 32);
+                int high = (int) p;
+                if (n > 0 && low <= merged[n - 1] + 1)
+                {
+                    merged[n - 1] = Math.max(merged[n - 1], high);
+                }
+                else
+                {
+                    merged[n++] = low;
+                    merged[n++] = high;
+                }
+            }
+            return new CharSet(Arrays.copyOf(merged, n));
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package regexbench.hybrid;
+
+import java.util.Arrays;
+
+/**
+ * Matches a HybridPattern: its lazy DFA caches, the backtracking stack, the
+ * capture and loop registers and the memo table, all reused from one input to
+ * the next. Not thread-safe; use one matcher per thread.
+ */
+public final class HybridMatcher
+{
+    private final HybridPattern p;
+    private final LazyDfa dfa;
+    private final LazyDfa[] pieces;
+
+    private final int[] registers;
+
+    /** Pairs (pc, pos) to resume at, or (-1 - register, old value) to restore on the way back. */
+    private int[] stack = new int[64];
+    private int sp;
+
+    private long[] memo = new long[0];
+    private int memoStride;
+    private final int[][] ends = {new int[16]};
+
+    HybridMatcher(HybridPattern p)
+    {
+        this.p = p;
+        this.dfa = new LazyDfa(p.dfa, p.maxStates);
+        if (p.regular)
+        {
+            pieces = null;
+            registers = null;
+            return;
+        }
+        pieces = new LazyDfa[p.pieces.length];
+        for (int i = 0; i < pieces.length; i++)
+        {
+            pieces[i] = new LazyDfa(p.pieces[i], p.maxStates);
+        }
+        registers = new int[p.registers];
+    }
+
+    public HybridPattern pattern()
+    {
+        return p;
+    }
+
+    /** Whether the pattern occurs anywhere in input. */
+    public boolean find(CharSequence input)
+    {
+        if (!dfa.search(input, 0, p.endKind))
+        {
+            // the pattern, or for a hybrid pattern its relaxed form, cannot match
+            return false;
+        }
+        if (p.regular)
+        {
+            return true;
+        }
+        int n = input.length();
+        Arrays.fill(registers, -1);
+        sp = 0;
+        if (p.memoized)
+        {
+            memoStride = n + 1;
+            long bits = (long) p.memoPoints * memoStride;
+            int words = (int) ((bits + 63) >>> 6);
+            if (memo.length < words)
+            {
+                memo = new long[Math.max(words, memo.length * 2)];
+            }
+            else
+            {
+                Arrays.fill(memo, 0, words, 0L);
+            }
+        }
+        CharSet first = p.first;
+        for (int start = 0; start <= n; start++)
+        {
+            if (first != null)
+            {
+                while (start < n && !first.contains(input.charAt(start)))
+                {
+                    start++;
+                }
+                if (start == n)
+                {
+                    return false;
+                }
+            }
+            if (run(input, 0, start, -1, p.memoized))
+            {
+                return true;
+            }
+            if (p.anchored)
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the program from pc at pos until MATCH, or LOOK_END at target (any
+     * position for target -1). On success the register restores pushed since the
+     * start are kept on the stack, so that a positive lookaround's captures are
+     * undone when the caller backtracks.
+     */
+    private boolean run(CharSequence s, int pc0, int pos0, int target, boolean memoize)
+    {
+        int[] op = p.op;
+        int[] arg = p.arg;
+        int n = s.length();
+        int base = sp;
+        push(pc0, pos0);
+        while (sp > base)
+        {
+            sp -= 2;
+            int pc = stack[sp];
+            int pos = stack[sp + 1];
+            if (pc < 0)
+            {
+                registers[-1 - pc] = pos;
+                continue;
+            }
+            thread: for (;;)
+            {
+                if (memoize)
+                {
+                    int slot = p.memoSlot[pc];
+                    if (slot >= 0)
+                    {
+                        long bit = (long) slot * memoStride + pos;
+                        int word = (int) (bit >>> 6);
+                        long mask = 1L << bit;
+                        if ((memo[word] & mask) != 0)
+                        {
+                            // explored before: it failed, or is still being explored further up
+                            break thread;
+                        }
+                        memo[word] |= mask;
+                    }
+                }
+                switch (op[pc])
+                {
+                    case HybridPattern.CLASS:
+                        if (pos < n && p.sets[arg[pc]].contains(s.charAt(pos)))
+                        {
+                            pos++;
+                            pc++;
+                            continue;
+                        }
+                        break thread;
+                    case HybridPattern.SPLIT:
+                        push(p.arg2[pc], pos);
+                        pc = arg[pc];
+                        continue;
+                    case HybridPattern.JMP:
+                        pc = arg[pc];
+                        continue;
+                    case HybridPattern.SAVE:
+                    case HybridPattern.LOOP_MARK:
+                        push(-1 - arg[pc], registers[arg[pc]]);
+                        registers[arg[pc]] = pos;
+                        pc++;
+                        continue;
+                    case HybridPattern.CLOSE:
+                    {
+                        int register = arg[pc];
+                        push(-1 - register, registers[register]);
+                        push(-2 - register, registers[register + 1]);
+                        registers[register] = registers[register + 2];
+                        registers[register + 1] = pos;
+                        pc++;
+                        continue;
+                    }
+                    case HybridPattern.LOOP_CHECK:
+                        // leave the loop after an empty iteration rather than repeat it forever
+                        pc = registers[arg[pc]] == pos ? p.arg2[pc] : pc + 1;
+                        continue;
+                    case HybridPattern.BACKREF:
+                        pos = backref(s, pos, arg[pc]);
+                        if (pos < 0)
+                        {
+                            break thread;
+                        }
+                        pc++;
+                        continue;
+                    case HybridPattern.ASSERT:
+                        if (!Node.Assert.test(arg[pc], s, pos))
+                        {
+                            break thread;
+                        }
+                        pc++;
+                        continue;
+                    case HybridPattern.LOOK:
+                    {
+                        int flags = p.arg2[pc];
+                        boolean ahead = (flags & HybridPattern.AHEAD) != 0;
+                        int first = p.arg3[pc];
+                        boolean found;
+                        if (first >= 0 && (ahead ? pos == n || !p.sets[first].contains(s.charAt(pos))
+                            : pos == 0 || !p.sets[first].contains(s.charAt(pos - 1))))
+                        {
+                            found = false;
+                        }
+                        else
+                        {
+                            found = ahead ? pieces[arg[pc]].search(s, pos, -1) : pieces[arg[pc]].searchBackwards(s, pos);
+                        }
+                        if (found == ((flags & HybridPattern.NEGATED) != 0))
+                        {
+                            break thread;
+                        }
+                        pc++;
+                        continue;
+                    }
+                    case HybridPattern.LOOK_VM:
+                        if (!look(s, pc, pos))
+                        {
+                            break thread;
+                        }
+                        pc = arg[pc];
+                        continue;
+                    case HybridPattern.LOOK_END:
+                        if (target >= 0 && pos != target)
+                        {
+                            break thread;
+                        }
+                        keepRestores(base);
+                        return true;
+                    case HybridPattern.DELEGATE:
+                    {
+                        int count = pieces[arg[pc]].ends(s, pos, ends, 0);
+                        if (count == 0)
+                        {
+                            break thread;
+                        }
+                        int[] e = ends[0];
+                        pc++;
+                        // the longest end first, like a greedy backtracker; the others wait on the stack
+                        for (int i = 0; i < count - 1; i++)
+                        {
+                            push(pc, e[i]);
+                        }
+                        pos = e[count - 1];
+                        continue;
+                    }
+                    default:
+                        sp = base;
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** The end of a match of group register's text at pos, or -1; an unset group fails, as in java.util.regex. */
+    private int backref(CharSequence s, int pos, int register)
+    {
+        int start = registers[register];
+        int end = registers[register + 1];
+        if (start < 0 || end < 0)
+        {
+            return -1;
+        }
+        int length = end - start;
+        if (pos + length > s.length())
+        {
+            return -1;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (s.charAt(start + i) != s.charAt(pos + i))
+            {
+                return -1;
+            }
+        }
+        return pos + length;
+    }
+
+    /** Evaluates the LOOK_VM at pc: its body runs without memoization, as the outcome depends on where it started. */
+    private boolean look(CharSequence s, int pc, int pos)
+    {
+        int flags = p.arg2[pc];
+        boolean negated = (flags & HybridPattern.NEGATED) != 0;
+        int mark = sp;
+        boolean found = false;
+        if ((flags & HybridPattern.AHEAD) != 0)
+        {
+            found = run(s, pc + 1, pos, -1, false);
+        }
+        else
+        {
+            int max = p.arg4[pc];
+            for (int start = Math.max(0, pos - max); start <= pos - p.arg3[pc] && !found; start++)
+            {
+                found = run(s, pc + 1, start, pos, false);
+            }
+        }
+        if (found && negated)
+        {
+            // the body matched, so the assertion fails; put back what it captured
+            while (sp > mark)
+            {
+                sp -= 2;
+                registers[-1 - stack[sp]] = stack[sp + 1];
+            }
+        }
+        return found != negated;
+    }
+
+    /** Drops the resume points above base and keeps the register restores, in order. */
+    private void keepRestores(int base)
+    {
+        int to = base;
+        for (int i = base; i < sp; i += 2)
+        {
+            if (stack[i] < 0)
+            {
+                stack[to] = stack[i];
+                stack[to + 1] = stack[i + 1];
+                to += 2;
+            }
+        }
+        sp = to;
+    }
+
+    private void push(int a, int b)
+    {
+        if (sp + 2 > stack.length)
+        {
+            if (stack.length >= HybridPattern.MAX_STACK)
+            {
+                throw new IllegalStateException("backtracking stack of " + p.pattern + " exceeded " + HybridPattern.MAX_STACK
+                    + " entries (regtest.hybrid.maxStack)");
+            }
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[sp] = a;
+        stack[sp + 1] = b;
+        sp += 2;
+    }
+}
@@ -0,0 +1,441 @@
+package regexbench.hybrid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A java.util.regex pattern (no flags, see Parser for the syntax) compiled for a
+ * lazy DFA where the pattern is regular and a backtracking matcher only where it
+ * is not.
+ *
+ * A pattern without backreferences, lookaround or inner assertions is matched
+ * by a single LazyDfa in one pass over the input, whatever its structure; a
+ * leading ^ and a trailing $ are handled around the DFA.
+ *
+ * Any other pattern is compiled to a small backtracking program in which only
+ * backreferences, the groups they refer to, lookaround, assertions and the
+ * loops and alternatives containing them are instructions of their own. Every
+ * maximal regular piece in between becomes one DELEGATE instruction: a LazyDfa
+ * that reports, in one pass, every position where the piece can end, and the
+ * backtracker only chooses among those. Lookaround with a regular body is a
+ * single DFA run as well, forwards or, for lookbehind, backwards.
+ *
+ * Before any backtracking, a relaxed form of the pattern (backreferences replaced
+ * by their group, lookaround and assertions dropped) is searched by a LazyDfa.
+ * Every input the pattern matches, the relaxed form matches too, so inputs it
+ * rejects are rejected in linear time. Patterns without backreferences are
+ * moreover memoized: each (instruction, position) pair where the program can
+ * branch is explored once per input, which bounds the backtracking work by the
+ * program size times the input length. Only backreferences, which no automaton
+ * can match, leave the backtracker unbounded; its stack is limited to
+ * MAX_STACK entries, beyond which find() throws an IllegalStateException.
+ *
+ * find() answers whether the pattern occurs; which match java.util.regex would
+ * choose does not matter for that, so lazy quantifiers are matched as greedy
+ * ones and groups are not reported. The exception is lookaround, which keeps
+ * the first way its body matches, or in java.util.regex sometimes what a failed
+ * negative one left: a group captured inside it could then hold other text than
+ * in java.util.regex, so Parser rejects backreferences to such groups from
+ * outside the lookaround. As in java.util.regex, a group's
+ * capture changes when the group closes, so a backreference inside a group
+ * sees its previous capture. Instances are immutable and thread-safe; the DFA
+ * caches live in each HybridMatcher.
+ */
+public final class HybridPattern
+{
+    /** States per lazy DFA before its cache is flushed; system property regtest.hybrid.maxStates. */
+    public static final int DEFAULT_MAX_STATES = Integer.getInteger("regtest.hybrid.maxStates", 4096).intValue();
+
+    /** Backtracking stack entries per match before it is given up; system property regtest.hybrid.maxStack. */
+    public static final int MAX_STACK = Integer.getInteger("regtest.hybrid.maxStack", 4000000).intValue();
+
+    static final int CLASS = 0;
+    static final int SPLIT = 1;
+    static final int JMP = 2;
+    static final int SAVE = 3;
+    static final int CLOSE = 4;
+    static final int BACKREF = 5;
+    static final int ASSERT = 6;
+    static final int LOOK = 7;
+    static final int LOOK_VM = 8;
+    static final int LOOK_END = 9;
+    static final int DELEGATE = 10;
+    static final int LOOP_MARK = 11;
+    static final int LOOP_CHECK = 12;
+    static final int MATCH = 13;
+
+    static final int AHEAD = 1;
+    static final int NEGATED = 2;
+
+    private static final int MAX_PROGRAM = 100000;
+
+    final String pattern;
+    final int maxStates;
+    final boolean anchored;
+
+    /** The Assert kind of a trailing $, \Z or \z, or -1. */
+    final int endKind;
+
+    /** The whole pattern when it is regular, otherwise the relaxed form; a search NFA unless anchored. */
+    final Nfa dfa;
+    final boolean regular;
+
+    // the backtracking program, when not regular
+    final int[] op;
+    final int[] arg;
+    final int[] arg2;
+    final int[] arg3;
+    final int[] arg4;
+    final CharSet[] sets;
+    final Nfa[] pieces;
+    final int registers;
+    final int[] groupRegister;
+    final boolean memoized;
+    final int[] memoSlot;
+    final int memoPoints;
+    final CharSet first;
+
+    private HybridPattern(String pattern, int maxStates, boolean anchored, int endKind, Nfa dfa, Compiler program,
+        CharSet first)
+    {
+        this.pattern = pattern;
+        this.maxStates = maxStates;
+        this.anchored = anchored;
+        this.endKind = endKind;
+        this.dfa = dfa;
+        this.regular = program == null;
+        this.first = first;
+        if (program == null)
+        {
+            op = arg = arg2 = arg3 = arg4 = memoSlot = groupRegister = null;
+            sets = null;
+            pieces = null;
+            registers = 0;
+            memoized = false;
+            memoPoints = 0;
+            return;
+        }
+        int n = program.size;
+        op = Arrays.copyOf(program.op, n);
+        arg = Arrays.copyOf(program.arg, n);
+        arg2 = Arrays.copyOf(program.arg2, n);
+        arg3 = Arrays.copyOf(program.arg3, n);
+        arg4 = Arrays.copyOf(program.arg4, n);
+        sets = program.sets.toArray(new CharSet[program.sets.size()]);
+        pieces = program.pieces.toArray(new Nfa[program.pieces.size()]);
+        registers = program.registers;
+        groupRegister = program.groupRegister;
+        memoized = program.referenced.isEmpty();
+        memoSlot = new int[n];
+        int points = 0;
+        for (int pc = 0; pc < n; pc++)
+        {
+            // the places where the program can arrive by more than one path
+            boolean branch = op[pc] == SPLIT || (pc > 0 && op[pc - 1] == DELEGATE);
+            memoSlot[pc] = branch ? points++ : -1;
+        }
+        memoPoints = points;
+    }
+
+    public static HybridPattern compile(String pattern)
+    {
+        return compile(pattern, DEFAULT_MAX_STATES);
+    }
+
+    /** Compiles pattern with at most maxStates cached states per lazy DFA. */
+    public static HybridPattern compile(String pattern, int maxStates)
+    {
+        Parser parser = new Parser(pattern);
+        Node root = parser.parse();
+        BitSet referenced = parser.getReferenced();
+
+        // a leading ^ and a trailing $ are applied around the DFA
+        List<Node> items = new ArrayList<Node>(root instanceof Node.Concat ? ((Node.Concat) root).items
+            : java.util.Collections.singletonList(root));
+        boolean anchored = false;
+        while (!items.isEmpty() && isAssert(items.get(0), Node.Assert.BEGIN))
+        {
+            items.remove(0);
+            anchored = true;
+        }
+        int endKind = -1;
+        if (!items.isEmpty() && (isAssert(items.get(items.size() - 1), Node.Assert.END_OF_LINE)
+            || isAssert(items.get(items.size() - 1), Node.Assert.END_OF_UNIX_LINE)
+            || isAssert(items.get(items.size() - 1), Node.Assert.END)))
+        {
+            endKind = ((Node.Assert) items.remove(items.size() - 1)).kind;
+        }
+        Node body = new Node.Concat(items);
+
+        if (body.isRegular(referenced))
+        {
+            return new HybridPattern(pattern, maxStates, anchored, endKind, Nfa.of(body, !anchored), null, null);
+        }
+        Node relaxed = body.relax(parser.getGroups(), new BitSet());
+        Compiler program = new Compiler(referenced, parser.getGroups().length);
+        program.emit(root);
+        program.add(MATCH, 0, 0, 0, 0);
+        CharSet first = root.isNullable() ? null : root.firstChars();
+        return new HybridPattern(pattern, maxStates, anchored, endKind, Nfa.of(relaxed, !anchored), program, first);
+    }
+
+    private static boolean isAssert(Node node, int kind)
+    {
+        return node instanceof Node.Assert && ((Node.Assert) node).kind == kind;
+    }
+
+    public String pattern()
+    {
+        return pattern;
+    }
+
+    /** Whether the pattern is matched by the lazy DFA alone. */
+    public boolean isRegular()
+    {
+        return regular;
+    }
+
+    /** A new matcher with its own DFA caches, for use by one thread at a time. */
+    public HybridMatcher matcher()
+    {
+        return new HybridMatcher(this);
+    }
+
+    /** How the pattern is matched, e.g. "lazy DFA" or "backtracking over 2 DFA pieces, memoized". */
+    public String toString()
+    {
+        if (regular)
+        {
+            return "lazy DFA";
+        }
+        int delegates = 0;
+        for (int o : op)
+        {
+            delegates += o == DELEGATE || o == LOOK ? 1 : 0;
+        }
+        return "backtracking over " + delegates + " DFA pieces" + (memoized ? ", memoized" : "");
+    }
+
+    /** Emits the backtracking program for a non-regular node. */
+    private static final class Compiler
+    {
+        int[] op = new int[16];
+        int[] arg = new int[16];
+        int[] arg2 = new int[16];
+        int[] arg3 = new int[16];
+        int[] arg4 = new int[16];
+        int size;
+        final List<CharSet> sets = new ArrayList<CharSet>();
+        final List<Nfa> pieces = new ArrayList<Nfa>();
+        final BitSet referenced;
+        final int[] groupRegister;
+        int registers;
+
+        Compiler(BitSet referenced, int groups)
+        {
+            this.referenced = referenced;
+            this.groupRegister = new int[groups];
+            Arrays.fill(groupRegister, -1);
+            // start and end of the last capture, then the start of the one in progress
+            for (int g = referenced.nextSetBit(0); g >= 0; g = referenced.nextSetBit(g + 1))
+            {
+                groupRegister[g] = registers;
+                registers += 3;
+            }
+        }
+
+        int add(int kind, int a, int b, int c, int d)
+        {
+            if (size == MAX_PROGRAM)
+            {
+                throw new IllegalArgumentException("pattern too large: more than " + MAX_PROGRAM + " instructions");
+            }
+            if (size == op.length)
+            {
+                op = Arrays.copyOf(op, size * 2);
+                arg = Arrays.copyOf(arg, size * 2);
+                arg2 = Arrays.copyOf(arg2, size * 2);
+                arg3 = Arrays.copyOf(arg3, size * 2);
+                arg4 = Arrays.copyOf(arg4, size * 2);
+            }
+            op[size] = kind;
+            arg[size] = a;
+            arg2[size] = b;
+            arg3[size] = c;
+            arg4[size] = d;
+            return size++;
+        }
+
+        void emit(Node node)
+        {
+            if (node.isRegular(referenced))
+            {
+                emitRegular(node);
+            }
+            else if (node instanceof Node.Concat)
+            {
+                // runs of regular items become one piece
+                List<Node> run = new ArrayList<Node>();
+                for (Node item : ((Node.Concat) node).items)
+                {
+                    if (item.isRegular(referenced))
+                    {
+                        run.add(item);
+                        continue;
+                    }
+                    emitRegular(new Node.Concat(run));
+                    run = new ArrayList<Node>();
+                    emit(item);
+                }
+                emitRegular(new Node.Concat(run));
+            }
+            else if (node instanceof Node.Alt)
+            {
+                List<Node> items = ((Node.Alt) node).items;
+                List<Integer> exits = new ArrayList<Integer>();
+                for (int i = 0; i < items.size() - 1; i++)
+                {
+                    int split = add(SPLIT, size + 1, -1, 0, 0);
+                    emit(items.get(i));
+                    exits.add(Integer.valueOf(add(JMP, -1, 0, 0, 0)));
+                    arg2[split] = size;
+                }
+                emit(items.get(items.size() - 1));
+                for (Integer exit : exits)
+                {
+                    arg[exit.intValue()] = size;
+                }
+            }
+            else if (node instanceof Node.Repeat)
+            {
+                emitRepeat((Node.Repeat) node);
+            }
+            else if (node instanceof Node.Group)
+            {
+                Node.Group g = (Node.Group) node;
+                int register = groupRegister[g.index];
+                if (register >= 0)
+                {
+                    add(SAVE, register + 2, 0, 0, 0);
+                }
+                emit(g.body);
+                if (register >= 0)
+                {
+                    add(CLOSE, register, 0, 0, 0);
+                }
+            }
+            else if (node instanceof Node.Backref)
+            {
+                add(BACKREF, groupRegister[((Node.Backref) node).index], 0, 0, 0);
+            }
+            else if (node instanceof Node.Look)
+            {
+                emitLook((Node.Look) node);
+            }
+            else
+            {
+                add(ASSERT, ((Node.Assert) node).kind, 0, 0, 0);
+            }
+        }
+
+        private void emitRepeat(Node.Repeat r)
+        {
+            for (int i = 0; i < r.min; i++)
+            {
+                emit(r.body);
+            }
+            if (r.max == Node.UNBOUNDED && r.body.minLength() > 0)
+            {
+                int loop = add(SPLIT, size + 1, -1, 0, 0);
+                emit(r.body);
+                add(JMP, loop, 0, 0, 0);
+                arg2[loop] = size;
+                return;
+            }
+            if (r.max == Node.UNBOUNDED)
+            {
+                // an iteration that consumes nothing is the last one, as in java.util.regex
+                int register = registers++;
+                int loop = add(SPLIT, size + 1, -1, 0, 0);
+                add(LOOP_MARK, register, 0, 0, 0);
+                emit(r.body);
+                int check = add(LOOP_CHECK, register, -1, 0, 0);
+                add(JMP, loop, 0, 0, 0);
+                arg2[loop] = size;
+                arg2[check] = size;
+                return;
+            }
+            List<Integer> exits = new ArrayList<Integer>();
+            for (int i = r.min; i < r.max; i++)
+            {
+                exits.add(Integer.valueOf(add(SPLIT, size + 1, -1, 0, 0)));
+                emit(r.body);
+            }
+            for (Integer exit : exits)
+            {
+                arg2[exit.intValue()] = size;
+            }
+        }
+
+        private void emitLook(Node.Look look)
+        {
+            int flags = (look.ahead ? AHEAD : 0) | (look.negated ? NEGATED : 0);
+            if (look.body.isRegular(referenced))
+            {
+                // the chars the body can start with, or for lookbehind end with, decide most positions without the DFA
+                Node body = look.ahead ? look.body : look.body.reverse();
+                add(LOOK, piece(body), flags, body.isNullable() ? -1 : set(body.firstChars()), 0);
+                return;
+            }
+            int min = look.body.minLength();
+            int max = look.body.maxLength();
+            if (!look.ahead && max == Node.UNBOUNDED)
+            {
+                throw new IllegalArgumentException("lookbehind without an obvious maximum length not supported");
+            }
+            int start = add(LOOK_VM, -1, flags, min, max);
+            emit(look.body);
+            add(LOOK_END, 0, 0, 0, 0);
+            arg[start] = size;
+        }
+
+        /** A single class becomes CLASS, the empty string nothing, anything else a DELEGATE. */
+        private void emitRegular(Node node)
+        {
+            if (node.maxLength() == 0)
+            {
+                return;
+            }
+            if (node instanceof Node.Concat && ((Node.Concat) node).items.size() == 1)
+            {
+                emitRegular(((Node.Concat) node).items.get(0));
+                return;
+            }
+            if (node instanceof Node.Chars)
+            {
+                add(CLASS, set(((Node.Chars) node).set), 0, 0, 0);
+                return;
+            }
+            add(DELEGATE, piece(node), 0, 0, 0);
+        }
+
+        private int set(CharSet set)
+        {
+            int i = sets.indexOf(set);
+            if (i < 0)
+            {
+                sets.add(set);
+                i = sets.size() - 1;
+            }
+            return i;
+        }
+
+        private int piece(Node node)
+        {
+            pieces.add(Nfa.of(node, false));
+            return pieces.size() - 1;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package regexbench.hybrid;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DFA over an Nfa, built while matching: a DFA state is the set of NFA states
+ * the NFA can be in, and a transition is computed the first time some input
+ * takes it, then looked up in a table. Only the states an input actually visits
+ * are ever built, so patterns whose full DFA would be huge cost nothing extra.
+ *
+ * The cache holds at most maxStates states. When it is full it is flushed as a
+ * whole and rebuilt from the current state on, as RE2 does; matching stays
+ * linear, it just recomputes transitions it had before.
+ *
+ * Mutable and not thread-safe; every HybridMatcher has its own instances.
+ */
+final class LazyDfa
+{
+    static final int DEAD = -1;
+    private static final int UNKNOWN = -2;
+
+    private final Nfa nfa;
+    private final int classes;
+    private final int maxStates;
+
+    private final Map<Key, Integer> ids = new HashMap<Key, Integer>();
+    private int[][] sets = new int[16][];
+    private boolean[] accepting = new boolean[16];
+    private int[] table;
+    private int count;
+    private int startState = UNKNOWN;
+    private int flushes;
+
+    // closure scratch space
+    private final int[] mark;
+    private int generation;
+    private final int[] stack;
+    private int[] found;
+
+    LazyDfa(Nfa nfa, int maxStates)
+    {
+        this.nfa = nfa;
+        this.classes = nfa.classes;
+        this.maxStates = maxStates;
+        this.table = new int[16 * classes];
+        this.mark = new int[nfa.size()];
+        this.stack = new int[nfa.size()];
+        this.found = new int[nfa.size()];
+    }
+
+    /**
+     * Whether the DFA reaches an accepting state reading s from from on. With an
+     * end assertion kind other than -1, acceptance counts only where that
+     * assertion holds, so the whole input is read.
+     */
+    boolean search(CharSequence s, int from, int endKind)
+    {
+        int n = s.length();
+        int st = start();
+        // the hot loop works on locals, reloaded only after a transition had to be computed
+        int[] table = this.table;
+        boolean[] accepting = this.accepting;
+        int[] ascii = nfa.asciiClass;
+        for (int i = from;; i++)
+        {
+            if (accepting[st] && (endKind < 0 || Node.Assert.test(endKind, s, i)))
+            {
+                return true;
+            }
+            if (i == n)
+            {
+                return false;
+            }
+            char c = s.charAt(i);
+            int cls = c < 128 ? ascii[c] : nfa.classOf(c);
+            int t = table[st * classes + cls];
+            if (t < 0)
+            {
+                t = t == DEAD ? DEAD : compute(st, cls);
+                if (t == DEAD)
+                {
+                    return false;
+                }
+                table = this.table;
+                accepting = this.accepting;
+            }
+            st = t;
+        }
+    }
+
+    /**
+     * Adds every end of a match starting at from to ends, ascending, and returns
+     * the new size of ends; ends[0] holds the array, which may be replaced by a
+     * larger one.
+     */
+    int ends(CharSequence s, int from, int[][] ends, int size)
+    {
+        int n = s.length();
+        int st = start();
+        int[] e = ends[0];
+        for (int i = from;; i++)
+        {
+            if (accepting[st])
+            {
+                if (size == e.length)
+                {
+                    e = Arrays.copyOf(e, size * 2);
+                    ends[0] = e;
+                }
+                e[size++] = i;
+            }
+            if (i == n)
+            {
+                return size;
+            }
+            st = next(st, s.charAt(i));
+            if (st == DEAD)
+            {
+                return size;
+            }
+        }
+    }
+
+    /** Whether a match ends at to, reading backwards; the Nfa must be of the reversed node. */
+    boolean searchBackwards(CharSequence s, int to)
+    {
+        int st = start();
+        for (int i = to;; i--)
+        {
+            if (accepting[st])
+            {
+                return true;
+            }
+            if (i == 0)
+            {
+                return false;
+            }
+            st = next(st, s.charAt(i - 1));
+            if (st == DEAD)
+            {
+                return false;
+            }
+        }
+    }
+
+    private int start()
+    {
+        if (startState == UNKNOWN)
+        {
+            generation++;
+            int[] set = Arrays.copyOf(found, closure(nfa.start, 0));
+            Arrays.sort(set);
+            startState = intern(set);
+        }
+        return startState;
+    }
+
+    private int next(int state, char c)
+    {
+        int cls = nfa.classOf(c);
+        int t = table[state * classes + cls];
+        return t != UNKNOWN ? t : compute(state, cls);
+    }
+
+    private int compute(int state, int cls)
+    {
+        int[] from = sets[state];
+        int[] op = nfa.op;
+        generation++;
+        int n = 0;
+        for (int q : from)
+        {
+            if (op[q] == Nfa.CHAR && nfa.accepts[q][cls])
+            {
+                n = closure(nfa.out[q], n);
+            }
+        }
+        if (n == 0)
+        {
+            table[state * classes + cls] = DEAD;
+            return DEAD;
+        }
+        int[] to = Arrays.copyOf(found, n);
+        Arrays.sort(to);
+        int before = flushes;
+        int t = intern(to);
+        if (flushes == before)
+        {
+            // no flush in between, so state still names the same set
+            table[state * classes + cls] = t;
+        }
+        return t;
+    }
+
+    /** Adds the CHAR and MATCH states reachable from q without input to found[n...]; returns the new n. */
+    private int closure(int q, int n)
+    {
+        int[] op = nfa.op;
+        int sp = 0;
+        stack[sp++] = q;
+        while (sp > 0)
+        {
+            int s = stack[--sp];
+            if (mark[s] == generation)
+            {
+                continue;
+            }
+            mark[s] = generation;
+            if (op[s] == Nfa.SPLIT)
+            {
+                // out2 below out, so that out is expanded first
+                stack[sp++] = nfa.out2[s];
+                stack[sp++] = nfa.out[s];
+            }
+            else
+            {
+                found[n++] = s;
+            }
+        }
+        return n;
+    }
+
+    private int intern(int[] set)
+    {
+        Key key = new Key(set);
+        Integer id = ids.get(key);
+        if (id != null)
+        {
+            return id.intValue();
+        }
+        if (count == maxStates)
+        {
+            flush();
+        }
+        if (count == sets.length)
+        {
+            sets = Arrays.copyOf(sets, count * 2);
+            accepting = Arrays.copyOf(accepting, count * 2);
+        }
+        if ((count + 1) * classes > table.length)
+        {
+            table = Arrays.copyOf(table, Math.max(table.length * 2, (count + 1) * classes));
+        }
+        Arrays.fill(table, count * classes, (count + 1) * classes, UNKNOWN);
+        sets[count] = set;
+        // the MATCH state is the first one built, so a set containing it starts with it
+        accepting[count] = set.length > 0 && nfa.op[set[0]] == Nfa.MATCH;
+        ids.put(key, Integer.valueOf(count));
+        return count++;
+    }
+
+    private void flush()
+    {
+        ids.clear();
+        count = 0;
+        flushes++;
+        startState = UNKNOWN;
+    }
+
+    private static final class Key
+    {
+        private final int[] set;
+        private final int hash;
+
+        Key(int[] set)
+        {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object o)
+        {
+            return o instanceof Key && Arrays.equals(set, ((Key) o).set);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package regexbench.hybrid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Thompson NFA over a partition of the chars into classes, built from a
+ * regular Node for LazyDfa. Two chars are in the same class when every CharSet
+ * of the node either contains both or neither, so the DFA needs one transition
+ * per class rather than per char; ASCII chars map to their class through a table,
+ * the rest by binary search over the class boundaries.
+ *
+ * Immutable; the DFA states built from it live in each thread's LazyDfa.
+ */
+final class Nfa
+{
+    static final int CHAR = 0;
+    static final int SPLIT = 1;
+    static final int MATCH = 2;
+
+    /** Most NFA states a node may expand to, counted repetitions included. */
+    private static final int MAX_STATES = 100000;
+
+    final int[] op;
+    final int[] out;
+    final int[] out2;
+
+    /** For CHAR states, the classes the state accepts. */
+    final boolean[][] accepts;
+
+    final int start;
+    final int classes;
+    final int[] asciiClass = new int[128];
+
+    /** First char of every class but class 0, ascending. */
+    private final int[] bounds;
+
+    private Nfa(Builder b, int start)
+    {
+        this.op = Arrays.copyOf(b.op, b.size);
+        this.out = Arrays.copyOf(b.out, b.size);
+        this.out2 = Arrays.copyOf(b.out2, b.size);
+        this.start = start;
+        this.bounds = b.partition();
+        this.classes = bounds.length + 1;
+        for (int c = 0; c < 128; c++)
+        {
+            asciiClass[c] = classOfSlow(c);
+        }
+        this.accepts = new boolean[b.size][];
+        for (int s = 0; s < b.size; s++)
+        {
+            if (op[s] == CHAR)
+            {
+                CharSet set = b.sets.get(b.set[s]);
+                boolean[] a = new boolean[classes];
+                for (int cls = 0; cls < classes; cls++)
+                {
+                    a[cls] = set.contains(cls == 0 ? 0 : bounds[cls - 1]);
+                }
+                accepts[s] = a;
+            }
+        }
+    }
+
+    /**
+     * The NFA of node. With search, the NFA may skip any prefix of the input, so
+     * that it finds node anywhere in what follows the start.
+     */
+    static Nfa of(Node node, boolean search)
+    {
+        Builder b = new Builder();
+        int match = b.add(MATCH, -1, -1, -1);
+        int start = b.build(node, match);
+        if (search)
+        {
+            int loop = b.add(SPLIT, start, -1, -1);
+            int any = b.add(CHAR, loop, -1, b.set(CharSet.ANY));
+            b.out2[loop] = any;
+            start = loop;
+        }
+        return new Nfa(b, start);
+    }
+
+    int classOf(char c)
+    {
+        return c < 128 ? asciiClass[c] : classOfSlow(c);
+    }
+
+    private int classOfSlow(int c)
+    {
+        // number of class starts <= c
+        int i = Arrays.binarySearch(bounds, c);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    int size()
+    {
+        return op.length;
+    }
+
+    private static final class Builder
+    {
+        int[] op = new int[16];
+        int[] out = new int[16];
+        int[] out2 = new int[16];
+        int[] set = new int[16];
+        int size;
+        final List<CharSet> sets = new ArrayList<CharSet>();
+
+        int add(int kind, int next, int next2, int setIndex)
+        {
+            if (size == MAX_STATES)
+            {
+                throw new IllegalArgumentException("pattern too large: more than " + MAX_STATES + " NFA states");
+            }
+            if (size == op.length)
+            {
+                op = Arrays.copyOf(op, size * 2);
+                out = Arrays.copyOf(out, size * 2);
+                out2 = Arrays.copyOf(out2, size * 2);
+                set = Arrays.copyOf(set, size * 2);
+            }
+            op[size] = kind;
+            out[size] = next;
+            out2[size] = next2;
+            set[size] = setIndex;
+            return size++;
+        }
+
+        int set(CharSet s)
+        {
+            int i = sets.indexOf(s);
+            if (i < 0)
+            {
+                sets.add(s);
+                i = sets.size() - 1;
+            }
+            return i;
+        }
+
+        /** Builds the states of node, continuing with next; returns the entry state. */
+        int build(Node node, int next)
+        {
+            if (node instanceof Node.Chars)
+            {
+                return add(CHAR, next, -1, set(((Node.Chars) node).set));
+            }
+            if (node instanceof Node.Empty)
+            {
+                return next;
+            }
+            if (node instanceof Node.Group)
+            {
+                return build(((Node.Group) node).body, next);
+            }
+            if (node instanceof Node.Concat)
+            {
+                List<Node> items = ((Node.Concat) node).items;
+                int entry = next;
+                for (int i = items.size() - 1; i >= 0; i--)
+                {
+                    entry = build(items.get(i), entry);
+                }
+                return entry;
+            }
+            if (node instanceof Node.Alt)
+            {
+                List<Node> items = ((Node.Alt) node).items;
+                int entry = build(items.get(items.size() - 1), next);
+                for (int i = items.size() - 2; i >= 0; i--)
+                {
+                    entry = add(SPLIT, build(items.get(i), next), entry, -1);
+                }
+                return entry;
+            }
+            if (node instanceof Node.Repeat)
+            {
+                Node.Repeat r = (Node.Repeat) node;
+                int entry = next;
+                if (r.max == Node.UNBOUNDED)
+                {
+                    int loop = add(SPLIT, -1, next, -1);
+                    // build() may grow out, so it runs before out is read
+                    int body = build(r.body, loop);
+                    out[loop] = body;
+                    entry = loop;
+                }
+                else
+                {
+                    for (int i = r.min; i < r.max; i++)
+                    {
+                        entry = add(SPLIT, build(r.body, entry), next, -1);
+                    }
+                }
+                for (int i = 0; i < r.min; i++)
+                {
+                    entry = build(r.body, entry);
+                }
+                return entry;
+            }
+            throw new IllegalStateException("not regular: " + node.getClass().getSimpleName());
+        }
+
+        /** The sorted starts of the classes, each range boundary of every set being one. */
+        int[] partition()
+        {
+            List<Integer> cuts = new ArrayList<Integer>();
+            for (CharSet s : sets)
+            {
+                for (int i = 0; i < s.getRangeCount(); i++)
+                {
+                    cuts.add(Integer.valueOf(s.getLow(i)));
+                    cuts.add(Integer.valueOf(s.getHigh(i) + 1));
+                }
+            }
+            int[] b = new int[cuts.size()];
+            int n = 0;
+            for (Integer cut : cuts)
+            {
+                if (cut.intValue() > 0 && cut.intValue() <= Character.MAX_VALUE)
+                {
+                    b[n++] = cut.intValue();
+                }
+            }
+            Arrays.sort(b, 0, n);
+            int unique = 0;
+            for (int i = 0; i < n; i++)
+            {
+                if (unique == 0 || b[i] != b[unique - 1])
+                {
+                    b[unique++] = b[i];
+                }
+            }
+            return Arrays.copyOf(b, unique);
+        }
+    }
+}
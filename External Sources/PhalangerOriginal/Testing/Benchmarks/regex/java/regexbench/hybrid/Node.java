@@ -0,0 +1,631 @@
+package regexbench.hybrid;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parsed pattern. A node is regular when the lazy DFA can match it: no
+ * backreference, lookaround or assertion inside, and no capturing group a
+ * backreference refers to, since those need the span of their match. Everything
+ * else is left to the backtracking part of HybridPattern.
+ */
+abstract class Node
+{
+    /** Max of an unbounded repetition. */
+    static final int UNBOUNDED = -1;
+
+    /** Whether the lazy DFA can match this node; referenced holds the groups backreferences use. */
+    abstract boolean isRegular(BitSet referenced);
+
+    /** Whether the node can match the empty string (for lookaround and assertions: does not consume). */
+    abstract boolean isNullable();
+
+    /** The chars a non-empty match can start with. */
+    abstract CharSet firstChars();
+
+    /**
+     * A regular node matching at least what this one matches: lookaround and
+     * assertions become empty, a backreference becomes its group.
+     */
+    abstract Node relax(Node[] groups, BitSet relaxing);
+
+    /** The node matching the reversed strings; only called on regular nodes. */
+    abstract Node reverse();
+
+    /** Fewest chars a match takes. */
+    abstract int minLength();
+
+    /** Most chars a match takes, or UNBOUNDED. */
+    abstract int maxLength();
+
+    static final class Chars extends Node
+    {
+        final CharSet set;
+
+        Chars(CharSet set)
+        {
+            this.set = set;
+        }
+
+        boolean isRegular(BitSet referenced)
+        {
+            return true;
+        }
+
+        boolean isNullable()
+        {
+            return false;
+        }
+
+        CharSet firstChars()
+        {
+            return set;
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            return this;
+        }
+
+        Node reverse()
+        {
+            return this;
+        }
+
+        int minLength()
+        {
+            return 1;
+        }
+
+        int maxLength()
+        {
+            return 1;
+        }
+    }
+
+    static final class Empty extends Node
+    {
+        static final Empty INSTANCE = new Empty();
+
+        boolean isRegular(BitSet referenced)
+        {
+            return true;
+        }
+
+        boolean isNullable()
+        {
+            return true;
+        }
+
+        CharSet firstChars()
+        {
+            return CharSet.EMPTY;
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            return this;
+        }
+
+        Node reverse()
+        {
+            return this;
+        }
+
+        int minLength()
+        {
+            return 0;
+        }
+
+        int maxLength()
+        {
+            return 0;
+        }
+    }
+
+    static final class Concat extends Node
+    {
+        final List<Node> items;
+
+        Concat(List<Node> items)
+        {
+            this.items = items;
+        }
+
+        boolean isRegular(BitSet referenced)
+        {
+            for (Node item : items)
+            {
+                if (!item.isRegular(referenced))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isNullable()
+        {
+            for (Node item : items)
+            {
+                if (!item.isNullable())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        CharSet firstChars()
+        {
+            CharSet first = CharSet.EMPTY;
+            for (Node item : items)
+            {
+                first = first.union(item.firstChars());
+                if (!item.isNullable())
+                {
+                    break;
+                }
+            }
+            return first;
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            List<Node> relaxed = new ArrayList<Node>(items.size());
+            for (Node item : items)
+            {
+                relaxed.add(item.relax(groups, relaxing));
+            }
+            return new Concat(relaxed);
+        }
+
+        Node reverse()
+        {
+            List<Node> reversed = new ArrayList<Node>(items.size());
+            for (Node item : items)
+            {
+                reversed.add(item.reverse());
+            }
+            Collections.reverse(reversed);
+            return new Concat(reversed);
+        }
+
+        int minLength()
+        {
+            int n = 0;
+            for (Node item : items)
+            {
+                n += item.minLength();
+            }
+            return n;
+        }
+
+        int maxLength()
+        {
+            long n = 0;
+            for (Node item : items)
+            {
+                int max = item.maxLength();
+                if (max == UNBOUNDED)
+                {
+                    return UNBOUNDED;
+                }
+                n += max;
+            }
+            return n > Integer.MAX_VALUE ? UNBOUNDED : (int) n;
+        }
+    }
+
+    static final class Alt extends Node
+    {
+        final List<Node> items;
+
+        Alt(List<Node> items)
+        {
+            this.items = items;
+        }
+
+        boolean isRegular(BitSet referenced)
+        {
+            for (Node item : items)
+            {
+                if (!item.isRegular(referenced))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isNullable()
+        {
+            for (Node item : items)
+            {
+                if (item.isNullable())
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        CharSet firstChars()
+        {
+            CharSet first = CharSet.EMPTY;
+            for (Node item : items)
+            {
+                first = first.union(item.firstChars());
+            }
+            return first;
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            List<Node> relaxed = new ArrayList<Node>(items.size());
+            for (Node item : items)
+            {
+                relaxed.add(item.relax(groups, relaxing));
+            }
+            return new Alt(relaxed);
+        }
+
+        Node reverse()
+        {
+            List<Node> reversed = new ArrayList<Node>(items.size());
+            for (Node item : items)
+            {
+                reversed.add(item.reverse());
+            }
+            return new Alt(reversed);
+        }
+
+        int minLength()
+        {
+            int n = Integer.MAX_VALUE;
+            for (Node item : items)
+            {
+                n = Math.min(n, item.minLength());
+            }
+            return n;
+        }
+
+        int maxLength()
+        {
+            int n = 0;
+            for (Node item : items)
+            {
+                int max = item.maxLength();
+                if (max == UNBOUNDED)
+                {
+                    return UNBOUNDED;
+                }
+                n = Math.max(n, max);
+            }
+            return n;
+        }
+    }
+
+    /** body{min,max}; lazy quantifiers are parsed as greedy ones, which match the same inputs. */
+    static final class Repeat extends Node
+    {
+        final Node body;
+        final int min;
+        final int max;
+
+        Repeat(Node body, int min, int max)
+        {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+        }
+
+        boolean isRegular(BitSet referenced)
+        {
+            return body.isRegular(referenced);
+        }
+
+        boolean isNullable()
+        {
+            return min == 0 || body.isNullable();
+        }
+
+        CharSet firstChars()
+        {
+            return max == 0 ? CharSet.EMPTY : body.firstChars();
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            return new Repeat(body.relax(groups, relaxing), min, max);
+        }
+
+        Node reverse()
+        {
+            return new Repeat(body.reverse(), min, max);
+        }
+
+        int minLength()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, (long) min * body.minLength());
+        }
+
+        int maxLength()
+        {
+            int bodyMax = body.maxLength();
+            if (bodyMax == 0 || max == 0)
+            {
+                return 0;
+            }
+            if (max == UNBOUNDED || bodyMax == UNBOUNDED || (long) max * bodyMax > Integer.MAX_VALUE)
+            {
+                return UNBOUNDED;
+            }
+            return max * bodyMax;
+        }
+    }
+
+    /** A capturing group; non-capturing groups are just their body. */
+    static final class Group extends Node
+    {
+        final Node body;
+        final int index;
+
+        Group(Node body, int index)
+        {
+            this.body = body;
+            this.index = index;
+        }
+
+        boolean isRegular(BitSet referenced)
+        {
+            return !referenced.get(index) && body.isRegular(referenced);
+        }
+
+        boolean isNullable()
+        {
+            return body.isNullable();
+        }
+
+        CharSet firstChars()
+        {
+            return body.firstChars();
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            // reached again through a backreference inside it, e.g. ((\1\2?))\2, leave the mark to the outer call
+            boolean outer = relaxing.get(index);
+            relaxing.set(index);
+            Node relaxed = body.relax(groups, relaxing);
+            if (!outer)
+            {
+                relaxing.clear(index);
+            }
+            return relaxed;
+        }
+
+        Node reverse()
+        {
+            return body.reverse();
+        }
+
+        int minLength()
+        {
+            return body.minLength();
+        }
+
+        int maxLength()
+        {
+            return body.maxLength();
+        }
+    }
+
+    static final class Backref extends Node
+    {
+        final int index;
+
+        Backref(int index)
+        {
+            this.index = index;
+        }
+
+        boolean isRegular(BitSet referenced)
+        {
+            return false;
+        }
+
+        boolean isNullable()
+        {
+            return true;
+        }
+
+        CharSet firstChars()
+        {
+            return CharSet.ANY;
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            if (relaxing.get(index))
+            {
+                // a reference from inside its own group: anything at all
+                return new Repeat(new Chars(CharSet.ANY), 0, UNBOUNDED);
+            }
+            // the group may not have matched, in which case the reference fails; the empty string is a superset
+            return groups[index].relax(groups, relaxing);
+        }
+
+        Node reverse()
+        {
+            throw new IllegalStateException("not regular");
+        }
+
+        int minLength()
+        {
+            return 0;
+        }
+
+        int maxLength()
+        {
+            return UNBOUNDED;
+        }
+    }
+
+    static final class Look extends Node
+    {
+        final Node body;
+        final boolean ahead;
+        final boolean negated;
+
+        Look(Node body, boolean ahead, boolean negated)
+        {
+            this.body = body;
+            this.ahead = ahead;
+            this.negated = negated;
+        }
+
+        boolean isRegular(BitSet referenced)
+        {
+            return false;
+        }
+
+        boolean isNullable()
+        {
+            return true;
+        }
+
+        CharSet firstChars()
+        {
+            return CharSet.EMPTY;
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            return Empty.INSTANCE;
+        }
+
+        Node reverse()
+        {
+            throw new IllegalStateException("not regular");
+        }
+
+        int minLength()
+        {
+            return 0;
+        }
+
+        int maxLength()
+        {
+            return 0;
+        }
+    }
+
+    static final class Assert extends Node
+    {
+        /** ^ and \A: start of input (no MULTILINE). */
+        static final int BEGIN = 0;
+
+        /** $ and \Z: end of input, or before a final line terminator. */
+        static final int END_OF_LINE = 1;
+
+        /** \z: end of input. */
+        static final int END = 2;
+
+        static final int WORD_BOUNDARY = 3;
+        static final int NOT_WORD_BOUNDARY = 4;
+
+        /** $ and \Z under UNIX_LINES: end of input, or before a final \n. */
+        static final int END_OF_UNIX_LINE = 5;
+
+        final int kind;
+
+        Assert(int kind)
+        {
+            this.kind = kind;
+        }
+
+        /** Whether the assertion holds at pos, with java.util.regex's semantics. */
+        static boolean test(int kind, CharSequence s, int pos)
+        {
+            int n = s.length();
+            switch (kind)
+            {
+                case BEGIN:
+                    return pos == 0;
+                case END:
+                    return pos == n;
+                case END_OF_LINE:
+                    if (pos == n)
+                    {
+                        return true;
+                    }
+                    if (pos == n - 1)
+                    {
+                        char c = s.charAt(pos);
+                        if (c == '\n')
+                        {
+                            // not between the \r and \n of a final \r\n
+                            return pos == 0 || s.charAt(pos - 1) != '\r';
+                        }
+                        return c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029;
+                    }
+                    return pos == n - 2 && s.charAt(pos) == '\r' && s.charAt(pos + 1) == '\n';
+                case END_OF_UNIX_LINE:
+                    return pos == n || pos == n - 1 && s.charAt(pos) == '\n';
+                case WORD_BOUNDARY:
+                    return isWord(s, pos - 1) != isWord(s, pos);
+                default:
+                    return isWord(s, pos - 1) == isWord(s, pos);
+            }
+        }
+
+        /** \b's notion of a word char, which unlike \w includes non-ASCII letters and digits. */
+        private static boolean isWord(CharSequence s, int i)
+        {
+            if (i < 0 || i >= s.length())
+            {
+                return false;
+            }
+            char c = s.charAt(i);
+            return c == '_' || Character.isLetterOrDigit(c);
+        }
+
+        boolean isRegular(BitSet referenced)
+        {
+            return false;
+        }
+
+        boolean isNullable()
+        {
+            return true;
+        }
+
+        CharSet firstChars()
+        {
+            return CharSet.EMPTY;
+        }
+
+        Node relax(Node[] groups, BitSet relaxing)
+        {
+            return Empty.INSTANCE;
+        }
+
+        Node reverse()
+        {
+            throw new IllegalStateException("not regular");
+        }
+
+        int minLength()
+        {
+            return 0;
+        }
+
+        int maxLength()
+        {
+            return 0;
+        }
+    }
+}
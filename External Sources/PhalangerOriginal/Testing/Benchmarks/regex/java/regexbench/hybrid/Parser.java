@@ -0,0 +1,519 @@
+package regexbench.hybrid;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Parses java.util.regex syntax without flags into Nodes: alternation, capturing
+ * and (?:) groups, lookahead and lookbehind, backreferences \1 to \99, greedy and
+ * lazy quantifiers, classes with ranges and \d \w \s, ., \Q...\E, and the
+ * assertions ^ $ \A \Z \z \b \B. A leading (?d) (UNIX_LINES, as PregTranslator
+ * writes it) makes \n the only line terminator. Anything else, e.g. other inline
+ * flags, atomic groups,
+ * possessive quantifiers, named groups, \p{...} and class intersections, is
+ * rejected with an IllegalArgumentException, as is a backreference outside a
+ * lookaround to a group captured inside it (see HybridPattern).
+ */
+final class Parser
+{
+    /** Largest repetition count accepted; counted repetitions are expanded. */
+    private static final int MAX_COUNT = 1000;
+
+    private final String src;
+    private int pos;
+    private int groupCount;
+    private final List<Node> groups = new ArrayList<Node>();
+    private final BitSet referenced = new BitSet();
+    private boolean unixLines;
+
+    // the lookarounds open at pos, numbered from 1; per group the innermost one it is in, 0 for none
+    private final List<Integer> openLooks = new ArrayList<Integer>();
+    private int lookCount;
+    private final List<Integer> groupLook = new ArrayList<Integer>();
+
+    // per backreference, its group and the lookarounds open around it
+    private final List<Integer> backrefIndex = new ArrayList<Integer>();
+    private final List<BitSet> backrefLooks = new ArrayList<BitSet>();
+
+    Parser(String src)
+    {
+        this.src = src;
+        groups.add(null);
+        groupLook.add(Integer.valueOf(0));
+    }
+
+    Node parse()
+    {
+        if (src.startsWith("(?d)"))
+        {
+            unixLines = true;
+            pos = 4;
+        }
+        Node root = alternation();
+        if (pos < src.length())
+        {
+            throw new IllegalArgumentException("unmatched ) at " + pos);
+        }
+        for (int i = referenced.nextSetBit(0); i >= 0; i = referenced.nextSetBit(i + 1))
+        {
+            if (i > groupCount)
+            {
+                throw new IllegalArgumentException("reference to undefined group \\" + i);
+            }
+        }
+        for (int i = 0; i < backrefIndex.size(); i++)
+        {
+            int index = backrefIndex.get(i).intValue();
+            int look = groupLook.get(index).intValue();
+            if (look != 0 && !backrefLooks.get(i).get(look))
+            {
+                // which capture the lookaround keeps depends on the order alternatives are tried in
+                throw new IllegalArgumentException("backreference \\" + index + " to a group captured inside lookaround not supported");
+            }
+        }
+        return root;
+    }
+
+    /** The capturing groups by index; index 0 is unused. */
+    Node[] getGroups()
+    {
+        return groups.toArray(new Node[groups.size()]);
+    }
+
+    /** The groups some backreference refers to. */
+    BitSet getReferenced()
+    {
+        return referenced;
+    }
+
+    private boolean peek(char c)
+    {
+        return pos < src.length() && src.charAt(pos) == c;
+    }
+
+    private Node alternation()
+    {
+        Node first = sequence();
+        if (!peek('|'))
+        {
+            return first;
+        }
+        List<Node> items = new ArrayList<Node>();
+        items.add(first);
+        while (peek('|'))
+        {
+            pos++;
+            items.add(sequence());
+        }
+        return new Node.Alt(items);
+    }
+
+    private Node sequence()
+    {
+        List<Node> items = new ArrayList<Node>();
+        while (pos < src.length() && !peek('|') && !peek(')'))
+        {
+            if (src.startsWith("\\Q", pos))
+            {
+                pos += 2;
+                int end = src.indexOf("\\E", pos);
+                String quoted = src.substring(pos, end < 0 ? src.length() : end);
+                pos = end < 0 ? src.length() : end + 2;
+                for (int i = 0; i < quoted.length(); i++)
+                {
+                    items.add(new Node.Chars(CharSet.of(quoted.charAt(i))));
+                }
+                // a quantifier after \E applies to the last quoted char
+                if (!quoted.isEmpty())
+                {
+                    items.add(quantified(items.remove(items.size() - 1)));
+                }
+                continue;
+            }
+            items.add(quantified(atom()));
+        }
+        return items.size() == 1 ? items.get(0) : new Node.Concat(items);
+    }
+
+    private Node atom()
+    {
+        char c = src.charAt(pos++);
+        switch (c)
+        {
+            case '(':
+                return group();
+            case '[':
+                return new Node.Chars(characterClass());
+            case '.':
+                return new Node.Chars(unixLines ? CharSet.UNIX_DOT : CharSet.DOT);
+            case '^':
+                return new Node.Assert(Node.Assert.BEGIN);
+            case '$':
+                return new Node.Assert(endOfLine());
+            case '*':
+            case '+':
+            case '?':
+                throw new IllegalArgumentException("dangling meta character '" + c + "' at " + (pos - 1));
+            case '\\':
+                return escape();
+            default:
+                return new Node.Chars(CharSet.of(c));
+        }
+    }
+
+    private int endOfLine()
+    {
+        return unixLines ? Node.Assert.END_OF_UNIX_LINE : Node.Assert.END_OF_LINE;
+    }
+
+    private Node group()
+    {
+        if (!peek('?'))
+        {
+            int index = ++groupCount;
+            groups.add(null);
+            groupLook.add(Integer.valueOf(openLooks.isEmpty() ? 0 : openLooks.get(openLooks.size() - 1).intValue()));
+            Node body = close(alternation());
+            Node group = new Node.Group(body, index);
+            groups.set(index, group);
+            return group;
+        }
+        pos++;
+        if (peek(':'))
+        {
+            pos++;
+            return close(alternation());
+        }
+        if (peek('=') || peek('!'))
+        {
+            boolean negated = src.charAt(pos++) == '!';
+            return new Node.Look(lookBody(), true, negated);
+        }
+        if (src.startsWith("<=", pos) || src.startsWith("<!", pos))
+        {
+            boolean negated = src.charAt(pos + 1) == '!';
+            pos += 2;
+            return new Node.Look(lookBody(), false, negated);
+        }
+        throw new IllegalArgumentException("(?" + (pos < src.length() ? src.charAt(pos) : "") + " not supported");
+    }
+
+    private Node lookBody()
+    {
+        openLooks.add(Integer.valueOf(++lookCount));
+        Node body = close(alternation());
+        openLooks.remove(openLooks.size() - 1);
+        return body;
+    }
+
+    private Node close(Node body)
+    {
+        if (!peek(')'))
+        {
+            throw new IllegalArgumentException("missing )");
+        }
+        pos++;
+        return body;
+    }
+
+    private Node quantified(Node atom)
+    {
+        Node node = atom;
+        while (pos < src.length())
+        {
+            int min;
+            int max;
+            char c = src.charAt(pos);
+            if (c == '*' || c == '+' || c == '?')
+            {
+                pos++;
+                min = c == '+' ? 1 : 0;
+                max = c == '?' ? 1 : Node.UNBOUNDED;
+            }
+            else if (c == '{' && repetitionEnd(pos + 1) >= 0)
+            {
+                int close = repetitionEnd(pos + 1) - 1;
+                String[] bounds = src.substring(pos + 1, close).split(",", -1);
+                min = count(bounds[0]);
+                max = bounds.length == 1 ? min : bounds[1].isEmpty() ? Node.UNBOUNDED : count(bounds[1]);
+                if (max != Node.UNBOUNDED && max < min)
+                {
+                    throw new IllegalArgumentException("repetition {" + min + "," + max + "} out of order");
+                }
+                pos = close + 1;
+            }
+            else
+            {
+                return node;
+            }
+            if (peek('+'))
+            {
+                throw new IllegalArgumentException("possessive quantifiers not supported");
+            }
+            if (peek('?'))
+            {
+                // lazy: the same inputs match, only the chosen match differs
+                pos++;
+            }
+            node = new Node.Repeat(node, min, max);
+        }
+        return node;
+    }
+
+    private static int count(String digits)
+    {
+        if (digits.length() > 4 || Integer.parseInt(digits) > MAX_COUNT)
+        {
+            throw new IllegalArgumentException("repetition counts above " + MAX_COUNT + " not supported");
+        }
+        return Integer.parseInt(digits);
+    }
+
+    /** Index after the '}' of a {n}, {n,} or {n,m} starting at from, or -1 for a literal brace. */
+    private int repetitionEnd(int from)
+    {
+        int i = from;
+        while (i < src.length() && Character.isDigit(src.charAt(i)))
+        {
+            i++;
+        }
+        if (i == from || i >= src.length())
+        {
+            return -1;
+        }
+        if (src.charAt(i) == ',')
+        {
+            i++;
+            while (i < src.length() && Character.isDigit(src.charAt(i)))
+            {
+                i++;
+            }
+        }
+        return i < src.length() && src.charAt(i) == '}' ? i + 1 : -1;
+    }
+
+    private Node escape()
+    {
+        if (pos >= src.length())
+        {
+            throw new IllegalArgumentException("\\ at end of pattern");
+        }
+        char e = src.charAt(pos++);
+        switch (e)
+        {
+            case 'b':
+                return new Node.Assert(Node.Assert.WORD_BOUNDARY);
+            case 'B':
+                return new Node.Assert(Node.Assert.NOT_WORD_BOUNDARY);
+            case 'A':
+                return new Node.Assert(Node.Assert.BEGIN);
+            case 'Z':
+                return new Node.Assert(endOfLine());
+            case 'z':
+                return new Node.Assert(Node.Assert.END);
+            default:
+                if (e >= '1' && e <= '9')
+                {
+                    // Java takes a second digit only if that names an existing group
+                    int index = e - '0';
+                    if (pos < src.length() && src.charAt(pos) >= '0' && src.charAt(pos) <= '9')
+                    {
+                        int two = index * 10 + src.charAt(pos) - '0';
+                        if (two <= groupCount)
+                        {
+                            index = two;
+                            pos++;
+                        }
+                    }
+                    referenced.set(index);
+                    BitSet looks = new BitSet();
+                    for (Integer look : openLooks)
+                    {
+                        looks.set(look.intValue());
+                    }
+                    backrefIndex.add(Integer.valueOf(index));
+                    backrefLooks.add(looks);
+                    return new Node.Backref(index);
+                }
+                CharSet shorthand = shorthand(e);
+                return new Node.Chars(shorthand != null ? shorthand : CharSet.of(escapedChar(e)));
+        }
+    }
+
+    /** \d \w \s and their negations, or null. */
+    private static CharSet shorthand(char e)
+    {
+        switch (e)
+        {
+            case 'd':
+                return CharSet.DIGIT;
+            case 'D':
+                return CharSet.DIGIT.complement();
+            case 'w':
+                return CharSet.WORD;
+            case 'W':
+                return CharSet.WORD.complement();
+            case 's':
+                return CharSet.SPACE;
+            case 'S':
+                return CharSet.SPACE.complement();
+            default:
+                return null;
+        }
+    }
+
+    private int escapedChar(char e)
+    {
+        switch (e)
+        {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case 'a':
+                return 0x07;
+            case 'e':
+                return 0x1B;
+            case '0':
+                return octal();
+            case 'x':
+                return hex(2);
+            case 'u':
+                return hex(4);
+            case 'c':
+                if (pos >= src.length())
+                {
+                    throw new IllegalArgumentException("\\c at end of pattern");
+                }
+                return src.charAt(pos++) ^ 64;
+            default:
+                if (Character.isLetterOrDigit(e))
+                {
+                    throw new IllegalArgumentException("\\" + e + " not supported");
+                }
+                return e;
+        }
+    }
+
+    private int octal()
+    {
+        int value = 0;
+        int start = pos;
+        while (pos < src.length() && pos - start < 3 && src.charAt(pos) >= '0' && src.charAt(pos) <= '7'
+            && value * 8 + src.charAt(pos) - '0' <= 0377)
+        {
+            value = value * 8 + src.charAt(pos++) - '0';
+        }
+        if (pos == start)
+        {
+            throw new IllegalArgumentException("illegal octal escape");
+        }
+        return value;
+    }
+
+    private int hex(int digits)
+    {
+        if (digits == 2 && peek('{'))
+        {
+            int end = src.indexOf('}', pos);
+            if (end < 0)
+            {
+                throw new IllegalArgumentException("missing } in \\x{");
+            }
+            int cp = Integer.parseInt(src.substring(pos + 1, end), 16);
+            if (cp > Character.MAX_VALUE)
+            {
+                throw new IllegalArgumentException("supplementary code points not supported");
+            }
+            pos = end + 1;
+            return cp;
+        }
+        if (pos + digits > src.length())
+        {
+            throw new IllegalArgumentException("illegal hexadecimal escape");
+        }
+        int cp = Integer.parseInt(src.substring(pos, pos + digits), 16);
+        pos += digits;
+        return cp;
+    }
+
+    private CharSet characterClass()
+    {
+        boolean negated = peek('^');
+        if (negated)
+        {
+            pos++;
+        }
+        CharSet.Builder builder = new CharSet.Builder();
+        boolean first = true;
+        while (pos < src.length() && (first || !peek(']')))
+        {
+            first = false;
+            if (peek('[') || src.startsWith("&&", pos))
+            {
+                throw new IllegalArgumentException("nested classes and intersections not supported");
+            }
+            int low = classChar(builder);
+            if (low < 0)
+            {
+                // a shorthand such as \d, already added
+                continue;
+            }
+            if (peek('-') && pos + 1 < src.length() && src.charAt(pos + 1) != ']')
+            {
+                pos++;
+                int high = classChar(null);
+                if (high < low)
+                {
+                    throw new IllegalArgumentException("range out of order in character class");
+                }
+                builder.add(low, high);
+            }
+            else
+            {
+                builder.add(low);
+            }
+        }
+        if (!peek(']'))
+        {
+            throw new IllegalArgumentException("missing ]");
+        }
+        pos++;
+        CharSet set = builder.build();
+        return negated ? set.complement() : set;
+    }
+
+    /**
+     * Reads one class member. Shorthands such as \d are added to shorthands and
+     * return -1; they cannot be part of a range.
+     */
+    private int classChar(CharSet.Builder shorthands)
+    {
+        char c = src.charAt(pos++);
+        if (c != '\\')
+        {
+            return c;
+        }
+        if (pos >= src.length())
+        {
+            throw new IllegalArgumentException("\\ at end of pattern");
+        }
+        char e = src.charAt(pos++);
+        CharSet shorthand = shorthand(e);
+        if (shorthand == null)
+        {
+            return escapedChar(e);
+        }
+        if (shorthands == null)
+        {
+            throw new IllegalArgumentException("\\" + e + " cannot end a range");
+        }
+        shorthands.addAll(shorthand);
+        return -1;
+    }
+}
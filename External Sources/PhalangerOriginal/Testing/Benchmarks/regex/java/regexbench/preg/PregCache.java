@@ -0,0 +1,100 @@
+package regexbench.preg;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import regexbench.RegexDialect;
+
+/**
+ * Memoizes PregTranslator results, so code that calls preg_match() with the same
+ * pattern string over and over translates it once per dialect. This sits on the
+ * hot path of every preg call, so a hit is one ConcurrentHashMap.get() on the
+ * caller's own string: there is one map per dialect and no key object is built.
+ *
+ * Failed translations are cached as well. Like PHP's PCRE cache the size is
+ * bounded: a map that reaches maxEntries is cleared before the next insert, which
+ * keeps code that builds patterns dynamically from growing it without limit.
+ *
+ * Thread-safe; two threads missing on the same pattern may both translate it, and
+ * the first result stored wins.
+ */
+public final class PregCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, PregTranslation>[] byDialect;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PregCache()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public PregCache(int maxEntries)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        @SuppressWarnings("unchecked")
+        ConcurrentHashMap<String, PregTranslation>[] maps =
+            (ConcurrentHashMap<String, PregTranslation>[]) new ConcurrentHashMap<?, ?>[RegexDialect.values().length];
+        byDialect = maps;
+        for (int i = 0; i < byDialect.length; i++)
+        {
+            byDialect[i] = new ConcurrentHashMap<String, PregTranslation>();
+        }
+    }
+
+    public PregTranslation translate(String preg, RegexDialect dialect)
+    {
+        ConcurrentHashMap<String, PregTranslation> translations = byDialect[dialect.ordinal()];
+        PregTranslation translation = translations.get(preg);
+        if (translation != null)
+        {
+            hits.increment();
+            return translation;
+        }
+        misses.increment();
+        translation = PregTranslator.translate(preg, dialect);
+        if (translations.size() >= maxEntries)
+        {
+            translations.clear();
+        }
+        PregTranslation previous = translations.putIfAbsent(preg, translation);
+        return previous != null ? previous : translation;
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (ConcurrentHashMap<String, PregTranslation> translations : byDialect)
+        {
+            size += translations.size();
+        }
+        return size;
+    }
+
+    public void clear()
+    {
+        for (ConcurrentHashMap<String, PregTranslation> translations : byDialect)
+        {
+            translations.clear();
+        }
+        hits.reset();
+        misses.reset();
+    }
+}
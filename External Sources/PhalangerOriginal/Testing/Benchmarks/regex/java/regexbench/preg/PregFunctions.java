@@ -0,0 +1,203 @@
+package regexbench.preg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import regexbench.CompiledRegex;
+
+/**
+ * preg_match(), preg_match_all(), preg_replace(), preg_replace_callback() and
+ * preg_split() on top of CompiledRegex.groups(input, from), with PHP's default flags, so that every
+ * engine does the work PHP code asks of PCRE. Offsets are those of
+ * PREG_OFFSET_CAPTURE: {start0, end0, start1, end1, ...}, -1 for both ends of a
+ * group that did not participate.
+ *
+ * After an empty match the next search starts one char further on. PHP instead
+ * first retries at the same offset for a non-empty match; the two differ only
+ * for patterns that can match the empty string, which Corpus.PREG has none of.
+ */
+public final class PregFunctions
+{
+    /**
+     * The callback of preg_replace_callback(). PHP passes the matched groups as
+     * strings; this gets their offsets instead, so that a callback only copies
+     * the groups it uses.
+     */
+    public interface Callback
+    {
+        /** The replacement for one match; offsets as in match(), owned by the caller. */
+        String replace(CharSequence subject, int[] offsets);
+    }
+
+    private PregFunctions()
+    {
+    }
+
+    /** preg_match(): the offsets of the first match, or null. */
+    public static int[] match(CompiledRegex regex, CharSequence subject)
+    {
+        return normalize(regex.groups(subject, 0));
+    }
+
+    /** preg_match_all() with PREG_SET_ORDER: the offsets of every match, left to right. */
+    public static List<int[]> matchAll(CompiledRegex regex, CharSequence subject)
+    {
+        List<int[]> matches = new ArrayList<int[]>();
+        int from = 0;
+        int n = subject.length();
+        while (from <= n)
+        {
+            int[] offsets = normalize(regex.groups(subject, from));
+            if (offsets == null)
+            {
+                break;
+            }
+            matches.add(offsets);
+            from = next(offsets);
+        }
+        return matches;
+    }
+
+    /**
+     * preg_replace(): every match replaced by replacement, in which $n, ${n} and
+     * \n (n up to 99) stand for group n, and \\ and \$ for a backslash and a
+     * dollar. Groups that did not participate or do not exist are replaced by the
+     * empty string, as in PHP.
+     */
+    public static String replace(CompiledRegex regex, CharSequence subject, String replacement)
+    {
+        return replace(regex, subject, replacement, null);
+    }
+
+    /** preg_replace_callback(): every match replaced by what callback returns for it. */
+    public static String replaceCallback(CompiledRegex regex, CharSequence subject, Callback callback)
+    {
+        return replace(regex, subject, null, callback);
+    }
+
+    /** replace() with replacement, or replaceCallback() with callback. */
+    private static String replace(CompiledRegex regex, CharSequence subject, String replacement, Callback callback)
+    {
+        StringBuilder out = null;
+        int copied = 0;
+        int from = 0;
+        int n = subject.length();
+        while (from <= n)
+        {
+            int[] offsets = normalize(regex.groups(subject, from));
+            if (offsets == null)
+            {
+                break;
+            }
+            if (out == null)
+            {
+                out = new StringBuilder(n + (replacement != null ? replacement.length() : 16));
+            }
+            out.append(subject, copied, offsets[0]);
+            if (callback != null)
+            {
+                out.append(callback.replace(subject, offsets));
+            }
+            else
+            {
+                substitute(out, subject, offsets, replacement);
+            }
+            copied = offsets[1];
+            from = next(offsets);
+        }
+        if (out == null)
+        {
+            return subject.toString();
+        }
+        return out.append(subject, copied, n).toString();
+    }
+
+    /** preg_split() without a limit: the pieces of subject between the matches, empty ones included. */
+    public static List<String> split(CompiledRegex regex, CharSequence subject)
+    {
+        List<String> pieces = new ArrayList<String>();
+        int piece = 0;
+        int from = 0;
+        int n = subject.length();
+        while (from <= n)
+        {
+            int[] offsets = regex.groups(subject, from);
+            if (offsets == null)
+            {
+                break;
+            }
+            pieces.add(subject.subSequence(piece, offsets[0]).toString());
+            piece = offsets[1];
+            from = next(offsets);
+        }
+        pieces.add(subject.subSequence(piece, n).toString());
+        return pieces;
+    }
+
+    /** Where the search after a match continues. */
+    private static int next(int[] offsets)
+    {
+        return offsets[1] > offsets[0] ? offsets[1] : offsets[1] + 1;
+    }
+
+    /** Engines differ in what they report for a group that did not participate; PHP reports -1. */
+    private static int[] normalize(int[] offsets)
+    {
+        if (offsets == null)
+        {
+            return null;
+        }
+        for (int i = 0; i + 1 < offsets.length; i += 2)
+        {
+            if (offsets[i] < 0 || offsets[i + 1] < 0)
+            {
+                offsets[i] = -1;
+                offsets[i + 1] = -1;
+            }
+        }
+        return offsets;
+    }
+
+    private static void substitute(StringBuilder out, CharSequence subject, int[] offsets, String replacement)
+    {
+        int length = replacement.length();
+        for (int i = 0; i < length; i++)
+        {
+            char c = replacement.charAt(i);
+            if ((c == '$' || c == '\\') && i + 1 < length)
+            {
+                int at = i + 1;
+                boolean braced = c == '$' && replacement.charAt(at) == '{';
+                if (braced)
+                {
+                    at++;
+                }
+                int group = -1;
+                int end = at;
+                while (end < length && end - at < 2 && replacement.charAt(end) >= '0' && replacement.charAt(end) <= '9')
+                {
+                    group = (group < 0 ? 0 : group * 10) + (replacement.charAt(end) - '0');
+                    end++;
+                }
+                if (group >= 0 && (!braced || (end < length && replacement.charAt(end) == '}')))
+                {
+                    if (2 * group + 1 < offsets.length && offsets[2 * group] >= 0)
+                    {
+                        out.append(subject, offsets[2 * group], offsets[2 * group + 1]);
+                    }
+                    i = braced ? end : end - 1;
+                    continue;
+                }
+                char escaped = replacement.charAt(i + 1);
+                if (c == '\\' && (escaped == '\\' || escaped == '$'))
+                {
+                    // "\\" and "\$" are a literal backslash and dollar
+                    out.append(escaped);
+                    i++;
+                    continue;
+                }
+            }
+            out.append(c);
+        }
+    }
+}
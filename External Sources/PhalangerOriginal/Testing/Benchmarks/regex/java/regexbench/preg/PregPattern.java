@@ -0,0 +1,164 @@
+package regexbench.preg;
+
+/**
+ * A PHP preg pattern split into its parts: "#body#modifiers". The delimiter is the
+ * first non-blank character, which may be any non-alphanumeric, non-backslash
+ * character; (, [, { and &lt; are closed by their counterparts, as in PHP.
+ *
+ * Supported modifiers are i, m, s, x, u, U, D and A; S and X are accepted and
+ * ignored, like PCRE's study and extra flags that do not change what matches.
+ * Errors are IllegalArgumentExceptions worded like PHP's preg warnings.
+ */
+public final class PregPattern
+{
+    public static final int CASELESS = 1;
+    public static final int MULTILINE = 2;
+    public static final int DOTALL = 4;
+    public static final int EXTENDED = 8;
+    public static final int UTF8 = 16;
+    public static final int UNGREEDY = 32;
+    public static final int DOLLAR_ENDONLY = 64;
+    public static final int ANCHORED = 128;
+
+    private final String source;
+    private final String body;
+    private final int flags;
+
+    private PregPattern(String source, String body, int flags)
+    {
+        this.source = source;
+        this.body = body;
+        this.flags = flags;
+    }
+
+    public static PregPattern parse(String preg)
+    {
+        int start = 0;
+        while (start < preg.length() && Character.isWhitespace(preg.charAt(start)))
+        {
+            start++;
+        }
+        if (start == preg.length())
+        {
+            throw new IllegalArgumentException("Empty regular expression");
+        }
+        char open = preg.charAt(start);
+        if (Character.isLetterOrDigit(open) || open == '\\')
+        {
+            throw new IllegalArgumentException("Delimiter must not be alphanumeric or backslash");
+        }
+        char close = closingDelimiter(open);
+
+        // find the end delimiter; escaped delimiters stay in the body, as in PHP
+        int depth = 1;
+        int end = -1;
+        for (int i = start + 1; i < preg.length(); i++)
+        {
+            char c = preg.charAt(i);
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == close && --depth == 0)
+            {
+                end = i;
+                break;
+            }
+            else if (c == open && open != close)
+            {
+                depth++;
+            }
+        }
+        if (end < 0)
+        {
+            throw new IllegalArgumentException(open == close ? "No ending delimiter '" + close + "' found"
+                : "No ending matching delimiter '" + close + "' found");
+        }
+
+        int flags = 0;
+        for (int i = end + 1; i < preg.length(); i++)
+        {
+            char m = preg.charAt(i);
+            switch (m)
+            {
+                case 'i':
+                    flags |= CASELESS;
+                    break;
+                case 'm':
+                    flags |= MULTILINE;
+                    break;
+                case 's':
+                    flags |= DOTALL;
+                    break;
+                case 'x':
+                    flags |= EXTENDED;
+                    break;
+                case 'u':
+                    flags |= UTF8;
+                    break;
+                case 'U':
+                    flags |= UNGREEDY;
+                    break;
+                case 'D':
+                    flags |= DOLLAR_ENDONLY;
+                    break;
+                case 'A':
+                    flags |= ANCHORED;
+                    break;
+                case 'S':
+                case 'X':
+                case ' ':
+                case '\n':
+                case '\r':
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown modifier '" + m + "'");
+            }
+        }
+        return new PregPattern(preg, preg.substring(start + 1, end), flags);
+    }
+
+    private static char closingDelimiter(char open)
+    {
+        switch (open)
+        {
+            case '(':
+                return ')';
+            case '[':
+                return ']';
+            case '{':
+                return '}';
+            case '<':
+                return '>';
+            default:
+                return open;
+        }
+    }
+
+    /** The pattern as PHP code passes it to preg_match(). */
+    public String getSource()
+    {
+        return source;
+    }
+
+    /** The PCRE pattern between the delimiters. */
+    public String getBody()
+    {
+        return body;
+    }
+
+    public int getFlags()
+    {
+        return flags;
+    }
+
+    public boolean has(int flag)
+    {
+        return (flags & flag) != 0;
+    }
+
+    public String toString()
+    {
+        return source;
+    }
+}
@@ -0,0 +1,56 @@
+package regexbench.preg;
+
+import regexbench.RegexDialect;
+
+/**
+ * Result of translating one preg pattern into one dialect: either the pattern
+ * text the engine should compile or the reason why it cannot be expressed.
+ * Instances are immutable and shared through PregCache.
+ */
+public final class PregTranslation
+{
+    private final String source;
+    private final RegexDialect dialect;
+    private final String pattern;
+    private final String failure;
+
+    PregTranslation(String source, RegexDialect dialect, String pattern, String failure)
+    {
+        this.source = source;
+        this.dialect = dialect;
+        this.pattern = pattern;
+        this.failure = failure;
+    }
+
+    public String getSource()
+    {
+        return source;
+    }
+
+    public RegexDialect getDialect()
+    {
+        return dialect;
+    }
+
+    public boolean isSupported()
+    {
+        return pattern != null;
+    }
+
+    /** The translated pattern, or null when the dialect cannot express it. */
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    /** Why the pattern could not be translated, or null. */
+    public String getFailure()
+    {
+        return failure;
+    }
+
+    public String toString()
+    {
+        return pattern != null ? pattern : "unsupported: " + failure;
+    }
+}
@@ -0,0 +1,1257 @@
+package regexbench.preg;
+
+import regexbench.RegexDialect;
+
+/**
+ * Translates PHP preg patterns into the syntax of a RegexDialect.
+ *
+ * The PCRE body is rewritten token by token rather than passed through:
+ * <ul>
+ * <li>x (extended) is applied here, whitespace and # comments are removed, so no
+ * engine has to agree with PCRE on what x ignores inside character classes;</li>
+ * <li>U (ungreedy) swaps greedy and lazy quantifiers;</li>
+ * <li>D (dollar end only) turns $ into \z;</li>
+ * <li>A (anchored) wraps the pattern in \A(?:...);</li>
+ * <li>i, m and s become a leading inline (?ims) group for JAVA.</li>
+ * </ul>
+ * PCRE's only line terminator is \n. JAVA translations always start with (?d)
+ * (UNIX_LINES) so that . ^ and $ agree. The PERL5 engines have no such flag,
+ * differ among themselves and mostly cannot parse inline flags, so PERL5
+ * translations have none: . is spelled [^\n] without s and (?:[^\n]|\n) with it,
+ * (?s) settings are followed here, i is expanded into [aA] style classes as for
+ * AUTOMATON, $ becomes (?=\n?$) and m is dropped; m with ^ or $, and inline i or
+ * m, are unsupported. Character
+ * escapes are copied only where the dialect reads them the same way; \x, octal
+ * and \c forms become the character they stand for, as \xhh for JAVA and as
+ * the raw character for PERL5, where not every engine knows \x.
+ * For AUTOMATON, which has neither flags nor anchors and always matches the whole
+ * input, i is expanded into [aA] style classes, . excludes \n unless s is given,
+ * \d \w \s become explicit classes, a leading ^ and trailing $ are dropped and every
+ * other non-alphanumeric literal is escaped. Constructs a dialect cannot express
+ * (backreferences and lookaround for automata, named groups for PERL5, recursion
+ * anywhere) make the translation unsupported instead of silently changing what
+ * the pattern matches. PREG engines get the pattern unchanged.
+ *
+ * Translation allocates and parses, so callers that see the same pattern string
+ * repeatedly should go through PregCache.
+ */
+public final class PregTranslator
+{
+    private PregTranslator()
+    {
+    }
+
+    public static PregTranslation translate(String preg, RegexDialect dialect)
+    {
+        PregPattern pattern;
+        try
+        {
+            pattern = PregPattern.parse(preg);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return new PregTranslation(preg, dialect, null, e.getMessage());
+        }
+        return translate(pattern, dialect);
+    }
+
+    public static PregTranslation translate(PregPattern pattern, RegexDialect dialect)
+    {
+        if (dialect == RegexDialect.NONE)
+        {
+            return new PregTranslation(pattern.getSource(), dialect, null, "the engine does not take regular expressions");
+        }
+        if (dialect == RegexDialect.PREG)
+        {
+            return new PregTranslation(pattern.getSource(), dialect, pattern.getSource(), null);
+        }
+        try
+        {
+            return new PregTranslation(pattern.getSource(), dialect, new Translator(pattern, dialect, false).run(), null);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return new PregTranslation(pattern.getSource(), dialect, null, e.getMessage());
+        }
+    }
+
+    /**
+     * Translates into AUTOMATON syntax with preg_match() semantics: the result
+     * matches a whole input exactly when the preg pattern occurs somewhere in it.
+     * Unanchored ends become brics' any-string operator @ (RegExp.ANYSTRING, part
+     * of the default flags), an end anchored with $ also accepts a final newline.
+     * Anchors inside a top-level alternation and multiline anchors cannot be
+     * expressed this way and are unsupported.
+     */
+    public static PregTranslation translateForSearch(String preg)
+    {
+        try
+        {
+            return new PregTranslation(preg, RegexDialect.AUTOMATON, new Translator(PregPattern.parse(preg), RegexDialect.AUTOMATON,
+                true).run(), null);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return new PregTranslation(preg, RegexDialect.AUTOMATON, null, e.getMessage());
+        }
+    }
+
+    /** One translation: a cursor over the PCRE body and the output being built. */
+    private static final class Translator
+    {
+        private static final String JAVA_META = "\\^$.|?*+()[{";
+        private static final String JAVA_CLASS_META = "\\[]&";
+
+        private final PregPattern pattern;
+        private final String src;
+        private final RegexDialect dialect;
+        private final boolean automaton;
+        private final StringBuilder out = new StringBuilder();
+        private int pos;
+        private int depth;
+        private int groups;
+        private final boolean search;
+        private boolean anchoredStart;
+        private boolean anchoredEnd;
+        private boolean endBeforeNewline;
+        private boolean topLevelAlternation;
+        // i is spelled out as [aA] rather than left to a flag
+        private final boolean foldCase;
+        // s as in effect at pos, and as it was outside each open group
+        private boolean dotall;
+        private final java.util.ArrayDeque<Boolean> outerDotall = new java.util.ArrayDeque<Boolean>();
+
+        Translator(PregPattern pattern, RegexDialect dialect, boolean search)
+        {
+            this.search = search;
+            this.pattern = pattern;
+            this.src = pattern.getBody();
+            this.dialect = dialect;
+            this.automaton = dialect == RegexDialect.AUTOMATON;
+            this.dotall = pattern.has(PregPattern.DOTALL);
+            this.foldCase = pattern.has(PregPattern.CASELESS) && (automaton || dialect == RegexDialect.PERL5);
+        }
+
+        String run()
+        {
+            while (pos < src.length())
+            {
+                atom();
+            }
+            if (depth != 0)
+            {
+                throw new IllegalArgumentException("missing )");
+            }
+            if (automaton && search)
+            {
+                return searchForm();
+            }
+            if (automaton)
+            {
+                return out.toString();
+            }
+
+            StringBuilder result = new StringBuilder();
+            String inline = "";
+            if (dialect == RegexDialect.JAVA)
+            {
+                inline = "d" + (pattern.has(PregPattern.CASELESS) ? "i" : "") + (pattern.has(PregPattern.MULTILINE) ? "m" : "")
+                    + (pattern.has(PregPattern.DOTALL) ? "s" : "");
+                if (pattern.has(PregPattern.CASELESS) && pattern.has(PregPattern.UTF8))
+                {
+                    inline += "u";
+                }
+            }
+            if (inline.length() > 0)
+            {
+                result.append("(?").append(inline).append(')');
+            }
+            if (pattern.has(PregPattern.ANCHORED))
+            {
+                return result.append("\\A(?:").append(out).append(')').toString();
+            }
+            return result.append(out).toString();
+        }
+
+        private String searchForm()
+        {
+            boolean anchored = anchoredStart || anchoredEnd;
+            if (anchored && topLevelAlternation)
+            {
+                throw new IllegalArgumentException("anchors in a top-level alternation not supported");
+            }
+            if (anchored && pattern.has(PregPattern.MULTILINE))
+            {
+                throw new IllegalArgumentException("multiline anchors not supported");
+            }
+            StringBuilder result = new StringBuilder();
+            result.append(anchoredStart ? "(" : "@(").append(out).append(')');
+            if (!anchoredEnd)
+            {
+                result.append('@');
+            }
+            else if (endBeforeNewline)
+            {
+                result.append("\\\n?");
+            }
+            return result.toString();
+        }
+
+        private void atom()
+        {
+            char c = src.charAt(pos);
+            if (pattern.has(PregPattern.EXTENDED))
+            {
+                if (Character.isWhitespace(c))
+                {
+                    pos++;
+                    return;
+                }
+                if (c == '#')
+                {
+                    while (pos < src.length() && src.charAt(pos) != '\n')
+                    {
+                        pos++;
+                    }
+                    return;
+                }
+            }
+            pos++;
+            switch (c)
+            {
+                case '\\':
+                    escape();
+                    break;
+                case '[':
+                    characterClass();
+                    break;
+                case '(':
+                    group();
+                    break;
+                case ')':
+                    if (--depth < 0)
+                    {
+                        throw new IllegalArgumentException("unmatched )");
+                    }
+                    dotall = outerDotall.pop().booleanValue();
+                    out.append(')');
+                    break;
+                case '|':
+                    topLevelAlternation |= depth == 0;
+                    out.append('|');
+                    break;
+                case '.':
+                    if (dialect == RegexDialect.PERL5)
+                    {
+                        // some PERL5 engines exclude \r from . as well
+                        out.append(dotall ? "(?:[^\\n]|\\n)" : "[^\\n]");
+                    }
+                    else if (dotall || dialect == RegexDialect.JAVA)
+                    {
+                        out.append('.');
+                    }
+                    else
+                    {
+                        out.append("[^\n]");
+                    }
+                    break;
+                case '^':
+                    if (automaton)
+                    {
+                        requireStart("^");
+                    }
+                    else
+                    {
+                        requireSingleLine("^");
+                        out.append('^');
+                    }
+                    break;
+                case '$':
+                    dollar();
+                    break;
+                case '*':
+                case '+':
+                case '?':
+                    quantifier(String.valueOf(c));
+                    break;
+                case '{':
+                    int end = repetitionEnd(pos);
+                    if (end < 0)
+                    {
+                        literal('{');
+                    }
+                    else
+                    {
+                        String q = src.substring(pos - 1, end);
+                        pos = end;
+                        quantifier(q);
+                    }
+                    break;
+                default:
+                    pos--;
+                    int cp = src.codePointAt(pos);
+                    pos += Character.charCount(cp);
+                    literal(cp);
+                    break;
+            }
+        }
+
+        private void dollar()
+        {
+            if (automaton)
+            {
+                requireEnd("$");
+            }
+            else if (pattern.has(PregPattern.DOLLAR_ENDONLY) && !pattern.has(PregPattern.MULTILINE))
+            {
+                out.append("\\z");
+            }
+            else if (dialect == RegexDialect.PERL5)
+            {
+                // the PERL5 engines' $ is either PCRE's or the very end, spell out PCRE's
+                requireSingleLine("$");
+                out.append("(?=\\n?$)");
+            }
+            else
+            {
+                out.append('$');
+            }
+        }
+
+        /** The PERL5 engines disagree on which characters end a line, see PregTranslationCheck. */
+        private void requireSingleLine(String anchor)
+        {
+            if (dialect == RegexDialect.PERL5 && pattern.has(PregPattern.MULTILINE))
+            {
+                throw new IllegalArgumentException("multiline " + anchor + " not supported");
+            }
+        }
+
+        /** Automata match the whole input, so a start anchor is only allowed where it is implied. */
+        private void requireStart(String anchor)
+        {
+            if (out.length() != 0 || depth != 0)
+            {
+                throw new IllegalArgumentException(anchor + " is only supported at the start of the pattern");
+            }
+            anchoredStart = true;
+        }
+
+        private void requireEnd(String anchor)
+        {
+            if (pos != src.length() || depth != 0)
+            {
+                throw new IllegalArgumentException(anchor + " is only supported at the end of the pattern");
+            }
+            anchoredEnd = true;
+            endBeforeNewline = !anchor.equals("\\z") && !(anchor.equals("$") && pattern.has(PregPattern.DOLLAR_ENDONLY));
+        }
+
+        /** Index after the '}' of a {n}, {n,} or {n,m} repetition starting at from, or -1 for a literal brace. */
+        private int repetitionEnd(int from)
+        {
+            int i = from;
+            int digits = 0;
+            while (i < src.length() && Character.isDigit(src.charAt(i)))
+            {
+                i++;
+                digits++;
+            }
+            if (digits == 0 || i >= src.length())
+            {
+                return -1;
+            }
+            if (src.charAt(i) == ',')
+            {
+                i++;
+                while (i < src.length() && Character.isDigit(src.charAt(i)))
+                {
+                    i++;
+                }
+            }
+            return i < src.length() && src.charAt(i) == '}' ? i + 1 : -1;
+        }
+
+        private void quantifier(String q)
+        {
+            boolean lazy = false;
+            boolean possessive = false;
+            if (pos < src.length() && src.charAt(pos) == '?')
+            {
+                lazy = true;
+                pos++;
+            }
+            else if (pos < src.length() && src.charAt(pos) == '+')
+            {
+                possessive = true;
+                pos++;
+            }
+            if (pattern.has(PregPattern.UNGREEDY) && !possessive)
+            {
+                lazy = !lazy;
+            }
+            out.append(q);
+            if (automaton)
+            {
+                // laziness does not change which inputs match as a whole
+                if (possessive)
+                {
+                    throw new IllegalArgumentException("possessive quantifiers not supported");
+                }
+                return;
+            }
+            if (lazy)
+            {
+                out.append('?');
+            }
+            else if (possessive)
+            {
+                out.append('+');
+            }
+        }
+
+        private void group()
+        {
+            if (pos >= src.length() || src.charAt(pos) != '?')
+            {
+                if (pos < src.length() && src.charAt(pos) == '*')
+                {
+                    throw new IllegalArgumentException("PCRE verbs not supported");
+                }
+                openGroup("(");
+                groups++;
+                return;
+            }
+            pos++;
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("unterminated group");
+            }
+            char g = src.charAt(pos++);
+            switch (g)
+            {
+                case '#':
+                    int close = src.indexOf(')', pos);
+                    if (close < 0)
+                    {
+                        throw new IllegalArgumentException("missing ) after comment");
+                    }
+                    pos = close + 1;
+                    break;
+                case ':':
+                    openGroup(automaton ? "(" : "(?:");
+                    break;
+                case '=':
+                case '!':
+                    unsupportedByAutomaton("lookahead");
+                    openGroup("(?" + g);
+                    break;
+                case '>':
+                    unsupportedByAutomaton("atomic groups");
+                    openGroup("(?>");
+                    break;
+                case '<':
+                    if (pos < src.length() && (src.charAt(pos) == '=' || src.charAt(pos) == '!'))
+                    {
+                        unsupportedByAutomaton("lookbehind");
+                        openGroup("(?<" + src.charAt(pos++));
+                    }
+                    else
+                    {
+                        namedGroup(readName('>'));
+                    }
+                    break;
+                case '\'':
+                    namedGroup(readName('\''));
+                    break;
+                case 'P':
+                    char kind = pos < src.length() ? src.charAt(pos++) : 0;
+                    if (kind == '<')
+                    {
+                        namedGroup(readName('>'));
+                    }
+                    else if (kind == '=')
+                    {
+                        namedBackreference(readName(')'));
+                    }
+                    else
+                    {
+                        throw new IllegalArgumentException("recursion not supported");
+                    }
+                    break;
+                case '|':
+                    throw new IllegalArgumentException("branch reset groups not supported");
+                default:
+                    pos--;
+                    options();
+                    break;
+            }
+        }
+
+        private void openGroup(String text)
+        {
+            out.append(text);
+            depth++;
+            outerDotall.push(Boolean.valueOf(dotall));
+        }
+
+        private void namedGroup(String name)
+        {
+            openGroup(dialect == RegexDialect.JAVA ? "(?<" + name + ">" : "(");
+            groups++;
+        }
+
+        private void namedBackreference(String name)
+        {
+            if (dialect != RegexDialect.JAVA)
+            {
+                throw new IllegalArgumentException("named backreferences not supported");
+            }
+            out.append("\\k<").append(name).append('>');
+        }
+
+        private String readName(char terminator)
+        {
+            int end = src.indexOf(terminator, pos);
+            if (end <= pos)
+            {
+                throw new IllegalArgumentException("malformed group name");
+            }
+            String name = src.substring(pos, end);
+            pos = end + 1;
+            return name;
+        }
+
+        /** Inline options (?imsx-imsx) or (?i:...). */
+        private void options()
+        {
+            int start = pos;
+            while (pos < src.length() && "imsxUXJ-".indexOf(src.charAt(pos)) >= 0)
+            {
+                pos++;
+            }
+            if (pos >= src.length() || (src.charAt(pos) != ')' && src.charAt(pos) != ':'))
+            {
+                if (pos < src.length() && (Character.isDigit(src.charAt(pos)) || "R&+".indexOf(src.charAt(pos)) >= 0))
+                {
+                    throw new IllegalArgumentException("recursion not supported");
+                }
+                throw new IllegalArgumentException("unrecognized character after (?");
+            }
+            String options = src.substring(start, pos);
+            if (automaton)
+            {
+                throw new IllegalArgumentException("inline options not supported");
+            }
+            for (char o : new char[] {'x', 'U', 'X', 'J'})
+            {
+                if (options.indexOf(o) >= 0)
+                {
+                    // these change how the rest of the body is tokenized, only modifiers are supported
+                    throw new IllegalArgumentException("inline option " + o + " not supported");
+                }
+            }
+            // PERL5 translations carry no flags, and only s is followed here
+            String emitted = options;
+            if (dialect == RegexDialect.PERL5)
+            {
+                for (char o : new char[] {'i', 'm'})
+                {
+                    if (options.indexOf(o) >= 0)
+                    {
+                        throw new IllegalArgumentException("inline option " + o + " not supported");
+                    }
+                }
+                emitted = "";
+            }
+            if (src.charAt(pos++) == ':')
+            {
+                openGroup("(?" + emitted + ":");
+            }
+            else if (emitted.length() > 0)
+            {
+                out.append("(?").append(emitted).append(')');
+            }
+            // (?s) lasts to the end of the enclosing group, (?s:...) to the end of its own
+            int s = options.indexOf('s');
+            if (s >= 0)
+            {
+                int minus = options.indexOf('-');
+                dotall = minus < 0 || s < minus;
+            }
+        }
+
+        private void unsupportedByAutomaton(String construct)
+        {
+            if (automaton)
+            {
+                throw new IllegalArgumentException(construct + " not supported");
+            }
+        }
+
+        private void escape()
+        {
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("\\ at end of pattern");
+            }
+            int start = pos - 1;
+            char e = src.charAt(pos++);
+            int cp = escapedChar(e);
+            if (cp >= 0)
+            {
+                // every dialect but AUTOMATON reads \n \t \r \f as PCRE does, keep them readable;
+                // \x takes 0 to 2 digits in PCRE but exactly 2 in Java, so the rest is written out
+                if (!automaton && "ntrf".indexOf(e) >= 0)
+                {
+                    out.append(src, start, pos);
+                }
+                else
+                {
+                    literal(cp);
+                }
+                return;
+            }
+            switch (e)
+            {
+                case 'd':
+                case 'w':
+                case 's':
+                    if (automaton)
+                    {
+                        out.append('[');
+                        shorthand(out, e);
+                        out.append(']');
+                    }
+                    else
+                    {
+                        out.append('\\').append(e);
+                    }
+                    break;
+                case 'D':
+                case 'W':
+                case 'S':
+                    if (automaton)
+                    {
+                        out.append("[^");
+                        shorthand(out, Character.toLowerCase(e));
+                        out.append(']');
+                    }
+                    else
+                    {
+                        out.append('\\').append(e);
+                    }
+                    break;
+                case 'b':
+                case 'B':
+                    unsupportedByAutomaton("word boundaries");
+                    out.append('\\').append(e);
+                    break;
+                case 'A':
+                    if (automaton)
+                    {
+                        requireStart("\\A");
+                    }
+                    else
+                    {
+                        out.append("\\A");
+                    }
+                    break;
+                case 'z':
+                case 'Z':
+                    if (automaton)
+                    {
+                        requireEnd("\\" + e);
+                    }
+                    else
+                    {
+                        out.append('\\').append(e);
+                    }
+                    break;
+                case 'G':
+                    unsupportedByAutomaton("\\G");
+                    out.append("\\G");
+                    break;
+                case 'h':
+                    if (dialect == RegexDialect.JAVA)
+                    {
+                        out.append("\\h");
+                    }
+                    else
+                    {
+                        out.append('[');
+                        classLiteral(out, ' ');
+                        classLiteral(out, '\t');
+                        out.append(']');
+                    }
+                    break;
+                case 'H':
+                case 'v':
+                case 'V':
+                case 'R':
+                    if (dialect != RegexDialect.JAVA)
+                    {
+                        throw new IllegalArgumentException("\\" + e + " not supported");
+                    }
+                    out.append('\\').append(e);
+                    break;
+                case 'p':
+                case 'P':
+                    out.append(property(e));
+                    break;
+                case 'Q':
+                    int end = src.indexOf("\\E", pos);
+                    String quoted = src.substring(pos, end < 0 ? src.length() : end);
+                    pos = end < 0 ? src.length() : end + 2;
+                    for (int i = 0; i < quoted.length();)
+                    {
+                        int q = quoted.codePointAt(i);
+                        literal(q);
+                        i += Character.charCount(q);
+                    }
+                    break;
+                case 'E':
+                    break;
+                case 'g':
+                case 'k':
+                    backreference(e);
+                    break;
+                default:
+                    if (e >= '1' && e <= '9')
+                    {
+                        pos--;
+                        int digitsEnd = pos;
+                        while (digitsEnd < src.length() && Character.isDigit(src.charAt(digitsEnd)))
+                        {
+                            digitsEnd++;
+                        }
+                        numberedBackreference(src.substring(pos, digitsEnd));
+                        pos = digitsEnd;
+                        break;
+                    }
+                    throw new IllegalArgumentException("unrecognized escape \\" + e);
+            }
+        }
+
+        /** \g1, \g{1}, \g{-1}, \g{name}, \k<name>, \k'name' and \k{name}. */
+        private void backreference(char e)
+        {
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("malformed \\" + e);
+            }
+            char open = src.charAt(pos);
+            String ref;
+            if (e == 'g' && (Character.isDigit(open) || open == '-'))
+            {
+                int end = pos + 1;
+                while (end < src.length() && Character.isDigit(src.charAt(end)))
+                {
+                    end++;
+                }
+                ref = src.substring(pos, end);
+                pos = end;
+            }
+            else if (open == '{' || open == '<' || open == '\'')
+            {
+                pos++;
+                ref = readName(open == '{' ? '}' : open == '<' ? '>' : '\'');
+            }
+            else
+            {
+                throw new IllegalArgumentException("malformed \\" + e);
+            }
+
+            if (ref.matches("-?[0-9]+"))
+            {
+                int n = Integer.parseInt(ref);
+                numberedBackreference(Integer.toString(n < 0 ? groups + n + 1 : n));
+            }
+            else
+            {
+                unsupportedByAutomaton("backreferences");
+                namedBackreference(ref);
+            }
+        }
+
+        private void numberedBackreference(String number)
+        {
+            unsupportedByAutomaton("backreferences");
+            if (foldCase)
+            {
+                // the spelled-out i does not reach what a backreference matches
+                throw new IllegalArgumentException("caseless backreferences not supported");
+            }
+            out.append('\\').append(number);
+        }
+
+        /** \pL, \p{Lu}, \p{^Lu}, \p{Greek}; only java.util.regex has Unicode properties. */
+        private String property(char e)
+        {
+            if (dialect != RegexDialect.JAVA)
+            {
+                throw new IllegalArgumentException("Unicode properties not supported");
+            }
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("malformed \\" + e);
+            }
+            String name;
+            if (src.charAt(pos) == '{')
+            {
+                pos++;
+                name = readName('}');
+            }
+            else
+            {
+                name = src.substring(pos, pos + 1);
+                pos++;
+            }
+            if (name.startsWith("^"))
+            {
+                name = name.substring(1);
+                e = e == 'p' ? 'P' : 'p';
+            }
+            // general categories are one or two letters, anything longer is a script
+            if (name.length() > 2 && !name.equals("L&") && !name.equals("Any"))
+            {
+                name = "Is" + name;
+            }
+            else if (name.equals("L&"))
+            {
+                name = "LC";
+            }
+            return "\\" + e + "{" + name + "}";
+        }
+
+        /**
+         * The character a character escape stands for (\n, \xhh, \x{h..}, \cX, \0oo, or
+         * an escaped non-alphanumeric character), or -1 for any other escape.
+         */
+        private int escapedChar(char e)
+        {
+            switch (e)
+            {
+                case 'n':
+                    return '\n';
+                case 't':
+                    return '\t';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'e':
+                    return 0x1B;
+                case 'a':
+                    return 0x07;
+                case 'x':
+                    if (pos < src.length() && src.charAt(pos) == '{')
+                    {
+                        pos++;
+                        String hex = readName('}');
+                        try
+                        {
+                            return Integer.parseInt(hex, 16);
+                        }
+                        catch (NumberFormatException ex)
+                        {
+                            throw new IllegalArgumentException("malformed \\x{" + hex + "}");
+                        }
+                    }
+                    int value = 0;
+                    for (int i = 0; i < 2 && pos < src.length() && Character.digit(src.charAt(pos), 16) >= 0; i++)
+                    {
+                        value = value * 16 + Character.digit(src.charAt(pos++), 16);
+                    }
+                    return value;
+                case 'c':
+                    if (pos >= src.length())
+                    {
+                        throw new IllegalArgumentException("\\c at end of pattern");
+                    }
+                    return Character.toUpperCase(src.charAt(pos++)) ^ 0x40;
+                case '0':
+                    int octal = 0;
+                    for (int i = 0; i < 2 && pos < src.length() && src.charAt(pos) >= '0' && src.charAt(pos) <= '7'; i++)
+                    {
+                        octal = octal * 8 + (src.charAt(pos++) - '0');
+                    }
+                    return octal;
+                default:
+                    return Character.isLetterOrDigit(e) ? -1 : e;
+            }
+        }
+
+        private void literal(int cp)
+        {
+            if (foldCase && !automaton && Character.toLowerCase(cp) != Character.toUpperCase(cp))
+            {
+                out.append('[');
+                caselessClassLiteral(out, cp);
+                out.append(']');
+                return;
+            }
+            if (!automaton)
+            {
+                if (cp < 0x80 && JAVA_META.indexOf(cp) >= 0)
+                {
+                    out.append('\\').append((char) cp);
+                }
+                else if ((cp < 0x20 || cp == 0x7F) && dialect == RegexDialect.JAVA)
+                {
+                    out.append(String.format("\\x%02x", Integer.valueOf(cp)));
+                }
+                else
+                {
+                    out.appendCodePoint(cp);
+                }
+                return;
+            }
+            int lower = Character.toLowerCase(cp);
+            int upper = Character.toUpperCase(cp);
+            if (foldCase && lower != upper)
+            {
+                out.append('[').appendCodePoint(lower).appendCodePoint(upper).append(']');
+            }
+            else
+            {
+                automatonChar(out, cp);
+            }
+        }
+
+        /** brics and its relatives reserve most punctuation; a backslash makes any character literal. */
+        private static void automatonChar(StringBuilder sb, int cp)
+        {
+            if (cp < 0x80 && !Character.isLetterOrDigit(cp))
+            {
+                sb.append('\\');
+            }
+            sb.appendCodePoint(cp);
+        }
+
+        private void characterClass()
+        {
+            StringBuilder cls = new StringBuilder("[");
+            if (pos < src.length() && src.charAt(pos) == '^')
+            {
+                cls.append('^');
+                pos++;
+            }
+            int bodyStart = cls.length();
+            boolean first = true;
+            while (true)
+            {
+                if (pos >= src.length())
+                {
+                    throw new IllegalArgumentException("missing terminating ] for character class");
+                }
+                char c = src.charAt(pos);
+                if (c == ']' && !first)
+                {
+                    pos++;
+                    break;
+                }
+                first = false;
+                if (c == '[' && posixClass(cls))
+                {
+                    continue;
+                }
+                int lo = classChar(cls);
+                if (lo < 0)
+                {
+                    continue;
+                }
+                if (pos + 1 < src.length() && src.charAt(pos) == '-' && src.charAt(pos + 1) != ']')
+                {
+                    pos++;
+                    int hi = classChar(cls);
+                    if (hi < 0)
+                    {
+                        throw new IllegalArgumentException("invalid range in character class");
+                    }
+                    range(cls, lo, hi);
+                }
+                else if (!automaton && lo == '-' && (cls.length() == bodyStart || pos < src.length() && src.charAt(pos) == ']'))
+                {
+                    // a leading or trailing '-' is literal everywhere
+                    cls.append('-');
+                }
+                else
+                {
+                    caselessClassLiteral(cls, lo);
+                }
+            }
+            out.append(cls).append(']');
+        }
+
+        /**
+         * Reads one class member. Returns its code point, or -1 when it was a set such
+         * as \d that has already been appended.
+         */
+        private int classChar(StringBuilder cls)
+        {
+            int c = src.codePointAt(pos);
+            pos += Character.charCount(c);
+            if (c != '\\')
+            {
+                return c;
+            }
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("\\ at end of pattern");
+            }
+            char e = src.charAt(pos++);
+            switch (e)
+            {
+                case 'd':
+                case 'w':
+                case 's':
+                    if (automaton)
+                    {
+                        shorthand(cls, e);
+                    }
+                    else
+                    {
+                        cls.append('\\').append(e);
+                    }
+                    return -1;
+                case 'D':
+                case 'W':
+                case 'S':
+                    unsupportedByAutomaton("negated shorthands inside a character class");
+                    cls.append('\\').append(e);
+                    return -1;
+                case 'h':
+                    if (dialect == RegexDialect.JAVA)
+                    {
+                        cls.append("\\h");
+                    }
+                    else
+                    {
+                        classLiteral(cls, ' ');
+                        classLiteral(cls, '\t');
+                    }
+                    return -1;
+                case 'p':
+                case 'P':
+                    cls.append(property(e));
+                    return -1;
+                case 'b':
+                    return '\b';
+                default:
+                    int cp = escapedChar(e);
+                    if (cp < 0)
+                    {
+                        throw new IllegalArgumentException("unrecognized escape \\" + e + " in character class");
+                    }
+                    return cp;
+            }
+        }
+
+        /** [:name:] inside a class; returns false if the '[' is a plain literal. */
+        private boolean posixClass(StringBuilder cls)
+        {
+            if (!src.startsWith("[:", pos))
+            {
+                return false;
+            }
+            int end = src.indexOf(":]", pos + 2);
+            if (end < 0)
+            {
+                return false;
+            }
+            String name = src.substring(pos + 2, end);
+            boolean negated = name.startsWith("^");
+            if (negated)
+            {
+                name = name.substring(1);
+            }
+            int[] ranges = posixRanges(name);
+            if (ranges == null)
+            {
+                throw new IllegalArgumentException("unknown POSIX class name " + name);
+            }
+            pos = end + 2;
+            if (dialect == RegexDialect.JAVA)
+            {
+                if (name.equals("word"))
+                {
+                    cls.append(negated ? "\\W" : "\\w");
+                }
+                else
+                {
+                    cls.append(negated ? "\\P{" : "\\p{").append(javaPosixName(name)).append('}');
+                }
+                return true;
+            }
+            if (negated)
+            {
+                throw new IllegalArgumentException("negated POSIX classes not supported");
+            }
+            for (int i = 0; i < ranges.length; i += 2)
+            {
+                classRange(cls, ranges[i], ranges[i + 1]);
+            }
+            return true;
+        }
+
+        private static String javaPosixName(String name)
+        {
+            if (name.equals("xdigit"))
+            {
+                return "XDigit";
+            }
+            if (name.equals("ascii"))
+            {
+                return "ASCII";
+            }
+            return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+
+        private static int[] posixRanges(String name)
+        {
+            if (name.equals("alpha"))
+            {
+                return new int[] {'a', 'z', 'A', 'Z'};
+            }
+            if (name.equals("digit"))
+            {
+                return new int[] {'0', '9'};
+            }
+            if (name.equals("alnum"))
+            {
+                return new int[] {'a', 'z', 'A', 'Z', '0', '9'};
+            }
+            if (name.equals("upper"))
+            {
+                return new int[] {'A', 'Z'};
+            }
+            if (name.equals("lower"))
+            {
+                return new int[] {'a', 'z'};
+            }
+            if (name.equals("space"))
+            {
+                return new int[] {'\t', '\r', ' ', ' '};
+            }
+            if (name.equals("blank"))
+            {
+                return new int[] {'\t', '\t', ' ', ' '};
+            }
+            if (name.equals("punct"))
+            {
+                return new int[] {'!', '/', ':', '@', '[', '`', '{', '~'};
+            }
+            if (name.equals("xdigit"))
+            {
+                return new int[] {'0', '9', 'A', 'F', 'a', 'f'};
+            }
+            if (name.equals("word"))
+            {
+                return new int[] {'a', 'z', 'A', 'Z', '0', '9', '_', '_'};
+            }
+            if (name.equals("cntrl"))
+            {
+                return new int[] {0, 0x1F, 0x7F, 0x7F};
+            }
+            if (name.equals("print"))
+            {
+                return new int[] {0x20, 0x7E};
+            }
+            if (name.equals("graph"))
+            {
+                return new int[] {0x21, 0x7E};
+            }
+            if (name.equals("ascii"))
+            {
+                return new int[] {0, 0x7F};
+            }
+            return null;
+        }
+
+        /** Class body for \d, \w or \s spelled out for dialects without shorthands. */
+        private void shorthand(StringBuilder cls, char e)
+        {
+            int[] ranges = e == 'd' ? posixRanges("digit") : e == 'w' ? posixRanges("word") : new int[] {'\t', '\n', 0x0B, 0x0B,
+                '\f', '\r', ' ', ' '};
+            for (int i = 0; i < ranges.length; i += 2)
+            {
+                classRange(cls, ranges[i], ranges[i + 1]);
+            }
+        }
+
+        private void range(StringBuilder cls, int lo, int hi)
+        {
+            if (hi < lo)
+            {
+                throw new IllegalArgumentException("range out of order in character class");
+            }
+            classRange(cls, lo, hi);
+            if (!foldCase)
+            {
+                return;
+            }
+            // automata and PERL5 translations have no case folding, add the other case of letter ranges
+            if (lo >= 'a' && hi <= 'z')
+            {
+                classRange(cls, lo - 32, hi - 32);
+            }
+            else if (lo >= 'A' && hi <= 'Z')
+            {
+                classRange(cls, lo + 32, hi + 32);
+            }
+            else if (lo <= 'z' && hi >= 'A' && !(hi < 'a' && lo > 'Z'))
+            {
+                throw new IllegalArgumentException("caseless ranges across letters and non-letters not supported");
+            }
+        }
+
+        private void classRange(StringBuilder cls, int lo, int hi)
+        {
+            classLiteral(cls, lo);
+            if (hi != lo)
+            {
+                cls.append('-');
+                classLiteral(cls, hi);
+            }
+        }
+
+        private void caselessClassLiteral(StringBuilder cls, int cp)
+        {
+            classLiteral(cls, cp);
+            if (foldCase)
+            {
+                int lower = Character.toLowerCase(cp);
+                int upper = Character.toUpperCase(cp);
+                if (lower != cp)
+                {
+                    classLiteral(cls, lower);
+                }
+                if (upper != cp)
+                {
+                    classLiteral(cls, upper);
+                }
+            }
+        }
+
+        private void classLiteral(StringBuilder cls, int cp)
+        {
+            if (automaton)
+            {
+                automatonChar(cls, cp);
+            }
+            else if (cp < 0x80 && (JAVA_CLASS_META.indexOf(cp) >= 0 || cp == '-' || cp == '^'))
+            {
+                cls.append('\\').append((char) cp);
+            }
+            else if ((cp < 0x20 || cp == 0x7F) && dialect == RegexDialect.JAVA)
+            {
+                cls.append(String.format("\\x%02x", Integer.valueOf(cp)));
+            }
+            else
+            {
+                cls.appendCodePoint(cp);
+            }
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package regexbench.preg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts the literal factors every match of a preg pattern must contain, e.g.
+ * "usd " for "#usd [+-]?[0-9]+.[0-9][0-9]#" and "{" and ":" for
+ * "#\{(\d+):(([^}](?!-} ))*)#". An input that lacks one of them cannot match, so
+ * a substring search can reject it before the engine runs (see LiteralPrefilter).
+ *
+ * The analysis is conservative: a factor is a run of literal characters that is
+ * neither optional nor repeated, taken from the top level and from groups that
+ * must occur at least once. Alternations, lookaround and character classes
+ * contribute nothing and end the current run. Caseless patterns, (?i) groups,
+ * recursion and subroutine calls such as (?R) and (?1), callouts (?C...) and
+ * verbs (*...) give no factors at all, as do patterns PregPattern cannot parse.
+ * Extended mode is followed per group, as (?x), (?-x) and (?x:...) set it.
+ */
+public final class RequiredLiterals
+{
+    private RequiredLiterals()
+    {
+    }
+
+    /** The required factors of preg, in pattern order; empty when there are none. */
+    public static List<String> of(String preg)
+    {
+        try
+        {
+            return of(PregPattern.parse(preg));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Collections.emptyList();
+        }
+    }
+
+    public static List<String> of(PregPattern pattern)
+    {
+        if (pattern.has(PregPattern.CASELESS))
+        {
+            return Collections.emptyList();
+        }
+        Analyzer analyzer = new Analyzer(pattern.getBody(), pattern.has(PregPattern.EXTENDED));
+        try
+        {
+            Set<String> factors = new LinkedHashSet<String>(analyzer.alternation());
+            return Collections.unmodifiableList(new ArrayList<String>(factors));
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Collections.emptyList();
+        }
+    }
+
+    /** A cursor over the PCRE body; throws IllegalArgumentException to give up on the pattern. */
+    private static final class Analyzer
+    {
+        /** The letters of an option setting such as (?im-sx) or (?U:...). */
+        private static final String OPTION_LETTERS = "imsxUXJ";
+
+        private final String src;
+        private int pos;
+
+        /** x as in effect at pos; a group restores it when it closes. */
+        private boolean extended;
+
+        /** Whether the last quantifier read allows more than one occurrence. */
+        private boolean repeated;
+
+        Analyzer(String src, boolean extended)
+        {
+            this.src = src;
+            this.extended = extended;
+        }
+
+        /** Factors of branch|branch|...; only a single branch has any. */
+        List<String> alternation()
+        {
+            List<String> factors = sequence();
+            while (pos < src.length() && src.charAt(pos) == '|')
+            {
+                pos++;
+                sequence();
+                factors = Collections.emptyList();
+            }
+            return factors;
+        }
+
+        private List<String> sequence()
+        {
+            List<String> factors = new ArrayList<String>();
+            StringBuilder run = new StringBuilder();
+            while (pos < src.length())
+            {
+                char c = src.charAt(pos);
+                if (c == '|' || c == ')')
+                {
+                    break;
+                }
+                if (extended && skipExtended())
+                {
+                    continue;
+                }
+                pos++;
+                int literal = -1;
+                List<String> group = null;
+                switch (c)
+                {
+                    case '\\':
+                        literal = escape();
+                        break;
+                    case '[':
+                        skipClass();
+                        break;
+                    case '(':
+                        group = group();
+                        if (group == null)
+                        {
+                            // a comment or an option setting such as (?m), not an atom
+                            continue;
+                        }
+                        break;
+                    case '.':
+                    case '^':
+                    case '$':
+                        break;
+                    default:
+                        literal = c;
+                        break;
+                }
+                int min = quantifier();
+                if (literal >= 0 && min == 1 && !repeated)
+                {
+                    run.append((char) literal);
+                    continue;
+                }
+                if (literal >= 0 && min >= 1)
+                {
+                    // a+ or a{2,}: the character is required, but what follows need not be adjacent to it
+                    run.append((char) literal);
+                }
+                flush(run, factors);
+                if (group != null && min >= 1)
+                {
+                    factors.addAll(group);
+                }
+            }
+            flush(run, factors);
+            return factors;
+        }
+
+        private static void flush(StringBuilder run, List<String> factors)
+        {
+            if (run.length() > 0)
+            {
+                factors.add(run.toString());
+                run.setLength(0);
+            }
+        }
+
+        /** Skips whitespace and # comments under x; returns whether anything was skipped. */
+        private boolean skipExtended()
+        {
+            char c = src.charAt(pos);
+            if (Character.isWhitespace(c))
+            {
+                pos++;
+                return true;
+            }
+            if (c == '#')
+            {
+                while (pos < src.length() && src.charAt(pos) != '\n')
+                {
+                    pos++;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /** Reads an optional quantifier and returns its minimum, 1 when there is none. */
+        private int quantifier()
+        {
+            repeated = false;
+            while (extended && pos < src.length() && skipExtended())
+            {
+                // under x, whitespace and comments may separate an atom from its quantifier
+            }
+            if (pos >= src.length())
+            {
+                return 1;
+            }
+            int min;
+            char c = src.charAt(pos);
+            if (c == '*' || c == '?' || c == '+')
+            {
+                pos++;
+                min = c == '+' ? 1 : 0;
+                repeated = c != '?';
+            }
+            else if (c == '{' && repetitionEnd(pos + 1) >= 0)
+            {
+                int end = repetitionEnd(pos + 1);
+                String q = src.substring(pos + 1, end - 1);
+                int comma = q.indexOf(',');
+                min = Integer.parseInt(comma < 0 ? q : q.substring(0, comma));
+                repeated = comma >= 0 ? comma == q.length() - 1 || Integer.parseInt(q.substring(comma + 1)) > 1 : min > 1;
+                pos = end;
+            }
+            else
+            {
+                return 1;
+            }
+            if (pos < src.length() && (src.charAt(pos) == '?' || src.charAt(pos) == '+'))
+            {
+                // lazy or possessive
+                pos++;
+            }
+            return min;
+        }
+
+        /** Index after the '}' of a {n}, {n,} or {n,m} starting at from, or -1 for a literal brace. */
+        private int repetitionEnd(int from)
+        {
+            int i = from;
+            while (i < src.length() && Character.isDigit(src.charAt(i)))
+            {
+                i++;
+            }
+            if (i == from || i >= src.length())
+            {
+                return -1;
+            }
+            if (src.charAt(i) == ',')
+            {
+                i++;
+                while (i < src.length() && Character.isDigit(src.charAt(i)))
+                {
+                    i++;
+                }
+            }
+            return i < src.length() && src.charAt(i) == '}' ? i + 1 : -1;
+        }
+
+        /** Reads the escape after a backslash; returns its character, or -1 if it is not a literal. */
+        private int escape()
+        {
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("\\ at end of pattern");
+            }
+            char e = src.charAt(pos++);
+            switch (e)
+            {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'e':
+                    return 0x1B;
+                case 'a':
+                    return 0x07;
+                case 'x':
+                    return hex();
+                case 'p':
+                case 'P':
+                case 'g':
+                case 'k':
+                    skipName(e);
+                    return -1;
+                case 'Q':
+                    int end = src.indexOf("\\E", pos);
+                    pos = end < 0 ? src.length() : end + 2;
+                    return -1;
+                default:
+                    if (Character.isLetterOrDigit(e))
+                    {
+                        // classes, assertions, backreferences and octal escapes
+                        while (Character.isDigit(e) && pos < src.length() && Character.isDigit(src.charAt(pos)))
+                        {
+                            pos++;
+                        }
+                        return -1;
+                    }
+                    return e;
+            }
+        }
+
+        private int hex()
+        {
+            if (pos < src.length() && src.charAt(pos) == '{')
+            {
+                int end = src.indexOf('}', pos);
+                if (end < 0)
+                {
+                    throw new IllegalArgumentException("missing } in \\x{");
+                }
+                int cp = Integer.parseInt(src.substring(pos + 1, end), 16);
+                pos = end + 1;
+                return cp <= Character.MAX_VALUE ? cp : -1;
+            }
+            int start = pos;
+            while (pos < src.length() && pos - start < 2 && Character.digit(src.charAt(pos), 16) >= 0)
+            {
+                pos++;
+            }
+            return pos == start ? 0 : Integer.parseInt(src.substring(start, pos), 16);
+        }
+
+        /** Skips what follows \p, \P, \g or \k: a {name}, &lt;name&gt; or 'name', or a letter or (signed) number. */
+        private void skipName(char e)
+        {
+            if (pos >= src.length())
+            {
+                return;
+            }
+            char open = src.charAt(pos);
+            char close = open == '{' ? '}' : open == '<' ? '>' : open == '\'' ? '\'' : 0;
+            if (close != 0)
+            {
+                int end = src.indexOf(close, pos + 1);
+                pos = end < 0 ? src.length() : end + 1;
+            }
+            else if (e == 'p' || e == 'P')
+            {
+                pos++;
+            }
+            else
+            {
+                if (open == '-' || open == '+')
+                {
+                    pos++;
+                }
+                while (pos < src.length() && Character.isDigit(src.charAt(pos)))
+                {
+                    pos++;
+                }
+            }
+        }
+
+        private void skipClass()
+        {
+            if (pos < src.length() && src.charAt(pos) == '^')
+            {
+                pos++;
+            }
+            if (pos < src.length() && src.charAt(pos) == ']')
+            {
+                pos++;
+            }
+            while (pos < src.length() && src.charAt(pos) != ']')
+            {
+                if (src.charAt(pos) == '\\')
+                {
+                    pos++;
+                }
+                else if (src.startsWith("[:", pos))
+                {
+                    int end = src.indexOf(":]", pos + 2);
+                    pos = end < 0 ? pos : end + 1;
+                }
+                pos++;
+            }
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("missing ]");
+            }
+            pos++;
+        }
+
+        /**
+         * Reads a group after its '('. Returns its factors, an empty list for
+         * lookaround, or null for comments and option settings.
+         */
+        private List<String> group()
+        {
+            boolean outer = extended;
+            boolean lookaround = false;
+            if (src.startsWith("*", pos))
+            {
+                // (*UTF8), (*SKIP) and the like change how the pattern is matched
+                throw new IllegalArgumentException("verb (*");
+            }
+            if (src.startsWith("?", pos))
+            {
+                pos++;
+                char c = pos < src.length() ? src.charAt(pos) : ')';
+                if (c == '#')
+                {
+                    int end = src.indexOf(')', pos);
+                    pos = end < 0 ? src.length() : end + 1;
+                    return null;
+                }
+                if (c == '=' || c == '!')
+                {
+                    pos++;
+                    lookaround = true;
+                }
+                else if (src.startsWith("<=", pos) || src.startsWith("<!", pos))
+                {
+                    pos += 2;
+                    lookaround = true;
+                }
+                else if (c == ':' || c == '|' || c == '>')
+                {
+                    pos++;
+                }
+                else if (c == '<' || c == '\'' || src.startsWith("P<", pos))
+                {
+                    int end = src.indexOf(c == '\'' ? '\'' : '>', pos + (c == 'P' ? 2 : 1));
+                    if (end < 0)
+                    {
+                        throw new IllegalArgumentException("unterminated group name");
+                    }
+                    pos = end + 1;
+                }
+                else
+                {
+                    // option letters, then ')' for a setting or ':' for a group; anything else, such as (?R), (?1),
+                    // a callout (?C) or a condition, is not analyzed
+                    int start = pos;
+                    while (pos < src.length() && (OPTION_LETTERS.indexOf(src.charAt(pos)) >= 0 || src.charAt(pos) == '-'))
+                    {
+                        pos++;
+                    }
+                    String options = src.substring(start, pos);
+                    if (pos >= src.length() || (src.charAt(pos) != ')' && src.charAt(pos) != ':') || options.indexOf('-')
+                        != options.lastIndexOf('-'))
+                    {
+                        throw new IllegalArgumentException("unsupported group (?" + options);
+                    }
+                    int minus = options.indexOf('-');
+                    if ((minus < 0 ? options : options.substring(0, minus)).indexOf('i') >= 0)
+                    {
+                        throw new IllegalArgumentException("caseless group");
+                    }
+                    int x = options.indexOf('x');
+                    if (x >= 0)
+                    {
+                        extended = minus < 0 || x < minus;
+                    }
+                    if (src.charAt(pos++) == ')')
+                    {
+                        // a setting lasts to the end of the enclosing group
+                        return null;
+                    }
+                }
+            }
+            List<String> factors = alternation();
+            if (pos >= src.length())
+            {
+                throw new IllegalArgumentException("missing )");
+            }
+            pos++;
+            extended = outer;
+            return lookaround ? new ArrayList<String>() : factors;
+        }
+    }
+}
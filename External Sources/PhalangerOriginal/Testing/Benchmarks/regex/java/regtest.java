@@ -20,1090 +20,243 @@ public class regtest
      * 
      */
 
-    private static final String[] _re = {"^(([^:]+)://)?([^:/]+)(:([0-9]+))?(/.*)", // URL match
-        "(([^:]+)://)?([^:/]+)(:([0-9]+))?(/.*)", // URL match without starting ^
-        "usd [+-]?[0-9]+.[0-9][0-9]", // Canonical US dollar amount
-        "\\b(\\w+)(\\s+\\1)+\\b", // Duplicate words
-        "\\{(\\d+):(([^}](?!-} ))*)", // this is meant to match against the "some more text and ..." but it causes ORO Matcher
-    								  // to fail, so we won't include this by default... it is also WAY too slow to test
-                                      // we will test large string 10 times
-    };
+    private static final String[] _re = regexbench.Corpus.RE;
 
-    private static final String[] _str = {
-        "http://www.linux.com/",
-        "http://www.thelinuxshow.com/main.php3",
-        "usd 1234.00",
-        "he said she said he said no",
-        "same same same",
-        "{1:\n" + "this is some more text - and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more\n"
-            + "this is some more text and some more and some more and even more at the end\n" + "-}\n", // very large bit of text...
-
-    };
-
-    private static boolean[][] expectedMatch = new boolean[_re.length][_str.length];
-
-    static
-    {
-        expectedMatch[0][0] = true;
-        expectedMatch[0][1] = true;
-        expectedMatch[0][2] = false;
-        expectedMatch[0][3] = false;
-        expectedMatch[0][4] = false;
-        expectedMatch[0][5] = false;
-        expectedMatch[1][0] = true;
-        expectedMatch[1][1] = true;
-        expectedMatch[1][2] = false;
-        expectedMatch[1][3] = false;
-        expectedMatch[1][4] = false;
-        expectedMatch[1][5] = false;
-        expectedMatch[2][0] = false;
-        expectedMatch[2][1] = false;
-        expectedMatch[2][2] = true;
-        expectedMatch[2][3] = false;
-        expectedMatch[2][4] = false;
-        expectedMatch[2][5] = false;
-        expectedMatch[3][0] = false;
-        expectedMatch[3][1] = false;
-        expectedMatch[3][2] = false;
-        expectedMatch[3][3] = false;
-        expectedMatch[3][4] = true;
-        expectedMatch[3][5] = false;
-        expectedMatch[4][0] = false;
-        expectedMatch[4][1] = false;
-        expectedMatch[4][2] = false;
-        expectedMatch[4][3] = false;
-        expectedMatch[4][4] = false;
-        expectedMatch[4][5] = false;
-    }
+    private static final String[] _str = regexbench.Corpus.STR;
 
     private static boolean debug = false;
     private static boolean html = true;
 
-    private final static int ITERATIONS = 10000;
-
     public static final void main(String[] args)
     {
         try
         {
-            // org.apache.regexp.* test
-            if (debug) System.out.println("Testing org.apache.regexp.RE...");
-            long[][][] timeTaken = new long[_re.length][ITERATIONS][_str.length];
-            boolean[][] matches = new boolean[_re.length][_str.length];
-            long startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            String mode = args.length > 0 ? args[0] : "";
+            if (mode.equals("scaling"))
             {
-				if (debug)
-				{
-					System.out.print("New regnum " + regnum + "...\n");
-				}
-                try
-                {
-                    org.apache.regexp.RE regexpr = new org.apache.regexp.RE(_re[regnum]);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
-                    {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            boolean b = regexpr.match(_str[strnum]);
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
-                }
-                catch (Throwable e)
-                {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + "  failed badly");
-                    }
-                }
+                // throughput vs. thread count, see regexbench.ScalingBenchmark
+                new regexbench.ScalingBenchmark(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                return;
             }
-            long endTime = System.currentTimeMillis();
-            printResult("org.apache.regexp.RE", timeTaken, (endTime - startTime), matches, html);
-            // ----------------------//
 
-			System.out.println("Testing com.stevesoft.pat.Regex...");
-			
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            if (mode.equals("compile"))
             {
-				try
-                {
-					com.stevesoft.pat.Regex regexpr = new com.stevesoft.pat.Regex(_re[regnum]);
-					int testedAgainstLargeString = 0;
-					for (int itter = 0; itter < ITERATIONS; itter++)
-					{
-						for (int strnum = 0; strnum < _str.length; strnum++)
-						{
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-							boolean b = regexpr.search(_str[strnum]);
-							matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-							timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
-                }
-                catch (Throwable e)
-                {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + "  failed badly");
-                    }
-                }
+                // compile cost and break-even against a baseline engine, see regexbench.CompileCost
+                new regexbench.CompileCost(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                return;
             }
-            endTime = System.currentTimeMillis();
-            printResult("com.stevesoft.pat.Regex", timeTaken, (endTime - startTime), matches, html);
-            // ----------------------//
-            
-            // System.out.println("Testing com.ibm.regex.RegularExpression...");
-
-            // startTime = System.currentTimeMillis();
-            // for (int regnum = 0; regnum < _re.length; regnum++)
-            // {
-                // com.ibm.regex.RegularExpression regexpr = new com.ibm.regex.RegularExpression(_re[regnum]);
-                // int testedAgainstLargeString = 0;
-                // for (int itter = 0; itter < ITERATIONS; itter++)
-                // {
-                    // for (int strnum = 0; strnum < _str.length; strnum++)
-                    // {
-						// if (debug && (itter % 1000) == 0)
-							// {
-								// System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							// }
-							
-							// if (debug && (itter % 1000) == 0)
-                            // {
-                                // System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            // }
-                            
-                            // // only test the big one 10 iterations only per regex
-                            // if (testedAgainstLargeString > 10 && strnum == 5)
-                            // {
-                                // break;
-							// }
-							
-							// long iterStarTime = System.currentTimeMillis();
-                        // boolean b = regexpr.matches(_str[strnum]);
-                        // matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                        // timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // // count how many times we test against the large string on this regex
-                            // if (strnum == 5)
-                            // {
-								// testedAgainstLargeString++;
-							// }
-                            
-                            // if (debug && (itter % 1000) == 0)
-                            // {
-                                // System.out.print(b);
-                            // }
-                            
-                            // if (debug && (itter % 1000) == 0)
-							// {
-								// System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							// }
-                        // }
-                    // }
-            // }
-            // endTime = System.currentTimeMillis();
-            // printResult("com.ibm.regex.RegularExpression", timeTaken, (endTime - startTime), matches, html);
-            
-            // ----------------------//
 
-			System.out.println("Testing kmy.regex.util.Regex...");
-
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            if (mode.equals("scan"))
             {
-                try
+                // parallel grep over memory-mapped files given as further arguments, see regexbench.CorpusScan
+                java.util.List<java.io.File> files = new java.util.ArrayList<java.io.File>();
+                for (int i = 1; i < args.length; i++)
                 {
-                    kmy.regex.util.Regex regexpr = kmy.regex.util.Regex.createRegex(_re[regnum]);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
-                    {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            boolean b = regexpr.matches(_str[strnum]);
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
-                }
-                catch (Throwable th)
-                {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + " failed badly");
-                    }
+                    files.add(new java.io.File(args[i]));
                 }
+                new regexbench.CorpusScan(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load(), files);
+                return;
             }
-            endTime = System.currentTimeMillis();
-            printResult("kmy.regex.util.Regex", timeTaken, (endTime - startTime), matches, html);
-            // ----------------------//
-            // jdk 1.4 version
-            
-            System.out.println("Testing java.util.regex.Pattern...");
 
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            if (mode.equals("set"))
             {
-                try
-                {
-                    java.util.regex.Pattern regexpr = java.util.regex.Pattern.compile(_re[regnum]);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
-                    {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            java.util.regex.Matcher m = regexpr.matcher(_str[strnum]);
-                            boolean b = m.find();
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
-                }
-                catch (Throwable e)
+                // all patterns in one pass vs. one pattern at a time, see regexbench.RegexSetComparison
+                new regexbench.RegexSetComparison(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                return;
+            }
+
+            if (mode.equals("prefilter"))
+            {
+                // required-literal prefilter in front of every engine, see regexbench.PrefilterComparison
+                int wrong = new regexbench.PrefilterComparison(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                if (wrong > 0)
                 {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + "  failed badly");
-                    }
+                    System.exit(1);
                 }
+                return;
             }
-            endTime = System.currentTimeMillis();
-            printResult("java.util.regex.Pattern", timeTaken, (endTime - startTime), matches, html);
-            // ----------------------//
 
-			System.out.println("Testing jregex.Pattern...");
+            if (mode.equals("functions"))
+            {
+                // preg_match with groups, preg_match_all, preg_replace and preg_split, see regexbench.PregFunctionComparison
+                new regexbench.PregFunctionComparison(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                return;
+            }
 
-            // jregex.Pattern version
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            if (mode.equals("compare"))
             {
-                try
-                {
-                    jregex.Pattern regexpr = new jregex.Pattern(_re[regnum]);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
-                    {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            jregex.Matcher m = regexpr.matcher(_str[strnum]);
-                            boolean b = m.matches();
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
-                }
-                catch (Throwable e)
+                // statistical comparison of two runs from the history directory, see regexbench.RunComparison
+                int slower = new regexbench.RunComparison(new regexbench.Report(System.out, html)).run(files(args[1]), files(args[2]));
+                if (slower > 0)
                 {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + "  failed badly");
-                    }
+                    // lets scripts fail a build on a regression
+                    System.exit(1);
                 }
+                return;
             }
-            endTime = System.currentTimeMillis();
-            printResult("jregex.Pattern", timeTaken, (endTime - startTime), matches, html);
 
-            // ----------------------//
-			System.out.println("Testing org.apache.oro.text.regex.Perl5Matcher...");
-            // org.apache.oro.text.regex.Perl5Matcher version
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            if (mode.equals("translate"))
             {
-                try
+                // preg patterns through PregTranslator and every engine against PCRE's answers, see regexbench.PregTranslationCheck
+                int wrong = new regexbench.PregTranslationCheck(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                if (wrong > 0)
                 {
-                    org.apache.oro.text.regex.Perl5Compiler perl5Compiler = new org.apache.oro.text.regex.Perl5Compiler();
-                    org.apache.oro.text.regex.Perl5Matcher perl5Matcher = new org.apache.oro.text.regex.Perl5Matcher();
-                    org.apache.oro.text.regex.Pattern regexpr = perl5Compiler.compile(_re[regnum]);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
-                    {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            boolean b = perl5Matcher.matches(_str[strnum], regexpr);
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
+                    System.exit(1);
                 }
-                catch (Throwable e)
+                return;
+            }
+
+            if (mode.equals("hybrid"))
+            {
+                // regexbench.hybrid against java.util.regex on its backtracking corner cases, see regexbench.HybridCheck
+                int wrong = new regexbench.HybridCheck(new regexbench.Report(System.out, html)).run();
+                if (wrong > 0)
                 {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + "  failed badly");
-                    }
+                    System.exit(1);
                 }
+                return;
             }
-            endTime = System.currentTimeMillis();
-            printResult("org.apache.oro.text.regex.Perl5Matcher", timeTaken, (endTime - startTime), matches, html);
 
-            // ----------------------//
-			// System.out.println("Testing RegularExpression.RE...");
-            // // RegularExpression.RE version
-            
-            // startTime = System.currentTimeMillis();
-            // for (int regnum = 0; regnum < _re.length; regnum++)
-            // {
-                // try
-                // {
-                    // RegularExpression.RE regexpr = new RegularExpression.RE(_re[regnum], true);
-                    // int testedAgainstLargeString = 0;
-                    // for (int itter = 0; itter < ITERATIONS; itter++)
-                    // {
-                        // for (int strnum = 0; strnum < _str.length; strnum++)
-                        // {
-							// if (debug && (itter % 1000) == 0)
-							// {
-								// System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							// }
-							
-							// if (debug && (itter % 1000) == 0)
-                            // {
-                                // System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            // }
-                            
-                            // // only test the big one 10 iterations only per regex
-                            // if (testedAgainstLargeString > 10 && strnum == 5)
-                            // {
-                                // break;
-							// }
-							
-							// long iterStarTime = System.currentTimeMillis();
-                            // boolean b = regexpr.matches(_str[strnum]);
-                            // matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            // timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // // count how many times we test against the large string on this regex
-                            // if (strnum == 5)
-                            // {
-								// testedAgainstLargeString++;
-							// }
-                            
-                            // if (debug && (itter % 1000) == 0)
-                            // {
-                                // System.out.print(b);
-                            // }
-                            
-                            // if (debug && (itter % 1000) == 0)
-							// {
-								// System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							// }
-                        // }
-                    // }
-                // }
-                // catch (Throwable e)
-                // {
-                    // if (debug)
-                    // {
-                        // System.out.println(_re[regnum] + "  failed badly");
-                    // }
-                // }
-            // }
-            // endTime = System.currentTimeMillis();
-            // printResult("RegularExpression.RE", timeTaken, (endTime - startTime), matches, html);
-            
-           
-            // ----------------------//
-            // System.out.println("Testing gnu.rex.Rex...");
-            // // gnu.rex.Rex version
-            
-            // startTime = System.currentTimeMillis();
-            // for (int regnum = 0; regnum < _re.length; regnum++)
-            // {
-                // try
-                // {
-                    // gnu.rex.Rex.config_GroupBraces("(", ")"); 
-                    // gnu.rex.Rex.config_Alternative("|"); 
-                    // gnu.rex.Rex regexpr = gnu.rex.Rex.build(_re[regnum]);
-                    // int testedAgainstLargeString = 0;
-                    // for (int itter = 0; itter < ITERATIONS; itter++)
-                    // {
-                        // for (int strnum = 0; strnum < _str.length; strnum++)
-                        // {
-							// if (debug && (itter % 1000) == 0)
-							// {
-								// System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							// }
-							
-							// if (debug && (itter % 1000) == 0)
-                            // {
-                                // System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            // }
-                            
-                            // // only test the big one 10 iterations only per regex
-                            // if (testedAgainstLargeString > 10 && strnum == 5)
-                            // {
-                                // break;
-							// }
-							
-							// long iterStarTime = System.currentTimeMillis();
-                            // boolean b = regexpr.match(_str[strnum].toCharArray(),0,0).length() > 0;
-                            
-                            // matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            // timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // // count how many times we test against the large string on this regex
-                            // if (strnum == 5)
-                            // {
-								// testedAgainstLargeString++;
-							// }
-                            
-                            // if (debug && (itter % 1000) == 0)
-                            // {
-                                // System.out.print(b);
-                            // }
-                            
-                            // if (debug && (itter % 1000) == 0)
-							// {
-								// System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							// }
-                        // }
-                    // }
-                // }
-                // catch (Throwable e)
-                // {
-                    // if (debug)
-                    // {
-                        // System.out.println(_re[regnum] + "  failed badly");
-                    // }
-                // }
-            // }
-            // endTime = System.currentTimeMillis();
-            // printResult("gnu.rex.Rex", timeTaken, (endTime - startTime), matches, html);
-            
+            if (mode.equals("bytes"))
+            {
+                // UTF-8 bytes handed to the engines vs. decoding them into Strings first, see regexbench.ByteInputComparison
+                new regexbench.ByteInputComparison(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                return;
+            }
 
-            // ----------------------//
-            // dk.brics.automaton.RegExp version [fails on URL tests]
-            
-            System.out.println("Testing dk.brics.automaton.RegExp...");
-            
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            if (mode.equals("sweep"))
             {
-                try
+                // search time from 1 KB to 128 MB inputs and its complexity class, see regexbench.SizeSweep
+                new regexbench.SizeSweep(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                return;
+            }
+
+            if (mode.equals("fuzz"))
+            {
+                // search for worst-case inputs per engine and pattern, see regexbench.RedosFuzzer
+                java.util.List<String> patterns = new java.util.ArrayList<String>(java.util.Arrays.asList(regexbench.Corpus.PREG));
+                if (args.length > 1)
                 {
-                    dk.brics.automaton.RegExp regexpr = new dk.brics.automaton.RegExp(_re[regnum]);
-                    dk.brics.automaton.Automaton auto = regexpr.toAutomaton();
-                    dk.brics.automaton.RunAutomaton runauto = new dk.brics.automaton.RunAutomaton(auto, true);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
-                    {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            boolean b = runauto.run(_str[strnum]);
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
+                    patterns = java.util.Arrays.asList(args).subList(1, args.length);
                 }
-                catch (Throwable e)
+                int found = new regexbench.RedosFuzzer(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load(),
+                    patterns);
+                if (found > 0)
                 {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + "  failed badly");
-                    }
+                    // lets scripts reject a pattern before it is deployed
+                    System.exit(1);
                 }
+                return;
             }
-            endTime = System.currentTimeMillis();
-            printResult("dk.brics.automaton.RegExp", timeTaken, (endTime - startTime), matches, html);
-            // ----------------------//
-            // ----------------------//
-            // com.karneim.util.collection.regex.Pattern version
-            
-            System.out.println("Testing com.karneim.util.collection.regex.Pattern...");
-            
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+
+            if (mode.equals("gc"))
             {
-                try
+                // the matrix once per garbage collector and heap size in forked JVMs, see regexbench.GcMatrix
+                regexbench.GcMatrix matrix = new regexbench.GcMatrix(new regexbench.Report(System.out, html));
+                if (args.length > 1)
                 {
-                    com.karneim.util.collection.regex.Pattern p = new com.karneim.util.collection.regex.Pattern(_re[regnum]);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
+                    // one engine in this JVM, as a forked child runs it
+                    regexbench.RegexEngine engine = regexbench.RegexEngines.find(args[1]);
+                    if (engine == null)
                     {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            boolean b = p.contains(_str[strnum]);
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
+                        System.err.println("No regex engine called " + args[1]);
+                        System.exit(2);
                     }
+                    matrix.runChild(engine);
+                    return;
                 }
-                catch (Throwable e)
+                matrix.run(regexbench.RegexEngines.load());
+                return;
+            }
+
+            if (mode.equals("isolated"))
+            {
+                // every engine, pattern or cell in a JVM of its own, see regexbench.IsolationRunner
+                regexbench.IsolationRunner runner = new regexbench.IsolationRunner(new regexbench.Report(System.out, html));
+                if (args.length > 1)
                 {
-                    if (debug)
+                    // the child side: one engine, optionally one pattern or cell, as binary records on stdout
+                    regexbench.RegexEngine engine = regexbench.RegexEngines.find(args[1]);
+                    if (engine == null)
                     {
-                        System.out.println(_re[regnum] + "  failed badly");
+                        System.err.println("No regex engine called " + args[1]);
+                        System.exit(2);
                     }
+                    runner.runChild(engine, args.length > 2 ? Integer.parseInt(args[2]) : -1, args.length > 3 ? Integer.parseInt(
+                        args[3]) : -1);
+                    return;
                 }
+                runner.run(regexbench.RegexEngines.load());
+                return;
             }
-            endTime = System.currentTimeMillis();
 
-            printResult("com.karneim.util.collection.regex.Pattern", timeTaken, (endTime - startTime), matches, html);
-            
-            // ----------------------//
-            // ----------------------//
-            // org.apache.xerces.impl.xpath.regex.RegularExpression version
-            
-            // System.out.println("Testing org.apache.xerces.impl.xpath.regex.RegularExpression...");
-            
-            // startTime = System.currentTimeMillis();
-            // for (int regnum = 0; regnum < _re.length; regnum++)
-            // {
-                // try
-                // {
-                    // org.apache.xerces.impl.xpath.regex.RegularExpression p = new org.apache.xerces.impl.xpath.regex.RegularExpression(_re[regnum]);
-                    // int testedAgainstLargeString = 0;
-                    // for (int itter = 0; itter < ITERATIONS; itter++)
-                    // {
-                        // for (int strnum = 0; strnum < _str.length; strnum++)
-                        // {
-							// if (debug && (itter % 1000) == 0)
-							// {
-								// System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							// }
-							
-							// if (debug && (itter % 1000) == 0)
-                            // {
-                                // System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            // }
-                            
-                            // // only test the big one 10 iterations only per regex
-                            // if (testedAgainstLargeString > 10 && strnum == 5)
-                            // {
-                                // break;
-							// }
-							
-							// long iterStarTime = System.currentTimeMillis();
-                            // boolean b = p.matches(_str[strnum]);
-                            // matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            // timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // // count how many times we test against the large string on this regex
-                            // if (strnum == 5)
-                            // {
-								// testedAgainstLargeString++;
-							// }
-                            
-                            // if (debug && (itter % 1000) == 0)
-                            // {
-                                // System.out.print(b);
-                            // }
-                            
-                            // if (debug && (itter % 1000) == 0)
-							// {
-								// System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							// }
-                        // }
-                    // }
-                // }
-                // catch (Throwable e)
-                // {
-                    // if (debug)
-                    // {
-                        // System.out.println(_re[regnum] + "  failed badly");
-                    // }
-                // }
-            // }
-            // endTime = System.currentTimeMillis();
+            if (mode.equals("load"))
+            {
+                // open-loop request load at rising rates until each engine saturates, see regexbench.LoadSimulator
+                new regexbench.LoadSimulator(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                return;
+            }
 
-            // printResult("org.apache.xerces.impl.xpath.regex.RegularExpression", timeTaken, (endTime - startTime), matches, html);
-            
-            // ----------------------//
-            // ----------------------//
-            // monq.jfa.Regexp version
-            System.out.println("Testing monq.jfa.Regexp...");
-            
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            if (mode.equals("cache"))
             {
-                try
-                {
-                    monq.jfa.Regexp p = new monq.jfa.Regexp(_re[regnum]);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
-                    {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            boolean b = p.matches(_str[strnum]);
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
-                }
-                catch (Throwable e)
-                {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + "  failed badly");
-                    }
-                }
+                // no cache vs. a locked LRU map vs. PatternCache under skewed patterns, see regexbench.PatternCacheComparison
+                new regexbench.PatternCacheComparison(new regexbench.Report(System.out, html)).run(regexbench.RegexEngines.load());
+                return;
             }
-            endTime = System.currentTimeMillis();
 
-            printResult("monq.jfa.Regexp", timeTaken, (endTime - startTime), matches, html);
- 
-            
-            
-			// ----------------------//
-            // ----------------------//
-            // com.ibm.icu.text.UnicodeSet version
-            
-			System.out.println("Testing com.ibm.icu.text.UnicodeSet...");
-            
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            if (mode.equals("unified"))
             {
-                try
+                // Java, .NET and PHP results files side by side, see regexbench.UnifiedReport
+                java.util.List<java.io.File> files = new java.util.ArrayList<java.io.File>();
+                for (int i = 1; i < args.length; i++)
                 {
-                    com.ibm.icu.text.UnicodeSet p = new com.ibm.icu.text.UnicodeSet(_re[regnum]);
-                    int testedAgainstLargeString = 0;
-                    for (int itter = 0; itter < ITERATIONS; itter++)
-                    {
-                        for (int strnum = 0; strnum < _str.length; strnum++)
-                        {
-							if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                            boolean b = p.containsAll(_str[strnum]);
-                            matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                            timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
-                    }
-                }
-                catch (Throwable e)
-                {
-                    if (debug)
-                    {
-                        System.out.println(_re[regnum] + "  failed badly");
-                    }
+                    files.add(new java.io.File(args[i]));
                 }
+                new regexbench.UnifiedReport(new regexbench.Report(System.out, html)).run(files);
+                return;
             }
-            endTime = System.currentTimeMillis();
 
-            printResult("com.ibm.icu.text.UnicodeSet", timeTaken, (endTime - startTime), matches, html);            // -----gnu.regexp.RE-----//
+            // "reuse" additionally runs every engine with one reset matcher per cell
+            boolean reuse = mode.equals("reuse");
 
-			System.out.println("Testing gnu.regexp.RE...");
+            // "preg" gives every engine the PHP patterns translated into its own dialect
+            boolean preg = mode.equals("preg");
+            regexbench.preg.PregCache translations = new regexbench.preg.PregCache();
 
-            startTime = System.currentTimeMillis();
-            for (int regnum = 0; regnum < _re.length; regnum++)
+            // every cell also goes to the history directory as JSON and CSV, see regexbench.RunHistory
+            regexbench.RunHistory history = new regexbench.RunHistory(mode.isEmpty() ? "default" : mode);
+
+            // every regexbench.RegexEngine on the classpath, see META-INF/services/regexbench.RegexEngine
+            for (regexbench.RegexEngine engine : regexbench.RegexEngines.load())
             {
-                gnu.regexp.RE regexpr = new gnu.regexp.RE(_re[regnum]);
-                int testedAgainstLargeString = 0;
-                for (int itter = 0; itter < ITERATIONS; itter++)
+                System.out.println("Testing " + engine.getName() + "...");
+                // PHP engines get the preg originals of _re, delimiters and all
+                String[] patterns = regexbench.Corpus.patternsFor(engine);
+                String[] labels = patterns;
+                String name = engine.getName();
+                if (preg)
                 {
-                    
-                    for (int strnum = 0; strnum < _str.length; strnum++)
+                    patterns = new String[_re.length];
+                    labels = new String[_re.length];
+                    for (int re = 0; re < _re.length; re++)
                     {
-						if (debug && (itter % 1000) == 0)
-							{
-								System.out.print("Iteration/regex number/string number " + itter + "/" + regnum + "/" + strnum + "... ");
-							}
-							
-							if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(_re[regnum] + " against " + _str[strnum] + ":");
-                            }
-                            
-                            // only test the big one 10 iterations only per regex
-                            if (testedAgainstLargeString > 10 && strnum == 5)
-                            {
-                                break;
-							}
-							
-							long iterStarTime = System.currentTimeMillis();
-                        boolean b = regexpr.isMatch(_str[strnum]);
-                        matches[regnum][strnum] = (b == expectedMatch[regnum][strnum]);
-                        timeTaken[regnum][itter][strnum] = (System.currentTimeMillis() - iterStarTime);
-                            
-                            // count how many times we test against the large string on this regex
-                            if (strnum == 5)
-                            {
-								testedAgainstLargeString++;
-							}
-                            
-                            if (debug && (itter % 1000) == 0)
-                            {
-                                System.out.print(b);
-                            }
-                            
-                            if (debug && (itter % 1000) == 0)
-							{
-								System.out.print(" took " + timeTaken[regnum][itter][strnum] + "ms" + "\n");
-							}
-                        }
+                        regexbench.preg.PregTranslation t = translations.translate(regexbench.Corpus.PREG[re], engine.getDialect());
+                        patterns[re] = t.getPattern();
+                        labels[re] = t.getSource() + " -> " + t.toString().replace("\n", "\\n");
                     }
+                    name += " [preg, " + engine.getDialect() + "]";
+                }
+                testAndPrint(engine, name, patterns, labels, false, history);
+                if (reuse)
+                {
+                    testAndPrint(engine, name + " [matcher reused]", patterns, labels, true, history);
+                }
+            }
+            java.io.File written = history.write();
+            if (written != null)
+            {
+                System.err.println("Results written to " + written);
             }
-            endTime = System.currentTimeMillis();
-            printResult("gnu.regexp.RE", timeTaken, (endTime - startTime), matches, html);
-            
         }
         catch (Exception e)
         {
@@ -1111,9 +264,66 @@ public class regtest
         }
     }
 
-    private static final void printResult(String regexName, long[][][] matrix, long totalTime, boolean[][] matches, boolean html)
+    private static final void testAndPrint(regexbench.RegexEngine engine, String name, String[] patterns, String[] labels,
+        boolean reuse, regexbench.RunHistory history) throws java.io.IOException
+    {
+        regexbench.LatencyRecorder[][] timeTaken = regexbench.LatencyRecorder.newMatrix(_re.length, _str.length);
+        boolean[][] matches = new boolean[_re.length][_str.length];
+        String[][] status = new String[_re.length][_str.length];
+        regexbench.SteadyState[][] steady = new regexbench.SteadyState[_re.length][_str.length];
+        long startTime = System.currentTimeMillis();
+        testEngine(engine, patterns, reuse, timeTaken, steady, matches, status);
+        long endTime = System.currentTimeMillis();
+        printResult(name, labels, timeTaken, steady, (endTime - startTime), matches, status, html);
+        for (int re = 0; re < _re.length; re++)
+        {
+            for (int str = 0; str < _str.length; str++)
+            {
+                history.add(name, re, str, patterns[re] == null ? labels[re] : patterns[re], status[re][str], matches[re][str],
+                    timeTaken[re][str], steady[re][str]);
+            }
+        }
+    }
+
+    private static final void testEngine(regexbench.RegexEngine engine, final String[] patterns, boolean reuse,
+        final regexbench.LatencyRecorder[][] timeTaken, final regexbench.SteadyState[][] steady, final boolean[][] matches,
+        final String[][] status) throws java.io.IOException
+    {
+        // probe, compile and time every cell, the same loop the gc and isolated modes run, see regexbench.CellLoop
+        regexbench.CellLoop.run(engine, patterns, reuse, -1, -1, new regexbench.CellLoop.Sink()
+        {
+            public void cell(regexbench.CellLoop.Cell cell)
+            {
+                int regnum = cell.getRe();
+                int strnum = cell.getStr();
+                timeTaken[regnum][strnum] = cell.getRecorder();
+                steady[regnum][strnum] = cell.getSteady();
+                matches[regnum][strnum] = cell.isCorrect();
+                status[regnum][strnum] = cell.getFailure();
+                if (debug)
+                {
+                    System.out.print("Regex number/string number " + regnum + "/" + strnum + "... ");
+                    System.out.print(patterns[regnum] + " against " + _str[strnum] + ": ");
+                    regexbench.SteadyState sampled = cell.getSteady();
+                    System.out.print(sampled == null ? cell.getStatus() + "\n" : cell.getLastAnswer() + ", "
+                        + cell.getRecorder().getWall().getTotalCount() + " matches after " + sampled.getWarmupMatches()
+                        + " warm-up, " + sampled.describe() + "\n");
+                }
+            }
+        });
+    }
+
+    private static final void printResult(String regexName, String[] labels, regexbench.LatencyRecorder[][] matrix,
+        regexbench.SteadyState[][] steady, long totalTime, boolean[][] matches, String[][] status, boolean html)
     {
-        // timeTaken[regnum][itter][strnum]
+        // matrix[regnum][strnum]; MS is the summed wall time in milliseconds, every other
+        // time column is in microseconds. CPU columns stay 0 when the JVM lacks thread CPU time,
+        // B/MATCH (bytes allocated per match) is -1 when it lacks allocation counters.
+        // WARMUP matches are not in the figures; JIT MS and GC MS are compilation and collection
+        // pause time during the cell, warm-up included; CI % is the relative width of the 95%
+        // confidence interval of the median; SAMPLING says why the cell stopped, see regexbench.SteadyState.
+        long jitTotal = 0;
+        long gcTotal = 0;
         if (html)
         {
             System.out.println("<table>");
@@ -1129,62 +339,106 @@ public class regtest
         {
             if (html)
             {
-                System.out.println("<tr><th>RE:</th><td colspan=\"5\">" + _re[re] + "</td></tr>");
-                System.out
-                    .println("<tr><th>MS</th><th>MAX</th><th>AVG</th><th>MIN</th><th>DEV</th><th>INPUT</th><th>MATCH</th></tr>");
+                System.out.println("<tr><th>RE:</th><td colspan=\"21\">" + labels[re] + "</td></tr>");
+                System.out.println("<tr><th>MS</th><th>MAX</th><th>AVG</th><th>MIN</th><th>DEV</th><th>P50</th><th>P90</th>"
+                    + "<th>P99</th><th>P99.9</th><th>CPU AVG</th><th>CPU P99</th><th>B/MATCH</th><th>N</th><th>WARMUP</th><th>JIT MS</th>"
+                    + "<th>GC MS</th><th>CI %</th><th>SAMPLING</th><th>INPUT</th><th>MATCH</th><th>STATUS</th></tr>");
             }
             else
             {
-                System.out.println("RE: " + _re[re]);
-                System.out.println("  MS\tMAX\tAVG\tMIN\tDEV\tINPUT\tMATCH");
+                System.out.println("RE: " + labels[re]);
+                System.out.println("  MS\tMAX\tAVG\tMIN\tDEV\tP50\tP90\tP99\tP99.9\tCPU AVG\tCPU P99\tB/MATCH\tN\tWARMUP\tJIT MS"
+                    + "\tGC MS\tCI %\tSAMPLING\tINPUT\tMATCH\tSTATUS");
             }
             for (int str = 0; str < _str.length; str++)
             {
-                long total = 0;
-                long sumOfSq = 0;
-                long min = Long.MAX_VALUE;
-                long max = Long.MIN_VALUE;
-                for (int i = 0; i < ITERATIONS; i++)
+                regexbench.LatencyHistogram wall = matrix[re][str].getWall();
+                regexbench.LatencyHistogram cpu = matrix[re][str].getCpu();
+                regexbench.SteadyState cell = steady[re][str];
+                if (cell != null)
                 {
-                    long elapsed = matrix[re][i][str];
-                    total += elapsed;
-                    sumOfSq += elapsed * elapsed;
-                    if (elapsed < min)
-                    {
-                        min = elapsed;
-                    }
-                    if (elapsed > max)
-                    {
-                        max = elapsed;
-                    }
+                    jitTotal += Math.max(0, cell.getJitMillis());
+                    gcTotal += cell.getGcMillis();
                 }
-                // calc std dev
-                long stdDev = (long) java.lang.Math.sqrt((sumOfSq - ((total * total) / ITERATIONS)) / (ITERATIONS - 1));
+                String[] cells = {
+                    format(wall.getTotal() / 1000000.0),
+                    micros(wall.getMax()),
+                    micros(wall.getMean()),
+                    micros(wall.getMin()),
+                    micros(wall.getStdDeviation()),
+                    micros(wall.getValueAtPercentile(50)),
+                    micros(wall.getValueAtPercentile(90)),
+                    micros(wall.getValueAtPercentile(99)),
+                    micros(wall.getValueAtPercentile(99.9)),
+                    micros(cpu.getMean()),
+                    micros(cpu.getValueAtPercentile(99)),
+                    format(matrix[re][str].getAllocatedBytesPerOp()),
+                    Long.toString(wall.getTotalCount()),
+                    cell == null ? "-" : Long.toString(cell.getWarmupMatches()),
+                    cell == null || cell.getJitMillis() < 0 ? "-" : Long.toString(cell.getJitMillis()),
+                    cell == null ? "-" : Long.toString(cell.getGcMillis()),
+                    cell == null || Double.isNaN(cell.getRelativeWidth()) ? "-" : format(cell.getRelativeWidth() * 100),
+                    cell == null ? "-" : cell.describe()};
 
+                StringBuilder line = new StringBuilder();
                 if (html)
                 {
-                    System.out.println("<tr><td>" + total + "</td><td>" + max + "</td><td>" + (double) total / ITERATIONS
-                        + "</td><td>" + min + "</td><td>" + stdDev + "</td><td>" + _str[str] + "</td><td>" + matches[re][str]
-                        + "</td></tr>");
+                    line.append("<tr>");
+                    for (int c = 0; c < cells.length; c++)
+                    {
+                        line.append("<td>").append(cells[c]).append("</td>");
+                    }
+                    line.append("<td>").append(_str[str]).append("</td><td>").append(matches[re][str]).append("</td><td>")
+                        .append(status[re][str] == null ? "ok" : status[re][str]).append("</td></tr>");
                 }
                 else
                 {
-                    System.out.println("  " + total + "\t" + max + "\t" + (double) total / ITERATIONS + "\t" + min + "\t" + stdDev
-                        + "\t'" + _str[str] + "\t'" + matches[re][str] + "'");
+                    line.append(" ");
+                    for (int c = 0; c < cells.length; c++)
+                    {
+                        line.append(' ').append(cells[c]).append('\t');
+                    }
+                    line.append("'").append(_str[str]).append("\t'").append(matches[re][str]).append("'\t")
+                        .append(status[re][str] == null ? "ok" : status[re][str]);
                 }
+                System.out.println(line);
             }
         }
         if (html)
         {
             System.out.println("<tr><th colspan=\"3\"><h2>Total time taken:</h2></th><td colspan=\"3\"><h2>" + totalTime
                 + "</h2></td></tr>");
+            System.out.println("<tr><th colspan=\"3\">JIT / GC ms:</th><td colspan=\"3\">" + jitTotal + " / " + gcTotal
+                + "</td></tr>");
             System.out.println("</table>");
         }
         else
         {
             System.out.println("Total time taken: " + totalTime);
+            System.out.println("JIT / GC ms: " + jitTotal + " / " + gcTotal);
             System.out.println("------------------------------------------");
         }
     }
 
+    /** The files of a list joined like a class path. */
+    private static final java.util.List<java.io.File> files(String list)
+    {
+        java.util.List<java.io.File> files = new java.util.ArrayList<java.io.File>();
+        for (String name : list.split(java.io.File.pathSeparator))
+        {
+            files.add(new java.io.File(name));
+        }
+        return files;
+    }
+
+    private static final String micros(double nanos)
+    {
+        return format(nanos / 1000.0);
+    }
+
+    private static final String format(double value)
+    {
+        return String.format(java.util.Locale.ROOT, "%.3f", value);
+    }
+
 }
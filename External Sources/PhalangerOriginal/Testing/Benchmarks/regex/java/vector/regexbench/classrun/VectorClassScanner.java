@@ -0,0 +1,87 @@
+package regexbench.classrun;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Class-run scanning with the Vector API: chars are loaded as unsigned shorts,
+ * SPECIES_PREFERRED at a time (16 with AVX2, 32 with AVX-512), each range of the
+ * class is tested with one compare for a single char or two unsigned compares,
+ * and the first lane outside the class ends the run. The tail shorter than a
+ * vector is scanned scalar.
+ *
+ * Compiled only by the "vector" Maven profile (JDK 17+) and loaded by
+ * ClassScanners through reflection, so the rest of the tree stays on Java 8.
+ */
+final class VectorClassScanner implements ClassScanner
+{
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    /** Classes with more ranges than this are cheaper to test scalar. */
+    private static final int MAX_RANGES = 4;
+
+    private final short[] low;
+    private final short[] high;
+    private final boolean negated;
+    private final ClassScanner tail;
+
+    VectorClassScanner(CharClass cls)
+    {
+        int n = cls.getRangeCount();
+        if (n == 0 || n > MAX_RANGES)
+        {
+            throw new IllegalArgumentException(cls + " has " + n + " ranges");
+        }
+        low = new short[n];
+        high = new short[n];
+        for (int i = 0; i < n; i++)
+        {
+            low[i] = (short) cls.getLow(i);
+            high[i] = (short) cls.getHigh(i);
+        }
+        negated = cls.isNegated();
+        tail = new ScalarClassScanner(cls);
+    }
+
+    static String describe()
+    {
+        return "Vector API, " + SPECIES.length() + " chars per step";
+    }
+
+    public int skip(char[] chars, int from, int to)
+    {
+        int step = SPECIES.length();
+        int i = from;
+        for (int bound = to - step; i <= bound; i += step)
+        {
+            VectorMask<Short> outside = outside(ShortVector.fromCharArray(SPECIES, chars, i));
+            if (outside.anyTrue())
+            {
+                return i + outside.firstTrue();
+            }
+        }
+        return tail.skip(chars, i, to);
+    }
+
+    /** Lanes of v that are not in the class. */
+    private VectorMask<Short> outside(ShortVector v)
+    {
+        VectorMask<Short> in = range(v, 0);
+        for (int r = 1; r < low.length; r++)
+        {
+            in = in.or(range(v, r));
+        }
+        return negated ? in : in.not();
+    }
+
+    private VectorMask<Short> range(ShortVector v, int r)
+    {
+        if (low[r] == high[r])
+        {
+            return v.eq(low[r]);
+        }
+        return v.compare(VectorOperators.UNSIGNED_GE, low[r]).and(v.compare(VectorOperators.UNSIGNED_LE, high[r]));
+    }
+}
@@ -22,9 +22,10 @@
 
 
 
+    // same patterns as Corpus.PREG in java/regexbench/Corpus.java, keep them in sync
     $re = array("#^(([^:]+)://)?([^:/]+)(:([0-9]+))?(/.*)#", // URL match
         "#(([^:]+)://)?([^:/]+)(:([0-9]+))?(/.*)#", // URL match without starting ^
-        "#usd [+-]?[0-9]+.[0-9,0-9]#", // Canonical US dollar amount
+        "#usd [+-]?[0-9]+.[0-9][0-9]#", // Canonical US dollar amount
         "#\b(\w+)(\s+\1)+\b#", // Duplicate words
         "#\{(\d+):(([^}](?!-} ))*)#" // this is meant to match against the "some more text and ..." but it causes ORO Matcher
     								  // to fail, so we won't include this by default... it is also WAY too slow to test
@@ -116,6 +117,8 @@
     define("debug", false);
 	define("html", true);
     define("ITERATIONS", 10000);
+    // results in the schema of java/regexbench/UnifiedReport.java, for "regtest unified"
+    define("RESULTS_FILE", dirname(__FILE__) . "/results-php.json");
 
 
   
@@ -152,7 +155,10 @@
 				}
 
 				$iterStarTime = microtime(true);
+				$nanos = nanoTime();
 				$b = preg_match($re[$regnum], $str[$strnum]);
+				$samples[$regnum][$strnum][] = nanoTime() - $nanos;
+				$matched[$regnum][$strnum] = $b;
 				$matches[$regnum][ $strnum] = ($b == $expectedMatch[$regnum][ $strnum]);
 				$timeTaken[$regnum][ $itter][ $strnum] = (microtime(true) - $iterStarTime)*1000;
 				
@@ -177,6 +183,54 @@
     }
     $endTime = microtime(true);
     printResult("QUERUCS", $timeTaken, ($endTime - $startTime) * 1000, $matches);
+    writeResults(RESULTS_FILE, "preg_match", $samples, $matched, $matches);
+
+	// nanoseconds from an arbitrary origin, as precise as the PHP version allows
+	function nanoTime()
+	{
+		return function_exists("hrtime") ? hrtime(true) : (int) (microtime(true) * 1e9);
+	}
+
+	// writes one cell per pattern and input with summary statistics of its samples, times in nanoseconds
+	function writeResults($file, $engine, &$samples, $matched, $matches)
+	{
+		global $re, $str;
+
+		$cells = array();
+		for ($ire = 0; $ire < count($re); $ire++)
+		{
+			for ($istr = 0; $istr < count($str); $istr++)
+			{
+				$times = $samples[$ire][$istr];
+				sort($times);
+				$n = count($times);
+				// preg_match returns false when the pattern fails
+				$failed = $matched[$ire][$istr] === false;
+				$cell = array("engine" => $engine, "re" => $ire, "str" => $istr, "pattern" => $re[$ire],
+					"status" => $failed ? "failed: " . preg_last_error() : "ok", "matched" => $matched[$ire][$istr] == 1,
+					"matchOk" => (bool) $matches[$ire][$istr]);
+				if (!$failed)
+				{
+					$cell["wall"] = array("count" => $n, "min" => $times[0], "max" => $times[$n - 1],
+						"mean" => array_sum($times) / $n, "p50" => percentile($times, 50), "p90" => percentile($times, 90),
+						"p99" => percentile($times, 99));
+				}
+				$cells[] = $cell;
+			}
+		}
+		$run = array("format" => 1, "runtime" => "php", "mode" => "default", "started" => gmdate("Y-m-d\TH:i:s\Z"),
+			"environment" => array("php.version" => PHP_VERSION, "os.name" => PHP_OS,
+				"pcre.version" => defined("PCRE_VERSION") ? PCRE_VERSION : "unknown"),
+			"cells" => $cells);
+		file_put_contents($file, json_encode($run));
+	}
+
+	// nearest-rank percentile of sorted samples
+	function percentile(&$sorted, $percent)
+	{
+		$rank = (int) ceil($percent / 100 * count($sorted));
+		return $sorted[max($rank, 1) - 1];
+	}
 
 	
 	function printResult($regexName, &$matrix, $totalTime, $matches)